@@ -0,0 +1,172 @@
+package com.example.calculator;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.core.content.ContextCompat;
+
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.plot.Plot;
+
+/**
+ * Draws a function of x with both axes at the same scale, panned by dragging and zoomed by
+ * pinching.
+ * <p>
+ * Samples come from the tiles of a {@link Plot}, which are sampled on background threads and
+ * kept while the view moves, so a frame only turns cached samples into a path. A tile that
+ * is not sampled yet is drawn from a cached tile of the next zoom level, or left out, and
+ * the view redraws when it arrives.
+ */
+public class GraphView extends View {
+
+    // Units of x across the width when the view is first laid out
+    private static final double INITIAL_RANGE = 20;
+    // Bounds of the zoom, in units per pixel
+    private static final double MIN_UNITS_PER_PIXEL = 1e-9;
+    private static final double MAX_UNITS_PER_PIXEL = 1e6;
+    // Bound of the center, beyond which tiles cannot be indexed
+    private static final double MAX_CENTER = 1e12;
+    // Heights of the view beyond its edges at which the curve is clipped, keeping coordinates in float range
+    private static final float OVERDRAW = 4;
+
+    private final Paint curvePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint axisPaint = new Paint();
+    private final Path curve = new Path();
+    private final ScaleGestureDetector scaleDetector;
+    private final GestureDetector panDetector;
+    // Called from the sampling threads when a tile arrives
+    private final Runnable redraw = this::postInvalidateOnAnimation;
+    private Plot plot;
+    private double centerX;
+    private double centerY;
+    private double unitsPerPixel;
+
+    public GraphView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        curvePaint.setColor(ContextCompat.getColor(context, R.color.purple_500));
+        curvePaint.setStyle(Paint.Style.STROKE);
+        curvePaint.setStrokeWidth(3 * getResources().getDisplayMetrics().density);
+        curvePaint.setStrokeJoin(Paint.Join.ROUND);
+        axisPaint.setColor(ContextCompat.getColor(context, R.color.teal_200));
+        axisPaint.setStrokeWidth(getResources().getDisplayMetrics().density);
+        scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                zoom(detector.getScaleFactor(), detector.getFocusX(), detector.getFocusY());
+                return true;
+            }
+        });
+        panDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                centerX = clamp(centerX + distanceX * unitsPerPixel, -MAX_CENTER, MAX_CENTER);
+                centerY = clamp(centerY - distanceY * unitsPerPixel, -MAX_CENTER, MAX_CENTER);
+                invalidate();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Shows a function, keeping the current pan and zoom
+     *
+     * @param program The function, compiled with the variable x, or null to show only the axes
+     */
+    public void setProgram(Program program) {
+        plot = program == null ? null : new Plot(program);
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (unitsPerPixel == 0 && w > 0) {
+            unitsPerPixel = INITIAL_RANGE / w;
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+        if (!scaleDetector.isInProgress()) {
+            panDetector.onTouchEvent(event);
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int width = getWidth();
+        int height = getHeight();
+        if (width == 0 || unitsPerPixel == 0) {
+            return;
+        }
+        float originX = screenX(0);
+        float originY = screenY(0);
+        canvas.drawLine(0, originY, width, originY, axisPaint);
+        canvas.drawLine(originX, 0, originX, height, axisPaint);
+        if (plot == null) {
+            return;
+        }
+        double from = centerX - width / 2.0 * unitsPerPixel;
+        double to = centerX + width / 2.0 * unitsPerPixel;
+        float top = -OVERDRAW * height;
+        float bottom = (OVERDRAW + 1) * height;
+        curve.rewind();
+        for (Plot.Tile tile : plot.visible(from, to, unitsPerPixel, redraw)) {
+            boolean drawing = false;
+            for (int i = 0; i < tile.size(); i++) {
+                double y = tile.y(i);
+                if (Double.isNaN(y)) {
+                    drawing = false;
+                    continue;
+                }
+                float x = screenX(tile.x(i));
+                float screenY = Math.max(top, Math.min(bottom, screenY(y)));
+                if (drawing) {
+                    curve.lineTo(x, screenY);
+                } else {
+                    curve.moveTo(x, screenY);
+                    drawing = true;
+                }
+            }
+        }
+        canvas.drawPath(curve, curvePaint);
+    }
+
+    /**
+     * Zooms around a point of the view, which stays where it is
+     *
+     * @param factor The factor by which the graph grows
+     * @param focusX The x of the point in pixels
+     * @param focusY The y of the point in pixels
+     */
+    private void zoom(float factor, float focusX, float focusY) {
+        double x = centerX + (focusX - getWidth() / 2.0) * unitsPerPixel;
+        double y = centerY - (focusY - getHeight() / 2.0) * unitsPerPixel;
+        unitsPerPixel = clamp(unitsPerPixel / factor, MIN_UNITS_PER_PIXEL, MAX_UNITS_PER_PIXEL);
+        centerX = clamp(x - (focusX - getWidth() / 2.0) * unitsPerPixel, -MAX_CENTER, MAX_CENTER);
+        centerY = clamp(y + (focusY - getHeight() / 2.0) * unitsPerPixel, -MAX_CENTER, MAX_CENTER);
+        invalidate();
+    }
+
+    private float screenX(double x) {
+        return (float) ((x - centerX) / unitsPerPixel + getWidth() / 2.0);
+    }
+
+    private float screenY(double y) {
+        return (float) (getHeight() / 2.0 - (y - centerY) / unitsPerPixel);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.calculator;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.calculator.engine.history.HistoryEntry;
+import com.example.calculator.engine.history.HistoryLog;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shows the history log newest first, binding rows lazily from the log.
+ * <p>
+ * Entries are loaded a page of {@link HistoryLog#INDEX_INTERVAL} at a time, which is one
+ * positional read in the log, and only the pages around the visible rows are kept. Pages
+ * are only ever read on a background thread: a row whose page is missing is bound empty and
+ * bound again once the page arrives, and binding a row also loads the pages of the rows
+ * {@value #PREFETCH_DISTANCE} above and below it, so binding never waits for the disk. A
+ * row's id is its position in the log, which never changes for an append-only log.
+ * <p>
+ * A search narrows the rows to the positions it matched, still newest first.
+ */
+public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
+
+    private static final String TAG = "HistoryAdapter";
+    // Entries per page, matching the blocks of the log
+    private static final int PAGE_SIZE = HistoryLog.INDEX_INTERVAL;
+    // Pages kept in memory; enough for a screen and its prefetched rows of scattered matches
+    private static final int CACHED_PAGES = 64;
+    // Rows ahead of a bound row, in either direction, whose page is prefetched
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 4;
+
+    private final HistoryLog history;
+    // Number of entries when the adapter was created; newer ones are not shown
+    private final int count;
+    // Log positions of the rows, oldest first, or null to show every entry
+    private int[] matches;
+    private final LruCache<Integer, List<HistoryEntry>> pages = new LruCache<>(CACHED_PAGES);
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Pages being read by the prefetcher, touched on the main thread only
+    private final Set<Integer> loading = new HashSet<>();
+    private boolean released;
+
+    /**
+     * @param history The log to show
+     */
+    public HistoryAdapter(HistoryLog history) {
+        this.history = history;
+        this.count = history.size();
+        setHasStableIds(true);
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.history_item, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        int index = logIndex(position);
+        List<HistoryEntry> entries = pages.get(index / PAGE_SIZE);
+        holder.textView.setText(entries == null ? "" : entries.get(index % PAGE_SIZE).toString());
+        load(index / PAGE_SIZE);
+        // Flings and jumps go either way, so the pages of rows on both sides are read ahead
+        if (position >= PREFETCH_DISTANCE) {
+            load(logIndex(position - PREFETCH_DISTANCE) / PAGE_SIZE);
+        }
+        if (position + PREFETCH_DISTANCE < getItemCount()) {
+            load(logIndex(position + PREFETCH_DISTANCE) / PAGE_SIZE);
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return matches == null ? count : matches.length;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return logIndex(position);
+    }
+
+    /**
+     * Shows only some entries, e.g. the matches of a search
+     *
+     * @param positions Log positions, oldest first, or null to show every entry again
+     */
+    public void showMatches(int[] positions) {
+        if (positions != null) {
+            // Entries appended since the adapter was created are not shown
+            int shown = 0;
+            while (shown < positions.length && positions[shown] < count) {
+                shown++;
+            }
+            positions = Arrays.copyOf(positions, shown);
+        }
+        matches = positions;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Stops prefetching, called once the list is no longer shown
+     */
+    public void release() {
+        released = true;
+        prefetcher.shutdownNow();
+        pages.evictAll();
+    }
+
+    private int logIndex(int position) {
+        return matches == null ? count - 1 - position : matches[matches.length - 1 - position];
+    }
+
+    // Reads a page on the prefetcher unless it is cached or already being read
+    private void load(final int page) {
+        if (released || pages.get(page) != null || !loading.add(page)) {
+            return;
+        }
+        prefetcher.execute(() -> {
+            List<HistoryEntry> entries = null;
+            try {
+                entries = history.read(page * PAGE_SIZE, Math.min(count, (page + 1) * PAGE_SIZE));
+                pages.put(page, entries);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read history page " + page, e);
+            }
+            final boolean read = entries != null;
+            mainHandler.post(() -> {
+                loading.remove(page);
+                if (read && !released) {
+                    notifyPageChanged(page);
+                }
+            });
+        });
+    }
+
+    // Rebinds the rows of a page, which are consecutive whether or not a search narrows them
+    private void notifyPageChanged(int page) {
+        int first = page * PAGE_SIZE;
+        int end = Math.min(count, first + PAGE_SIZE);
+        if (matches == null) {
+            notifyItemRangeChanged(count - end, end - first);
+            return;
+        }
+        int low = lowerBound(matches, first);
+        int high = lowerBound(matches, end);
+        if (high > low) {
+            notifyItemRangeChanged(matches.length - high, high - low);
+        }
+    }
+
+    // Index of the first value at least key in an ascending array
+    private static int lowerBound(int[] values, int key) {
+        int index = Arrays.binarySearch(values, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView textView;
+
+        ViewHolder(View view) {
+            super(view);
+            textView = view.findViewById(R.id.historyItemTextView);
+        }
+    }
+}
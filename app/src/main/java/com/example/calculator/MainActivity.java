@@ -1,494 +1,441 @@
 package com.example.calculator;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.app.Dialog;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.View;
+import android.view.ViewStub;
+import android.view.ViewTreeObserver;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.calculator.engine.EvaluationExecutor;
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.MalformedExpressionException;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.RadixNumber;
+import com.example.calculator.engine.SymbolStore;
+import com.example.calculator.engine.SymbolTable;
+import com.example.calculator.engine.history.HistoryLog;
+import com.example.calculator.engine.keypad.Key;
+import com.example.calculator.engine.keypad.KeyTrace;
+import com.example.calculator.engine.keypad.Keypad;
+import com.example.calculator.engine.metrics.Metrics;
+import com.example.calculator.engine.metrics.MetricsReporter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Objects;
-import java.util.Stack;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 public class MainActivity extends AppCompatActivity {
 
+    // Total weight (characters plus instructions) of cached expressions
+    private static final int EXPRESSION_CACHE_WEIGHT = 64 * 1024;
+    // Time an evaluation may take before the result shows that it is computing
+    private static final long EVALUATION_BUDGET_MS = 150;
+    // Minutes between two metrics snapshots written to logcat in debug builds
+    private static final long METRICS_PERIOD_MINUTES = 1;
+    // Evaluated once off the main thread so that the first real evaluation finds the engine loaded
+    private static final String WARM_UP_EXPRESSION = "12+3x4";
+    // Latest keys and results kept to reproduce a failed evaluation in debug builds
+    private static final int TRACE_CAPACITY = 256;
+    private static final String TAG = "MainActivity";
+
     // TextView for displaying the result
     private TextView resultTextView;
     // TextView for displaying the solution
     private TextView solutionTextView;
-    // ArrayList for storing the history of calculations
-    private ArrayList<String> history;
-    // String for storing the current number being entered
-    private String currentNumber;
-    // Boolean indicating if an operator has been pressed
-    private boolean hasOperator;
-    // Integer for storing the current result
-    private int currentResult;
-    // Boolean indicating if there is a current result
-    private boolean hasCurrentResult;
-    // Boolean indicating if decimal mode is active
-    private boolean isDecimalMode;
-    // Boolean indicating if hexadecimal mode is active
-    private boolean isHexadecimalMode;
-    // Boolean indicating if octal mode is active
-    private boolean isOctalMode;
-    // Boolean indicating if binary mode is active
-    private boolean isBinaryMode;
-    // Boolean indicating if decimal has been pressed
-    private boolean isDecimalPressed;
+    // TextView for displaying the live preview of the current input
+    private TextView previewTextView;
+    // Durable log of past calculations, opened off the main thread after the first frame
+    private final Deferred<HistoryLog> history = new Deferred<>(this::openHistory);
+    // Memory register and any other names expressions may refer to
+    private final SymbolTable symbols = new SymbolTable();
+    // Restores the symbols and saves their changes, opened with the history; null if they only live in memory
+    private final Deferred<SymbolStore> symbolStore = new Deferred<>(this::openSymbols);
+    // Input, result, base and precision, driven by the buttons
+    private final Keypad keypad = new Keypad(symbols);
+    // Latest keys pressed and results delivered to the keypad
+    private final KeyTrace trace = new KeyTrace(TRACE_CAPACITY);
+    // Keys of programmer mode, inflated the first time a base other than decimal is chosen
+    private View programmerRow;
+    // Cache of compiled expressions and their results
+    private final ExpressionCache expressionCache = new ExpressionCache(EXPRESSION_CACHE_WEIGHT, symbols);
+    // Runs equals-button evaluations off the main thread, the latest one winning
+    private final EvaluationExecutor evaluations = new EvaluationExecutor(this::runOnUiThread, EVALUATION_BUDGET_MS);
+    // Writes engine metrics to logcat, null when metrics are off
+    private MetricsReporter metricsReporter;
 
      @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Initialize the TextViews, history ArrayList, and other variables
+        // Initialize the TextViews and other variables
         resultTextView = findViewById(R.id.resultTextView);
         solutionTextView = findViewById(R.id.solutionTextView);
-        history = new ArrayList<>();
-        currentNumber = "";
-        hasCurrentResult = false;
-        hasOperator = false;
-        isDecimalMode = true;
-        isBinaryMode = false;
-        isHexadecimalMode = false;
-        isOctalMode = false;
-        isDecimalPressed = false;
+        previewTextView = findViewById(R.id.previewTextView);
+        if (BuildConfig.DEBUG) {
+            Metrics.setEnabled(true);
+            metricsReporter = new MetricsReporter(snapshot -> Log.i(TAG, "Engine metrics\n" + snapshot));
+            metricsReporter.start(METRICS_PERIOD_MINUTES, TimeUnit.MINUTES);
+        }
 
-        // Initialize the history button and set its OnClickListener
-        Button historyButton = findViewById(R.id.historyButton);
-        historyButton.setOnClickListener(v -> showHistoryDialog());
+        // Long-pressing the equals button cycles through 32-bit, exact, fraction and floating-point arithmetic
+        Button equalsButton = findViewById(R.id.equalsButton);
+        equalsButton.setOnLongClickListener(v -> {
+            press(Key.PRECISION);
+            return true;
+        });
+
+        // Everything the keypad does not need waits until the first frame is drawn
+        resultTextView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                resultTextView.getViewTreeObserver().removeOnPreDrawListener(this);
+                resultTextView.post(MainActivity.this::onFirstFrame);
+                return true;
+            }
+        });
     }
 
     /**
-     * Handles number button clicks
-     * 
-     * @param view The View that was clicked
+     * Inflates the history, conversion and memory rows and warms up the engine in the background
      */
-    public void onNumberClick(View view) {
-        Button button = (Button) view;
-        String buttonText = button.getText().toString();
-        if (hasCurrentResult) {
-            currentNumber = buttonText;
-            hasCurrentResult = false;
-        } else {
-            currentNumber += buttonText;
+    private void onFirstFrame() {
+        if (isDestroyed()) {
+            // The stores of an activity that is already gone are never opened, so never closed
+            return;
         }
-        hasOperator = false;
-        updateResultTextView();
+        ViewStub conversionsStub = findViewById(R.id.conversionsStub);
+        View conversionsRow = conversionsStub.inflate();
+        ViewStub memoryStub = findViewById(R.id.memoryStub);
+        memoryStub.inflate();
+
+        // Initialize the history button and set its OnClickListener
+        Button historyButton = conversionsRow.findViewById(R.id.historyButton);
+        historyButton.setOnClickListener(v -> history.whenReady(this::showHistoryDialog));
+        Button graphButton = conversionsRow.findViewById(R.id.graphButton);
+        // Functions may refer to the memory register
+        graphButton.setOnClickListener(v -> symbolStore.whenReady(store -> showGraphDialog()));
+        reportFullyDrawn();
+
+        Thread warmUp = new Thread(this::warmUp, "warm-up");
+        warmUp.setDaemon(true);
+        warmUp.setPriority(Thread.MIN_PRIORITY);
+        warmUp.start();
     }
 
     /**
-     * Handles operator button clicks
-     * 
-     * @param view The View that was clicked
+     * Opens the history log and the symbols and loads the evaluation and conversion code, off the main thread
      */
-    public void onOperatorClick(View view) {
-        Button button = (Button) view;
-        String buttonText = button.getText().toString();
-        if (!hasOperator) {
-            if (!currentNumber.isEmpty()) {
-                currentNumber += buttonText;
-            } else {
-                currentNumber = "0" + buttonText;
-            }
-            hasOperator = true;
-        } else {
-            currentNumber = currentNumber.substring(0, currentNumber.length() - 1) + buttonText;
+    private void warmUp() {
+        history.run();
+        symbolStore.run();
+        expressionCache.evaluate(WARM_UP_EXPRESSION, 10, Precision.INT32);
+        expressionCache.evaluate(WARM_UP_EXPRESSION, 10, Precision.EXACT);
+        RadixNumber.of(expressionCache.evaluate(WARM_UP_EXPRESSION, Radix.HEXADECIMAL, Precision.EXACT))
+                .toString(Radix.BINARY);
+    }
+
+    @Override
+    protected void onDestroy() {
+        evaluations.shutdown();
+        if (metricsReporter != null) {
+            metricsReporter.stop();
         }
-        updateResultTextView();
+        // Closing waits for the writers, so it runs in the background after everything queued
+        // for the stores; stores the warm-up never opened are never opened
+        history.whenReady(log -> closeInBackground(log, "history"));
+        symbolStore.whenReady(store -> closeInBackground(store, "symbols"));
+        super.onDestroy();
     }
 
     /**
-     * Handles power button clicks
-     * 
-     * @param view The View that was clicked
+     * Closes a store on a background thread
+     *
+     * @param store The store, or null if there is none
+     * @param name The name of the store, for the log
      */
-    public void onPowerClick(View view) {
-        if (!hasOperator) {
-            if (!currentNumber.isEmpty()) {
-                currentNumber += "^";
-            } else {
-                currentNumber = "0^";
+    private static void closeInBackground(Closeable store, String name) {
+        if (store == null) {
+            return;
+        }
+        new Thread(() -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close " + name, e);
             }
-        } else {
-            currentNumber = currentNumber.substring(0, currentNumber.length() - 1) + "^";
+        }, "close-" + name).start();
+    }
+
+    /**
+     * Opens the history log in the app's private storage, falling back to memory
+     *
+     * @return The history log
+     */
+    private HistoryLog openHistory() {
+        try {
+            return HistoryLog.open(new File(getFilesDir(), "history"));
+        } catch (IOException e) {
+            Log.w(TAG, "History is not persisted", e);
+            return HistoryLog.inMemory();
         }
-        hasOperator = true;
-        hasCurrentResult = false;
-        updateResultTextView();
     }
 
     /**
-     * Handles equals button clicks
-     * 
-     * @param view The View that was clicked
+     * Restores the symbols from the app's private storage and saves their changes there
+     *
+     * @return The symbol store, or null if the symbols only live in memory
      */
-    public void onEqualsClick(View view) {
-        if (!currentNumber.isEmpty()) {
-            try {
-                String result = evaluateExpression(currentNumber);
-                currentResult = Integer.parseInt(result);
-                hasCurrentResult = true;
-                hasOperator = false;
-
-                history.add(currentNumber + " = " + currentResult + "\n");
-                solutionTextView.setText(String.format("%s%s", currentNumber, getString(R.string.equals)));
-                currentNumber = "";
-                updateResultTextView();
-            } catch (Exception e) {
-                resultTextView.setText(getString(R.string.error));
-                currentNumber = "";
-                hasCurrentResult = false;
-                hasOperator = false;
-            }
+    private SymbolStore openSymbols() {
+        try {
+            return SymbolStore.open(new File(getFilesDir(), "symbols"), symbols);
+        } catch (IOException e) {
+            Log.w(TAG, "Memory is not persisted", e);
+            return null;
         }
     }
 
     /**
-     * Evaluates a mathematical expression
-     * 
-     * @param expression The expression to evaluate
-     * @return The result of the expression as a String
+     * Handles a key press and carries out its effects
+     *
+     * @param key The key
      */
-    private String evaluateExpression(String expression) throws ArithmeticException {
-        Stack<Integer> operands = new Stack<>();
-        Stack<Character> operators = new Stack<>();
-        for (int i = 0; i < expression.length(); i++) {
-            char c = expression.charAt(i);
-            if (Character.isDigit(c)) {
-                int num = c - '0';
-                while (i + 1 < expression.length() && Character.isDigit(expression.charAt(i + 1))) {
-                    num = num * 10 + (expression.charAt(i + 1) - '0');
-                    i++;
-                }
-                operands.push(num);
-            } else if (c == '+' || c == '-' || c == 'x' || c == '÷' || c == '^') {
-                while (!operators.isEmpty() && hasPrecedence(c, operators.peek())) {
-                    int result = performOperation(operands.pop(), operands.pop(), operators.pop());
-                    operands.push(result);
-                }
-                operators.push(c);
-            }
+    private void press(Key key) {
+        trace.record(key);
+        apply(keypad.press(key));
+    }
+
+    /**
+     * Carries out the effects of a key press or of an evaluation on the views, the history
+     * and the running evaluation
+     *
+     * @param effects The effects returned by the keypad
+     */
+    private void apply(int effects) {
+        if ((effects & Keypad.INPUT_CHANGED) != 0) {
+            evaluations.cancel();
+        }
+        if ((effects & Keypad.EVALUATE) != 0) {
+            evaluate(keypad.input().toString());
+        }
+        if ((effects & Keypad.CONVERSION_FAILED) != 0) {
+            Log.w(TAG, "Conversion failed");
+        }
+        if ((effects & Keypad.HISTORY_CLEARED) != 0) {
+            history.whenReady(HistoryLog::clear);
+        }
+        if ((effects & Keypad.SOLUTION_CHANGED) != 0) {
+            solutionTextView.setText(keypad.solution());
         }
-        while (!operators.isEmpty()) {
-            int result = performOperation(operands.pop(), operands.pop(), operators.pop());
-            operands.push(result);
+        if ((effects & Keypad.RADIX_CHANGED) != 0) {
+            showProgrammerRow(keypad.radix() != Radix.DECIMAL);
+        }
+        if ((effects & Keypad.PRECISION_CHANGED) != 0) {
+            Toast.makeText(this, precisionMessage(keypad.precision()), Toast.LENGTH_SHORT).show();
+        }
+        if ((effects & Keypad.DISPLAY_CHANGED) != 0) {
+            updateResultTextView();
         }
-        return String.valueOf(operands.pop());
     }
 
     /**
-     * Determines if the first operator has precedence over the second
-     * 
-     * @param op1 The first operator
-     * @param op2 The second operator
-     * @return True if op1 has precedence over op2, otherwise false
+     * Returns the message announcing a precision
+     *
+     * @param precision The precision
+     * @return The string resource of the message
      */
-    private boolean hasPrecedence(char op1, char op2) {
-        return (op1 != '^' && op1 != 'x' && op1 != '÷') || (op2 != '+' && op2 != '-');
+    private static int precisionMessage(Precision precision) {
+        switch (precision) {
+            case EXACT:
+                return R.string.precisionExact;
+            case RATIONAL:
+                return R.string.precisionRational;
+            case DECIMAL:
+                return R.string.precisionDecimal;
+            default:
+                return R.string.precisionInt32;
+        }
     }
 
     /**
-     * Performs a mathematical operation
+     * Handles number button clicks
      * 
-     * @param operand2 The second operand
-     * @param operand1 The first operand
-     * @param operator The operator
-     * @return The result of the operation
+     * @param view The View that was clicked
      */
-    private int performOperation(int operand2, int operand1, char operator) {
-        switch (operator) {
-            case '+':
-                return operand1 + operand2;
-            case '-':
-                return operand1 - operand2;
-            case 'x':
-                return operand1 * operand2;
-            case '÷':
-                if (operand2 == 0)
-                    throw new UnsupportedOperationException("Cannot divide by zero");
-                return operand1 / operand2;
-            case '^':
-                return (int) Math.pow(operand1, operand2);
-            default:
-                throw new UnsupportedOperationException("Unknown operator: " + operator);
-        }
+    public void onNumberClick(View view) {
+        press(Key.ofSymbol(((Button) view).getText().charAt(0)));
     }
 
     /**
-     * Handles binary button clicks
+     * Handles operator button clicks
+     * 
      * @param view The View that was clicked
      */
-    public void onBinaryClick(View view) {
-        if (isDecimalMode) {
-            // Convert decimal to binary
-            decimalToBinary(view);
-            isDecimalMode = !isDecimalMode;
-        } else if (isHexadecimalMode) {
-            // Convert hexadecimal to binary
-            hexadecimalToBinary(view);
-            isHexadecimalMode = !isHexadecimalMode;
-        } else if (isOctalMode) {
-            // Convert octal to binary
-            octalToBinary(view);
-            isOctalMode = !isOctalMode;
-        } else if (isBinaryMode) {
-            // Convert binary to decimal
-            binaryToDecimal(view);
-            isBinaryMode = !isBinaryMode;
-        }
-        isBinaryMode = !isBinaryMode;
+    public void onOperatorClick(View view) {
+        press(Key.ofSymbol(((Button) view).getText().charAt(0)));
     }
 
     /**
-     * Handles hexadecimal button clicks
+     * Handles power button clicks
+     * 
      * @param view The View that was clicked
      */
-    public void onHexadecimalClick(View view) {
-        if (isDecimalMode) {
-            // Convert decimal to hexadecimal
-            decimalToHexadecimal(view);
-            isDecimalMode = !isDecimalMode;
-        } else if (isHexadecimalMode) {
-            // Go to Decimal
-            hexadecimalToDecimal(view);
-            isDecimalMode = !isDecimalMode;
-        } else if (isOctalMode) {
-            // Convert octal to hexadecimal
-            octalToHexadecimal(view);
-            isOctalMode = !isOctalMode;
-        } else if (isBinaryMode) {
-            // Convert binary to hexadecimal
-            binaryToHexadecimal(view);
-            isBinaryMode = !isBinaryMode;
-        }
-        isHexadecimalMode = !isHexadecimalMode;
+    public void onPowerClick(View view) {
+        press(Key.POWER);
     }
 
     /**
-     * Handles octal button clicks
+     * Handles equals button clicks
+     * 
      * @param view The View that was clicked
      */
-    public void onOctalClick(View view) {
-        if (isDecimalMode) {
-            // Convert decimal to octal
-            decimalToOctal(view);
-            isDecimalMode = false;
-            isOctalMode = true;
-        } else if (isHexadecimalMode) {
-            // Convert hexadecimal to octal
-            hexadecimalToOctal(view);
-            isHexadecimalMode = false;
-            isOctalMode = true;
-        } else if (isOctalMode) {
-            // Do nothing
-            octalToDecimal(view);
-            isDecimalMode = true;
-            isOctalMode = false;
-        } else if (isBinaryMode) {
-            // Convert binary to octal
-            binaryToOctal(view);
-            isBinaryMode = false;
-            isOctalMode = true;
-        }
+    public void onEqualsClick(View view) {
+        press(Key.EQUALS);
     }
 
-    // Conversion methods to different methods ....
-    public void decimalToBinary(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
+    /**
+     * Evaluates an expression off the main thread in the current base and precision and
+     * hands the outcome to the keypad
+     *
+     * @param expression The expression to evaluate
+     */
+    private void evaluate(final String expression) {
+        evaluations.submit(evaluateExpression(expression), new EvaluationExecutor.Callback<String>() {
+            @Override
+            public void onResult(String result) {
+                trace.recordDelivery();
+                int effects = keypad.resultArrived(expression, result);
+                String displayed = keypad.displayedResult();
+                history.whenReady(log -> log.append(expression, displayed));
+                apply(effects);
             }
-            int number = Integer.parseInt(currentNumber);
-            currentNumber = Integer.toBinaryString(number);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
-    }
 
-    public void decimalToOctal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
+            @Override
+            public void onError(Exception error) {
+                trace.recordDelivery();
+                // The engine has counted the error under its category
+                Log.w(TAG, "Cannot evaluate " + expression, error);
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Keys: " + trace);
                 }
+                apply(keypad.evaluationFailed());
             }
-            int number = Integer.parseInt(currentNumber);
-            currentNumber = Integer.toOctalString(number);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
-    }
 
-    public void decimalToHexadecimal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
+            @Override
+            public void onBudgetExceeded() {
+                resultTextView.setText(getString(R.string.computing));
             }
-            int number = Integer.parseInt(currentNumber);
-            String hexString = Integer.toHexString(number);
-            currentNumber = hexString.toUpperCase();
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+        });
     }
 
-    public void binaryToDecimal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 2);
-            currentNumber = String.valueOf(decimalNumber);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Prepares the evaluation of an expression in the current mode
+     *
+     * @param expression The expression to evaluate
+     * @return The evaluation, yielding the result as a String
+     */
+    private Callable<String> evaluateExpression(final String expression) {
+        final Radix radix = keypad.radix();
+        final Precision precision = keypad.precision();
+        return () -> expressionCache.evaluate(expression, radix, precision);
     }
 
-    public void binaryToOctal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 2);
-            currentNumber = Integer.toOctalString(decimalNumber);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Handles binary button clicks
+     * @param view The View that was clicked
+     */
+    public void onBinaryClick(View view) {
+        press(Key.BINARY);
     }
 
-    public void binaryToHexadecimal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 2);
-            String hexString = Integer.toHexString(decimalNumber);
-            currentNumber = hexString.toUpperCase();
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Handles hexadecimal button clicks
+     * @param view The View that was clicked
+     */
+    public void onHexadecimalClick(View view) {
+        press(Key.HEXADECIMAL);
     }
 
-    public void hexadecimalToDecimal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 16);
-            currentNumber = String.valueOf(decimalNumber);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Handles octal button clicks
+     * @param view The View that was clicked
+     */
+    public void onOctalClick(View view) {
+        press(Key.OCTAL);
     }
 
-    public void hexadecimalToBinary(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
+    /**
+     * Shows or hides the hexadecimal digits and bitwise operators, inflating them on first use
+     *
+     * @param show True to show the row
+     */
+    private void showProgrammerRow(boolean show) {
+        if (programmerRow == null) {
+            if (!show) {
+                return;
             }
-            int decimalNumber = Integer.parseInt(currentNumber, 16);
-            currentNumber = Integer.toBinaryString(decimalNumber);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
+            ViewStub programmerStub = findViewById(R.id.programmerStub);
+            programmerRow = programmerStub.inflate();
         }
+        programmerRow.setVisibility(show ? View.VISIBLE : View.GONE);
     }
 
-    public void hexadecimalToOctal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 16);
-            currentNumber = Integer.toOctalString(decimalNumber);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Handles memory clear button clicks
+     *
+     * @param view The View that was clicked
+     */
+    public void onMemoryClearClick(View view) {
+        symbolStore.whenReady(store -> press(Key.MEMORY_CLEAR));
     }
 
-    public void octalToHexadecimal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 8);
-            String hexString = Integer.toHexString(decimalNumber);
-            currentNumber = hexString.toUpperCase();
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Handles memory recall button clicks by adding the memory register as an operand
+     *
+     * @param view The View that was clicked
+     */
+    public void onMemoryRecallClick(View view) {
+        symbolStore.whenReady(store -> press(Key.MEMORY_RECALL));
     }
 
-    public void octalToBinary(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 8);
-            currentNumber = Integer.toBinaryString(decimalNumber);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Handles memory add button clicks by adding the current result to the memory register
+     *
+     * @param view The View that was clicked
+     */
+    public void onMemoryAddClick(View view) {
+        symbolStore.whenReady(store -> press(Key.MEMORY_ADD));
     }
 
-    public void octalToDecimal(View view) {
-        try {
-            if (hasCurrentResult) {
-                clearCurrentResult();
-                if (Objects.equals(currentNumber, "")) {
-                    currentNumber = String.valueOf(currentResult);
-                }
-            }
-            int decimalNumber = Integer.parseInt(currentNumber, 8);
-            currentNumber = String.valueOf(decimalNumber);
-            updateResultTextView();
-        } catch (NumberFormatException e) {
-            handleConversionException(e);
-        }
+    /**
+     * Handles memory subtract button clicks by subtracting the current result from the memory register
+     *
+     * @param view The View that was clicked
+     */
+    public void onMemorySubtractClick(View view) {
+        symbolStore.whenReady(store -> press(Key.MEMORY_SUBTRACT));
     }
 
     /**
@@ -497,18 +444,7 @@ public class MainActivity extends AppCompatActivity {
      * @param view The View that was clicked
      */
     public void onDecimalClick(View view) {
-        if (!isDecimalPressed) {
-            isDecimalPressed = true;
-
-            if (hasCurrentResult) {
-                currentNumber = "0.";
-                hasCurrentResult = false;
-            } else {
-                currentNumber += ".";
-            }
-
-            updateResultTextView();
-        }
+        press(Key.POINT);
     }
 
     /**
@@ -517,26 +453,7 @@ public class MainActivity extends AppCompatActivity {
      * @param view The View that was clicked
      */
     public void onDeleteClick(View view) {
-        if (currentNumber.isEmpty()) {
-            String screen = resultTextView.getText().toString();
-            if (!screen.isEmpty()) {
-                currentNumber = screen.substring(0, screen.length() - 1);
-            }
-        } else {
-            currentNumber = currentNumber.substring(0, currentNumber.length() - 1);
-        }
-        updateResultTextView();
-    }
-
-    /**
-     * Clears the current result
-     */
-    public void clearCurrentResult() {
-        currentNumber = "";
-        hasOperator = false;
-        hasCurrentResult = false;
-        solutionTextView.setText("0");
-        updateResultTextView();
+        press(Key.DELETE);
     }
 
     /**
@@ -545,7 +462,7 @@ public class MainActivity extends AppCompatActivity {
      * @param view The View that was clicked
      */
     public void onClearClick(View view) {
-        clearCurrentResult();
+        press(Key.CLEAR);
     }
 
     /**
@@ -554,38 +471,30 @@ public class MainActivity extends AppCompatActivity {
      * @param view The View that was clicked
      */
     public void onResetClick(View view) {
-        currentNumber = "";
-        hasOperator = false;
-        hasCurrentResult = false;
-        history.clear();
-        solutionTextView.setText("0");
-        isDecimalMode = true;
-        isBinaryMode = false;
-        isHexadecimalMode = false;
-        isOctalMode = false;
-        isDecimalPressed = false;
-        updateResultTextView();
+        press(Key.RESET);
     }
 
     /**
-     * Updates the result TextView
+     * Updates the result TextView and the live preview
      */
     private void updateResultTextView() {
-        String text;
-        if (!currentNumber.isEmpty()) {
-            text = currentNumber;
-        } else if (hasCurrentResult) {
-            text = String.valueOf(currentResult);
+        resultTextView.setText(keypad.showsError() ? getString(R.string.error) : keypad.display());
+        if (keypad.hasPreview()) {
+            previewTextView.setText(String.valueOf(keypad.preview()));
         } else {
-            text = "0";
+            previewTextView.setText("");
         }
-        resultTextView.setText(text);
     }
 
     /**
      * Shows the history dialog
+     *
+     * @param log The opened history log
      */
-    private void showHistoryDialog() {
+    private void showHistoryDialog(HistoryLog log) {
+        if (isDestroyed()) {
+            return;
+        }
         // Creating a new dialog
         Dialog dialog = new Dialog(this);
         dialog.setContentView(R.layout.history_dialog);
@@ -593,20 +502,94 @@ public class MainActivity extends AppCompatActivity {
         // Setting the dialog title
         dialog.setTitle("History");
 
-        // Getting the TextView in the dialog
-        TextView historyTextView = dialog.findViewById(R.id.historyTextView);
+        // Rows are bound lazily from the log, so opening costs the same for any history length
+        RecyclerView historyRecyclerView = dialog.findViewById(R.id.historyRecyclerView);
+        historyRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        historyRecyclerView.setHasFixedSize(true);
+        HistoryAdapter adapter = new HistoryAdapter(log);
+        historyRecyclerView.setAdapter(adapter);
+
+        // Queries run in typing order on a background thread; the last one typed is shown last
+        ExecutorService searches = Executors.newSingleThreadExecutor();
+        EditText searchEditText = dialog.findViewById(R.id.historySearchEditText);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            // True once the user was told that older entries are still being indexed
+            private boolean toldPartial;
+
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
 
-        // Setting the text of the TextView to the history list
-        StringBuilder sb = new StringBuilder();
-        for (String item : history) {
-            sb.append(item).append("\n");
-        }
-        historyTextView.setText(sb.toString());
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                final String query = s.toString().trim();
+                searches.execute(() -> {
+                    try {
+                        int[] matches = query.isEmpty() ? null : log.search().find(query);
+                        // Right after the log opened, older entries may not be searchable yet
+                        boolean partial = matches != null && !log.search().isComplete();
+                        runOnUiThread(() -> {
+                            adapter.showMatches(matches);
+                            if (partial && !toldPartial) {
+                                toldPartial = true;
+                                Toast.makeText(MainActivity.this, R.string.historyIndexing, Toast.LENGTH_SHORT).show();
+                            }
+                        });
+                    } catch (IOException e) {
+                        Log.w(TAG, "Could not search history for " + query, e);
+                    }
+                });
+            }
+        });
+        dialog.setOnDismissListener(d -> {
+            searches.shutdownNow();
+            adapter.release();
+        });
 
         // Showing the dialog
         dialog.show();
     }
 
+    /**
+     * Shows the graph dialog, which plots the function of x being typed into it
+     */
+    private void showGraphDialog() {
+        if (isDestroyed()) {
+            return;
+        }
+        Dialog dialog = new Dialog(this);
+        dialog.setContentView(R.layout.graph_dialog);
+        dialog.setTitle("Graph");
+
+        GraphView graphView = dialog.findViewById(R.id.graphView);
+        EditText functionEditText = dialog.findViewById(R.id.graphFunctionEditText);
+        functionEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                // Compiling is cheap; the samples are taken in the background as the graph draws
+                try {
+                    graphView.setProgram(s.length() == 0 ? null : ExpressionCompiler.compileDecimal(s, symbols, true));
+                } catch (MalformedExpressionException e) {
+                    graphView.setProgram(null);
+                }
+            }
+        });
+
+        dialog.show();
+    }
+
     @Override
     public void onBackPressed() {
         // Get the current dialog
@@ -618,11 +601,56 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void handleConversionException(Throwable e) {
-        resultTextView.setText(getString(R.string.error));
-        currentNumber = "";
-        hasCurrentResult = false;
-        hasOperator = false;
-        System.out.println(e);
+    /**
+     * A store opened by the warm-up thread. Work that needs it is queued on the main thread
+     * until it is open, then runs there in the order it was queued, so the main thread never
+     * waits for the files.
+     *
+     * @param <T> The type of the store
+     */
+    private final class Deferred<T> extends FutureTask<T> {
+
+        // Work waiting for the store, touched on the main thread only
+        private final List<Consumer<T>> waiting = new ArrayList<>();
+        // True once the waiting work has run, touched on the main thread only
+        private boolean ready;
+
+        Deferred(Callable<T> open) {
+            super(open);
+        }
+
+        /**
+         * Runs work on the main thread once the store is open, right away if it is
+         *
+         * @param work The work, given the store
+         */
+        void whenReady(Consumer<T> work) {
+            if (ready) {
+                work.accept(value());
+            } else {
+                waiting.add(work);
+            }
+        }
+
+        @Override
+        protected void done() {
+            runOnUiThread(() -> {
+                ready = true;
+                T store = value();
+                for (Consumer<T> work : waiting) {
+                    work.accept(store);
+                }
+                waiting.clear();
+            });
+        }
+
+        private T value() {
+            try {
+                return get();
+            } catch (InterruptedException | ExecutionException e) {
+                // The stores fall back to memory instead of failing, so this is not expected
+                throw new IllegalStateException(e);
+            }
+        }
     }
-}
\ No newline at end of file
+}
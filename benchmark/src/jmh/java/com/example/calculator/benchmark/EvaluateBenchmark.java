@@ -0,0 +1,68 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.ExactEvaluator;
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.Program;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Parsing and evaluation of whole expressions, against the original Stack-based evaluator.
+ */
+@State(Scope.Thread)
+public class EvaluateBenchmark {
+
+    @Param({"SHORT", "LONG", "DEEP"})
+    public Expressions.Shape shape;
+
+    private String expression;
+    private Program program;
+    private Evaluator evaluator;
+    private ExactEvaluator exactEvaluator;
+    private ExpressionCache cache;
+
+    @Setup
+    public void setUp() {
+        expression = shape.build();
+        program = ExpressionCompiler.compile(expression);
+        evaluator = new Evaluator();
+        exactEvaluator = new ExactEvaluator();
+        cache = new ExpressionCache(1 << 20);
+    }
+
+    @Benchmark
+    public int legacyEvaluate() {
+        return LegacyEvaluator.evaluate(expression);
+    }
+
+    @Benchmark
+    public Program compile() {
+        return ExpressionCompiler.compile(expression);
+    }
+
+    @Benchmark
+    public long compileAndEvaluate() {
+        return evaluator.evaluate(ExpressionCompiler.compile(expression));
+    }
+
+    @Benchmark
+    public long evaluatePrecompiled() {
+        return evaluator.evaluate(program);
+    }
+
+    @Benchmark
+    public String evaluateExactPrecompiled() {
+        return exactEvaluator.evaluateToString(program);
+    }
+
+    @Benchmark
+    public long evaluateCached() {
+        return cache.evaluate(expression, 10);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.calculator.benchmark;
+
+/**
+ * Benchmark inputs in the keypad grammar.
+ */
+public final class Expressions {
+
+    // Token count of the long inputs
+    public static final int LONG_TOKENS = 10_000;
+
+    /**
+     * Shapes of benchmark expressions
+     */
+    public enum Shape {
+        // A typical hand-typed calculation
+        SHORT,
+        // A wide sum of short products, as pasted from a spreadsheet
+        LONG,
+        // One left-deep chain in which every operator consumes the previous result;
+        // the grammar has no parentheses, so this is the deepest tree it can express
+        DEEP;
+
+        public String build() {
+            switch (this) {
+                case SHORT:
+                    return "12+34x5-6÷2^2";
+                case LONG:
+                    return repeat("17x3+", "8÷4-", LONG_TOKENS) + "1";
+                case DEEP:
+                    return "7" + repeat("x3÷3", "^1", LONG_TOKENS);
+                default:
+                    throw new AssertionError(this);
+            }
+        }
+    }
+
+    private Expressions() {
+    }
+
+    // Alternates two fragments until the expression holds about the given number of tokens
+    private static String repeat(String first, String second, int tokens) {
+        int fragmentTokens = countTokens(first) + countTokens(second);
+        StringBuilder sb = new StringBuilder(tokens * 2);
+        for (int i = 0; i < tokens / fragmentTokens; i++) {
+            sb.append(first).append(second);
+        }
+        return sb.toString();
+    }
+
+    private static int countTokens(String fragment) {
+        int tokens = 0;
+        for (int i = 0; i < fragment.length(); i++) {
+            if (!Character.isDigit(fragment.charAt(i)) || i == 0 || !Character.isDigit(fragment.charAt(i - 1))) {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.jit.BytecodeCompiler;
+import com.example.calculator.engine.jit.ClosureCompiler;
+import com.example.calculator.engine.jit.CompiledExpression;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One expression evaluated for a changing x in each tier: the interpreter, the node
+ * tree used on Android and generated bytecode.
+ */
+@State(Scope.Thread)
+public class JitBenchmark {
+
+    @Param({"x^2+3", "xxx-x÷7+x^3-12x+5"})
+    public String expression;
+
+    private Program program;
+    private final Evaluator interpreter = new Evaluator();
+    private CompiledExpression closures;
+    private CompiledExpression bytecode;
+    // Non-final so the JIT cannot fold the evaluation away
+    public long x = 17;
+
+    @Setup
+    public void setUp() {
+        program = ExpressionCompiler.compile(expression, true);
+        closures = ClosureCompiler.compile(program);
+        bytecode = BytecodeCompiler.compile(program);
+    }
+
+    @Benchmark
+    public long interpreter() {
+        return interpreter.evaluate(program, ++x);
+    }
+
+    @Benchmark
+    public long closures() {
+        return closures.evaluate(++x);
+    }
+
+    @Benchmark
+    public long bytecode() {
+        return bytecode.evaluate(++x);
+    }
+}
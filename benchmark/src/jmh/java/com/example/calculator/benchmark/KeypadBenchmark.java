@@ -0,0 +1,52 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.SymbolTable;
+import com.example.calculator.engine.keypad.Key;
+import com.example.calculator.engine.keypad.KeyTrace;
+import com.example.calculator.engine.keypad.Keypad;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The cost of a keystroke without the views: typing one digit or operator with the live
+ * preview computed as the display would, and replaying a whole session with its evaluations.
+ */
+@State(Scope.Thread)
+public class KeypadBenchmark {
+
+    private static final Key[] TYPED = {Key.ONE, Key.TWO, Key.MULTIPLY, Key.THREE, Key.ADD, Key.FOUR, Key.FIVE,
+            Key.SUBTRACT, Key.SIX};
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final Keypad keypad = new Keypad(symbols);
+    private final ExpressionCache cache = new ExpressionCache(64 * 1024, symbols);
+    private KeyTrace session;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        session = KeyTrace.parse("1 2 x 3 + 4 5 - 6 = DONE M+ MR ÷ 7 = DONE HEX F F BIN DEL DEL 1 = DONE CE");
+    }
+
+    @Benchmark
+    public long keystroke() {
+        if (next == TYPED.length) {
+            next = 0;
+            keypad.restart();
+        }
+        keypad.press(TYPED[next++]);
+        return keypad.hasPreview() ? keypad.preview() : 0;
+    }
+
+    @Benchmark
+    public CharSequence session() {
+        keypad.restart();
+        symbols.remove(Keypad.MEMORY);
+        session.replay(keypad, cache);
+        return keypad.display();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.Operators;
+
+import java.util.Stack;
+
+/**
+ * The evaluator MainActivity used before the engine module existed, kept as a baseline.
+ */
+public final class LegacyEvaluator {
+
+    private LegacyEvaluator() {
+    }
+
+    public static int evaluate(String expression) {
+        Stack<Integer> operands = new Stack<>();
+        Stack<Character> operators = new Stack<>();
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (Character.isDigit(c)) {
+                int num = c - '0';
+                while (i + 1 < expression.length() && Character.isDigit(expression.charAt(i + 1))) {
+                    num = num * 10 + (expression.charAt(i + 1) - '0');
+                    i++;
+                }
+                operands.push(num);
+            } else if (c == '+' || c == '-' || c == 'x' || c == '÷' || c == '^') {
+                while (!operators.isEmpty() && Operators.hasPrecedence(c, operators.peek())) {
+                    int result = Operators.performOperation(operands.pop(), operands.pop(), operators.pop());
+                    operands.push(result);
+                }
+                operators.push(c);
+            }
+        }
+        while (!operators.isEmpty()) {
+            int result = Operators.performOperation(operands.pop(), operands.pop(), operators.pop());
+            operands.push(result);
+        }
+        return operands.pop();
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.math.Combinatorics;
+import com.example.calculator.engine.math.FastMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * The fast function tier against {@link Math} and {@link StrictMath} over a column of
+ * arguments, and the prime-swing factorial against a product of one factor at a time.
+ */
+@State(Scope.Thread)
+public class MathBenchmark {
+
+    private static final int SIZE = 1024;
+
+    @Param({"1000", "20000"})
+    public int n;
+
+    private final double[] angles = new double[SIZE];
+    private final double[] positives = new double[SIZE];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            angles[i] = (random.nextDouble() - 0.5) * 20;
+            positives[i] = Math.exp((random.nextDouble() - 0.5) * 100);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinFast() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += FastMath.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinMath() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += Math.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double sinStrict() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += StrictMath.sin(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double expFast() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += FastMath.exp(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double expMath() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += Math.exp(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double expStrict() {
+        double sum = 0;
+        for (double x : angles) {
+            sum += StrictMath.exp(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double lnFast() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += FastMath.ln(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double lnMath() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += Math.log(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public double lnStrict() {
+        double sum = 0;
+        for (double x : positives) {
+            sum += StrictMath.log(x);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public BigInteger factorialPrimeSwing() {
+        return Combinatorics.factorial(n);
+    }
+
+    @Benchmark
+    public BigInteger factorialNaive() {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public BigInteger binomialHalf() {
+        return Combinatorics.binomial(n, n / 2);
+    }
+}
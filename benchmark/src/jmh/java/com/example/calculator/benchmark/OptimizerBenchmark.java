@@ -0,0 +1,57 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.OptimizedProgram;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.SymbolTable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The interpreter against an {@link OptimizedProgram}: once for a user function whose inlined
+ * body repeats its calls, paying for the optimization on every evaluation as the expression
+ * cache does, and for a formula in x that is optimized once and evaluated for many values.
+ */
+@State(Scope.Thread)
+public class OptimizerBenchmark {
+
+    private Program calls;
+    private Program formula;
+    private OptimizedProgram optimizedFormula;
+    private final Evaluator evaluator = new Evaluator();
+    private long x;
+
+    @Setup
+    public void setUp() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.setVariable("A", "12");
+        symbols.defineFunction("G", "ncr(x, 7)+sqrt(x)xncr(x, 7)");
+        calls = ExpressionCompiler.compile("G(A+40)+G(A+40)", symbols);
+        formula = ExpressionCompiler.compile("xxx+x^3-x÷7+xxx+x^3-x÷7", true);
+        optimizedFormula = new OptimizedProgram(formula);
+    }
+
+    @Benchmark
+    public long callsInterpreted() {
+        return evaluator.evaluate(calls);
+    }
+
+    @Benchmark
+    public long callsOptimized() {
+        return new OptimizedProgram(calls).evaluate();
+    }
+
+    @Benchmark
+    public long formulaInterpreted() {
+        return evaluator.evaluate(formula, ++x);
+    }
+
+    @Benchmark
+    public long formulaOptimized() {
+        return optimizedFormula.evaluate(++x);
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.ExactEvaluator;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.ParallelEvaluator;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.RationalEvaluator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * One pasted 200k-term sum of decimals and one 20k-factor product: left to right on one
+ * thread against the balanced reduction of {@link ParallelEvaluator} with 1, 2 and 4 threads.
+ */
+@State(Scope.Thread)
+public class ParallelBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    private Program sum;
+    private Program product;
+    private ForkJoinPool pool;
+    private ParallelEvaluator parallelEvaluator;
+    private final RationalEvaluator rationalEvaluator = new RationalEvaluator();
+    private final ExactEvaluator exactEvaluator = new ExactEvaluator();
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            if (i > 0) {
+                sb.append(random.nextInt(4) == 0 ? '-' : '+');
+            }
+            sb.append(random.nextInt(100000)).append('.').append(random.nextInt(100));
+        }
+        sum = ExpressionCompiler.compileDecimal(sb);
+        sb.setLength(0);
+        for (int i = 0; i < 20000; i++) {
+            if (i > 0) {
+                sb.append('x');
+            }
+            sb.append(1 + random.nextInt(1000000));
+        }
+        product = ExpressionCompiler.compile(sb);
+        pool = new ForkJoinPool(threads);
+        parallelEvaluator = new ParallelEvaluator(pool, ParallelEvaluator.DEFAULT_CUTOFF);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public String sumLeftToRight() {
+        return rationalEvaluator.evaluateToString(sum);
+    }
+
+    @Benchmark
+    public String sumParallel() {
+        return parallelEvaluator.evaluateToString(sum, Precision.RATIONAL);
+    }
+
+    @Benchmark
+    public String productLeftToRight() {
+        return exactEvaluator.evaluateToString(product);
+    }
+
+    @Benchmark
+    public String productParallel() {
+        return parallelEvaluator.evaluateToString(product, Precision.EXACT);
+    }
+}
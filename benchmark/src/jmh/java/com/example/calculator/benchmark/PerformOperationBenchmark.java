@@ -0,0 +1,34 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.Operators;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A single operator application, dispatched on the keypad symbol.
+ */
+@State(Scope.Thread)
+public class PerformOperationBenchmark {
+
+    @Param({"+", "-", "x", "÷", "^"})
+    public String operator;
+
+    // Non-final so the JIT cannot fold the operation away
+    public int operand1 = 1234;
+    public int operand2 = 3;
+    private char symbol;
+
+    @Setup
+    public void setUp() {
+        symbol = operator.charAt(0);
+    }
+
+    @Benchmark
+    public int performOperation() {
+        return Operators.performOperation(operand2, operand1, symbol);
+    }
+}
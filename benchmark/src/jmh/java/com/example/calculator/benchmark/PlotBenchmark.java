@@ -0,0 +1,65 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.plot.AdaptiveSampler;
+import com.example.calculator.engine.plot.Plot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Plotting a screen 1080 pixels wide: adaptive sampling against a fixed grid of one sample
+ * per pixel, sampling every tile of the screen on the calling thread, and one frame of a pan
+ * that finds its tiles cached.
+ */
+@State(Scope.Thread)
+public class PlotBenchmark {
+
+    private static final int WIDTH = 1080;
+    private static final double RANGE = 20;
+
+    private Program function;
+    private AdaptiveSampler sampler;
+    private Plot panned;
+    private double offset;
+
+    @Setup
+    public void setUp() {
+        function = ExpressionCompiler.compileDecimal("sin(x)xx+1÷x", null, true);
+        sampler = new AdaptiveSampler(function);
+        panned = new Plot(function, Runnable::run);
+    }
+
+    @Benchmark
+    public int adaptive() {
+        return sampler.sample(-RANGE / 2, RANGE / 2, RANGE / WIDTH / 2);
+    }
+
+    @Benchmark
+    public double grid() {
+        double sum = 0;
+        for (int i = 0; i <= WIDTH; i++) {
+            sum += sampler.value(-RANGE / 2 + RANGE * i / WIDTH);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int screen() {
+        Plot plot = new Plot(function, Runnable::run);
+        return plot.visible(-RANGE / 2, RANGE / 2, RANGE / WIDTH, () -> { }).size();
+    }
+
+    @Benchmark
+    public int pan() {
+        // Ten pixels a frame, back and forth over two screens
+        offset = offset >= RANGE ? -RANGE : offset + 10 * RANGE / WIDTH;
+        List<Plot.Tile> tiles = panned.visible(offset - RANGE / 2, offset + RANGE / 2, RANGE / WIDTH, () -> { });
+        return tiles.size();
+    }
+}
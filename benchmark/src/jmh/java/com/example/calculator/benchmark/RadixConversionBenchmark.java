@@ -0,0 +1,97 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.RadixConverter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+/**
+ * The twelve base conversions behind the BIN, OCTAL and HEX buttons.
+ */
+@State(Scope.Thread)
+public class RadixConversionBenchmark {
+
+    // Size of the converted value; 65536 bits is a multi-kilobyte hex dump
+    @Param({"31", "4096", "65536"})
+    public int bits;
+
+    private String decimal;
+    private String binary;
+    private String octal;
+    private String hexadecimal;
+
+    @Setup
+    public void setUp() {
+        BigInteger value = new BigInteger(bits, new Random(42)).setBit(bits - 1);
+        decimal = value.toString();
+        binary = value.toString(2);
+        octal = value.toString(8);
+        hexadecimal = value.toString(16).toUpperCase();
+    }
+
+    @Benchmark
+    public String decimalToBinary() {
+        return RadixConverter.convert(decimal, 10, 2);
+    }
+
+    @Benchmark
+    public String decimalToOctal() {
+        return RadixConverter.convert(decimal, 10, 8);
+    }
+
+    @Benchmark
+    public String decimalToHexadecimal() {
+        return RadixConverter.convert(decimal, 10, 16);
+    }
+
+    @Benchmark
+    public String binaryToDecimal() {
+        return RadixConverter.convert(binary, 2, 10);
+    }
+
+    @Benchmark
+    public String binaryToOctal() {
+        return RadixConverter.convert(binary, 2, 8);
+    }
+
+    @Benchmark
+    public String binaryToHexadecimal() {
+        return RadixConverter.convert(binary, 2, 16);
+    }
+
+    @Benchmark
+    public String hexadecimalToDecimal() {
+        return RadixConverter.convert(hexadecimal, 16, 10);
+    }
+
+    @Benchmark
+    public String hexadecimalToBinary() {
+        return RadixConverter.convert(hexadecimal, 16, 2);
+    }
+
+    @Benchmark
+    public String hexadecimalToOctal() {
+        return RadixConverter.convert(hexadecimal, 16, 8);
+    }
+
+    @Benchmark
+    public String octalToHexadecimal() {
+        return RadixConverter.convert(octal, 8, 16);
+    }
+
+    @Benchmark
+    public String octalToBinary() {
+        return RadixConverter.convert(octal, 8, 2);
+    }
+
+    @Benchmark
+    public String octalToDecimal() {
+        return RadixConverter.convert(octal, 8, 10);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.ExactEvaluator;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.RationalEvaluator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Long chains of operations in fraction arithmetic, with exact integer arithmetic of the
+ * same program as a reference: decimal sums whose denominators stay small, and an
+ * alternating harmonic series whose denominators grow to thousands of bits.
+ */
+@State(Scope.Thread)
+public class RationalBenchmark {
+
+    @Param({"1000", "5000"})
+    public int terms;
+
+    private Program decimalSum;
+    private Program harmonic;
+    private final RationalEvaluator rational = new RationalEvaluator();
+    private final ExactEvaluator exact = new ExactEvaluator();
+
+    @Setup
+    public void setUp() {
+        StringBuilder decimals = new StringBuilder("0.5");
+        StringBuilder series = new StringBuilder("1");
+        for (int k = 2; k <= terms; k++) {
+            decimals.append(k % 3 == 0 ? 'x' : '+').append("1.").append(k % 100);
+            series.append(k % 2 == 0 ? '-' : '+').append("1÷").append(k);
+        }
+        decimalSum = ExpressionCompiler.compileDecimal(decimals);
+        harmonic = ExpressionCompiler.compileDecimal(series);
+    }
+
+    @Benchmark
+    public String rationalDecimalSum() {
+        return rational.evaluateToString(decimalSum);
+    }
+
+    @Benchmark
+    public String exactDecimalSum() {
+        return exact.evaluateToString(decimalSum);
+    }
+
+    @Benchmark
+    public String rationalHarmonic() {
+        return rational.evaluateToString(harmonic);
+    }
+}
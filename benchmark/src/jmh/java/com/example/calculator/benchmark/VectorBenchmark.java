@@ -0,0 +1,56 @@
+package com.example.calculator.benchmark;
+
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.VectorEvaluator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * {@code x^2+3} over a column of values: the vector evaluator against one
+ * {@link Operators#performOperation} call per element and operator.
+ */
+@State(Scope.Thread)
+public class VectorBenchmark {
+
+    @Param({"1024", "1000000"})
+    public int size;
+
+    private long[] x;
+    private long[] out;
+    private VectorEvaluator vectorEvaluator;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        x = new long[size];
+        for (int i = 0; i < size; i++) {
+            x[i] = random.nextInt(100000);
+        }
+        out = new long[size];
+        Program program = ExpressionCompiler.compile("x^2+3", true);
+        vectorEvaluator = new VectorEvaluator(program);
+    }
+
+    @Benchmark
+    public long[] perElement() {
+        for (int i = 0; i < x.length; i++) {
+            int square = Operators.performOperation(2, (int) x[i], '^');
+            out[i] = Operators.performOperation(3, square, '+');
+        }
+        return out;
+    }
+
+    @Benchmark
+    public long[] vector() {
+        vectorEvaluator.evaluate(x, out);
+        return out;
+    }
+}
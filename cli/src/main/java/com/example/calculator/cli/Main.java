@@ -0,0 +1,96 @@
+package com.example.calculator.cli;
+
+import com.example.calculator.engine.BatchEvaluator;
+import com.example.calculator.engine.Precision;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Command-line entry point that evaluates a file of expressions with the calculator's semantics.
+ * <p>
+ * Usage: {@code calc [--exact | --rational | --decimal] [--threads N] [--chunk N] [input [output]]}. Input and output
+ * default to standard input and output; {@code -} also stands for them.
+ */
+public final class Main {
+
+    private static final String USAGE = "Usage: calc [--exact | --rational | --decimal] [--threads N] [--chunk N] [input [output]]";
+
+    private Main() {
+    }
+
+    public static void main(String[] args) {
+        Precision precision = Precision.INT32;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int chunk = BatchEvaluator.DEFAULT_CHUNK_SIZE;
+        String input = "-";
+        String output = "-";
+        int files = 0;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--exact":
+                        precision = Precision.EXACT;
+                        break;
+                    case "--rational":
+                        precision = Precision.RATIONAL;
+                        break;
+                    case "--decimal":
+                        precision = Precision.DECIMAL;
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--chunk":
+                        chunk = Integer.parseInt(args[++i]);
+                        break;
+                    case "-h":
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        if (files == 0) {
+                            input = args[i];
+                        } else if (files == 1) {
+                            output = args[i];
+                        } else {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                        files++;
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(open(input), StandardCharsets.UTF_8), 1 << 16);
+             Writer out = new BufferedWriter(new OutputStreamWriter(create(output), StandardCharsets.UTF_8), 1 << 16)) {
+            long start = System.nanoTime();
+            long lines = new BatchEvaluator(precision, threads, chunk).evaluate(in, out);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.err.println("Evaluated " + lines + " expressions in " + millis + " ms");
+        } catch (IOException e) {
+            System.err.println("calc: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static InputStream open(String path) throws IOException {
+        return path.equals("-") ? System.in : new FileInputStream(path);
+    }
+
+    private static OutputStream create(String path) throws IOException {
+        return path.equals("-") ? System.out : new FileOutputStream(path);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.metrics.Metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Evaluates a stream of expressions, one per line, on all cores.
+ * <p>
+ * Lines are read in chunks and each chunk is evaluated as one task of a fork-join pool.
+ * Results are written in input order, one line per input line: the decimal result, or
+ * {@code Error: } followed by the reason. At most a fixed window of chunks is read ahead of
+ * the writer, so memory stays bounded however long the input is.
+ */
+public final class BatchEvaluator {
+
+    // Lines evaluated by one task
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+    // Prefix of the output line of an expression that cannot be evaluated
+    public static final String ERROR_PREFIX = "Error: ";
+
+    // Evaluators are not thread-safe, so every worker thread has its own
+    private static final ThreadLocal<Evaluator> EVALUATORS = ThreadLocal.withInitial(Evaluator::new);
+    private static final ThreadLocal<ExactEvaluator> EXACT_EVALUATORS = ThreadLocal.withInitial(ExactEvaluator::new);
+    private static final ThreadLocal<RationalEvaluator> RATIONAL_EVALUATORS = ThreadLocal.withInitial(RationalEvaluator::new);
+    private static final ThreadLocal<DecimalEvaluator> DECIMAL_EVALUATORS = ThreadLocal.withInitial(DecimalEvaluator::new);
+
+    private final Precision precision;
+    private final int parallelism;
+    private final int chunkSize;
+    // Chunks read but not yet written
+    private final int window;
+
+    /**
+     * Creates an evaluator that uses every available core
+     *
+     * @param precision The arithmetic to evaluate with
+     */
+    public BatchEvaluator(Precision precision) {
+        this(precision, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param precision The arithmetic to evaluate with
+     * @param parallelism The number of worker threads
+     * @param chunkSize The number of lines evaluated by one task
+     */
+    public BatchEvaluator(Precision precision, int parallelism, int chunkSize) {
+        if (parallelism <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("parallelism and chunkSize must be positive");
+        }
+        this.precision = precision;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.window = 2 * parallelism;
+    }
+
+    /**
+     * Evaluates every line of the input and writes one result line per input line
+     *
+     * @param in The expressions, one per line
+     * @param out The receiver of the results
+     * @return The number of lines evaluated
+     * @throws IOException If reading or writing fails
+     */
+    public long evaluate(BufferedReader in, Writer out) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ArrayDeque<ForkJoinTask<String>> inFlight = new ArrayDeque<>(window);
+        long lines = 0;
+        try {
+            while (true) {
+                String[] chunk = readChunk(in);
+                if (chunk != null) {
+                    lines += chunk.length;
+                    inFlight.add(pool.submit(() -> evaluateChunk(chunk)));
+                }
+                // Write finished chunks in order, waiting only when the window is full or input ended
+                while (!inFlight.isEmpty() && (chunk == null || inFlight.size() >= window
+                        || inFlight.peek().isDone())) {
+                    out.write(inFlight.poll().join());
+                }
+                if (chunk == null) {
+                    break;
+                }
+            }
+            out.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+        return lines;
+    }
+
+    /**
+     * Evaluates one expression the way each line of a batch is evaluated
+     *
+     * @param expression The expression to evaluate
+     * @param precision The arithmetic to evaluate with
+     * @return The decimal result, or {@link #ERROR_PREFIX} followed by the reason
+     */
+    public static String evaluateLine(String expression, Precision precision) {
+        try {
+            if (precision == Precision.RATIONAL) {
+                return RATIONAL_EVALUATORS.get().evaluateToString(ExpressionCompiler.compileDecimal(expression));
+            }
+            if (precision == Precision.DECIMAL) {
+                return DECIMAL_EVALUATORS.get().evaluateToString(ExpressionCompiler.compileDecimal(expression));
+            }
+            Program program = ExpressionCompiler.compile(expression);
+            if (precision == Precision.EXACT) {
+                return EXACT_EVALUATORS.get().evaluateToString(program);
+            }
+            return Long.toString(EVALUATORS.get().evaluate(program));
+        } catch (IllegalArgumentException | UnsupportedOperationException | ArithmeticException e) {
+            Metrics.recordError(e);
+            return ERROR_PREFIX + e.getMessage();
+        }
+    }
+
+    // Reads up to chunkSize lines, or returns null at the end of the input
+    private String[] readChunk(BufferedReader in) throws IOException {
+        String[] chunk = new String[chunkSize];
+        int count = 0;
+        String line;
+        while (count < chunkSize && (line = in.readLine()) != null) {
+            chunk[count++] = line;
+        }
+        if (count == 0) {
+            return null;
+        }
+        if (count < chunkSize) {
+            String[] last = new String[count];
+            System.arraycopy(chunk, 0, last, 0, count);
+            return last;
+        }
+        return chunk;
+    }
+
+    private String evaluateChunk(String[] chunk) {
+        StringBuilder sb = new StringBuilder(chunk.length * 8);
+        for (String line : chunk) {
+            sb.append(evaluateLine(line, precision)).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.calculator.engine;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Cooperative cancellation for long-running loops of the engine.
+ * <p>
+ * Loops call {@link #check()} every {@link #INTERVAL} iterations and before each operation on
+ * promoted operands; if the thread has been interrupted, for example by
+ * {@code Future.cancel(true)}, the work is abandoned with a {@link CancellationException}.
+ */
+final class Cancellation {
+
+    // Iterations between two checks, a power of two
+    static final int INTERVAL = 1024;
+
+    private Cancellation() {
+    }
+
+    /**
+     * Abandons the current computation if its thread was interrupted
+     *
+     * @throws CancellationException If the thread was interrupted
+     */
+    static void check() {
+        if (Thread.interrupted()) {
+            throw new CancellationException("Evaluation cancelled");
+        }
+    }
+
+    /**
+     * Checks for cancellation once every {@link #INTERVAL} iterations
+     *
+     * @param iteration The loop counter
+     */
+    static void check(int iteration) {
+        if ((iteration & (INTERVAL - 1)) == 0) {
+            check();
+        }
+    }
+}
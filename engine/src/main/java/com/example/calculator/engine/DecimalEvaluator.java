@@ -0,0 +1,161 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.Accuracy;
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Runs compiled {@link Program}s in double-precision floating point, for {@link Precision#DECIMAL}.
+ * <p>
+ * This is the only precision in which every {@link MathFunction} has a result. Operands live
+ * on a primitive double stack that is reused between calls; the {@link Accuracy} tier picks
+ * between the table-driven functions of {@link com.example.calculator.engine.math.FastMath},
+ * for plotting many points, and {@link StrictMath}, whose results are the same everywhere.
+ * An instance is not thread-safe; give each thread its own evaluator.
+ */
+public final class DecimalEvaluator {
+
+    // Significant digits of a formatted result; the 16th and 17th digits of a double are noise
+    public static final int FORMAT_DIGITS = 15;
+
+    private static final MathContext FORMAT_CONTEXT = new MathContext(FORMAT_DIGITS);
+
+    private final Accuracy accuracy;
+    // Operand stack reused across evaluations
+    private double[] stack = new double[16];
+
+    public DecimalEvaluator() {
+        this(Accuracy.STRICT);
+    }
+
+    /**
+     * @param accuracy The accuracy tier of functions and powers
+     */
+    public DecimalEvaluator(Accuracy accuracy) {
+        this.accuracy = accuracy;
+    }
+
+    /**
+     * Evaluates a program; the variable x, if it occurs, reads as 0
+     *
+     * @param program The program to evaluate
+     * @return The value left on top of the operand stack, NaN or infinite if it is undefined
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public double evaluate(Program program) {
+        return evaluate(program, 0);
+    }
+
+    /**
+     * Evaluates a program that refers to the variable x
+     *
+     * @param program The program to evaluate
+     * @param x The value of the variable
+     * @return The value left on top of the operand stack, NaN or infinite if it is undefined
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public double evaluate(Program program, double x) {
+        if (stack.length < program.maxStack()) {
+            stack = new double[Math.max(program.maxStack(), stack.length * 2)];
+        }
+        double[] stack = this.stack;
+        int[] code = program.code();
+        long[] constants = program.constants();
+        BigInteger[] bigConstants = program.bigConstants();
+        boolean fast = accuracy == Accuracy.FAST;
+        int top = -1;
+        for (int pc = 0; pc < code.length; pc++) {
+            Cancellation.check(pc);
+            int instruction = code[pc];
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.PUSH) {
+                int index = Program.argument(instruction);
+                stack[++top] = bigConstants != null && bigConstants[index] != null
+                        ? bigConstants[index].doubleValue() : constants[index];
+            } else if (opcode == Operators.LOAD) {
+                stack[++top] = x;
+            } else if (opcode == Operators.CALL) {
+                MathFunction function = MathFunction.of(Program.argument(instruction));
+                if (function.arity() == 2) {
+                    double operand2 = stack[top--];
+                    stack[top] = function.apply(stack[top], operand2);
+                } else {
+                    stack[top] = function.apply(stack[top], accuracy);
+                }
+            } else {
+                double b = stack[top--];
+                double a = stack[top];
+                switch (opcode) {
+                    case Operators.ADD:
+                        stack[top] = a + b;
+                        break;
+                    case Operators.SUBTRACT:
+                        stack[top] = a - b;
+                        break;
+                    case Operators.MULTIPLY:
+                        stack[top] = a * b;
+                        break;
+                    case Operators.DIVIDE:
+                        if (b == 0)
+                            throw new UnsupportedOperationException("Cannot divide by zero");
+                        stack[top] = a / b;
+                        break;
+                    case Operators.POWER:
+                        stack[top] = fast ? Math.pow(a, b) : StrictMath.pow(a, b);
+                        break;
+                    default:
+                        // Bitwise operators and shifts, exactly on whole numbers
+                        stack[top] = ExactEvaluator.applyBig(opcode, whole(a), whole(b)).doubleValue();
+                }
+            }
+        }
+        return stack[top];
+    }
+
+    private static BigInteger whole(double value) {
+        if (value != Math.rint(value) || Double.isInfinite(value)) {
+            throw new ArithmeticException("Argument must be a whole number");
+        }
+        return new BigDecimal(value).toBigInteger();
+    }
+
+    /**
+     * Evaluates a program, usually one from {@link ExpressionCompiler#compileDecimal}, and
+     * formats the result with {@link #format}
+     *
+     * @param program The program to evaluate
+     * @return The formatted result
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws ArithmeticException If the result is undefined or too large for a double
+     */
+    public String evaluateToString(Program program) {
+        return format(evaluate(program));
+    }
+
+    /**
+     * Formats a double rounded to {@link #FORMAT_DIGITS} significant digits, without
+     * trailing zeros, e.g. {@code 0.5} or {@code 120}. There is no exponent notation, since
+     * its sign would read back as an operator, so the result always reads back as a literal.
+     *
+     * @param value The value to format
+     * @return The formatted value
+     * @throws ArithmeticException If the value is NaN or infinite
+     */
+    public static String format(double value) {
+        if (Double.isNaN(value)) {
+            throw new ArithmeticException("Not a number");
+        }
+        if (Double.isInfinite(value)) {
+            throw new ArithmeticException("Result too large");
+        }
+        if (value == 0) {
+            return "0";
+        }
+        return new BigDecimal(value).round(FORMAT_CONTEXT).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.calculator.engine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs evaluations on a background thread with a latest-wins policy.
+ * <p>
+ * Submitting a task cancels the one in flight by interrupting it, which the engine's loops
+ * notice cooperatively. Only the outcome of the latest task is delivered, through the callback
+ * executor (typically the main thread). If a task runs longer than the time budget, the
+ * callback is told once so it can show a busy state instead of freezing.
+ */
+public final class EvaluationExecutor {
+
+    /**
+     * Receives the outcome of an evaluation on the callback executor
+     */
+    public interface Callback<T> {
+
+        /**
+         * Handles the result of a completed evaluation
+         *
+         * @param result The result
+         */
+        void onResult(T result);
+
+        /**
+         * Handles an evaluation that failed
+         *
+         * @param error The exception thrown by the evaluation
+         */
+        void onError(Exception error);
+
+        /**
+         * Handles an evaluation that is still running when the time budget runs out
+         */
+        void onBudgetExceeded();
+    }
+
+    private final Executor callbackExecutor;
+    private final long budgetMillis;
+    // Runs the evaluations, one at a time
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(daemon("evaluation"));
+    // Fires the time budget while the worker is busy
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon("evaluation-timer"));
+
+    // Guards every field below
+    private final Object lock = new Object();
+    // Incremented by every submit and cancel; outcomes of older generations are dropped
+    private long generation;
+    // Generation of the last task that finished, so a late budget notice is dropped
+    private long finished;
+    private Future<?> running;
+    private ScheduledFuture<?> budget;
+
+    /**
+     * @param callbackExecutor The executor callbacks are delivered on
+     * @param budgetMillis The time after which a running evaluation is reported as slow
+     */
+    public EvaluationExecutor(Executor callbackExecutor, long budgetMillis) {
+        this.callbackExecutor = callbackExecutor;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * Starts an evaluation, cancelling the one in flight
+     *
+     * @param task The evaluation
+     * @param callback The receiver of its outcome
+     */
+    public <T> void submit(Callable<T> task, Callback<T> callback) {
+        synchronized (lock) {
+            cancelRunning();
+            final long submitted = ++generation;
+            running = worker.submit(() -> {
+                try {
+                    T result = task.call();
+                    finish(submitted);
+                    deliver(submitted, false, () -> callback.onResult(result));
+                } catch (CancellationException e) {
+                    // Superseded by a newer task; it reports instead
+                } catch (Exception e) {
+                    finish(submitted);
+                    deliver(submitted, false, () -> callback.onError(e));
+                }
+            });
+            budget = timer.schedule(() -> deliver(submitted, true, callback::onBudgetExceeded),
+                    budgetMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Cancels the evaluation in flight, if any; its outcome is never delivered
+     */
+    public void cancel() {
+        synchronized (lock) {
+            generation++;
+            cancelRunning();
+        }
+    }
+
+    /**
+     * @return True if an evaluation is in flight
+     */
+    public boolean isRunning() {
+        synchronized (lock) {
+            return running != null && !running.isDone();
+        }
+    }
+
+    /**
+     * Cancels the evaluation in flight and stops the threads
+     */
+    public void shutdown() {
+        cancel();
+        worker.shutdownNow();
+        timer.shutdownNow();
+    }
+
+    private void cancelRunning() {
+        if (running != null) {
+            running.cancel(true);
+            running = null;
+        }
+        if (budget != null) {
+            budget.cancel(false);
+            budget = null;
+        }
+    }
+
+    private void finish(long submitted) {
+        synchronized (lock) {
+            finished = submitted;
+            if (submitted == generation && budget != null) {
+                budget.cancel(false);
+                budget = null;
+            }
+        }
+    }
+
+    // Runs an outcome on the callback executor if no newer task was submitted meanwhile
+    private void deliver(long submitted, boolean whileRunning, Runnable outcome) {
+        callbackExecutor.execute(() -> {
+            synchronized (lock) {
+                if (submitted != generation || (whileRunning && submitted == finished)) {
+                    return;
+                }
+            }
+            outcome.run();
+        });
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.MathFunction;
+
+/**
+ * Runs compiled {@link Program}s with the calculator's 32-bit integer semantics.
+ * <p>
+ * Operands live on a primitive stack that is reused between calls, so evaluation does
+ * not allocate once the stack has grown to fit the deepest program. An instance is not
+ * thread-safe; give each thread its own evaluator.
+ */
+public final class Evaluator {
+
+    // Operand stack reused across evaluations
+    private long[] stack = new long[16];
+
+    /**
+     * Evaluates a program; the variable x, if it occurs, reads as 0
+     *
+     * @param program The program to evaluate
+     * @return The value left on top of the operand stack
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public long evaluate(Program program) {
+        return evaluate(program, 0);
+    }
+
+    /**
+     * Evaluates a program that refers to the variable x
+     *
+     * @param program The program to evaluate
+     * @param x The value of the variable, narrowed to an int like a literal
+     * @return The value left on top of the operand stack
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public long evaluate(Program program, long x) {
+        if (stack.length < program.maxStack()) {
+            stack = new long[Math.max(program.maxStack(), stack.length * 2)];
+        }
+        long[] stack = this.stack;
+        int[] code = program.code();
+        long[] constants = program.constants();
+        int top = -1;
+        for (int pc = 0; pc < code.length; pc++) {
+            Cancellation.check(pc);
+            int instruction = code[pc];
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.PUSH) {
+                stack[++top] = (int) constants[Program.argument(instruction)];
+            } else if (opcode == Operators.LOAD) {
+                stack[++top] = (int) x;
+            } else if (opcode == Operators.CALL) {
+                MathFunction function = MathFunction.of(Program.argument(instruction));
+                if (function.arity() == 2) {
+                    int operand2 = (int) stack[top--];
+                    stack[top] = Operators.call(function, (int) stack[top], operand2);
+                } else {
+                    stack[top] = Operators.call(function, (int) stack[top]);
+                }
+            } else {
+                int operand2 = (int) stack[top--];
+                stack[top] = Operators.apply(opcode, (int) stack[top], operand2);
+            }
+        }
+        return stack[top];
+    }
+}
@@ -0,0 +1,426 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.Accuracy;
+import com.example.calculator.engine.math.Combinatorics;
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Runs compiled {@link Program}s with unbounded integer arithmetic.
+ * <p>
+ * Every operand stays a primitive long until an operation overflows; only then is that
+ * slot promoted to a {@link BigInteger}. Small calculations therefore run on the same
+ * primitive stack as {@link Evaluator} and never touch the big-number path. Large products
+ * rely on {@link BigInteger#multiply}, which switches to Karatsuba and Toom-Cook
+ * multiplication for big operands, and powers use exponentiation by squaring.
+ * Factorials, binomial coefficients and square roots are exact; the other functions are
+ * computed with {@link StrictMath} and truncated toward zero. Bitwise operators and shifts
+ * act on two's complement of unbounded width, so shifting left never wraps around.
+ * An instance is not thread-safe; give each thread its own evaluator.
+ */
+public final class ExactEvaluator {
+
+    // Largest result, in bits, before a calculation is rejected (about 315,000 digits)
+    public static final int MAX_RESULT_BITS = 1 << 20;
+
+    // Operand stack; a slot is only meaningful while the same slot in bigStack is null
+    private long[] stack = new long[16];
+    // Promoted operands, null for slots that fit in a long
+    private BigInteger[] bigStack = new BigInteger[16];
+
+    /**
+     * Evaluates a program
+     *
+     * @param program The program to evaluate
+     * @return The exact value left on top of the operand stack
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws ArithmeticException If a result grows beyond {@link #MAX_RESULT_BITS}
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public BigInteger evaluate(Program program) {
+        int top = run(program);
+        BigInteger big = bigStack[top];
+        return big != null ? big : BigInteger.valueOf(stack[top]);
+    }
+
+    /**
+     * Evaluates a program and formats the result in decimal, without creating a
+     * {@link BigInteger} when the result fits in a long
+     *
+     * @param program The program to evaluate
+     * @return The decimal digits of the result
+     */
+    public String evaluateToString(Program program) {
+        int top = run(program);
+        BigInteger big = bigStack[top];
+        return big != null ? big.toString() : Long.toString(stack[top]);
+    }
+
+    private int run(Program program) {
+        if (stack.length < program.maxStack()) {
+            int capacity = Math.max(program.maxStack(), stack.length * 2);
+            stack = new long[capacity];
+            bigStack = new BigInteger[capacity];
+        }
+        long[] stack = this.stack;
+        BigInteger[] bigStack = this.bigStack;
+        int[] code = program.code();
+        long[] constants = program.constants();
+        BigInteger[] bigConstants = program.bigConstants();
+        int top = -1;
+        try {
+            for (int pc = 0; pc < code.length; pc++) {
+                Cancellation.check(pc);
+                int instruction = code[pc];
+                int opcode = Program.opcode(instruction);
+                if (opcode == Operators.PUSH) {
+                    int index = Program.argument(instruction);
+                    stack[++top] = constants[index];
+                    bigStack[top] = bigConstants == null ? null : bigConstants[index];
+                } else if (opcode == Operators.CALL) {
+                    MathFunction function = MathFunction.of(Program.argument(instruction));
+                    Cancellation.check();
+                    BigInteger result;
+                    if (function.arity() == 2) {
+                        top--;
+                        result = call(function, big(top), big(top + 1));
+                        bigStack[top + 1] = null;
+                    } else {
+                        result = call(function, big(top));
+                    }
+                    // Back to the primitive path if the result fits
+                    if (result.bitLength() < Long.SIZE) {
+                        stack[top] = result.longValue();
+                        bigStack[top] = null;
+                    } else {
+                        bigStack[top] = result;
+                    }
+                } else {
+                    top--;
+                    if (bigStack[top] == null && bigStack[top + 1] == null) {
+                        applySmall(opcode, top);
+                    } else {
+                        // Operations on promoted operands can be slow, so each one checks
+                        Cancellation.check();
+                        bigStack[top] = applyBig(opcode, big(top), big(top + 1));
+                        bigStack[top + 1] = null;
+                    }
+                }
+            }
+            return top;
+        } finally {
+            // Release promoted operands below the result so they can be collected
+            for (int i = 0; i < top; i++) {
+                bigStack[i] = null;
+            }
+        }
+    }
+
+    // Applies an operator to two long slots, promoting the result if it overflows
+    private void applySmall(int opcode, int top) {
+        long a = stack[top];
+        long b = stack[top + 1];
+        long r;
+        switch (opcode) {
+            case Operators.ADD:
+                r = a + b;
+                if (((a ^ r) & (b ^ r)) < 0) {
+                    bigStack[top] = BigInteger.valueOf(a).add(BigInteger.valueOf(b));
+                    return;
+                }
+                break;
+            case Operators.SUBTRACT:
+                r = a - b;
+                if (((a ^ b) & (a ^ r)) < 0) {
+                    bigStack[top] = BigInteger.valueOf(a).subtract(BigInteger.valueOf(b));
+                    return;
+                }
+                break;
+            case Operators.MULTIPLY:
+                if (!multiplyFits(a, b)) {
+                    bigStack[top] = BigInteger.valueOf(a).multiply(BigInteger.valueOf(b));
+                    return;
+                }
+                r = a * b;
+                break;
+            case Operators.DIVIDE:
+                if (b == 0)
+                    throw new UnsupportedOperationException("Cannot divide by zero");
+                if (a == Long.MIN_VALUE && b == -1) {
+                    bigStack[top] = BigInteger.valueOf(a).negate();
+                    return;
+                }
+                r = a / b;
+                break;
+            case Operators.POWER:
+                if (b < 0) {
+                    r = negativePower(a, b);
+                    break;
+                }
+                r = 1;
+                long base = a;
+                long exponent = b;
+                // Exponentiation by squaring while everything stays within a long
+                while (true) {
+                    if ((exponent & 1) != 0) {
+                        if (!multiplyFits(r, base)) {
+                            bigStack[top] = power(BigInteger.valueOf(a), BigInteger.valueOf(b));
+                            return;
+                        }
+                        r *= base;
+                    }
+                    exponent >>= 1;
+                    if (exponent == 0) {
+                        break;
+                    }
+                    if (!multiplyFits(base, base)) {
+                        bigStack[top] = power(BigInteger.valueOf(a), BigInteger.valueOf(b));
+                        return;
+                    }
+                    base *= base;
+                }
+                break;
+            case Operators.AND:
+                r = a & b;
+                break;
+            case Operators.OR:
+                r = a | b;
+                break;
+            case Operators.XOR:
+                r = a ^ b;
+                break;
+            case Operators.SHIFT_LEFT:
+                if (b >= 0 && b < Long.SIZE - 1 && (a << b) >> b == a) {
+                    r = a << b;
+                    break;
+                }
+                if (b < 0 && b > -Long.SIZE) {
+                    r = a >> -b;
+                    break;
+                }
+                bigStack[top] = shiftLeft(BigInteger.valueOf(a), BigInteger.valueOf(b));
+                return;
+            case Operators.SHIFT_RIGHT:
+                if (b >= 0) {
+                    r = a >> Math.min(b, Long.SIZE - 1);
+                    break;
+                }
+                bigStack[top] = shiftLeft(BigInteger.valueOf(a), BigInteger.valueOf(b).negate());
+                return;
+            default:
+                throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+        }
+        stack[top] = r;
+    }
+
+    private BigInteger big(int slot) {
+        BigInteger big = bigStack[slot];
+        return big != null ? big : BigInteger.valueOf(stack[slot]);
+    }
+
+    // Applies an operator to promoted operands
+    static BigInteger applyBig(int opcode, BigInteger a, BigInteger b) {
+        switch (opcode) {
+            case Operators.ADD:
+                return checkSize(a.add(b));
+            case Operators.SUBTRACT:
+                return checkSize(a.subtract(b));
+            case Operators.MULTIPLY:
+                if (a.bitLength() + b.bitLength() > MAX_RESULT_BITS + 1) {
+                    throw new ArithmeticException("Result too large");
+                }
+                return a.multiply(b);
+            case Operators.DIVIDE:
+                if (b.signum() == 0)
+                    throw new UnsupportedOperationException("Cannot divide by zero");
+                return a.divide(b);
+            case Operators.POWER:
+                return power(a, b);
+            case Operators.AND:
+                return a.and(b);
+            case Operators.OR:
+                return a.or(b);
+            case Operators.XOR:
+                return a.xor(b);
+            case Operators.SHIFT_LEFT:
+                return shiftLeft(a, b);
+            case Operators.SHIFT_RIGHT:
+                return shiftLeft(a, b.negate());
+            default:
+                throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Calls a function of one argument exactly: the factorial and the square root, which is
+     * rounded down, are exact, and the other functions are truncated toward zero
+     *
+     * @param function The function
+     * @param x The argument
+     * @return The result
+     * @throws ArithmeticException If the function is undefined for the argument or the result
+     *                             would exceed {@link #MAX_RESULT_BITS}
+     */
+    static BigInteger call(MathFunction function, BigInteger x) {
+        switch (function) {
+            case FACTORIAL:
+                if (x.signum() < 0) {
+                    throw new ArithmeticException("Factorial of a negative number");
+                }
+                if (x.bitLength() >= Integer.SIZE || Combinatorics.log2Factorial(x.intValue()) > MAX_RESULT_BITS) {
+                    throw new ArithmeticException("Result too large");
+                }
+                return Combinatorics.factorial(x.intValue());
+            case SQRT:
+                return sqrt(x);
+            default:
+                return truncate(function.apply(x.doubleValue(), Accuracy.STRICT));
+        }
+    }
+
+    /**
+     * Calls a function of two arguments exactly
+     *
+     * @param function The function
+     * @param x The first argument
+     * @param y The second argument
+     * @return The result
+     * @throws ArithmeticException If the function is undefined for the arguments or the result
+     *                             would exceed {@link #MAX_RESULT_BITS}
+     */
+    static BigInteger call(MathFunction function, BigInteger x, BigInteger y) {
+        if (function != MathFunction.BINOMIAL) {
+            throw new UnsupportedOperationException("Unknown function: " + function.keyword());
+        }
+        if (x.signum() >= 0 && y.signum() >= 0 && y.compareTo(x) <= 0 && binomialTooLarge(x, y)) {
+            throw new ArithmeticException("Result too large");
+        }
+        return checkSize(Combinatorics.binomial(x, y));
+    }
+
+    // True if n choose k, for k between 0 and n, certainly has more than MAX_RESULT_BITS bits
+    private static boolean binomialTooLarge(BigInteger n, BigInteger k) {
+        BigInteger smaller = k.min(n.subtract(k));
+        if (smaller.bitLength() >= Integer.SIZE) {
+            return true;
+        }
+        // n choose k is at most n^k
+        if ((long) smaller.intValue() * n.bitLength() <= MAX_RESULT_BITS) {
+            return false;
+        }
+        if (n.bitLength() <= Double.MAX_EXPONENT) {
+            return Combinatorics.log2Binomial(n.doubleValue(), smaller.doubleValue()) > MAX_RESULT_BITS;
+        }
+        // Beyond the range of a double, n choose k is at least (n / k)^k
+        return (long) smaller.intValue() * (n.bitLength() - 1 - Integer.SIZE) > MAX_RESULT_BITS;
+    }
+
+    // Largest integer whose square is at most x, by Newton's method from an estimate above the root
+    private static BigInteger sqrt(BigInteger x) {
+        if (x.signum() < 0) {
+            throw new ArithmeticException("Square root of a negative number");
+        }
+        if (x.bitLength() < 2) {
+            return x;
+        }
+        BigInteger root = BigInteger.ONE.shiftLeft((x.bitLength() + 1) / 2);
+        while (true) {
+            BigInteger next = root.add(x.divide(root)).shiftRight(1);
+            if (next.compareTo(root) >= 0) {
+                return root;
+            }
+            root = next;
+        }
+    }
+
+    private static BigInteger truncate(double value) {
+        if (Double.isNaN(value)) {
+            throw new ArithmeticException("Not a number");
+        }
+        if (Double.isInfinite(value)) {
+            throw new ArithmeticException("Result too large");
+        }
+        return new BigDecimal(value).toBigInteger();
+    }
+
+    // Integer power truncated toward zero, rejecting results that are too large
+    static BigInteger power(BigInteger base, BigInteger exponent) {
+        int bits = base.abs().bitLength();
+        if (bits <= 1) {
+            // The base is 0, 1 or -1
+            if (base.signum() == 0) {
+                if (exponent.signum() < 0)
+                    throw new UnsupportedOperationException("Cannot divide by zero");
+                return exponent.signum() == 0 ? BigInteger.ONE : BigInteger.ZERO;
+            }
+            return base.signum() < 0 && exponent.testBit(0) ? base : BigInteger.ONE;
+        }
+        if (exponent.signum() < 0) {
+            return BigInteger.ZERO;
+        }
+        // |base| >= 2, so the result has at least (bits - 1) * exponent + 1 bits
+        if (exponent.bitLength() >= Integer.SIZE || exponent.intValue() > MAX_RESULT_BITS / (bits - 1)) {
+            throw new ArithmeticException("Result too large");
+        }
+        return base.pow(exponent.intValue());
+    }
+
+    /**
+     * Shifts in two's complement, like {@code <<} on an integer of unbounded width
+     *
+     * @param value The value to shift
+     * @param count The number of places to shift left, or right if negative; shifting right
+     *              rounds toward negative infinity
+     * @return The shifted value
+     * @throws ArithmeticException If the result would exceed {@link #MAX_RESULT_BITS}
+     */
+    static BigInteger shiftLeft(BigInteger value, BigInteger count) {
+        if (value.signum() == 0) {
+            return value;
+        }
+        if (count.signum() < 0) {
+            BigInteger places = count.negate();
+            if (places.compareTo(BigInteger.valueOf(value.bitLength())) >= 0) {
+                return value.signum() < 0 ? BigInteger.ONE.negate() : BigInteger.ZERO;
+            }
+            return value.shiftRight(places.intValue());
+        }
+        if (count.bitLength() >= Integer.SIZE || value.bitLength() + (long) count.intValue() > MAX_RESULT_BITS) {
+            throw new ArithmeticException("Result too large");
+        }
+        return value.shiftLeft(count.intValue());
+    }
+
+    // Integer power with a negative exponent, truncated toward zero
+    private static long negativePower(long base, long exponent) {
+        if (base == 0)
+            throw new UnsupportedOperationException("Cannot divide by zero");
+        if (base == 1) {
+            return 1;
+        }
+        if (base == -1) {
+            return (exponent & 1) == 0 ? 1 : -1;
+        }
+        return 0;
+    }
+
+    private static BigInteger checkSize(BigInteger value) {
+        if (value.bitLength() > MAX_RESULT_BITS) {
+            throw new ArithmeticException("Result too large");
+        }
+        return value;
+    }
+
+    // True if a * b does not overflow a long
+    static boolean multiplyFits(long a, long b) {
+        long r = a * b;
+        long ax = Math.abs(a);
+        long ay = Math.abs(b);
+        if (((ax | ay) >>> 31) != 0) {
+            return (b == 0 || r / b == a) && !(a == Long.MIN_VALUE && b == -1);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,510 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of compiled programs and their results.
+ * <p>
+ * Keys are the normalized token text of an expression together with a mode and the
+ * {@link Radix} its literals are read in. Callers pass a distinct mode for every other
+ * setting that changes how an expression is read or computed, so entries of different
+ * modes never answer for each other.
+ * Results of each {@link Precision} are kept side by side on the shared program, except
+ * that {@link Precision#RATIONAL} and {@link Precision#DECIMAL} read decimal points and so
+ * share entries of their own. Expressions that call a function are keyed by their exact text,
+ * since normalizing would drop the keywords.
+ * The bound is a total weight rather than an entry count: an entry weighs its key length
+ * plus its instruction count plus the digits of an exact result, so a few huge pasted
+ * expressions or results cannot crowd out memory. Programs that long are evaluated by a
+ * {@link ParallelEvaluator}, on every core. 32-bit programs that call a function, such as
+ * the inlined bodies of user functions, run as an {@link OptimizedProgram} that computes
+ * repeated calls once.
+ * <p>
+ * A cache built over a {@link SymbolTable} compiles names too. Expressions that contain a
+ * name are keyed by their exact text, and every entry is indexed under the slots its program
+ * depends on, so a change to one name drops exactly the entries compiled against it.
+ * <p>
+ * The monitor of the cache guards only the map and its statistics; programs are compiled and
+ * evaluated outside it, so a change to a name never waits for a long evaluation. A program
+ * compiled while a name changed is returned but not kept, and a result computed after its
+ * entry was dropped is not counted toward the bound.
+ */
+public final class ExpressionCache {
+
+    // Largest total weight kept before least recently used entries are evicted
+    private final int maxWeight;
+    // Entries in access order, eldest first
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Evaluators shared by all lookups, guarded by evaluating rather than by this
+    private final Object evaluating = new Object();
+    private final Evaluator evaluator = new Evaluator();
+    private final ExactEvaluator exactEvaluator = new ExactEvaluator();
+    private final RationalEvaluator rationalEvaluator = new RationalEvaluator();
+    private final DecimalEvaluator decimalEvaluator = new DecimalEvaluator();
+    // Splits the runs of + and x of huge pasted expressions across cores
+    private final ParallelEvaluator parallelEvaluator = new ParallelEvaluator();
+    // Names that expressions may refer to, null if they may not
+    private final SymbolTable symbols;
+    // Per slot of the symbol table: the keys of the entries that depend on it, or null
+    private final ArrayList<HashSet<Key>> dependents = new ArrayList<>();
+    // Sum of the weights of all entries
+    private int weight;
+    // Counts changes to names; a program compiled across one is not kept
+    private long symbolGeneration;
+    // Statistics counters
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long symbolInvalidationCount;
+
+    /**
+     * @param maxWeight The largest total weight kept in the cache
+     */
+    public ExpressionCache(int maxWeight) {
+        this(maxWeight, null);
+    }
+
+    /**
+     * @param maxWeight The largest total weight kept in the cache
+     * @param symbols The names expressions may refer to, or null for none
+     */
+    public ExpressionCache(int maxWeight, SymbolTable symbols) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("maxWeight must be positive: " + maxWeight);
+        }
+        this.maxWeight = maxWeight;
+        this.symbols = symbols;
+        if (symbols != null) {
+            symbols.addListener(this::invalidateSymbol);
+        }
+    }
+
+    /**
+     * Evaluates an expression, reusing the compiled program and result of an earlier call
+     *
+     * @param expression The expression to evaluate
+     * @param mode The mode the expression is evaluated in
+     * @return The result of the expression
+     */
+    public long evaluate(CharSequence expression, int mode) {
+        return evaluate(expression, mode, Radix.DECIMAL);
+    }
+
+    private long evaluate(CharSequence expression, int mode, Radix radix) {
+        try {
+            Entry entry = lookup(expression, mode, radix, false);
+            synchronized (this) {
+                if (entry.hasResult) {
+                    return entry.result;
+                }
+            }
+            long result;
+            long start = Metrics.start();
+            synchronized (evaluating) {
+                if (parallelEvaluator.splits(entry.program, Precision.INT32)) {
+                    result = parallelEvaluator.evaluate(entry.program);
+                } else if (OptimizedProgram.paysOnce(entry.program)) {
+                    OptimizedProgram optimized = new OptimizedProgram(entry.program);
+                    Metrics.OPTIMIZER_ELIMINATED.add(optimized.eliminated());
+                    result = optimized.evaluate();
+                } else {
+                    result = evaluator.evaluate(entry.program);
+                }
+            }
+            Metrics.EVALUATE.stop(start);
+            synchronized (this) {
+                entry.result = result;
+                entry.hasResult = true;
+            }
+            return result;
+        } catch (RuntimeException e) {
+            Metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluates an expression with the given precision and formats the result in decimal
+     *
+     * @param expression The expression to evaluate
+     * @param mode The mode the expression is evaluated in
+     * @param precision The arithmetic to evaluate with
+     * @return The decimal digits of the result
+     */
+    public String evaluate(CharSequence expression, int mode, Precision precision) {
+        return evaluate(expression, mode, Radix.DECIMAL, precision);
+    }
+
+    /**
+     * Evaluates an expression whose literals are written in a base, with the given precision,
+     * and formats the result in decimal; the base also serves as the mode
+     *
+     * @param expression The expression to evaluate
+     * @param radix The base of the literals
+     * @param precision The arithmetic to evaluate with
+     * @return The decimal digits of the result
+     */
+    public String evaluate(CharSequence expression, Radix radix, Precision precision) {
+        return evaluate(expression, radix.radix(), radix, precision);
+    }
+
+    private String evaluate(CharSequence expression, int mode, Radix radix, Precision precision) {
+        if (precision == Precision.INT32) {
+            return Long.toString(evaluate(expression, mode, radix));
+        }
+        try {
+            boolean decimal = precision == Precision.DECIMAL;
+            Entry entry = lookup(expression, mode, radix, decimal || precision == Precision.RATIONAL);
+            synchronized (this) {
+                String result = decimal ? entry.decimalResult : entry.exactResult;
+                if (result != null) {
+                    return result;
+                }
+            }
+            String result;
+            long start = Metrics.start();
+            synchronized (evaluating) {
+                if (parallelEvaluator.splits(entry.program, precision)) {
+                    result = parallelEvaluator.evaluateToString(entry.program, precision);
+                } else if (decimal) {
+                    result = decimalEvaluator.evaluateToString(entry.program);
+                } else {
+                    result = precision == Precision.RATIONAL
+                            ? rationalEvaluator.evaluateToString(entry.program)
+                            : exactEvaluator.evaluateToString(entry.program);
+                }
+            }
+            Metrics.EVALUATE.stop(start);
+            synchronized (this) {
+                if (decimal ? entry.decimalResult != null : entry.exactResult != null) {
+                    // Another caller stored it first
+                    return result;
+                }
+                if (decimal) {
+                    entry.decimalResult = result;
+                } else {
+                    entry.exactResult = result;
+                }
+                // Huge results count toward the bound once they are known, unless the
+                // entry has been dropped meanwhile
+                if (entry.kept) {
+                    weight += result.length();
+                    entry.weight += result.length();
+                    evict();
+                }
+            }
+            return result;
+        } catch (RuntimeException e) {
+            Metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Compiles an expression, reusing the program of an earlier call
+     *
+     * @param expression The expression to compile
+     * @param mode The mode the expression is compiled in
+     * @return The compiled program
+     */
+    public Program compile(CharSequence expression, int mode) {
+        return lookup(expression, mode, Radix.DECIMAL, false).program;
+    }
+
+    private Entry lookup(CharSequence expression, int mode, Radix radix, boolean decimals) {
+        // Names and calls are not normalized; their text is kept as typed
+        String text = (symbols != null && SymbolTable.containsName(expression)) || containsCall(expression)
+                ? expression.toString() : normalize(expression, decimals, radix);
+        Key key = new Key(mode, radix, decimals, text);
+        long generation;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hitCount++;
+                Metrics.CACHE_HITS.increment();
+                return entry;
+            }
+            missCount++;
+            generation = symbolGeneration;
+        }
+        Metrics.CACHE_MISSES.increment();
+        long start = Metrics.start();
+        Entry entry = new Entry(decimals ? ExpressionCompiler.compileDecimal(key.text, radix, symbols)
+                : ExpressionCompiler.compile(key.text, radix, symbols));
+        Metrics.PARSE.stop(start);
+        entry.weight = key.text.length() + entry.program.length();
+        synchronized (this) {
+            Entry raced = entries.get(key);
+            if (raced != null) {
+                return raced;
+            }
+            // A name changed while the table was read, so the program may be stale by now:
+            // it answers this call, but its invalidation has already gone by
+            if (generation != symbolGeneration) {
+                return entry;
+            }
+            store(key, entry);
+        }
+        return entry;
+    }
+
+    private void store(Key key, Entry entry) {
+        entries.put(key, entry);
+        entry.kept = true;
+        weight += entry.weight;
+        for (int slot : entry.program.dependencies()) {
+            while (dependents.size() <= slot) {
+                dependents.add(null);
+            }
+            HashSet<Key> keys = dependents.get(slot);
+            if (keys == null) {
+                keys = new HashSet<>();
+                dependents.set(slot, keys);
+            }
+            keys.add(key);
+        }
+        evict();
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        // The newest entry always stays, even if it alone exceeds the bound
+        while (weight > maxWeight && entries.size() > 1) {
+            Map.Entry<Key, Entry> eldest = iterator.next();
+            iterator.remove();
+            removed(eldest.getKey(), eldest.getValue());
+            evictionCount++;
+        }
+    }
+
+    // Accounts for an entry that has left the map
+    private void removed(Key key, Entry entry) {
+        entry.kept = false;
+        weight -= entry.weight;
+        for (int slot : entry.program.dependencies()) {
+            HashSet<Key> keys = dependents.get(slot);
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    // Drops the entries compiled against a name that has changed
+    private synchronized void invalidateSymbol(int slot) {
+        symbolGeneration++;
+        if (slot >= dependents.size() || dependents.get(slot) == null) {
+            return;
+        }
+        HashSet<Key> keys = dependents.set(slot, null);
+        for (Key key : keys) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                removed(key, entry);
+                symbolInvalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Drops every entry of one mode
+     *
+     * @param mode The mode to drop
+     */
+    public synchronized void invalidate(int mode) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Entry> next = iterator.next();
+            if (next.getKey().mode == mode) {
+                iterator.remove();
+                removed(next.getKey(), next.getValue());
+            }
+        }
+    }
+
+    /**
+     * Drops every entry
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.kept = false;
+        }
+        entries.clear();
+        dependents.clear();
+        weight = 0;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return The number of entries dropped because a name they depend on changed
+     */
+    public synchronized long symbolInvalidationCount() {
+        return symbolInvalidationCount;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int weight() {
+        return weight;
+    }
+
+    /**
+     * Rewrites an expression into the canonical text of its tokens, so that spellings
+     * the compiler cannot tell apart share one cache entry. Leading zeros of literals
+     * and skipped characters are dropped; a single space is kept between two literals
+     * that were separated by skipped characters, since those stay two operands.
+     *
+     * @param expression The expression to normalize
+     * @return The canonical text
+     */
+    public static String normalize(CharSequence expression) {
+        return normalize(expression, false);
+    }
+
+    /**
+     * Rewrites an expression into the canonical text of its tokens, like
+     * {@link #normalize(CharSequence)}, optionally keeping the decimal points that
+     * {@link ExpressionCompiler#compileDecimal} reads as part of literals. Trailing zeros
+     * after a point are dropped, so {@code 1.50} and {@code 1.5} share one entry.
+     *
+     * @param expression The expression to normalize
+     * @param decimals True if literals may have a decimal point
+     * @return The canonical text
+     */
+    public static String normalize(CharSequence expression, boolean decimals) {
+        return normalize(expression, decimals, Radix.DECIMAL);
+    }
+
+    /**
+     * Rewrites an expression into the canonical text of its tokens, like
+     * {@link #normalize(CharSequence, boolean)}, reading literals in a base, so that the
+     * letters A to F are kept as digits in hexadecimal
+     *
+     * @param expression The expression to normalize
+     * @param decimals True if literals may have a point
+     * @param radix The base of the literals
+     * @return The canonical text
+     */
+    public static String normalize(CharSequence expression, boolean decimals, Radix radix) {
+        int length = expression.length();
+        StringBuilder sb = new StringBuilder(length);
+        boolean lastWasLiteral = false;
+        boolean separated = false;
+        for (int i = 0; i < length; i++) {
+            char c = expression.charAt(i);
+            if (radix.digit(c) >= 0 || (decimals && ExpressionCompiler.isPoint(expression, i, radix))) {
+                // A point right after a literal that has one already starts the next literal, as in 1.5.5
+                if (lastWasLiteral && (separated || c == '.')) {
+                    sb.append(' ');
+                }
+                while (c == '0' && i + 1 < length && radix.digit(expression.charAt(i + 1)) >= 0) {
+                    c = expression.charAt(++i);
+                }
+                int literalStart = sb.length();
+                sb.append(c);
+                boolean point = c == '.';
+                while (i + 1 < length && (radix.digit(expression.charAt(i + 1)) >= 0
+                        || (decimals && !point && ExpressionCompiler.isPoint(expression, i + 1, radix)))) {
+                    c = expression.charAt(++i);
+                    point |= c == '.';
+                    sb.append(c);
+                }
+                if (point) {
+                    // Trailing zeros after the point do not change the value
+                    while (sb.charAt(sb.length() - 1) == '0') {
+                        sb.setLength(sb.length() - 1);
+                    }
+                    if (sb.charAt(sb.length() - 1) == '.') {
+                        sb.setLength(sb.length() - 1);
+                    }
+                    if (sb.length() == literalStart) {
+                        sb.append('0');
+                    }
+                }
+                lastWasLiteral = true;
+                separated = false;
+            } else if (Operators.isOperator(c)) {
+                sb.append(c);
+                lastWasLiteral = false;
+            } else {
+                separated = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    // True if the text may call a function: it has a lowercase keyword or a factorial
+    private static boolean containsCall(CharSequence expression) {
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if ((c >= 'a' && c <= 'z') || c == '!') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Key {
+        final int mode;
+        final Radix radix;
+        // True if the text was compiled with decimal literals
+        final boolean decimals;
+        final String text;
+
+        Key(int mode, Radix radix, boolean decimals, String text) {
+            this.mode = mode;
+            this.radix = radix;
+            this.decimals = decimals;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mode == other.mode && radix == other.radix && decimals == other.decimals && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (8 * mode + 2 * radix.ordinal() + (decimals ? 1 : 0)) + text.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final Program program;
+        // True while the entry is in the map and counts toward the bound
+        boolean kept;
+        int weight;
+        long result;
+        boolean hasResult;
+        // Result of EXACT, or of RATIONAL for entries compiled with decimal literals
+        String exactResult;
+        // Result of DECIMAL, for entries compiled with decimal literals
+        String decimalResult;
+
+        Entry(Program program) {
+            this.program = program;
+        }
+    }
+}
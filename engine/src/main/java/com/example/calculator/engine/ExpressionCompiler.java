@@ -0,0 +1,502 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Compiles calculator expressions into postfix {@link Program}s.
+ * <p>
+ * Parsing follows the keypad grammar: runs of digits are literals, in decimal unless a
+ * {@link Radix} is given, the symbols + - x ÷ ^ and the bitwise & | ⊻ « » are operators and
+ * every other character is skipped. A {@link MathFunction}
+ * keyword directly followed by parentheses, such as {@code sqrt(2)}, is a call and counts as
+ * one operand; a {@code !} after an operand takes its factorial. Operators are ordered
+ * with {@link Operators#precedenceOf(int)}, so x ÷ ^ bind tighter than + -, which bind
+ * tighter than the bitwise operators, and operators of the same level associate to the left.
+ * With a {@link SymbolTable}, a run of uppercase letters, digits and underscores that starts
+ * with a letter is a name; in hexadecimal the letters A to F start a literal instead.
+ */
+public final class ExpressionCompiler {
+
+    // 10^0 to 10^18, the powers of ten that fit in a long
+    private static final long[] LONG_POWERS_OF_TEN = new long[19];
+
+    static {
+        LONG_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < LONG_POWERS_OF_TEN.length; i++) {
+            LONG_POWERS_OF_TEN[i] = LONG_POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    // Calls nested deeper than this are taken for a function that calls itself
+    static final int MAX_NESTING = 32;
+    // Longest code that calls may expand to
+    static final int MAX_CODE_LENGTH = 1 << 20;
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Compiles an expression
+     *
+     * @param expression The expression to compile
+     * @return The compiled program
+     * @throws MalformedExpressionException If an operator lacks an operand or there is no operand at all
+     */
+    public static Program compile(CharSequence expression) {
+        return compile(expression, false);
+    }
+
+    /**
+     * Compiles an expression that may refer to the variable x. An x where an operand is
+     * expected (at the start or right after an operator) is the variable, elsewhere it
+     * stays the multiplication operator, so {@code x^2+3xx} reads as x² + 3·x.
+     *
+     * @param expression The expression to compile
+     * @param variables True if x in operand position is the variable
+     * @return The compiled program, using {@link Operators#LOAD} for the variable
+     * @throws MalformedExpressionException If an operator lacks an operand or there is no operand at all
+     */
+    public static Program compile(CharSequence expression, boolean variables) {
+        return compile(expression, variables, false);
+    }
+
+    /**
+     * Compiles an expression whose literals may have a decimal point, for
+     * {@link Precision#RATIONAL}. A literal such as {@code 1.25} compiles to the division
+     * {@code 125 ÷ 100}, which is exact in rational arithmetic; a point that is not followed
+     * by a digit is skipped like any other character.
+     *
+     * @param expression The expression to compile
+     * @return The compiled program
+     * @throws MalformedExpressionException If an operator lacks an operand or there is no operand at all
+     */
+    public static Program compileDecimal(CharSequence expression) {
+        return compile(expression, Radix.DECIMAL, false, true, null, null, 0);
+    }
+
+    /**
+     * Compiles an expression that may refer to the names in a symbol table: a variable such
+     * as {@code M}, or a call such as {@code F(2+3)} of a function. The current definition of
+     * every name is bound into the program, so the program does not change when the table
+     * does; {@link Program#dependsOn(int)} tells which changes make it stale.
+     *
+     * @param expression The expression to compile
+     * @param symbols The names it may refer to
+     * @return The compiled program
+     * @throws MalformedExpressionException If an operator lacks an operand, there is no operand
+     *                                      at all, a name is unknown or functions call each other endlessly
+     */
+    public static Program compile(CharSequence expression, SymbolTable symbols) {
+        return compile(expression, Radix.DECIMAL, false, false, symbols, null, 0);
+    }
+
+    /**
+     * Compiles an expression like {@link #compileDecimal(CharSequence)} that may refer to the
+     * names in a symbol table like {@link #compile(CharSequence, SymbolTable)}. Variables keep
+     * their exact fractional value.
+     *
+     * @param expression The expression to compile
+     * @param symbols The names it may refer to
+     * @return The compiled program
+     * @throws MalformedExpressionException If an operator lacks an operand, there is no operand
+     *                                      at all, a name is unknown or functions call each other endlessly
+     */
+    public static Program compileDecimal(CharSequence expression, SymbolTable symbols) {
+        return compile(expression, Radix.DECIMAL, false, true, symbols, null, 0);
+    }
+
+    /**
+     * Compiles a function of x like {@link #compile(CharSequence, boolean)} whose literals may
+     * have a point and which may refer to names, for plotting in {@link Precision#DECIMAL}
+     *
+     * @param expression The expression to compile
+     * @param symbols The names it may refer to, or null for none
+     * @param variables True if x in operand position is the variable
+     * @return The compiled program, using {@link Operators#LOAD} for the variable
+     * @throws MalformedExpressionException If an operator lacks an operand, there is no operand
+     *                                      at all, a name is unknown or functions call each other endlessly
+     */
+    public static Program compileDecimal(CharSequence expression, SymbolTable symbols, boolean variables) {
+        return compile(expression, Radix.DECIMAL, variables, true, symbols, null, 0);
+    }
+
+    /**
+     * Compiles an expression whose literals are written in a base, for programmer mode. In
+     * hexadecimal the letters A to F are digits, so a name cannot start with one of them.
+     * A digit that is too large for the base, such as 2 in binary, is an error rather than
+     * a separator.
+     *
+     * @param expression The expression to compile
+     * @param radix The base of the literals
+     * @param symbols The names it may refer to, or null for none
+     * @return The compiled program
+     * @throws MalformedExpressionException If a digit is invalid in the base, an operator lacks
+     *                                      an operand, there is no operand at all or a name is unknown
+     */
+    public static Program compile(CharSequence expression, Radix radix, SymbolTable symbols) {
+        return compile(expression, radix, false, false, symbols, null, 0);
+    }
+
+    /**
+     * Compiles an expression whose literals are written in a base like
+     * {@link #compile(CharSequence, Radix, SymbolTable)} and may have a point like
+     * {@link #compileDecimal(CharSequence, SymbolTable)}; {@code A.8} in hexadecimal is 10.5.
+     *
+     * @param expression The expression to compile
+     * @param radix The base of the literals
+     * @param symbols The names it may refer to, or null for none
+     * @return The compiled program
+     * @throws MalformedExpressionException If a digit is invalid in the base, an operator lacks
+     *                                      an operand, there is no operand at all or a name is unknown
+     */
+    public static Program compileDecimal(CharSequence expression, Radix radix, SymbolTable symbols) {
+        return compile(expression, radix, false, true, symbols, null, 0);
+    }
+
+    private static Program compile(CharSequence expression, boolean variables, boolean decimals) {
+        return compile(expression, Radix.DECIMAL, variables, decimals, null, null, 0);
+    }
+
+    // Compiles a function argument or body when nesting > 0; argument, if not null, is the code every x expands to
+    private static Program compile(CharSequence expression, Radix radix, boolean variables, boolean decimals,
+                                   SymbolTable symbols, Program argument, int nesting) {
+        if (nesting > MAX_NESTING) {
+            throw new MalformedExpressionException("Functions nest too deeply");
+        }
+        int length = expression.length();
+        // Every character produces at most one instruction, or two for a decimal literal; names grow the arrays
+        int[] code = new int[decimals ? 2 * length : length];
+        long[] constants = new long[decimals ? length : (length + 1) / 2];
+        BigInteger[] bigConstants = null;
+        int[] operators = new int[length];
+        // Slots of the names bound into the code, null until there is one
+        BitSet dependencies = null;
+        int codeSize = 0;
+        int constantCount = 0;
+        int operatorCount = 0;
+        int depth = 0;
+        int maxStack = 0;
+        boolean expectOperand = true;
+
+        for (int i = 0; i < length; i++) {
+            Cancellation.check(i);
+            char c = expression.charAt(i);
+            Program operand = null;
+            MathFunction function;
+            if (radix.digit(c) >= 0 || (decimals && isPoint(expression, i, radix))) {
+                int start = i;
+                long num = 0;
+                boolean fits = true;
+                int base = radix.radix();
+                // Digits after the point, -1 while there is no point
+                int scale = -1;
+                // Zeros at the end of the digits after the point
+                int trailingZeros = 0;
+                for (; i < length; i++) {
+                    char next = expression.charAt(i);
+                    if (decimals && scale < 0 && isPoint(expression, i, radix)) {
+                        scale = 0;
+                        continue;
+                    }
+                    int digit = radix.digit(next);
+                    if (digit < 0) {
+                        break;
+                    }
+                    if (digit >= base) {
+                        throw new MalformedExpressionException(next + " is not a digit in base " + base);
+                    }
+                    fits &= num <= (Long.MAX_VALUE - digit) / base;
+                    num = num * base + digit;
+                    if (scale >= 0) {
+                        scale++;
+                        trailingZeros = digit == 0 ? trailingZeros + 1 : 0;
+                    }
+                }
+                i--;
+                if (trailingZeros > 0) {
+                    // Trailing zeros after the point do not change the value; dropping them makes 1.50
+                    // compile like 1.5, so both spellings round alike in floating point, as normalize assumes
+                    scale -= trailingZeros;
+                    for (int z = 0; z < trailingZeros && fits; z++) {
+                        num /= base;
+                    }
+                }
+                if (!fits) {
+                    if (bigConstants == null) {
+                        bigConstants = new BigInteger[constants.length];
+                    }
+                    bigConstants[constantCount] = parseBig(expression, start, i + 1 - trailingZeros, radix);
+                }
+                // The low bits are kept even when the literal overflows, for 32-bit evaluation
+                constants[constantCount] = num;
+                code[codeSize++] = Program.instruction(Operators.PUSH, constantCount++);
+                maxStack = Math.max(maxStack, ++depth);
+                if (scale > 0) {
+                    // Divide the digits by base^scale
+                    if (base == 10 && scale < LONG_POWERS_OF_TEN.length) {
+                        constants[constantCount] = LONG_POWERS_OF_TEN[scale];
+                    } else if (base != 10 && scale * Integer.numberOfTrailingZeros(base) < Long.SIZE - 1) {
+                        constants[constantCount] = 1L << (scale * Integer.numberOfTrailingZeros(base));
+                    } else {
+                        if (bigConstants == null) {
+                            bigConstants = new BigInteger[constants.length];
+                        }
+                        bigConstants[constantCount] = BigInteger.valueOf(base).pow(scale);
+                    }
+                    code[codeSize++] = Program.instruction(Operators.PUSH, constantCount++);
+                    maxStack = Math.max(maxStack, depth + 1);
+                    code[codeSize++] = Program.instruction(Operators.DIVIDE, 0);
+                }
+                expectOperand = false;
+            } else if (c == '!' && !expectOperand) {
+                // The factorial applies to the operand just before it, ahead of any operator
+                code[codeSize++] = Program.instruction(Operators.CALL, MathFunction.FACTORIAL.ordinal());
+            } else if ((function = MathFunction.callAt(expression, i)) != null) {
+                int open = i + function.keyword().length();
+                int close = closingParenthesis(expression, open, function.keyword());
+                operand = call(function, expression, open + 1, close, radix, variables, decimals, symbols, argument, nesting);
+                i = close;
+                expectOperand = false;
+            } else if (variables && expectOperand && c == 'x') {
+                if (argument == null) {
+                    code[codeSize++] = Program.instruction(Operators.LOAD, 0);
+                    maxStack = Math.max(maxStack, ++depth);
+                } else {
+                    operand = argument;
+                }
+                expectOperand = false;
+            } else if (symbols != null && SymbolTable.isNameStart(c)) {
+                int end = i + 1;
+                while (end < length && SymbolTable.isNamePart(expression.charAt(end))) {
+                    end++;
+                }
+                String name = expression.subSequence(i, end).toString();
+                int slot = symbols.slotOf(name);
+                String body;
+                BigInteger numerator;
+                BigInteger denominator;
+                synchronized (symbols) {
+                    body = slot < 0 ? null : symbols.body(slot);
+                    numerator = slot < 0 ? null : symbols.numerator(slot);
+                    denominator = slot < 0 ? null : symbols.denominator(slot);
+                }
+                if (body != null) {
+                    int close = closingParenthesis(expression, end, name);
+                    // Inside a function body, x in the argument is still the body's own argument
+                    Program value = compile(expression.subSequence(end + 1, close), radix, variables, decimals, symbols,
+                            argument, nesting + 1);
+                    // Bodies are always written in decimal
+                    operand = compile(body, Radix.DECIMAL, true, decimals, symbols, value, nesting + 1);
+                    i = close;
+                } else if (numerator != null) {
+                    operand = constant(numerator, denominator, decimals);
+                    i = end - 1;
+                } else {
+                    throw new MalformedExpressionException("Unknown name " + name);
+                }
+                if (dependencies == null) {
+                    dependencies = new BitSet();
+                }
+                dependencies.set(slot);
+                expectOperand = false;
+            } else if (Operators.isOperator(c)) {
+                int opcode = Operators.opcodeOf(c);
+                int precedence = Operators.precedenceOf(opcode);
+                while (operatorCount > 0 && Operators.precedenceOf(operators[operatorCount - 1]) >= precedence) {
+                    depth = emitOperator(code, codeSize++, operators[--operatorCount], depth);
+                }
+                operators[operatorCount++] = opcode;
+                expectOperand = true;
+            }
+            if (operand != null) {
+                // Splice the operand's code in, renumbering its constants after ours
+                int rest = length - i - 1;
+                int neededCode = codeSize + operatorCount + operand.length() + (decimals ? 2 * rest : rest);
+                if (neededCode > MAX_CODE_LENGTH) {
+                    throw new MalformedExpressionException("Expression is too long");
+                }
+                if (neededCode > code.length) {
+                    code = Arrays.copyOf(code, Math.max(neededCode, 2 * code.length));
+                }
+                int neededConstants = constantCount + operand.constantCount() + rest;
+                if (neededConstants > constants.length) {
+                    constants = Arrays.copyOf(constants, Math.max(neededConstants, 2 * constants.length));
+                }
+                BigInteger[] operandBig = operand.bigConstants();
+                if (operandBig != null && bigConstants == null) {
+                    bigConstants = new BigInteger[constants.length];
+                } else if (bigConstants != null && bigConstants.length < constants.length) {
+                    bigConstants = Arrays.copyOf(bigConstants, constants.length);
+                }
+                codeSize = copyCode(operand, code, codeSize, constantCount);
+                System.arraycopy(operand.constants(), 0, constants, constantCount, operand.constantCount());
+                if (operandBig != null) {
+                    System.arraycopy(operandBig, 0, bigConstants, constantCount, operand.constantCount());
+                }
+                constantCount += operand.constantCount();
+                maxStack = Math.max(maxStack, depth + operand.maxStack());
+                depth++;
+                if (operand.dependencies().length > 0) {
+                    if (dependencies == null) {
+                        dependencies = new BitSet();
+                    }
+                    for (int slot : operand.dependencies()) {
+                        dependencies.set(slot);
+                    }
+                }
+            }
+        }
+        while (operatorCount > 0) {
+            depth = emitOperator(code, codeSize++, operators[--operatorCount], depth);
+        }
+        if (depth == 0) {
+            throw new MalformedExpressionException("Expression has no operand");
+        }
+        if (nesting > 0 && depth > 1) {
+            // A leftover operand inside a call would be left on the caller's stack
+            throw new MalformedExpressionException("Function argument has more than one operand");
+        }
+        code = Arrays.copyOf(code, codeSize);
+        constants = Arrays.copyOf(constants, constantCount);
+        bigConstants = bigConstants == null ? null : Arrays.copyOf(bigConstants, constantCount);
+        if (dependencies == null) {
+            return new Program(code, constants, bigConstants, maxStack);
+        }
+        return new Program(code, constants, bigConstants, maxStack, toSlots(dependencies));
+    }
+
+    // Compiles the comma-separated arguments of a call in [start, end) followed by the CALL instruction
+    private static Program call(MathFunction function, CharSequence expression, int start, int end, Radix radix,
+                                boolean variables, boolean decimals, SymbolTable symbols, Program argument, int nesting) {
+        Program[] arguments = new Program[function.arity()];
+        int count = 0;
+        int open = 0;
+        int from = start;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? expression.charAt(i) : ',';
+            if (c == '(') {
+                open++;
+            } else if (c == ')') {
+                open--;
+            } else if (c == ',' && open == 0) {
+                if (count == arguments.length) {
+                    break;
+                }
+                arguments[count++] = compile(expression.subSequence(from, i), radix, variables, decimals, symbols,
+                        argument, nesting + 1);
+                from = i + 1;
+            }
+        }
+        if (count < arguments.length || from <= end) {
+            throw new MalformedExpressionException(function.keyword() + " takes " + arguments.length
+                    + (arguments.length == 1 ? " argument" : " arguments"));
+        }
+        int codeLength = 1;
+        int constantCount = 0;
+        boolean big = false;
+        int maxStack = 0;
+        BitSet dependencies = new BitSet();
+        for (int a = 0; a < count; a++) {
+            codeLength += arguments[a].length();
+            constantCount += arguments[a].constantCount();
+            big |= arguments[a].bigConstants() != null;
+            // Earlier arguments wait on the stack below later ones
+            maxStack = Math.max(maxStack, a + arguments[a].maxStack());
+            for (int slot : arguments[a].dependencies()) {
+                dependencies.set(slot);
+            }
+        }
+        int[] code = new int[codeLength];
+        long[] constants = new long[constantCount];
+        BigInteger[] bigConstants = big ? new BigInteger[constantCount] : null;
+        int codeSize = 0;
+        int constantOffset = 0;
+        for (int a = 0; a < count; a++) {
+            Program part = arguments[a];
+            codeSize = copyCode(part, code, codeSize, constantOffset);
+            System.arraycopy(part.constants(), 0, constants, constantOffset, part.constantCount());
+            if (part.bigConstants() != null) {
+                System.arraycopy(part.bigConstants(), 0, bigConstants, constantOffset, part.constantCount());
+            }
+            constantOffset += part.constantCount();
+        }
+        code[codeSize] = Program.instruction(Operators.CALL, function.ordinal());
+        return new Program(code, constants, bigConstants, maxStack, toSlots(dependencies));
+    }
+
+    // Copies the code of a program to a position, moving its constant indices up by an offset, and returns the end
+    private static int copyCode(Program program, int[] code, int position, int constantOffset) {
+        for (int instruction : program.code()) {
+            code[position++] = Program.opcode(instruction) == Operators.PUSH
+                    ? Program.instruction(Operators.PUSH, Program.argument(instruction) + constantOffset)
+                    : instruction;
+        }
+        return position;
+    }
+
+    private static int[] toSlots(BitSet dependencies) {
+        int[] slots = new int[dependencies.cardinality()];
+        for (int slot = dependencies.nextSetBit(0), k = 0; slot >= 0; slot = dependencies.nextSetBit(slot + 1)) {
+            slots[k++] = slot;
+        }
+        return slots;
+    }
+
+    // Finds the parenthesis that closes a call whose name ends at start
+    private static int closingParenthesis(CharSequence expression, int start, String name) {
+        if (start == expression.length() || expression.charAt(start) != '(') {
+            throw new MalformedExpressionException("Missing argument for " + name);
+        }
+        int open = 0;
+        for (int i = start; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '(') {
+                open++;
+            } else if (c == ')' && --open == 0) {
+                return i;
+            }
+        }
+        throw new MalformedExpressionException("Missing ) after " + name);
+    }
+
+    // Compiles a variable's value: the fraction itself for decimals, otherwise its integer part
+    private static Program constant(BigInteger numerator, BigInteger denominator, boolean decimals) {
+        if (!decimals || denominator.equals(BigInteger.ONE)) {
+            BigInteger value = decimals ? numerator : numerator.divide(denominator);
+            return new Program(new int[]{Program.instruction(Operators.PUSH, 0)}, new long[]{value.longValue()},
+                    value.bitLength() < 64 ? null : new BigInteger[]{value}, 1);
+        }
+        return new Program(new int[]{Program.instruction(Operators.PUSH, 0), Program.instruction(Operators.PUSH, 1),
+                Program.instruction(Operators.DIVIDE, 0)}, new long[]{numerator.longValue(), denominator.longValue()},
+                numerator.bitLength() < 64 && denominator.bitLength() < 64 ? null : new BigInteger[]{numerator, denominator}, 2);
+    }
+
+    // True if the character at i is a decimal point that starts or continues a literal
+    static boolean isPoint(CharSequence expression, int i, Radix radix) {
+        return expression.charAt(i) == '.' && i + 1 < expression.length() && radix.digit(expression.charAt(i + 1)) >= 0;
+    }
+
+    // Parses a literal that does not fit in a long; decimal digits may be any Unicode decimal digits, a point is skipped
+    private static BigInteger parseBig(CharSequence expression, int start, int end, Radix radix) {
+        StringBuilder digits = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = expression.charAt(i);
+            if (c != '.') {
+                digits.append(Character.forDigit(radix.digit(c), radix.radix()));
+            }
+        }
+        return new BigInteger(digits.toString(), radix.radix());
+    }
+
+    private static int emitOperator(int[] code, int position, int opcode, int depth) {
+        if (depth < 2) {
+            throw new MalformedExpressionException("Missing operand for " + Operators.symbolOf(opcode));
+        }
+        code[position] = Program.instruction(opcode, 0);
+        return depth - 1;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates an expression while it is typed, one character at a time.
+ * <p>
+ * The evaluator keeps the state of the compiler between keystrokes: the literal being typed,
+ * the operand stack and the pending operators. Because pending operators are strictly ordered by
+ * precedence, at most {@link Operators#PRECEDENCE_LEVELS} of them are waiting at any time, so
+ * appending a character and computing the preview each take a constant amount of work. Every
+ * append records the few values it is about to overwrite in an undo log, which lets
+ * {@link #deleteLast()} roll back one character without re-parsing.
+ * <p>
+ * Results use the 32-bit semantics of {@link Evaluator}. An instance is not thread-safe.
+ */
+public final class IncrementalEvaluator {
+
+    // Operand slots below the top that one operator can overwrite while reducing
+    private static final int SAVED_OPERANDS = Operators.PRECEDENCE_LEVELS + 1;
+    // Undo log layout: longs and ints recorded per appended character
+    private static final int LONG_STRIDE = 1 + SAVED_OPERANDS;
+    private static final int INT_STRIDE = 5 + Operators.PRECEDENCE_LEVELS;
+
+    // Operand stack
+    private long[] operands = new long[16];
+    private int operandCount;
+    // Pending operators, lowest precedence at the bottom
+    private final int[] operators = new int[Operators.PRECEDENCE_LEVELS];
+    private int operatorCount;
+    // Literal being typed
+    private long literal;
+    private boolean inLiteral;
+    // Number of operators typed so far
+    private int operatorsSeen;
+    // Position of the character that made the expression invalid, or -1
+    private int errorAt = -1;
+
+    // Undo log, one record per appended character
+    private long[] savedLongs = new long[16 * LONG_STRIDE];
+    private int[] savedInts = new int[16 * INT_STRIDE];
+    private int length;
+
+    // Result of the last preview computation
+    private long preview;
+
+    /**
+     * Forgets all input
+     */
+    public void reset() {
+        operandCount = 0;
+        operatorCount = 0;
+        literal = 0;
+        inLiteral = false;
+        operatorsSeen = 0;
+        errorAt = -1;
+        length = 0;
+    }
+
+    /**
+     * @return The number of characters appended and not deleted
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Appends every character of a text
+     *
+     * @param text The characters to append
+     */
+    public void append(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    /**
+     * Appends one character of input
+     *
+     * @param c The character typed
+     */
+    public void append(char c) {
+        save();
+        length++;
+        if (errorAt >= 0) {
+            return;
+        }
+        // Any Unicode decimal digit, as the compiler reads it
+        int digit = Radix.DECIMAL.digit(c);
+        if (digit >= 0) {
+            literal = inLiteral ? literal * 10 + digit : digit;
+            inLiteral = true;
+            return;
+        }
+        endLiteral();
+        if (Operators.isOperator(c)) {
+            int opcode = Operators.opcodeOf(c);
+            int precedence = Operators.precedenceOf(opcode);
+            operatorsSeen++;
+            try {
+                while (operatorCount > 0 && Operators.precedenceOf(operators[operatorCount - 1]) >= precedence) {
+                    reduce(operators[--operatorCount]);
+                }
+                operators[operatorCount++] = opcode;
+            } catch (RuntimeException e) {
+                // Division by zero or a missing operand; nothing can be previewed until it is deleted
+                errorAt = length - 1;
+            }
+        }
+    }
+
+    /**
+     * Removes the last appended character, restoring the state before it was typed
+     */
+    public void deleteLast() {
+        if (length == 0) {
+            return;
+        }
+        length--;
+        int l = length * LONG_STRIDE;
+        int i = length * INT_STRIDE;
+        literal = savedLongs[l];
+        inLiteral = savedInts[i] != 0;
+        operatorsSeen = savedInts[i + 1];
+        errorAt = savedInts[i + 2];
+        operatorCount = savedInts[i + 4];
+        System.arraycopy(savedInts, i + 5, operators, 0, Operators.PRECEDENCE_LEVELS);
+        operandCount = savedInts[i + 3];
+        int first = Math.max(0, operandCount - SAVED_OPERANDS);
+        System.arraycopy(savedLongs, l + 1, operands, first, operandCount - first);
+    }
+
+    /**
+     * Computes the value the expression would have if it ended here
+     *
+     * @return True if the input so far is a complete expression, then {@link #preview()} holds its value
+     */
+    public boolean computePreview() {
+        if (errorAt >= 0) {
+            return false;
+        }
+        int count = operandCount + (inLiteral ? 1 : 0);
+        if (count < operatorCount + 1) {
+            return false;
+        }
+        // Reduce the pending operators on copies of the top operands
+        long top = inLiteral ? (int) literal : operands[operandCount - 1];
+        int below = inLiteral ? operandCount - 1 : operandCount - 2;
+        try {
+            for (int k = operatorCount - 1; k >= 0; k--) {
+                top = Operators.apply(operators[k], (int) operands[below--], (int) top);
+            }
+        } catch (UnsupportedOperationException e) {
+            return false;
+        }
+        preview = top;
+        return true;
+    }
+
+    /**
+     * @return The value found by the last successful {@link #computePreview()}
+     */
+    public long preview() {
+        return preview;
+    }
+
+    /**
+     * @return True if at least one operator has been typed, so the preview differs from the input
+     */
+    public boolean hasOperator() {
+        return operatorsSeen > 0;
+    }
+
+    // Pushes the literal being typed onto the operand stack
+    private void endLiteral() {
+        if (inLiteral) {
+            if (operandCount == operands.length) {
+                operands = Arrays.copyOf(operands, operandCount * 2);
+            }
+            operands[operandCount++] = (int) literal;
+            inLiteral = false;
+        }
+    }
+
+    private void reduce(int opcode) {
+        if (operandCount < 2) {
+            throw new MalformedExpressionException("Missing operand for " + Operators.symbolOf(opcode));
+        }
+        int operand2 = (int) operands[--operandCount];
+        operands[operandCount - 1] = Operators.apply(opcode, (int) operands[operandCount - 1], operand2);
+    }
+
+    // Records everything the next append may overwrite
+    private void save() {
+        if ((length + 1) * INT_STRIDE > savedInts.length) {
+            savedInts = Arrays.copyOf(savedInts, savedInts.length * 2);
+            savedLongs = Arrays.copyOf(savedLongs, savedLongs.length * 2);
+        }
+        int l = length * LONG_STRIDE;
+        int i = length * INT_STRIDE;
+        savedLongs[l] = literal;
+        savedInts[i] = inLiteral ? 1 : 0;
+        savedInts[i + 1] = operatorsSeen;
+        savedInts[i + 2] = errorAt;
+        savedInts[i + 3] = operandCount;
+        savedInts[i + 4] = operatorCount;
+        System.arraycopy(operators, 0, savedInts, i + 5, Operators.PRECEDENCE_LEVELS);
+        int first = Math.max(0, operandCount - SAVED_OPERANDS);
+        System.arraycopy(operands, first, savedLongs, l + 1, operandCount - first);
+    }
+}
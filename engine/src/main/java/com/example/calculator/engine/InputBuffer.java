@@ -0,0 +1,313 @@
+package com.example.calculator.engine;
+
+import java.util.Arrays;
+
+/**
+ * Editable expression input: a gap buffer of chars with a cursor.
+ * <p>
+ * The unused part of the array, the gap, always sits at the cursor, so typing and deleting
+ * there take constant time and never allocate once the array is large enough; moving the
+ * cursor costs the distance moved. The buffer is its own {@link CharSequence}, so it can be
+ * shown or compiled without copying.
+ * <p>
+ * Alongside every char the buffer keeps whether a token starts there. The index is lexical
+ * and coarser than the compiler's grammar: a run of literal chars is one token, every
+ * operator is a token of its own and a run of any other chars is one token. What a literal
+ * is made of depends on {@link #setLiterals how literals are read}: the digits of the base,
+ * A to F in hexadecimal, and a decimal point where literals may have one. Names, calls and
+ * parentheses are not modelled: {@code X2} is split into a run of other chars and a
+ * literal, and {@code sqrt(} with its parenthesis is a single run of other chars. Only the
+ * char after an edit can change its flag, so the index is kept up to date in constant time;
+ * changing how literals are read rebuilds it.
+ * An instance is not thread-safe.
+ */
+public final class InputBuffer implements CharSequence {
+
+    // Token classes of a char
+    private static final int LITERAL = 0;
+    private static final int OPERATOR = 1;
+    private static final int OTHER = 2;
+
+    // Text before the gap, the gap, then text after the gap
+    private char[] chars;
+    // Parallel to chars: true where a token starts
+    private boolean[] tokenStarts;
+    private int gapStart;
+    private int gapEnd;
+    // Number of tokens in the text
+    private int tokenCount;
+    // Number of chars that may start a name, kept so that no edit has to scan the text
+    private int nameStartCount;
+    private Radix radix = Radix.DECIMAL;
+    // True if a decimal point belongs to a literal
+    private boolean decimals;
+
+    public InputBuffer() {
+        this(64);
+    }
+
+    /**
+     * @param capacity The number of chars held before the buffer grows
+     */
+    public InputBuffer(int capacity) {
+        chars = new char[Math.max(1, capacity)];
+        tokenStarts = new boolean[chars.length];
+        gapEnd = chars.length;
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return chars[physical(index)];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") of " + length());
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(chars[physical(i)]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length());
+        sb.append(chars, 0, gapStart);
+        sb.append(chars, gapEnd, chars.length - gapEnd);
+        return sb.toString();
+    }
+
+    /**
+     * @return True if the buffer holds no chars
+     */
+    public boolean isEmpty() {
+        return length() == 0;
+    }
+
+    /**
+     * @return The position of the cursor, between 0 and {@link #length()}
+     */
+    public int cursor() {
+        return gapStart;
+    }
+
+    /**
+     * Moves the cursor
+     *
+     * @param position The new position, between 0 and {@link #length()}
+     */
+    public void setCursor(int position) {
+        if (position < 0 || position > length()) {
+            throw new IndexOutOfBoundsException("Cursor " + position + " of " + length());
+        }
+        if (position < gapStart) {
+            int count = gapStart - position;
+            System.arraycopy(chars, position, chars, gapEnd - count, count);
+            System.arraycopy(tokenStarts, position, tokenStarts, gapEnd - count, count);
+            gapStart -= count;
+            gapEnd -= count;
+        } else if (position > gapStart) {
+            int count = position - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, count);
+            System.arraycopy(tokenStarts, gapEnd, tokenStarts, gapStart, count);
+            gapStart += count;
+            gapEnd += count;
+        }
+    }
+
+    /**
+     * Inserts a char at the cursor and moves the cursor past it
+     *
+     * @param c The char to insert
+     */
+    public void insert(char c) {
+        if (gapStart == gapEnd) {
+            grow(1);
+        }
+        boolean start = startsToken(gapStart == 0 ? 0 : chars[gapStart - 1], gapStart > 0, c);
+        chars[gapStart] = c;
+        tokenStarts[gapStart] = start;
+        gapStart++;
+        if (start) {
+            tokenCount++;
+        }
+        if (SymbolTable.isNameStart(c)) {
+            nameStartCount++;
+        }
+        refreshAfterCursor();
+    }
+
+    /**
+     * Inserts text at the cursor and moves the cursor past it
+     *
+     * @param text The text to insert
+     */
+    public void insert(CharSequence text) {
+        if (gapEnd - gapStart < text.length()) {
+            grow(text.length());
+        }
+        for (int i = 0; i < text.length(); i++) {
+            insert(text.charAt(i));
+        }
+    }
+
+    /**
+     * Deletes the char before the cursor, if any
+     */
+    public void deleteBackward() {
+        if (gapStart == 0) {
+            return;
+        }
+        gapStart--;
+        if (tokenStarts[gapStart]) {
+            tokenCount--;
+        }
+        if (SymbolTable.isNameStart(chars[gapStart])) {
+            nameStartCount--;
+        }
+        refreshAfterCursor();
+    }
+
+    /**
+     * Removes all text
+     */
+    public void clear() {
+        gapStart = 0;
+        gapEnd = chars.length;
+        tokenCount = 0;
+        nameStartCount = 0;
+    }
+
+    /**
+     * Tells whether the text may refer to a name, like {@link SymbolTable#containsName} but
+     * without scanning the text
+     *
+     * @return True if any char of the text may start a name
+     */
+    public boolean containsName() {
+        return nameStartCount > 0;
+    }
+
+    /**
+     * Replaces all text and puts the cursor at the end
+     *
+     * @param text The new text
+     */
+    public void replace(CharSequence text) {
+        clear();
+        insert(text);
+    }
+
+    /**
+     * Sets how literals are read, as the compiler will read them, and rebuilds the token index
+     *
+     * @param radix The base of literals
+     * @param decimals True if literals may have a decimal point, as in {@link Precision#RATIONAL}
+     *                 and {@link Precision#DECIMAL}
+     */
+    public void setLiterals(Radix radix, boolean decimals) {
+        if (radix == this.radix && decimals == this.decimals) {
+            return;
+        }
+        this.radix = radix;
+        this.decimals = decimals;
+        tokenCount = 0;
+        int length = length();
+        for (int index = 0; index < length; index++) {
+            int i = physical(index);
+            tokenStarts[i] = startsToken(index == 0 ? 0 : charAt(index - 1), index > 0, chars[i]);
+            if (tokenStarts[i]) {
+                tokenCount++;
+            }
+        }
+    }
+
+    /**
+     * @return The number of tokens in the text
+     */
+    public int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Finds the start of the token holding a char
+     *
+     * @param index The position of the char
+     * @return The position of the first char of its token
+     */
+    public int tokenStart(int index) {
+        int i = index;
+        while (!tokenStarts[physical(i)]) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Finds the end of the token holding a char
+     *
+     * @param index The position of the char
+     * @return The position just after the last char of its token
+     */
+    public int tokenEnd(int index) {
+        int length = length();
+        int i = index + 1;
+        while (i < length && !tokenStarts[physical(i)]) {
+            i++;
+        }
+        return i;
+    }
+
+    // Recomputes the flag of the char just after the cursor, the only one an edit can change
+    private void refreshAfterCursor() {
+        if (gapEnd == chars.length) {
+            return;
+        }
+        boolean start = startsToken(gapStart == 0 ? 0 : chars[gapStart - 1], gapStart > 0, chars[gapEnd]);
+        if (start != tokenStarts[gapEnd]) {
+            tokenStarts[gapEnd] = start;
+            tokenCount += start ? 1 : -1;
+        }
+    }
+
+    private boolean startsToken(char previous, boolean hasPrevious, char c) {
+        int kind = kindOf(c);
+        return !hasPrevious || kind == OPERATOR || kind != kindOf(previous);
+    }
+
+    // Literal chars of the active mode, operators, and everything else, names included
+    private int kindOf(char c) {
+        if (radix.digit(c) >= 0 || (decimals && c == '.')) {
+            return LITERAL;
+        }
+        return Operators.isOperator(c) ? OPERATOR : OTHER;
+    }
+
+    private int physical(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + length());
+        }
+        return index < gapStart ? index : index + (gapEnd - gapStart);
+    }
+
+    private void grow(int needed) {
+        int length = length();
+        int capacity = Math.max(chars.length * 2, length + needed);
+        int after = chars.length - gapEnd;
+        char[] newChars = Arrays.copyOf(chars, capacity);
+        boolean[] newStarts = Arrays.copyOf(tokenStarts, capacity);
+        System.arraycopy(chars, gapEnd, newChars, capacity - after, after);
+        System.arraycopy(tokenStarts, gapEnd, newStarts, capacity - after, after);
+        chars = newChars;
+        tokenStarts = newStarts;
+        gapEnd = capacity - after;
+    }
+}
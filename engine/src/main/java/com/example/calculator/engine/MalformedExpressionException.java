@@ -0,0 +1,11 @@
+package com.example.calculator.engine;
+
+/**
+ * Thrown when an expression cannot be compiled, e.g. an operator is missing an operand.
+ */
+public class MalformedExpressionException extends IllegalArgumentException {
+
+    public MalformedExpressionException(String message) {
+        super(message);
+    }
+}
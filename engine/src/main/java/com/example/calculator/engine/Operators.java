@@ -0,0 +1,312 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.Accuracy;
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigInteger;
+
+/**
+ * Operator table of the calculator: precedence, opcodes and the arithmetic itself.
+ */
+public final class Operators {
+
+    // Opcode for pushing a constant onto the operand stack
+    public static final int PUSH = 0;
+    // Opcodes of the binary operators
+    public static final int ADD = 1;
+    public static final int SUBTRACT = 2;
+    public static final int MULTIPLY = 3;
+    public static final int DIVIDE = 4;
+    public static final int POWER = 5;
+    // Opcode for pushing the value of a variable, the argument selects the variable
+    public static final int LOAD = 6;
+    // Opcode for calling a function from MathFunction, the argument is its ordinal; the
+    // arguments are the topmost operands and are replaced by the result
+    public static final int CALL = 7;
+    // Opcodes of the bitwise operators of programmer mode, on two's complement integers
+    public static final int AND = 8;
+    public static final int OR = 9;
+    public static final int XOR = 10;
+    public static final int SHIFT_LEFT = 11;
+    public static final int SHIFT_RIGHT = 12;
+
+    // Number of opcodes, used to size lookup tables
+    static final int OPCODE_COUNT = 13;
+    // Number of distinct values returned by precedenceOf
+    public static final int PRECEDENCE_LEVELS = 6;
+    // Binding strength of every opcode, 0 for those that are not binary operators; the
+    // bitwise operators bind looser than + - in the order of C: shifts, then &, ⊻ and |
+    private static final int[] PRECEDENCE = new int[OPCODE_COUNT];
+
+    static {
+        PRECEDENCE[OR] = 1;
+        PRECEDENCE[XOR] = 2;
+        PRECEDENCE[AND] = 3;
+        PRECEDENCE[SHIFT_LEFT] = 4;
+        PRECEDENCE[SHIFT_RIGHT] = 4;
+        PRECEDENCE[ADD] = 5;
+        PRECEDENCE[SUBTRACT] = 5;
+        PRECEDENCE[MULTIPLY] = 6;
+        PRECEDENCE[DIVIDE] = 6;
+        PRECEDENCE[POWER] = 6;
+    }
+
+    private Operators() {
+    }
+
+    /**
+     * Determines if a character is an operator symbol
+     *
+     * @param c The character to check
+     * @return True if c is one of + - x ÷ ^ or the bitwise & | ⊻ « », otherwise false
+     */
+    public static boolean isOperator(char c) {
+        switch (c) {
+            case '+':
+            case '-':
+            case 'x':
+            case '÷':
+            case '^':
+            case '&':
+            case '|':
+            case '⊻':
+            case '«':
+            case '»':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Determines if the first operator has precedence over the second
+     *
+     * @param op1 The first operator
+     * @param op2 The second operator
+     * @return True if op1 has precedence over op2, otherwise false
+     */
+    public static boolean hasPrecedence(char op1, char op2) {
+        return precedenceOf(opcodeOf(op2)) >= precedenceOf(opcodeOf(op1));
+    }
+
+    /**
+     * Performs a mathematical operation
+     *
+     * @param operand2 The second operand
+     * @param operand1 The first operand
+     * @param operator The operator
+     * @return The result of the operation
+     */
+    public static int performOperation(int operand2, int operand1, char operator) {
+        return apply(opcodeOf(operator), operand1, operand2);
+    }
+
+    /**
+     * Applies a binary opcode with the 32-bit semantics of the calculator
+     *
+     * @param opcode The opcode of the operator
+     * @param operand1 The left operand
+     * @param operand2 The right operand
+     * @return The result of the operation
+     */
+    public static int apply(int opcode, int operand1, int operand2) {
+        switch (opcode) {
+            case ADD:
+                return operand1 + operand2;
+            case SUBTRACT:
+                return operand1 - operand2;
+            case MULTIPLY:
+                return operand1 * operand2;
+            case DIVIDE:
+                return divide(operand1, operand2);
+            case POWER:
+                return power(operand1, operand2);
+            case AND:
+                return operand1 & operand2;
+            case OR:
+                return operand1 | operand2;
+            case XOR:
+                return operand1 ^ operand2;
+            case SHIFT_LEFT:
+                return shiftLeft(operand1, operand2);
+            case SHIFT_RIGHT:
+                return shiftRight(operand1, operand2);
+            default:
+                throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Shifts the bits of an int; unlike Java's shift operators the count is not masked, so
+     * shifting by 32 or more gives 0, or -1 for a negative value shifted right
+     *
+     * @param operand1 The value
+     * @param operand2 The number of places to shift left; negative to shift right with the sign
+     * @return The shifted value
+     */
+    public static int shiftLeft(int operand1, int operand2) {
+        if (operand2 >= 0) {
+            return operand2 < Integer.SIZE ? operand1 << operand2 : 0;
+        }
+        return operand2 > -Integer.SIZE ? operand1 >> -operand2 : operand1 >> (Integer.SIZE - 1);
+    }
+
+    /**
+     * Shifts the bits of an int the other way than {@link #shiftLeft}
+     *
+     * @param operand1 The value
+     * @param operand2 The number of places to shift right with the sign; negative to shift left
+     * @return The shifted value
+     */
+    public static int shiftRight(int operand1, int operand2) {
+        return shiftLeft(operand1, operand2 == Integer.MIN_VALUE ? Integer.MAX_VALUE : -operand2);
+    }
+
+    /**
+     * Calls a function of one argument with the 32-bit semantics of the calculator: the
+     * floating-point result is narrowed like the result of ^, and the factorial wraps
+     * around like repeated x
+     *
+     * @param function The function
+     * @param operand The argument
+     * @return The result
+     * @throws ArithmeticException If the factorial of a negative number is taken
+     */
+    public static int call(MathFunction function, int operand) {
+        if (function == MathFunction.FACTORIAL) {
+            if (operand < 0) {
+                throw new ArithmeticException("Factorial of a negative number");
+            }
+            // From 34! on, the product holds at least 32 factors of two
+            int result = operand < 34 ? 1 : 0;
+            for (int i = 2; i <= operand && result != 0; i++) {
+                result *= i;
+            }
+            return result;
+        }
+        return (int) function.apply(operand, Accuracy.STRICT);
+    }
+
+    /**
+     * Calls a function of two arguments with the 32-bit semantics of the calculator: the
+     * exact result is narrowed to its low 32 bits
+     *
+     * @param function The function
+     * @param operand1 The first argument
+     * @param operand2 The second argument
+     * @return The result
+     * @throws ArithmeticException If the exact result would exceed {@link ExactEvaluator#MAX_RESULT_BITS}
+     */
+    public static int call(MathFunction function, int operand1, int operand2) {
+        return ExactEvaluator.call(function, BigInteger.valueOf(operand1), BigInteger.valueOf(operand2)).intValue();
+    }
+
+    /**
+     * Integer division that rejects a zero divisor
+     *
+     * @param operand1 The dividend
+     * @param operand2 The divisor
+     * @return The truncated quotient
+     */
+    public static int divide(int operand1, int operand2) {
+        if (operand2 == 0)
+            throw new UnsupportedOperationException("Cannot divide by zero");
+        return operand1 / operand2;
+    }
+
+    /**
+     * Exponentiation narrowed to an int the way the calculator always did it
+     *
+     * @param operand1 The base
+     * @param operand2 The exponent
+     * @return The power, saturated to the int range
+     */
+    public static int power(int operand1, int operand2) {
+        return (int) Math.pow(operand1, operand2);
+    }
+
+    /**
+     * Maps an operator symbol to its opcode
+     *
+     * @param operator The operator symbol
+     * @return The opcode of the operator
+     */
+    public static int opcodeOf(char operator) {
+        switch (operator) {
+            case '+':
+                return ADD;
+            case '-':
+                return SUBTRACT;
+            case 'x':
+                return MULTIPLY;
+            case '÷':
+                return DIVIDE;
+            case '^':
+                return POWER;
+            case '&':
+                return AND;
+            case '|':
+                return OR;
+            case '⊻':
+                return XOR;
+            case '«':
+                return SHIFT_LEFT;
+            case '»':
+                return SHIFT_RIGHT;
+            default:
+                throw new UnsupportedOperationException("Unknown operator: " + operator);
+        }
+    }
+
+    /**
+     * Maps an opcode back to the symbol shown on the keypad
+     *
+     * @param opcode The opcode
+     * @return The operator symbol
+     */
+    public static char symbolOf(int opcode) {
+        switch (opcode) {
+            case ADD:
+                return '+';
+            case SUBTRACT:
+                return '-';
+            case MULTIPLY:
+                return 'x';
+            case DIVIDE:
+                return '÷';
+            case POWER:
+                return '^';
+            case AND:
+                return '&';
+            case OR:
+                return '|';
+            case XOR:
+                return '⊻';
+            case SHIFT_LEFT:
+                return '«';
+            case SHIFT_RIGHT:
+                return '»';
+            default:
+                throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Returns the binding strength of an opcode; higher binds tighter.
+     * Operators of equal strength associate to the left.
+     *
+     * @param opcode The opcode of a binary operator
+     * @return The precedence level, from 1 to {@link #PRECEDENCE_LEVELS}
+     */
+    public static int precedenceOf(int opcode) {
+        return PRECEDENCE[opcode];
+    }
+
+    /**
+     * @param opcode Any opcode
+     * @return True for the bitwise operators and shifts, which only take whole numbers
+     */
+    public static boolean isBitwise(int opcode) {
+        return opcode >= AND && opcode <= SHIFT_RIGHT;
+    }
+}
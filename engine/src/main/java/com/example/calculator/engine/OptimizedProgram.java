@@ -0,0 +1,319 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.MathFunction;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Program} rewritten for the 32-bit semantics of {@link Evaluator}, with repeated
+ * work removed.
+ * <p>
+ * The postfix code is read into a graph in which identical subtrees are one node, so that
+ * {@code axa+axa}, or a function body that uses its argument twice, computes every distinct
+ * subterm once. Operators and calls whose operands are all literals are folded into a
+ * literal, unless they fail, in which case they stay to fail at the same point of the
+ * evaluation. ^ with a literal exponent of zero or more becomes a chain of multiplications
+ * that saturates exactly like {@link Operators#power}. The remaining nodes run as straight-line
+ * steps over a register file, in the order the interpreter would first reach them, so results
+ * and errors are the same as interpreting the original program.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class OptimizedProgram {
+
+    // Kinds of graph node besides the binary opcodes of Operators
+    private static final int CONSTANT = Operators.PUSH;
+    private static final int VARIABLE = Operators.LOAD;
+    private static final int CALL = Operators.CALL;
+    // ^ with a literal exponent, which is the argument of the node
+    private static final int CHAINED_POWER = Operators.OPCODE_COUNT;
+
+    // Steps, STEP_FIELDS ints each: target register, kind, argument, left register, right register
+    private static final int STEP_FIELDS = 5;
+
+    // Registers holding the literals, the rest start out as zero
+    private final int[] template;
+    // Register of the variable x, -1 if the program does not read it
+    private final int variable;
+    private final int[] steps;
+    // Register holding the value on top of the stack
+    private final int result;
+    private final int eliminated;
+
+    /**
+     * Optimizes a program
+     *
+     * @param program The program, may refer to the variable x
+     */
+    public OptimizedProgram(Program program) {
+        Graph graph = new Graph(program.length());
+        int[] stack = new int[program.maxStack()];
+        int top = -1;
+        for (int pc = 0; pc < program.length(); pc++) {
+            int instruction = program.instructionAt(pc);
+            int opcode = Program.opcode(instruction);
+            int argument = Program.argument(instruction);
+            if (opcode == Operators.PUSH) {
+                stack[++top] = graph.constant((int) program.constant(argument));
+            } else if (opcode == Operators.LOAD) {
+                stack[++top] = graph.node(VARIABLE, 0, -1, -1);
+            } else if (opcode == Operators.CALL) {
+                MathFunction function = MathFunction.of(argument);
+                if (function.arity() == 2) {
+                    top--;
+                    stack[top] = graph.call(function, stack[top], stack[top + 1]);
+                } else {
+                    stack[top] = graph.call(function, stack[top], -1);
+                }
+            } else {
+                top--;
+                stack[top] = graph.operator(opcode, stack[top], stack[top + 1]);
+            }
+        }
+
+        // Nodes are created in the order the interpreter first reaches them, so they run in that order
+        int[] template = new int[graph.size];
+        int[] steps = new int[graph.size * STEP_FIELDS];
+        int stepCount = 0;
+        int variable = -1;
+        // Literals, folded nodes and the variable that a step or the result still reads
+        boolean[] read = new boolean[graph.size];
+        read[stack[top]] = true;
+        for (int node = 0; node < graph.size; node++) {
+            if (graph.folded[node]) {
+                template[node] = graph.values[node];
+            } else if (graph.kinds[node] == VARIABLE) {
+                variable = node;
+            } else {
+                steps[stepCount++] = node;
+                steps[stepCount++] = graph.kinds[node];
+                steps[stepCount++] = graph.arguments[node];
+                steps[stepCount++] = graph.lefts[node];
+                steps[stepCount++] = graph.rights[node];
+                read[graph.lefts[node]] = true;
+                if (graph.rights[node] >= 0) {
+                    read[graph.rights[node]] = true;
+                }
+            }
+        }
+        int nodes = stepCount / STEP_FIELDS;
+        for (int node = 0; node < graph.size; node++) {
+            if (read[node] && (graph.folded[node] || graph.kinds[node] == VARIABLE)) {
+                nodes++;
+            }
+        }
+        this.template = template;
+        this.variable = variable;
+        this.steps = Arrays.copyOf(steps, stepCount);
+        this.result = stack[top];
+        this.eliminated = program.length() - nodes;
+    }
+
+    /**
+     * Tells whether optimizing pays off for a single evaluation. Reading a program into the
+     * graph costs a few times more per instruction than interpreting it, so that only gains
+     * when the shared or folded subterms call functions; a program that is evaluated for many
+     * values of x gains regardless.
+     *
+     * @param program A program
+     * @return True if the program calls a function
+     */
+    public static boolean paysOnce(Program program) {
+        for (int instruction : program.code()) {
+            if (Program.opcode(instruction) == Operators.CALL) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evaluates the program; the variable x, if it occurs, reads as 0
+     *
+     * @return The value the program leaves on top of the stack
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public long evaluate() {
+        return evaluate(0);
+    }
+
+    /**
+     * Evaluates the program for a value of the variable x
+     *
+     * @param x The value of the variable, narrowed to an int like a literal
+     * @return The value the program leaves on top of the stack
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public long evaluate(long x) {
+        int[] registers = template.clone();
+        if (variable >= 0) {
+            registers[variable] = (int) x;
+        }
+        int[] steps = this.steps;
+        for (int s = 0; s < steps.length; s += STEP_FIELDS) {
+            Cancellation.check(s / STEP_FIELDS);
+            registers[steps[s]] = apply(steps[s + 1], steps[s + 2], registers[steps[s + 3]],
+                    steps[s + 4] < 0 ? 0 : registers[steps[s + 4]]);
+        }
+        return registers[result];
+    }
+
+    /**
+     * @return The number of instructions of the original program that no longer need to be
+     *         executed, because they were shared, folded or replaced
+     */
+    public int eliminated() {
+        return eliminated;
+    }
+
+    /**
+     * @return The number of operators and calls that still run on every evaluation
+     */
+    public int steps() {
+        return steps.length / STEP_FIELDS;
+    }
+
+    // Computes one node from the values of its operands; right is 0 for unary nodes
+    private static int apply(int kind, int argument, int left, int right) {
+        if (kind == CHAINED_POWER) {
+            return power(left, argument);
+        } else if (kind == CALL) {
+            MathFunction function = MathFunction.of(argument);
+            return function.arity() == 2 ? Operators.call(function, left, right) : Operators.call(function, left);
+        }
+        return Operators.apply(kind, left, right);
+    }
+
+    /**
+     * Raises an int to a non-negative power by repeated multiplication, saturating to the int
+     * range like {@link Operators#power}: that narrows {@link Math#pow}, which is exact for
+     * every power that fits in a double
+     *
+     * @param base The base
+     * @param exponent The exponent, zero or more
+     * @return The power, saturated to the int range
+     */
+    static int power(int base, int exponent) {
+        if (base >= -1 && base <= 1) {
+            if (exponent == 0) {
+                return 1;
+            }
+            return base == -1 && (exponent & 1) == 0 ? 1 : base;
+        }
+        // |base| is at least 2, so the product leaves the int range within 31 factors
+        long product = 1;
+        for (int i = 0; i < exponent; i++) {
+            product *= base;
+            if (product != (int) product) {
+                return base < 0 && (exponent & 1) != 0 ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            }
+        }
+        return (int) product;
+    }
+
+    // Nodes with identical kind, argument and operands are created once, and folded to a value
+    // when all their operands are values
+    private static final class Graph {
+        int[] kinds;
+        int[] arguments;
+        int[] lefts;
+        int[] rights;
+        boolean[] folded;
+        int[] values;
+        int size;
+        // Open addressing table of node indexes plus one, 0 for an empty bucket
+        private int[] table;
+
+        Graph(int capacity) {
+            kinds = new int[Math.max(capacity, 4)];
+            arguments = new int[kinds.length];
+            lefts = new int[kinds.length];
+            rights = new int[kinds.length];
+            folded = new boolean[kinds.length];
+            values = new int[kinds.length];
+            table = new int[Integer.highestOneBit(kinds.length) * 4];
+        }
+
+        int constant(int value) {
+            return node(CONSTANT, value, -1, -1);
+        }
+
+        int operator(int opcode, int left, int right) {
+            if (opcode == Operators.POWER && !folded[left] && folded[right] && values[right] >= 0) {
+                return node(CHAINED_POWER, values[right], left, -1);
+            }
+            return node(opcode, 0, left, right);
+        }
+
+        int call(MathFunction function, int left, int right) {
+            return node(CALL, function.ordinal(), left, right);
+        }
+
+        int node(int kind, int argument, int left, int right) {
+            int mask = table.length - 1;
+            int hash = ((kind * 31 + argument) * 31 + left) * 31 + right;
+            for (int bucket = (hash ^ (hash >>> 16)) & mask; ; bucket = (bucket + 1) & mask) {
+                int entry = table[bucket] - 1;
+                if (entry < 0) {
+                    break;
+                }
+                if (kinds[entry] == kind && arguments[entry] == argument && lefts[entry] == left
+                        && rights[entry] == right) {
+                    return entry;
+                }
+            }
+            if (size == kinds.length) {
+                grow();
+            }
+            kinds[size] = kind;
+            arguments[size] = argument;
+            lefts[size] = left;
+            rights[size] = right;
+            fold(size);
+            insert(size);
+            return size++;
+        }
+
+        private void fold(int node) {
+            int left = lefts[node];
+            int right = rights[node];
+            if (kinds[node] == CONSTANT) {
+                folded[node] = true;
+                values[node] = arguments[node];
+            } else if (kinds[node] != VARIABLE && folded[left] && (right < 0 || folded[right])) {
+                try {
+                    values[node] = apply(kinds[node], arguments[node], values[left], right < 0 ? 0 : values[right]);
+                    folded[node] = true;
+                } catch (RuntimeException e) {
+                    // Fails when evaluated, at the same point as before
+                }
+            }
+        }
+
+        private void insert(int node) {
+            int mask = table.length - 1;
+            int hash = ((kinds[node] * 31 + arguments[node]) * 31 + lefts[node]) * 31 + rights[node];
+            int bucket = (hash ^ (hash >>> 16)) & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = node + 1;
+        }
+
+        // Doubles the node arrays and rebuilds the table, which stays at most a quarter full
+        private void grow() {
+            int capacity = kinds.length * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            arguments = Arrays.copyOf(arguments, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            folded = Arrays.copyOf(folded, capacity);
+            values = Arrays.copyOf(values, capacity);
+            table = new int[table.length * 2];
+            for (int node = 0; node < size; node++) {
+                insert(node);
+            }
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Evaluates one huge program on every core by reducing its runs of + and x as balanced trees.
+ * <p>
+ * The compiler emits a chain such as {@code 1+2+3+4} as a left-leaning tree, which a stack
+ * machine walks one operator at a time. Here each run of additions and subtractions, and each
+ * run of multiplications, is split instead: spans of terms up to the cutoff are evaluated on
+ * one thread by the usual evaluator of the precision, and their partial results are combined
+ * pairwise in a fork-join pool. Addition and multiplication are associative in 32-bit
+ * wrap-around, integer and fraction arithmetic, and a subtraction in a run is the addition of
+ * a negated term, so the result equals the left-to-right one. ÷, ^, bitwise operators and
+ * calls keep the operands the compiler gave them; only those operands are evaluated in
+ * parallel. Floating point is not associative, so {@link Precision#DECIMAL} is always
+ * evaluated left to right.
+ * <p>
+ * Partial results are passed on as small programs of literals, so every combining step runs
+ * through the same evaluator as the rest. If any part fails, the whole program is evaluated
+ * again left to right, which reports the error that evaluation would. The size limit of the
+ * exact precisions guards memory rather than defining results, so a run may succeed here
+ * whose left-to-right partial results would have grown too large, such as a product of huge
+ * factors that ends in a factor of zero. Instances are immutable and can be shared between
+ * threads.
+ */
+public final class ParallelEvaluator {
+
+    // Instructions evaluated by one task without splitting them further
+    public static final int DEFAULT_CUTOFF = 1 << 14;
+    // Deepest nesting of operators split across tasks; deeper operands are evaluated on one thread
+    static final int MAX_DEPTH = 256;
+
+    // Evaluators are not thread-safe, so every worker thread has its own
+    private static final ThreadLocal<Evaluator> EVALUATORS = ThreadLocal.withInitial(Evaluator::new);
+    private static final ThreadLocal<ExactEvaluator> EXACT_EVALUATORS = ThreadLocal.withInitial(ExactEvaluator::new);
+    private static final ThreadLocal<RationalEvaluator> RATIONAL_EVALUATORS = ThreadLocal.withInitial(RationalEvaluator::new);
+    private static final ThreadLocal<DecimalEvaluator> DECIMAL_EVALUATORS = ThreadLocal.withInitial(DecimalEvaluator::new);
+
+    private final ForkJoinPool pool;
+    private final int cutoff;
+
+    /**
+     * Creates an evaluator that splits programs longer than {@link #DEFAULT_CUTOFF} across the
+     * common pool
+     */
+    public ParallelEvaluator() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CUTOFF);
+    }
+
+    /**
+     * @param pool The pool that runs the parts
+     * @param cutoff The number of instructions evaluated by one task without splitting them further
+     */
+    public ParallelEvaluator(ForkJoinPool pool, int cutoff) {
+        if (cutoff <= 0) {
+            throw new IllegalArgumentException("cutoff must be positive: " + cutoff);
+        }
+        this.pool = pool;
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * @param program The program to evaluate
+     * @param precision The arithmetic to evaluate with
+     * @return True if the program is long enough to be split across threads
+     */
+    public boolean splits(Program program, Precision precision) {
+        return precision != Precision.DECIMAL && program.length() > cutoff;
+    }
+
+    /**
+     * Evaluates a program with the 32-bit semantics of {@link Evaluator}
+     *
+     * @param program The program to evaluate
+     * @return The value left on top of the operand stack
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws CancellationException If the thread is interrupted meanwhile
+     */
+    public long evaluate(Program program) {
+        return EVALUATORS.get().evaluate(reduce(program, Precision.INT32));
+    }
+
+    /**
+     * Evaluates a program with the given precision and formats the result in decimal, like
+     * the evaluator of that precision
+     *
+     * @param program The program to evaluate
+     * @param precision The arithmetic to evaluate with
+     * @return The decimal digits of the result
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws ArithmeticException If the evaluator of the precision rejects the program
+     * @throws CancellationException If the thread is interrupted meanwhile
+     */
+    public String evaluateToString(Program program, Precision precision) {
+        switch (precision) {
+            case INT32:
+                return Long.toString(evaluate(program));
+            case EXACT:
+                return EXACT_EVALUATORS.get().evaluateToString(reduce(program, precision));
+            case RATIONAL:
+                return RATIONAL_EVALUATORS.get().evaluateToString(reduce(program, precision));
+            default:
+                return DECIMAL_EVALUATORS.get().evaluateToString(program);
+        }
+    }
+
+    // Reduces a long program in the pool to a program of literals with the same value
+    private Program reduce(Program program, Precision precision) {
+        if (!splits(program, precision)) {
+            return program;
+        }
+        try {
+            return pool.invoke(new Operand(new Evaluation(program, precision, cutoff), 0, program.length(), 0));
+        } catch (RuntimeException e) {
+            // Parts run out of order and errors from other threads lose their messages, so
+            // the evaluation is repeated left to right for the error it reports first
+            Cancellation.check();
+            return program;
+        }
+    }
+
+    // The state shared by the tasks of one evaluation
+    private static final class Evaluation {
+        final Program program;
+        final int[] code;
+        final Precision precision;
+        final int cutoff;
+        // Per instruction: the first instruction of the operand it completes
+        final int[] starts;
+        // The thread waiting for the result, whose interruption cancels the evaluation
+        final Thread caller = Thread.currentThread();
+        // Set once a part has failed, so the others stop early
+        volatile boolean failed;
+
+        Evaluation(Program program, Precision precision, int cutoff) {
+            this.program = program;
+            this.code = program.code();
+            this.precision = precision;
+            this.cutoff = cutoff;
+            this.starts = starts(code, program.maxStack());
+        }
+
+        // Evaluates instructions on the current thread
+        Program evaluate(int[] part) {
+            if (failed || caller.isInterrupted()) {
+                throw new CancellationException("Evaluation cancelled");
+            }
+            try {
+                return value(new Program(part, program.constants(), program.bigConstants(), program.maxStack()));
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        // Applies an operator or function to partial results
+        Program combine(Program left, Program right, int instruction) {
+            if (failed || caller.isInterrupted()) {
+                throw new CancellationException("Evaluation cancelled");
+            }
+            try {
+                return value(join(left, right, instruction));
+            } catch (RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        // Evaluates a program and returns its value as a program of literals
+        private Program value(Program program) {
+            switch (precision) {
+                case INT32:
+                    return literal(EVALUATORS.get().evaluate(program));
+                case EXACT:
+                    return literal(EXACT_EVALUATORS.get().evaluate(program));
+                default:
+                    BigInteger[] fraction = RATIONAL_EVALUATORS.get().evaluateToFraction(program);
+                    return fraction(fraction[0], fraction[1]);
+            }
+        }
+    }
+
+    // The operand that ends right before an instruction, reduced in parallel where it is large
+    private static final class Operand extends RecursiveTask<Program> {
+        private final Evaluation evaluation;
+        private final int from;
+        private final int to;
+        private final int depth;
+
+        Operand(Evaluation evaluation, int from, int to, int depth) {
+            this.evaluation = evaluation;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Program compute() {
+            int[] code = evaluation.code;
+            int[] starts = evaluation.starts;
+            if (to - from <= evaluation.cutoff || depth >= MAX_DEPTH) {
+                return evaluation.evaluate(Arrays.copyOfRange(code, from, to));
+            }
+            int last = to - 1;
+            if (starts[last] != from) {
+                // Operands left below the top are still evaluated, for the errors they may throw
+                Operand below = new Operand(evaluation, from, starts[last], depth + 1);
+                below.fork();
+                Program top = new Operand(evaluation, starts[last], to, depth + 1).compute();
+                below.join();
+                return top;
+            }
+            int instruction = code[last];
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.ADD || opcode == Operators.SUBTRACT || opcode == Operators.MULTIPLY) {
+                return Run.of(evaluation, from, to, opcode == Operators.MULTIPLY, depth).compute();
+            }
+            if (opcode == Operators.CALL && MathFunction.of(Program.argument(instruction)).arity() == 1) {
+                return evaluation.combine(new Operand(evaluation, from, last, depth + 1).compute(), null, instruction);
+            }
+            int middle = starts[last - 1];
+            Operand left = new Operand(evaluation, from, middle, depth + 1);
+            left.fork();
+            Program right = new Operand(evaluation, middle, last, depth + 1).compute();
+            return evaluation.combine(left.join(), right, instruction);
+        }
+    }
+
+    // A span of the terms of a run of + and -, or of x, with the first term taken positive
+    private static final class Run extends RecursiveTask<Program> {
+        private final Evaluation evaluation;
+        // Per term: its first instruction and the end of its instructions, where its operator follows
+        private final int[] termStarts;
+        private final int[] termEnds;
+        // Per term: true if it is subtracted
+        private final boolean[] subtracted;
+        private final boolean multiplicative;
+        private final int first;
+        private final int end;
+        // True if the first term is subtracted in the run, so the others are taken with the opposite sign
+        private final boolean negated;
+        private final int depth;
+
+        private Run(Evaluation evaluation, int[] termStarts, int[] termEnds, boolean[] subtracted,
+                    boolean multiplicative, int first, int end, boolean negated, int depth) {
+            this.evaluation = evaluation;
+            this.termStarts = termStarts;
+            this.termEnds = termEnds;
+            this.subtracted = subtracted;
+            this.multiplicative = multiplicative;
+            this.first = first;
+            this.end = end;
+            this.negated = negated;
+            this.depth = depth;
+        }
+
+        // Collects the terms of the run that ends an operand, walking down its left operands
+        static Run of(Evaluation evaluation, int from, int to, boolean multiplicative, int depth) {
+            int[] code = evaluation.code;
+            int[] starts = evaluation.starts;
+            int count = 1;
+            for (int end = to; end - from > 1 && inRun(code[end - 1], multiplicative); end = starts[end - 2]) {
+                count++;
+            }
+            int[] termStarts = new int[count];
+            int[] termEnds = new int[count];
+            boolean[] subtracted = new boolean[count];
+            int end = to;
+            for (int term = count - 1; term > 0; term--) {
+                int operator = end - 1;
+                termStarts[term] = starts[operator - 1];
+                termEnds[term] = operator;
+                subtracted[term] = Program.opcode(code[operator]) == Operators.SUBTRACT;
+                end = termStarts[term];
+            }
+            termStarts[0] = from;
+            termEnds[0] = end;
+            return new Run(evaluation, termStarts, termEnds, subtracted, multiplicative, 0, count, false, depth);
+        }
+
+        private static boolean inRun(int instruction, boolean multiplicative) {
+            int opcode = Program.opcode(instruction);
+            return multiplicative ? opcode == Operators.MULTIPLY
+                    : opcode == Operators.ADD || opcode == Operators.SUBTRACT;
+        }
+
+        @Override
+        protected Program compute() {
+            if (end - first == 1) {
+                return new Operand(evaluation, termStarts[first], termEnds[first], depth + 1).compute();
+            }
+            if (termEnds[end - 1] - termStarts[first] <= evaluation.cutoff) {
+                return evaluation.evaluate(span());
+            }
+            // Split where half of the instructions are on either side
+            int halfway = (termStarts[first] + termEnds[end - 1]) >>> 1;
+            int middle = Arrays.binarySearch(termStarts, first, end, halfway);
+            middle = Math.min(Math.max(middle < 0 ? -middle - 1 : middle, first + 1), end - 1);
+            // The right span takes its first term positive, so its other terms keep their sign
+            // relative to that term, and the span as a whole is added or subtracted
+            Run left = new Run(evaluation, termStarts, termEnds, subtracted, multiplicative,
+                    first, middle, negated, depth + 1);
+            Run right = new Run(evaluation, termStarts, termEnds, subtracted, multiplicative,
+                    middle, end, subtracted[middle], depth + 1);
+            left.fork();
+            Program rightValue = right.compute();
+            int operator = multiplicative ? Operators.MULTIPLY
+                    : negated != subtracted[middle] ? Operators.SUBTRACT : Operators.ADD;
+            return evaluation.combine(left.join(), rightValue, Program.instruction(operator, 0));
+        }
+
+        // The instructions of the span: the first term, then every other term with its operator
+        private int[] span() {
+            int[] code = evaluation.code;
+            int firstLength = termEnds[first] - termStarts[first];
+            int restStart = termStarts[first + 1];
+            int[] span = new int[firstLength + termEnds[end - 1] + 1 - restStart];
+            System.arraycopy(code, termStarts[first], span, 0, firstLength);
+            System.arraycopy(code, restStart, span, firstLength, span.length - firstLength);
+            if (negated) {
+                for (int term = first + 1; term < end; term++) {
+                    int operator = termEnds[term] - restStart + firstLength;
+                    span[operator] = Program.instruction(subtracted[term] ? Operators.ADD : Operators.SUBTRACT, 0);
+                }
+            }
+            return span;
+        }
+    }
+
+    // Per instruction, the first instruction of the operand it completes
+    private static int[] starts(int[] code, int maxStack) {
+        int[] starts = new int[code.length];
+        // Start of every operand on the stack
+        int[] stack = new int[maxStack];
+        int top = -1;
+        for (int pc = 0; pc < code.length; pc++) {
+            int instruction = code[pc];
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.PUSH || opcode == Operators.LOAD) {
+                stack[++top] = pc;
+            } else if (opcode != Operators.CALL || MathFunction.of(Program.argument(instruction)).arity() == 2) {
+                top--;
+            }
+            starts[pc] = stack[top];
+        }
+        return starts;
+    }
+
+    private static Program literal(long value) {
+        return new Program(new int[]{Program.instruction(Operators.PUSH, 0)}, new long[]{value}, null, 1);
+    }
+
+    private static Program literal(BigInteger value) {
+        BigInteger[] bigConstants = value.bitLength() < Long.SIZE ? null : new BigInteger[]{value};
+        return new Program(new int[]{Program.instruction(Operators.PUSH, 0)}, new long[]{value.longValue()},
+                bigConstants, 1);
+    }
+
+    private static Program fraction(BigInteger numerator, BigInteger denominator) {
+        if (denominator.equals(BigInteger.ONE)) {
+            return literal(numerator);
+        }
+        return join(literal(numerator), literal(denominator), Program.instruction(Operators.DIVIDE, 0));
+    }
+
+    // The program that runs two programs of literals and applies an instruction to them
+    private static Program join(Program left, Program right, int instruction) {
+        if (right == null) {
+            int[] code = Arrays.copyOf(left.code(), left.length() + 1);
+            code[left.length()] = instruction;
+            return new Program(code, left.constants(), left.bigConstants(), left.maxStack());
+        }
+        int offset = left.constantCount();
+        int[] code = Arrays.copyOf(left.code(), left.length() + right.length() + 1);
+        for (int pc = 0; pc < right.length(); pc++) {
+            int next = right.instructionAt(pc);
+            code[left.length() + pc] = Program.opcode(next) == Operators.PUSH
+                    ? Program.instruction(Operators.PUSH, offset + Program.argument(next)) : next;
+        }
+        code[code.length - 1] = instruction;
+        long[] constants = Arrays.copyOf(left.constants(), offset + right.constantCount());
+        System.arraycopy(right.constants(), 0, constants, offset, right.constantCount());
+        BigInteger[] bigConstants = null;
+        if (left.bigConstants() != null || right.bigConstants() != null) {
+            bigConstants = new BigInteger[constants.length];
+            for (int i = 0; i < constants.length; i++) {
+                bigConstants[i] = i < offset ? left.bigConstant(i) : right.bigConstant(i - offset);
+            }
+        }
+        return new Program(code, constants, bigConstants, Math.max(left.maxStack(), right.maxStack() + 1));
+    }
+}
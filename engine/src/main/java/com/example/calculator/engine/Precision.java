@@ -0,0 +1,15 @@
+package com.example.calculator.engine;
+
+/**
+ * Arithmetic used to evaluate a program.
+ */
+public enum Precision {
+    // 32-bit integers: + - x wrap around and ^ saturates, as the calculator always did
+    INT32,
+    // Unbounded integers: results are exact, ÷ still truncates toward zero
+    EXACT,
+    // Fractions: ÷ is exact and literals may have a decimal point
+    RATIONAL,
+    // Double-precision floating point: literals may have a decimal point and every function has a result
+    DECIMAL
+}
@@ -0,0 +1,170 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A compiled expression in postfix bytecode form.
+ * <p>
+ * Every instruction is one int: the low 8 bits hold the opcode from {@link Operators}
+ * and the remaining bits hold its argument (the constant index for {@link Operators#PUSH},
+ * the variable for {@link Operators#LOAD}, the function for {@link Operators#CALL}).
+ * Literals are kept as longs; the few that overflow a long also keep their exact value.
+ * Names from a {@link SymbolTable} are bound at compile time, and the program records the
+ * slots of the names it was compiled against.
+ * Programs are immutable and can be shared between threads.
+ */
+public final class Program {
+
+    private static final int OPCODE_BITS = 8;
+    private static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+    private static final int[] NO_DEPENDENCIES = new int[0];
+
+    // Instructions in postfix order
+    private final int[] code;
+    // Literal values referenced by PUSH instructions, truncated to 64 bits
+    private final long[] constants;
+    // Exact values of literals that do not fit in a long, null if there are none
+    private final BigInteger[] bigConstants;
+    // Deepest operand stack the program reaches
+    private final int maxStack;
+    // Distinct symbol table slots whose definitions were bound into the code, in ascending order
+    private final int[] dependencies;
+
+    Program(int[] code, long[] constants, BigInteger[] bigConstants, int maxStack) {
+        this(code, constants, bigConstants, maxStack, NO_DEPENDENCIES);
+    }
+
+    Program(int[] code, long[] constants, BigInteger[] bigConstants, int maxStack, int[] dependencies) {
+        this.code = code;
+        this.constants = constants;
+        this.bigConstants = bigConstants;
+        this.maxStack = maxStack;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * Packs an opcode and its argument into one instruction
+     *
+     * @param opcode The opcode
+     * @param argument The argument, must be non-negative
+     * @return The encoded instruction
+     */
+    public static int instruction(int opcode, int argument) {
+        return (argument << OPCODE_BITS) | opcode;
+    }
+
+    /**
+     * Extracts the opcode of an instruction
+     *
+     * @param instruction The encoded instruction
+     * @return The opcode
+     */
+    public static int opcode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    /**
+     * Extracts the argument of an instruction
+     *
+     * @param instruction The encoded instruction
+     * @return The argument
+     */
+    public static int argument(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }
+
+    /**
+     * @return The number of instructions
+     */
+    public int length() {
+        return code.length;
+    }
+
+    /**
+     * @param index The position of the instruction
+     * @return The encoded instruction at that position
+     */
+    public int instructionAt(int index) {
+        return code[index];
+    }
+
+    /**
+     * @param index The constant index from a PUSH instruction
+     * @return The literal value
+     */
+    public long constant(int index) {
+        return constants[index];
+    }
+
+    /**
+     * @param index The constant index from a PUSH instruction
+     * @return The exact literal value if it does not fit in a long, otherwise null
+     */
+    public BigInteger bigConstant(int index) {
+        return bigConstants == null ? null : bigConstants[index];
+    }
+
+    /**
+     * @return The number of literals in the constant table
+     */
+    public int constantCount() {
+        return constants.length;
+    }
+
+    /**
+     * @return The deepest operand stack the program reaches
+     */
+    public int maxStack() {
+        return maxStack;
+    }
+
+    /**
+     * @param slot A symbol table slot
+     * @return True if the program was compiled against the definition in that slot
+     */
+    public boolean dependsOn(int slot) {
+        return Arrays.binarySearch(dependencies, slot) >= 0;
+    }
+
+    // Direct access for evaluators in this package
+    int[] code() {
+        return code;
+    }
+
+    long[] constants() {
+        return constants;
+    }
+
+    BigInteger[] bigConstants() {
+        return bigConstants;
+    }
+
+    int[] dependencies() {
+        return dependencies;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int instruction : code) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            int opcode = opcode(instruction);
+            if (opcode == Operators.PUSH) {
+                BigInteger big = bigConstant(argument(instruction));
+                sb.append(big != null ? big : constants[argument(instruction)]);
+            } else if (opcode == Operators.LOAD) {
+                sb.append('x');
+            } else if (opcode == Operators.CALL) {
+                sb.append(MathFunction.of(argument(instruction)).keyword());
+            } else {
+                sb.append(Operators.symbolOf(opcode));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.calculator.engine;
+
+/**
+ * Numeric base in which literals are read and results are written.
+ * <p>
+ * Digits above 9 are the upper-case letters A to F, so they cannot be mistaken for the
+ * multiplication operator x or the keywords of functions.
+ */
+public enum Radix {
+    BINARY(2),
+    OCTAL(8),
+    DECIMAL(10),
+    HEXADECIMAL(16);
+
+    private final int radix;
+
+    Radix(int radix) {
+        this.radix = radix;
+    }
+
+    /**
+     * @return The base as a number: 2, 8, 10 or 16
+     */
+    public int radix() {
+        return radix;
+    }
+
+    /**
+     * @param radix The base as a number
+     * @return The base
+     * @throws IllegalArgumentException If the calculator does not support the base
+     */
+    public static Radix of(int radix) {
+        switch (radix) {
+            case 2:
+                return BINARY;
+            case 8:
+                return OCTAL;
+            case 10:
+                return DECIMAL;
+            case 16:
+                return HEXADECIMAL;
+            default:
+                throw new IllegalArgumentException("Unsupported radix: " + radix);
+        }
+    }
+
+    /**
+     * Reads a character that may belong to a literal. Decimal digits count in every base, so
+     * that a 2 typed in binary is reported instead of silently splitting the literal; in
+     * decimal, other Unicode decimal digits count too.
+     *
+     * @param c The character to read
+     * @return The value of the digit, which may be too large for this base, or -1 if c is not a digit
+     */
+    public int digit(char c) {
+        if (radix == 10) {
+            return Character.digit(c, 10);
+        }
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (radix == 16 && c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,329 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.metrics.Metrics;
+
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts numbers of any length between decimal and the power-of-two bases 2, 4, 8, 16 and 32.
+ * <p>
+ * Between two power-of-two bases the digits are regrouped bit by bit in one left-to-right pass,
+ * holding fewer than 64 bits at a time, so there is no intermediate big integer and the work is
+ * linear in the input. When decimal is on either side the value is built or printed by splitting
+ * it recursively at powers of ten, which turns the quadratic digit-at-a-time loop into a few big
+ * multiplications or divisions.
+ * <p>
+ * Negative numbers are written with a leading minus sign in every base. Output digits above 9
+ * are upper case and leading zeros are dropped.
+ */
+public final class RadixConverter {
+
+    // Decimal digits that always fit in a long
+    private static final int LONG_DIGITS = 18;
+    // Powers 10^(18 * 2^k), computed on demand and shared by all conversions
+    private static final List<BigInteger> POWERS_OF_TEN = new ArrayList<>();
+
+    private RadixConverter() {
+    }
+
+    /**
+     * Converts a number between bases
+     *
+     * @param number The digits, optionally preceded by + or -
+     * @param fromRadix The base of the input: 2, 4, 8, 10, 16 or 32
+     * @param toRadix The base of the output: 2, 4, 8, 10, 16 or 32
+     * @return The digits in the target base
+     * @throws NumberFormatException If the input is empty or has a digit that is invalid in its base
+     */
+    public static String convert(CharSequence number, int fromRadix, int toRadix) {
+        StringBuilder out = new StringBuilder();
+        convert(number, fromRadix, toRadix, out);
+        return out.toString();
+    }
+
+    /**
+     * Converts a number held in a char array between bases
+     *
+     * @see #convert(CharSequence, int, int)
+     */
+    public static String convert(char[] number, int fromRadix, int toRadix) {
+        return convert(CharBuffer.wrap(number), fromRadix, toRadix);
+    }
+
+    /**
+     * Converts a number between bases, appending the result to a builder
+     *
+     * @see #convert(CharSequence, int, int)
+     */
+    public static void convert(CharSequence number, int fromRadix, int toRadix, StringBuilder out) {
+        long start = Metrics.start();
+        try {
+            convertDigits(number, fromRadix, toRadix, out);
+        } catch (RuntimeException e) {
+            Metrics.recordError(e);
+            throw e;
+        }
+        Metrics.CONVERSION.stop(start);
+    }
+
+    /**
+     * Reads a number written in a base
+     *
+     * @param number The digits, optionally preceded by + or -
+     * @param radix The base: 2, 4, 8, 10, 16 or 32
+     * @return The value
+     * @throws NumberFormatException If the input is empty or has a digit that is invalid in its base
+     */
+    public static BigInteger parse(CharSequence number, int radix) {
+        int bits = bitsPerDigit(radix);
+        int length = number.length();
+        int start = length > 0 && (number.charAt(0) == '-' || number.charAt(0) == '+') ? 1 : 0;
+        if (start == length) {
+            throw new NumberFormatException("No digits in \"" + number + "\"");
+        }
+        long begin = Metrics.start();
+        BigInteger value;
+        try {
+            value = bits > 0 ? readBinary(number, start, length, radix, bits) : parseDecimal(number, start, length);
+        } catch (RuntimeException e) {
+            Metrics.recordError(e);
+            throw e;
+        }
+        Metrics.CONVERSION.stop(begin);
+        return start == 1 && number.charAt(0) == '-' ? value.negate() : value;
+    }
+
+    /**
+     * Writes a number in a base
+     *
+     * @param value The value
+     * @param radix The base: 2, 4, 8, 10, 16 or 32
+     * @return The digits, with a leading minus sign if negative
+     */
+    public static String toString(BigInteger value, int radix) {
+        int bits = bitsPerDigit(radix);
+        long start = Metrics.start();
+        StringBuilder out = new StringBuilder();
+        if (value.signum() < 0) {
+            out.append('-');
+        }
+        if (bits > 0) {
+            writeBinary(value, bits, out);
+        } else {
+            writeDecimal(value, out);
+        }
+        Metrics.CONVERSION.stop(start);
+        return out.toString();
+    }
+
+    private static void convertDigits(CharSequence number, int fromRadix, int toRadix, StringBuilder out) {
+        int fromBits = bitsPerDigit(fromRadix);
+        int toBits = bitsPerDigit(toRadix);
+        int length = number.length();
+        int start = 0;
+        if (length > 0 && (number.charAt(0) == '-' || number.charAt(0) == '+')) {
+            start = 1;
+        }
+        if (start == length) {
+            throw new NumberFormatException("No digits in \"" + number + "\"");
+        }
+        // Skip leading zeros so the sign can be dropped for zero
+        int first = start;
+        while (first < length - 1 && number.charAt(first) == '0') {
+            first++;
+        }
+        boolean negative = start == 1 && number.charAt(0) == '-'
+                && !(first == length - 1 && number.charAt(first) == '0');
+        if (negative) {
+            out.append('-');
+        }
+
+        if (fromBits > 0 && toBits > 0) {
+            regroup(number, first, length, fromRadix, fromBits, toBits, out);
+        } else if (fromBits > 0) {
+            writeDecimal(readBinary(number, first, length, fromRadix, fromBits), out);
+        } else {
+            BigInteger value = parseDecimal(number, first, length);
+            if (toBits > 0) {
+                writeBinary(value, toBits, out);
+            } else {
+                writeDecimal(value, out);
+            }
+        }
+    }
+
+    // Returns log2 of a power-of-two radix, 0 for decimal
+    private static int bitsPerDigit(int radix) {
+        switch (radix) {
+            case 2:
+                return 1;
+            case 4:
+                return 2;
+            case 8:
+                return 3;
+            case 16:
+                return 4;
+            case 32:
+                return 5;
+            case 10:
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unsupported radix: " + radix);
+        }
+    }
+
+    private static int digit(CharSequence number, int index, int radix) {
+        int digit = Character.digit(number.charAt(index), radix);
+        if (digit < 0) {
+            throw new NumberFormatException("Invalid digit in base " + radix + ": \"" + number + "\"");
+        }
+        return digit;
+    }
+
+    // Streams digits of one power-of-two base into another through a small bit buffer
+    private static void regroup(CharSequence number, int start, int end, int fromRadix, int fromBits,
+                                int toBits, StringBuilder out) {
+        long totalBits = (long) (end - start) * fromBits;
+        // Pad on the left so the total is a whole number of output digits
+        int bufferBits = (int) ((toBits - totalBits % toBits) % toBits);
+        long buffer = 0;
+        int mask = (1 << toBits) - 1;
+        boolean started = false;
+        for (int i = start; i < end; i++) {
+            buffer = (buffer << fromBits) | digit(number, i, fromRadix);
+            bufferBits += fromBits;
+            while (bufferBits >= toBits) {
+                bufferBits -= toBits;
+                int value = (int) (buffer >>> bufferBits) & mask;
+                if (value != 0 || started) {
+                    out.append(Character.toUpperCase(Character.forDigit(value, 1 << toBits)));
+                    started = true;
+                }
+            }
+            buffer &= (1L << bufferBits) - 1;
+        }
+        if (!started) {
+            out.append('0');
+        }
+    }
+
+    // Packs power-of-two digits into big-endian bytes, in one pass
+    private static BigInteger readBinary(CharSequence number, int start, int end, int fromRadix, int fromBits) {
+        long totalBits = (long) (end - start) * fromBits;
+        byte[] bytes = new byte[(int) ((totalBits + 7) / 8)];
+        int bufferBits = (int) ((8 - totalBits % 8) % 8);
+        int buffer = 0;
+        int position = 0;
+        for (int i = start; i < end; i++) {
+            buffer = (buffer << fromBits) | digit(number, i, fromRadix);
+            bufferBits += fromBits;
+            if (bufferBits >= 8) {
+                bufferBits -= 8;
+                bytes[position++] = (byte) (buffer >>> bufferBits);
+                buffer &= (1 << bufferBits) - 1;
+            }
+        }
+        return new BigInteger(1, bytes);
+    }
+
+    // Writes the magnitude of a value in a power-of-two base, in one pass over its bytes
+    private static void writeBinary(BigInteger value, int toBits, StringBuilder out) {
+        byte[] bytes = value.abs().toByteArray();
+        int totalBits = bytes.length * 8;
+        int bufferBits = (toBits - totalBits % toBits) % toBits;
+        int buffer = 0;
+        int mask = (1 << toBits) - 1;
+        boolean started = false;
+        for (byte b : bytes) {
+            buffer = (buffer << 8) | (b & 0xFF);
+            bufferBits += 8;
+            while (bufferBits >= toBits) {
+                bufferBits -= toBits;
+                int digit = (buffer >>> bufferBits) & mask;
+                if (digit != 0 || started) {
+                    out.append(Character.toUpperCase(Character.forDigit(digit, 1 << toBits)));
+                    started = true;
+                }
+            }
+            buffer &= (1 << bufferBits) - 1;
+        }
+        if (!started) {
+            out.append('0');
+        }
+    }
+
+    // Parses decimal digits by splitting at a power of ten: value = high * 10^n + low
+    private static BigInteger parseDecimal(CharSequence number, int start, int end) {
+        int length = end - start;
+        if (length <= LONG_DIGITS) {
+            long value = 0;
+            for (int i = start; i < end; i++) {
+                value = value * 10 + digit(number, i, 10);
+            }
+            return BigInteger.valueOf(value);
+        }
+        int level = levelBelow(length);
+        int lowDigits = LONG_DIGITS << level;
+        BigInteger high = parseDecimal(number, start, end - lowDigits);
+        BigInteger low = parseDecimal(number, end - lowDigits, end);
+        return high.multiply(powerOfTen(level)).add(low);
+    }
+
+    // Writes the magnitude of a value in decimal by splitting at a power of ten
+    private static void writeDecimal(BigInteger value, StringBuilder out) {
+        value = value.abs();
+        if (value.bitLength() < Long.SIZE) {
+            out.append(value.longValue());
+            return;
+        }
+        // Upper bound of the decimal digit count: bits * log10(2)
+        int digits = (int) (value.bitLength() * 0.30103) + 1;
+        writeDecimal(value, levelBelow(digits), false, out);
+    }
+
+    private static void writeDecimal(BigInteger value, int level, boolean padded, StringBuilder out) {
+        if (level < 0) {
+            String digits = Long.toString(value.longValue());
+            if (padded) {
+                for (int i = digits.length(); i < LONG_DIGITS; i++) {
+                    out.append('0');
+                }
+            }
+            out.append(digits);
+            return;
+        }
+        BigInteger[] parts = value.divideAndRemainder(powerOfTen(level));
+        if (!padded && parts[0].signum() == 0) {
+            writeDecimal(parts[1], level - 1, false, out);
+            return;
+        }
+        writeDecimal(parts[0], level - 1, padded, out);
+        writeDecimal(parts[1], level - 1, true, out);
+    }
+
+    // Largest k with 18 * 2^k < digits, or -1 if digits fit in a long
+    private static int levelBelow(int digits) {
+        int level = -1;
+        while ((long) LONG_DIGITS << (level + 1) < digits) {
+            level++;
+        }
+        return level;
+    }
+
+    // Returns 10^(18 * 2^level)
+    private static BigInteger powerOfTen(int level) {
+        synchronized (POWERS_OF_TEN) {
+            if (POWERS_OF_TEN.isEmpty()) {
+                POWERS_OF_TEN.add(BigInteger.TEN.pow(LONG_DIGITS));
+            }
+            while (POWERS_OF_TEN.size() <= level) {
+                BigInteger last = POWERS_OF_TEN.get(POWERS_OF_TEN.size() - 1);
+                POWERS_OF_TEN.add(last.multiply(last));
+            }
+            return POWERS_OF_TEN.get(level);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.calculator.engine;
+
+import java.math.BigInteger;
+
+/**
+ * A result held once and shown in any {@link Radix}.
+ * <p>
+ * An integer is held as its value, read once from the text it was made from. The spelling in
+ * each base is written from that value with {@link RadixConverter} the first time it is asked
+ * for and kept, so switching the displayed base back and forth is a lookup, and no spelling
+ * is ever read again. Only integers have spellings in other bases; fractions and decimals
+ * keep the decimal text the evaluators produce. Instances are immutable apart from that cache
+ * and can be shared between threads.
+ */
+public final class RadixNumber {
+
+    // The value of an integer, null for fractions and decimals
+    private final BigInteger value;
+    // Spelling in each radix by ordinal, null until first asked for; races only repeat a conversion
+    private final String[] spellings = new String[Radix.values().length];
+
+    private RadixNumber(BigInteger value, String spelling, Radix radix) {
+        this.value = value;
+        spellings[radix.ordinal()] = spelling;
+    }
+
+    /**
+     * Wraps a result
+     *
+     * @param decimal The decimal text of a result, e.g. {@code -12}, {@code 0.5} or {@code 1÷3}
+     * @return The number
+     */
+    public static RadixNumber of(String decimal) {
+        boolean integer = !decimal.isEmpty();
+        for (int i = 0; i < decimal.length() && integer; i++) {
+            char c = decimal.charAt(i);
+            integer = (c >= '0' && c <= '9') || (i == 0 && c == '-' && decimal.length() > 1);
+        }
+        return new RadixNumber(integer ? RadixConverter.parse(decimal, 10) : null, decimal, Radix.DECIMAL);
+    }
+
+    /**
+     * Reads an integer written in a base
+     *
+     * @param digits The digits, optionally preceded by a minus sign
+     * @param radix The base they are written in
+     * @return The number, with its spelling in that base already known
+     * @throws NumberFormatException If the text is not an integer in the base
+     */
+    public static RadixNumber parse(String digits, Radix radix) {
+        if (radix == Radix.DECIMAL) {
+            RadixNumber number = of(digits);
+            if (number.value == null) {
+                throw new NumberFormatException("Not an integer: \"" + digits + "\"");
+            }
+            return number;
+        }
+        return new RadixNumber(RadixConverter.parse(digits, radix.radix()), digits, radix);
+    }
+
+    /**
+     * Rewrites the literals of a typed expression from one base into another, leaving
+     * operators, calls and names as they are, e.g. {@code 12+M} in decimal to {@code C+M} in
+     * hexadecimal. Each literal is read into its value once and written in the new base.
+     *
+     * @param expression The expression, read like {@link ExpressionCompiler} reads it in the source base
+     * @param from The base the literals are written in
+     * @param to The base to write them in
+     * @return The rewritten expression
+     * @throws NumberFormatException If a literal has a radix point or a digit outside its base, or
+     *                               a name would read as digits in the new base, as A to F do in hexadecimal
+     */
+    public static String convertLiterals(CharSequence expression, Radix from, Radix to) {
+        int length = expression.length();
+        StringBuilder out = new StringBuilder(length * 4);
+        int i = 0;
+        while (i < length) {
+            char c = expression.charAt(i);
+            int end = i + 1;
+            if (from.digit(c) >= 0) {
+                while (end < length && from.digit(expression.charAt(end)) >= 0) {
+                    end++;
+                }
+                if ((end < length && ExpressionCompiler.isPoint(expression, end, from))
+                        || (i > 0 && expression.charAt(i - 1) == '.')) {
+                    throw new NumberFormatException("Not an integer: \"" + expression + "\"");
+                }
+                out.append(RadixConverter.toString(RadixConverter.parse(expression.subSequence(i, end), from.radix()),
+                        to.radix()));
+            } else {
+                if (SymbolTable.isNameStart(c)) {
+                    // The compiler reads digits before names, so the name would change meaning
+                    if (to.digit(c) >= 0) {
+                        throw new NumberFormatException("Name reads as digits in base " + to.radix() + ": \""
+                                + expression + "\"");
+                    }
+                    while (end < length && SymbolTable.isNamePart(expression.charAt(end))) {
+                        end++;
+                    }
+                }
+                out.append(expression, i, end);
+            }
+            i = end;
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return True if the number is an integer, so it can be written in every base
+     */
+    public boolean isInteger() {
+        return value != null;
+    }
+
+    /**
+     * Writes the number in a base, converting it only the first time
+     *
+     * @param radix The base
+     * @return The digits, upper case above 9, with a leading minus sign if negative
+     * @throws NumberFormatException If the base is not decimal and the number is not an integer
+     */
+    public String toString(Radix radix) {
+        String spelling = spellings[radix.ordinal()];
+        if (spelling == null) {
+            if (value == null) {
+                throw new NumberFormatException("Not an integer: \"" + spellings[Radix.DECIMAL.ordinal()] + "\"");
+            }
+            spelling = RadixConverter.toString(value, radix.radix());
+            spellings[radix.ordinal()] = spelling;
+        }
+        return spelling;
+    }
+
+    /**
+     * @return The decimal text
+     */
+    @Override
+    public String toString() {
+        return toString(Radix.DECIMAL);
+    }
+}
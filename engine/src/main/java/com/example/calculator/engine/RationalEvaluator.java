@@ -0,0 +1,487 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * Runs compiled {@link Program}s with exact fractions, for {@link Precision#RATIONAL}.
+ * <p>
+ * Every operand is a numerator and a positive denominator. Both stay primitive longs until
+ * an operation overflows: the operands are then reduced with a binary GCD and the operation
+ * retried, and only if it still overflows is that slot promoted to {@link BigInteger}s.
+ * Promoted fractions are reduced lazily, only once their size has doubled since the last
+ * reduction, so a long chain of operations costs a few GCDs rather than one per step while
+ * its operands stay within a constant factor of their reduced size. Promoted fractions that
+ * shrink back into longs return to the primitive path. Only functions with exact results are
+ * allowed: factorials and binomial coefficients of whole numbers, and square roots of
+ * fractions whose numerator and denominator are perfect squares. Bitwise operators and
+ * shifts take whole numbers only.
+ * An instance is not thread-safe; give each thread its own evaluator.
+ */
+public final class RationalEvaluator {
+
+    // Size, in bits of numerator plus denominator, below which a promoted fraction is not reduced
+    static final int REDUCE_THRESHOLD_BITS = 256;
+
+    // Numerators and denominators; a slot is only meaningful while the same slot in bigNumerators is null
+    private long[] numerators = new long[16];
+    private long[] denominators = new long[16];
+    // Promoted operands, null for slots that fit in longs
+    private BigInteger[] bigNumerators = new BigInteger[16];
+    private BigInteger[] bigDenominators = new BigInteger[16];
+    // Size of a promoted slot after its last reduction
+    private int[] reducedBits = new int[16];
+
+    /**
+     * Evaluates a program, usually one from {@link ExpressionCompiler#compileDecimal}, and
+     * formats the reduced result: an integer, a terminating decimal such as {@code 0.375},
+     * or otherwise a fraction such as {@code 1÷3}. Every form reads back to the same value.
+     *
+     * @param program The program to evaluate
+     * @return The formatted result
+     * @throws UnsupportedOperationException If the program divides by zero
+     * @throws ArithmeticException If an exponent is not a whole number, a function has no
+     *                             exact result or a result grows beyond
+     *                             {@link ExactEvaluator#MAX_RESULT_BITS}
+     * @throws java.util.concurrent.CancellationException If the thread is interrupted meanwhile
+     */
+    public String evaluateToString(Program program) {
+        int top = run(program);
+        if (bigNumerators[top] == null) {
+            reduce(top);
+            long denominator = denominators[top];
+            if (denominator == 1) {
+                return Long.toString(numerators[top]);
+            }
+            return format(BigInteger.valueOf(numerators[top]), BigInteger.valueOf(denominator));
+        }
+        BigInteger numerator = bigNumerators[top];
+        BigInteger denominator = bigDenominators[top];
+        BigInteger gcd = numerator.gcd(denominator);
+        bigNumerators[top] = null;
+        bigDenominators[top] = null;
+        return format(numerator.divide(gcd), denominator.divide(gcd));
+    }
+
+    /**
+     * Evaluates a program to its reduced value, for {@link ParallelEvaluator}
+     *
+     * @param program The program to evaluate
+     * @return The numerator and the positive denominator, without a common factor
+     */
+    BigInteger[] evaluateToFraction(Program program) {
+        int top = run(program);
+        if (bigNumerators[top] == null) {
+            reduce(top);
+            return new BigInteger[]{BigInteger.valueOf(numerators[top]), BigInteger.valueOf(denominators[top])};
+        }
+        reduceBig(top);
+        BigInteger[] fraction = {bigNumerators[top], bigDenominators[top]};
+        bigNumerators[top] = null;
+        bigDenominators[top] = null;
+        return fraction;
+    }
+
+    private int run(Program program) {
+        if (numerators.length < program.maxStack()) {
+            int capacity = Math.max(program.maxStack(), numerators.length * 2);
+            numerators = new long[capacity];
+            denominators = new long[capacity];
+            bigNumerators = new BigInteger[capacity];
+            bigDenominators = new BigInteger[capacity];
+            reducedBits = new int[capacity];
+        }
+        int[] code = program.code();
+        long[] constants = program.constants();
+        BigInteger[] bigConstants = program.bigConstants();
+        int top = -1;
+        try {
+            for (int pc = 0; pc < code.length; pc++) {
+                Cancellation.check(pc);
+                int instruction = code[pc];
+                int opcode = Program.opcode(instruction);
+                if (opcode == Operators.PUSH) {
+                    int index = Program.argument(instruction);
+                    BigInteger big = bigConstants == null ? null : bigConstants[index];
+                    numerators[++top] = constants[index];
+                    denominators[top] = 1;
+                    bigNumerators[top] = big;
+                    bigDenominators[top] = big == null ? null : BigInteger.ONE;
+                    reducedBits[top] = 0;
+                } else if (opcode == Operators.CALL) {
+                    MathFunction function = MathFunction.of(Program.argument(instruction));
+                    Cancellation.check();
+                    if (function.arity() == 2) {
+                        top--;
+                        call(function, top);
+                        bigNumerators[top + 1] = null;
+                        bigDenominators[top + 1] = null;
+                    } else {
+                        call(function, top);
+                    }
+                } else {
+                    top--;
+                    if (bigNumerators[top] != null || bigNumerators[top + 1] != null || !applySmall(opcode, top)) {
+                        // Operations on promoted operands can be slow, so each one checks
+                        Cancellation.check();
+                        applyBig(opcode, top);
+                    }
+                    bigNumerators[top + 1] = null;
+                    bigDenominators[top + 1] = null;
+                }
+            }
+            return top;
+        } finally {
+            // Release promoted operands below the result so they can be collected
+            for (int i = 0; i < top; i++) {
+                bigNumerators[i] = null;
+                bigDenominators[i] = null;
+            }
+        }
+    }
+
+    // Applies an operator to two long slots, reducing them once if the result overflows
+    private boolean applySmall(int opcode, int top) {
+        if (applyLongs(opcode, top)) {
+            return true;
+        }
+        boolean reduced = reduce(top) | reduce(top + 1);
+        return reduced && applyLongs(opcode, top);
+    }
+
+    // Applies an operator to two long slots, or returns false without a change if it overflows
+    private boolean applyLongs(int opcode, int top) {
+        long a = numerators[top];
+        long b = denominators[top];
+        long c = numerators[top + 1];
+        long d = denominators[top + 1];
+        long numerator;
+        long denominator;
+        switch (opcode) {
+            case Operators.SUBTRACT:
+                if (c == Long.MIN_VALUE) {
+                    return false;
+                }
+                c = -c;
+                // Fall through to the addition of the negated operand
+            case Operators.ADD:
+                if (b == d) {
+                    numerator = a + c;
+                    if (((a ^ numerator) & (c ^ numerator)) < 0) {
+                        return false;
+                    }
+                    denominator = b;
+                    break;
+                }
+                if (!ExactEvaluator.multiplyFits(a, d) || !ExactEvaluator.multiplyFits(c, b)
+                        || !ExactEvaluator.multiplyFits(b, d)) {
+                    return false;
+                }
+                long ad = a * d;
+                long cb = c * b;
+                numerator = ad + cb;
+                if (((ad ^ numerator) & (cb ^ numerator)) < 0) {
+                    return false;
+                }
+                denominator = b * d;
+                break;
+            case Operators.MULTIPLY:
+                if (!ExactEvaluator.multiplyFits(a, c) || !ExactEvaluator.multiplyFits(b, d)) {
+                    return false;
+                }
+                numerator = a * c;
+                denominator = b * d;
+                break;
+            case Operators.DIVIDE:
+                if (c == 0)
+                    throw new UnsupportedOperationException("Cannot divide by zero");
+                if (!ExactEvaluator.multiplyFits(a, d) || !ExactEvaluator.multiplyFits(b, c)) {
+                    return false;
+                }
+                numerator = a * d;
+                denominator = b * c;
+                if (denominator < 0) {
+                    if (numerator == Long.MIN_VALUE || denominator == Long.MIN_VALUE) {
+                        return false;
+                    }
+                    numerator = -numerator;
+                    denominator = -denominator;
+                }
+                break;
+            case Operators.POWER:
+                // Fractional exponents and negative powers are left to the promoted path
+                if (d != 1 || c < 0) {
+                    return false;
+                }
+                numerator = 1;
+                denominator = 1;
+                long exponent = c;
+                // Exponentiation by squaring while everything stays within a long
+                while (true) {
+                    if ((exponent & 1) != 0) {
+                        if (!ExactEvaluator.multiplyFits(numerator, a) || !ExactEvaluator.multiplyFits(denominator, b)) {
+                            return false;
+                        }
+                        numerator *= a;
+                        denominator *= b;
+                    }
+                    exponent >>= 1;
+                    if (exponent == 0) {
+                        break;
+                    }
+                    if (!ExactEvaluator.multiplyFits(a, a) || !ExactEvaluator.multiplyFits(b, b)) {
+                        return false;
+                    }
+                    a *= a;
+                    b *= b;
+                }
+                break;
+            case Operators.AND:
+            case Operators.OR:
+            case Operators.XOR:
+            case Operators.SHIFT_LEFT:
+            case Operators.SHIFT_RIGHT:
+                // Whole operands are checked, and shifts sized, on the promoted path
+                return false;
+            default:
+                throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+        }
+        numerators[top] = numerator;
+        denominators[top] = denominator;
+        return true;
+    }
+
+    // Applies an operator to operands of which at least one is promoted or overflowed as longs
+    private void applyBig(int opcode, int top) {
+        // Reduce first if the unreduced result could be too large
+        if (bits(top) + bits(top + 1) > ExactEvaluator.MAX_RESULT_BITS) {
+            reduceBig(top);
+            reduceBig(top + 1);
+        }
+        if (Operators.isBitwise(opcode)) {
+            BigInteger result = ExactEvaluator.applyBig(opcode, whole(top), whole(top + 1));
+            store(top, result, BigInteger.ONE, result.bitLength() + 1);
+            return;
+        }
+        BigInteger a = numerator(top);
+        BigInteger b = denominator(top);
+        BigInteger c = numerator(top + 1);
+        BigInteger d = denominator(top + 1);
+        BigInteger numerator;
+        BigInteger denominator;
+        switch (opcode) {
+            case Operators.ADD:
+            case Operators.SUBTRACT:
+                if (opcode == Operators.SUBTRACT) {
+                    c = c.negate();
+                }
+                if (b.equals(d)) {
+                    numerator = a.add(c);
+                    denominator = b;
+                } else {
+                    numerator = a.multiply(d).add(c.multiply(b));
+                    denominator = b.multiply(d);
+                }
+                break;
+            case Operators.MULTIPLY:
+                numerator = a.multiply(c);
+                denominator = b.multiply(d);
+                break;
+            case Operators.DIVIDE:
+                if (c.signum() == 0)
+                    throw new UnsupportedOperationException("Cannot divide by zero");
+                numerator = a.multiply(d);
+                denominator = b.multiply(c);
+                if (denominator.signum() < 0) {
+                    numerator = numerator.negate();
+                    denominator = denominator.negate();
+                }
+                break;
+            case Operators.POWER:
+                BigInteger gcd = c.gcd(d);
+                if (!d.equals(gcd)) {
+                    throw new ArithmeticException("Exponent must be a whole number");
+                }
+                BigInteger exponent = c.divide(gcd);
+                if (exponent.signum() < 0) {
+                    if (a.signum() == 0)
+                        throw new UnsupportedOperationException("Cannot divide by zero");
+                    // a/b to the power -e is (b/a) to the power e, keeping the denominator positive
+                    BigInteger swap = a.signum() < 0 ? b.negate() : b;
+                    b = a.abs();
+                    a = swap;
+                    exponent = exponent.negate();
+                }
+                // Powers of a reduced fraction are reduced, so reduce the base once
+                BigInteger baseGcd = a.gcd(b);
+                if (!baseGcd.equals(BigInteger.ONE)) {
+                    a = a.divide(baseGcd);
+                    b = b.divide(baseGcd);
+                }
+                numerator = ExactEvaluator.power(a, exponent);
+                denominator = ExactEvaluator.power(b, exponent);
+                store(top, numerator, denominator, numerator.bitLength() + denominator.bitLength());
+                return;
+            default:
+                throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+        }
+        store(top, numerator, denominator, Math.max(reducedBits(top), reducedBits(top + 1)));
+    }
+
+    // Applies a function to the operand in a slot, and the next one if it takes two arguments
+    private void call(MathFunction function, int top) {
+        BigInteger numerator;
+        BigInteger denominator = BigInteger.ONE;
+        switch (function) {
+            case FACTORIAL:
+                numerator = ExactEvaluator.call(function, whole(top));
+                break;
+            case BINOMIAL:
+                numerator = ExactEvaluator.call(function, whole(top), whole(top + 1));
+                break;
+            case SQRT:
+                reduceBig(top);
+                BigInteger a = numerator(top);
+                BigInteger b = denominator(top);
+                numerator = ExactEvaluator.call(function, a);
+                denominator = ExactEvaluator.call(function, b);
+                // A reduced fraction has a rational root only if both parts are squares
+                if (!numerator.multiply(numerator).equals(a) || !denominator.multiply(denominator).equals(b)) {
+                    throw new ArithmeticException("Square root has no exact result");
+                }
+                break;
+            default:
+                throw new ArithmeticException(function.keyword() + " has no exact result");
+        }
+        store(top, numerator, denominator, numerator.bitLength() + denominator.bitLength());
+    }
+
+    // The operand in a slot, which must be a whole number
+    private BigInteger whole(int slot) {
+        reduceBig(slot);
+        if (!denominator(slot).equals(BigInteger.ONE)) {
+            throw new ArithmeticException("Argument must be a whole number");
+        }
+        return numerator(slot);
+    }
+
+    // Stores a promoted result, reducing it if it has doubled since the last reduction
+    private void store(int slot, BigInteger numerator, BigInteger denominator, int reduced) {
+        int size = numerator.bitLength() + denominator.bitLength();
+        if (size > Math.max(REDUCE_THRESHOLD_BITS, 2 * reduced) || size > ExactEvaluator.MAX_RESULT_BITS) {
+            BigInteger gcd = numerator.gcd(denominator);
+            if (!gcd.equals(BigInteger.ONE)) {
+                numerator = numerator.divide(gcd);
+                denominator = denominator.divide(gcd);
+            }
+            reduced = numerator.bitLength() + denominator.bitLength();
+            if (numerator.bitLength() > ExactEvaluator.MAX_RESULT_BITS
+                    || denominator.bitLength() > ExactEvaluator.MAX_RESULT_BITS) {
+                throw new ArithmeticException("Result too large");
+            }
+        }
+        if (numerator.bitLength() < Long.SIZE && denominator.bitLength() < Long.SIZE) {
+            // Back to the primitive path
+            numerators[slot] = numerator.longValue();
+            denominators[slot] = denominator.longValue();
+            bigNumerators[slot] = null;
+            bigDenominators[slot] = null;
+        } else {
+            bigNumerators[slot] = numerator;
+            bigDenominators[slot] = denominator;
+        }
+        reducedBits[slot] = reduced;
+    }
+
+    // Reduces a long slot, returning true if it changed
+    private boolean reduce(int slot) {
+        long gcd = gcd(numerators[slot], denominators[slot]);
+        if (gcd == 1) {
+            return false;
+        }
+        numerators[slot] /= gcd;
+        denominators[slot] /= gcd;
+        return true;
+    }
+
+    private void reduceBig(int slot) {
+        if (bigNumerators[slot] == null) {
+            reduce(slot);
+            return;
+        }
+        BigInteger gcd = bigNumerators[slot].gcd(bigDenominators[slot]);
+        bigNumerators[slot] = bigNumerators[slot].divide(gcd);
+        bigDenominators[slot] = bigDenominators[slot].divide(gcd);
+        reducedBits[slot] = bits(slot);
+    }
+
+    private int bits(int slot) {
+        if (bigNumerators[slot] == null) {
+            return 2 * Long.SIZE;
+        }
+        return bigNumerators[slot].bitLength() + bigDenominators[slot].bitLength();
+    }
+
+    private int reducedBits(int slot) {
+        return bigNumerators[slot] == null ? 0 : reducedBits[slot];
+    }
+
+    private BigInteger numerator(int slot) {
+        BigInteger big = bigNumerators[slot];
+        return big != null ? big : BigInteger.valueOf(numerators[slot]);
+    }
+
+    private BigInteger denominator(int slot) {
+        BigInteger big = bigDenominators[slot];
+        return big != null ? big : BigInteger.valueOf(denominators[slot]);
+    }
+
+    /**
+     * Binary GCD: shifts out common factors of two, then subtracts the smaller odd value
+     * from the larger. The magnitude of the numerator is read as unsigned, so
+     * {@link Long#MIN_VALUE} is handled.
+     *
+     * @param numerator Any value
+     * @param denominator A positive value
+     * @return The greatest common divisor, at most the denominator
+     */
+    static long gcd(long numerator, long denominator) {
+        if (numerator == 0) {
+            return denominator;
+        }
+        long a = Math.abs(numerator);
+        long b = denominator;
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        do {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if (Long.compareUnsigned(a, b) > 0) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        } while (b != 0);
+        return a << shift;
+    }
+
+    // Formats a reduced fraction with a positive denominator other than one
+    static String format(BigInteger numerator, BigInteger denominator) {
+        if (denominator.equals(BigInteger.ONE)) {
+            return numerator.toString();
+        }
+        // The decimal expansion terminates if the denominator has no prime factors but 2 and 5
+        BigInteger rest = denominator.shiftRight(denominator.getLowestSetBit());
+        BigInteger five = BigInteger.valueOf(5);
+        BigInteger[] division;
+        while ((division = rest.divideAndRemainder(five))[1].signum() == 0) {
+            rest = division[0];
+        }
+        if (rest.equals(BigInteger.ONE)) {
+            return new BigDecimal(numerator).divide(new BigDecimal(denominator)).toPlainString();
+        }
+        return numerator + String.valueOf(Operators.symbolOf(Operators.DIVIDE)) + denominator;
+    }
+}
@@ -0,0 +1,324 @@
+package com.example.calculator.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a {@link SymbolTable} on disk.
+ * <p>
+ * Every change to the table is appended to the journal {@value #JOURNAL_FILE} as one record
+ * holding the new definition of the changed name, framed like the history log as
+ * {@code [int payload length][int CRC32 of payload][payload]}. Once the journal holds more
+ * than {@value #COMPACT_MIN_RECORDS} records and twice as many as there are definitions, the
+ * whole table is written to {@value #SNAPSHOT_FILE} through a temporary file and an atomic
+ * rename, and the journal starts over. Records are whole definitions, so replaying one twice
+ * is harmless and a crash between the rename and the truncation loses nothing.
+ * <p>
+ * On open, the snapshot and then the journal are replayed into the table and a torn or
+ * corrupt journal tail is cut off. Records are written by a single writer thread, in the
+ * order the changes were made; changes are expected to come from one thread at a time.
+ */
+public final class SymbolStore implements Closeable {
+
+    public static final String SNAPSHOT_FILE = "symbols.snapshot";
+    public static final String JOURNAL_FILE = "symbols.journal";
+    // Fewest journal records that trigger a new snapshot
+    public static final int COMPACT_MIN_RECORDS = 64;
+
+    private static final int HEADER_BYTES = 8;
+    // Largest payload accepted when reading, guards against corrupt lengths
+    private static final int MAX_PAYLOAD_BYTES = 1 << 24;
+    // Kinds of record
+    private static final byte REMOVED = 0;
+    private static final byte VARIABLE = 1;
+    private static final byte FUNCTION = 2;
+
+    private final File directory;
+    private final SymbolTable table;
+    private final FileChannel journal;
+    private final ExecutorService writer;
+    private final SymbolTable.Listener listener = this::symbolChanged;
+
+    // Written only on the writer thread, after recovery
+    private long journalSize;
+    private int journalRecords;
+    // True if a record could not be written, so only a new snapshot is complete
+    private boolean journalIncomplete;
+
+    private SymbolStore(File directory, SymbolTable table, FileChannel journal) {
+        this.directory = directory;
+        this.table = table;
+        this.journal = journal;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "symbol-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Restores the definitions saved in a directory into a table, then keeps saving its changes
+     *
+     * @param directory The directory holding the files, created if needed
+     * @param table The table to restore into and save
+     * @return The opened store
+     * @throws IOException If the files cannot be opened or read
+     */
+    public static SymbolStore open(File directory, SymbolTable table) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        FileChannel journal = FileChannel.open(new File(directory, JOURNAL_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        SymbolStore store = new SymbolStore(directory, table, journal);
+        try {
+            store.recover();
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        }
+        table.addListener(store.listener);
+        return store;
+    }
+
+    /**
+     * Blocks until every change made so far has been written
+     *
+     * @throws IOException If the writer failed
+     */
+    public void flush() throws IOException {
+        Future<?> done = writer.submit(() -> {
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing symbols", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops saving changes, writes the pending ones and closes the journal
+     */
+    @Override
+    public void close() throws IOException {
+        table.removeListener(listener);
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+    }
+
+    // Runs on the changing thread: captures the new definition and queues it for the writer
+    private void symbolChanged(int slot) {
+        byte[] payload = encode(slot);
+        writer.execute(() -> append(payload));
+    }
+
+    // Runs on the writer thread
+    private void append(byte[] payload) {
+        try {
+            if (!journalIncomplete) {
+                ByteBuffer buffer = frame(payload);
+                int bytes = buffer.remaining();
+                writeFully(journal, buffer, journalSize);
+                journal.force(false);
+                journalSize += bytes;
+                journalRecords++;
+            }
+            if (journalIncomplete || journalRecords > Math.max(COMPACT_MIN_RECORDS, 2 * definitionCount())) {
+                compact();
+            }
+        } catch (IOException e) {
+            // The record is lost from the journal; the next change writes a full snapshot instead
+            journalIncomplete = true;
+        }
+    }
+
+    // Writes the whole table to a new snapshot and empties the journal
+    private void compact() throws IOException {
+        File temporary = new File(directory, SNAPSHOT_FILE + ".tmp");
+        int size = table.size();
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            for (int slot = 0; slot < size; slot++) {
+                if (table.isVariable(slot) || table.isFunction(slot)) {
+                    ByteBuffer buffer = frame(encode(slot));
+                    int bytes = buffer.remaining();
+                    writeFully(channel, buffer, position);
+                    position += bytes;
+                }
+            }
+            channel.force(false);
+        }
+        Files.move(temporary.toPath(), new File(directory, SNAPSHOT_FILE).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.truncate(0);
+        journal.force(false);
+        journalSize = 0;
+        journalRecords = 0;
+        journalIncomplete = false;
+    }
+
+    private int definitionCount() {
+        int count = 0;
+        for (int slot = table.size() - 1; slot >= 0; slot--) {
+            if (table.isVariable(slot) || table.isFunction(slot)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Replays the snapshot and the journal into the table, cutting off a torn journal tail
+    private void recover() throws IOException {
+        File snapshot = new File(directory, SNAPSHOT_FILE);
+        if (snapshot.isFile()) {
+            try (FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ)) {
+                List<byte[]> records = new ArrayList<>();
+                readRecords(channel, records);
+                for (byte[] record : records) {
+                    apply(record);
+                }
+            }
+        }
+        List<byte[]> records = new ArrayList<>();
+        journalSize = readRecords(journal, records);
+        journalRecords = records.size();
+        for (byte[] record : records) {
+            apply(record);
+        }
+        journal.truncate(journalSize);
+    }
+
+    // Reads valid records from the start of a file and returns the length they span
+    private static long readRecords(FileChannel channel, List<byte[]> records) throws IOException {
+        long fileSize = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (offset + HEADER_BYTES <= fileSize) {
+            header.clear();
+            readFully(channel, header, offset);
+            int length = header.getInt(0);
+            if (length < 0 || length > MAX_PAYLOAD_BYTES || offset + HEADER_BYTES + length > fileSize) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(channel, payload, offset + HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            records.add(payload.array());
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    // Encodes the definition in a slot as [kind][name] followed by the value or the body
+    private byte[] encode(int slot) {
+        String name;
+        String body;
+        BigInteger numerator;
+        BigInteger denominator;
+        synchronized (table) {
+            name = table.name(slot);
+            body = table.body(slot);
+            numerator = table.numerator(slot);
+            denominator = table.denominator(slot);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(body != null ? FUNCTION : numerator != null ? VARIABLE : REMOVED);
+            writeBytes(out, name.getBytes(StandardCharsets.UTF_8));
+            if (body != null) {
+                writeBytes(out, body.getBytes(StandardCharsets.UTF_8));
+            } else if (numerator != null) {
+                writeBytes(out, numerator.toByteArray());
+                writeBytes(out, denominator.toByteArray());
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte kind = in.readByte();
+        String name = new String(readBytes(in), StandardCharsets.UTF_8);
+        if (kind == FUNCTION) {
+            table.restoreFunction(name, new String(readBytes(in), StandardCharsets.UTF_8));
+        } else if (kind == VARIABLE) {
+            table.setVariable(name, new BigInteger(readBytes(in)), new BigInteger(readBytes(in)));
+        } else if (kind == REMOVED) {
+            table.remove(name);
+        } else {
+            throw new IOException("Unknown symbol record " + kind);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        buffer.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of symbol file");
+            }
+            position += read;
+        }
+    }
+}
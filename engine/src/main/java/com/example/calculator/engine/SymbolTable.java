@@ -0,0 +1,347 @@
+package com.example.calculator.engine;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Named variables and one-argument functions that expressions can refer to.
+ * <p>
+ * A name is an uppercase letter followed by uppercase letters, digits or underscores, e.g.
+ * {@code M} or {@code RATE2}. Every name is interned once into a slot, an index into flat
+ * per-slot arrays; the compiler resolves names to slots and binds their current definition
+ * into the {@link Program}, so evaluation never looks a name up. Each program lists the slots
+ * it depends on, and {@link Listener}s hear about every change by slot, which lets a cache
+ * drop exactly the programs that a change makes stale.
+ * <p>
+ * A variable holds an exact fraction. In {@link Precision#RATIONAL} it is used as is; the
+ * integer precisions use its value truncated toward zero. A function is the text of an
+ * expression in {@code x}, called as {@code F(argument)}.
+ * All methods are thread-safe; listeners are called on the changing thread, outside any lock.
+ */
+public final class SymbolTable {
+
+    /**
+     * Hears about every change to the table
+     */
+    public interface Listener {
+
+        /**
+         * Handles a change
+         *
+         * @param slot The slot of the name whose definition changed
+         */
+        void symbolChanged(int slot);
+    }
+
+    // Slot of every interned name; slots are never reused
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[16];
+    // Value of a variable as a reduced fraction with a positive denominator, null if the slot is not a variable
+    private BigInteger[] numerators = new BigInteger[16];
+    private BigInteger[] denominators = new BigInteger[16];
+    // Body of a function, null if the slot is not a function
+    private String[] bodies = new String[16];
+    private int size;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param c The character to check
+     * @return True if c can start a name
+     */
+    public static boolean isNameStart(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * @param c The character to check
+     * @return True if c can continue a name
+     */
+    public static boolean isNamePart(char c) {
+        return isNameStart(c) || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * Determines if a text refers to a name
+     *
+     * @param text The text to check
+     * @return True if the text contains a character that starts a name
+     */
+    public static boolean containsName(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (isNameStart(text.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the slot of a name, interning it if it is new
+     *
+     * @param name The name
+     * @return Its slot
+     * @throws IllegalArgumentException If the text is not a valid name
+     */
+    public synchronized int intern(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        if (name.isEmpty() || !isNameStart(name.charAt(0))) {
+            throw new IllegalArgumentException("Not a name: " + name);
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!isNamePart(name.charAt(i))) {
+                throw new IllegalArgumentException("Not a name: " + name);
+            }
+        }
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            numerators = Arrays.copyOf(numerators, capacity);
+            denominators = Arrays.copyOf(denominators, capacity);
+            bodies = Arrays.copyOf(bodies, capacity);
+        }
+        names[size] = name;
+        slots.put(name, size);
+        return size++;
+    }
+
+    /**
+     * @param name The name
+     * @return Its slot, or -1 if the name was never interned
+     */
+    public synchronized int slotOf(String name) {
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @return The number of interned names; slots range from 0 to size - 1
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized String name(int slot) {
+        return names[slot];
+    }
+
+    public synchronized boolean isVariable(int slot) {
+        return numerators[slot] != null;
+    }
+
+    public synchronized boolean isFunction(int slot) {
+        return bodies[slot] != null;
+    }
+
+    /**
+     * @param slot The slot of a variable
+     * @return The numerator of its value, or null if the slot is not a variable
+     */
+    public synchronized BigInteger numerator(int slot) {
+        return numerators[slot];
+    }
+
+    /**
+     * @param slot The slot of a variable
+     * @return The positive denominator of its value, or null if the slot is not a variable
+     */
+    public synchronized BigInteger denominator(int slot) {
+        return denominators[slot];
+    }
+
+    /**
+     * @param slot The slot of a function
+     * @return The expression in x it computes, or null if the slot is not a function
+     */
+    public synchronized String body(int slot) {
+        return bodies[slot];
+    }
+
+    /**
+     * Formats the value of a variable the way {@link RationalEvaluator} formats results
+     *
+     * @param name The name of the variable
+     * @return Its value, or null if the name is not a variable
+     */
+    public String value(String name) {
+        BigInteger numerator;
+        BigInteger denominator;
+        synchronized (this) {
+            int slot = slotOf(name);
+            if (slot < 0 || numerators[slot] == null) {
+                return null;
+            }
+            numerator = numerators[slot];
+            denominator = denominators[slot];
+        }
+        return RationalEvaluator.format(numerator, denominator);
+    }
+
+    /**
+     * Sets a variable, replacing any earlier definition of the name
+     *
+     * @param name The name of the variable
+     * @param numerator The numerator of the value
+     * @param denominator The denominator of the value, not zero
+     * @throws UnsupportedOperationException If the denominator is zero
+     */
+    public void setVariable(String name, BigInteger numerator, BigInteger denominator) {
+        int slot;
+        synchronized (this) {
+            slot = intern(name);
+            putVariable(slot, numerator, denominator);
+        }
+        changed(slot);
+    }
+
+    /**
+     * Sets a variable from a formatted result: an integer, a decimal or a fraction
+     * {@code n÷d}, optionally negative
+     *
+     * @param name The name of the variable
+     * @param value The value
+     * @throws NumberFormatException If the value is not a number
+     */
+    public void setVariable(String name, String value) {
+        BigInteger[] fraction = parseValue(value);
+        setVariable(name, fraction[0], fraction[1]);
+    }
+
+    /**
+     * Adds a formatted result to a variable, which counts as zero if it is not defined
+     *
+     * @param name The name of the variable
+     * @param value The value to add
+     * @throws NumberFormatException If the value is not a number
+     */
+    public void addToVariable(String name, String value) {
+        BigInteger[] addend = parseValue(value);
+        int slot;
+        synchronized (this) {
+            slot = intern(name);
+            if (numerators[slot] == null) {
+                putVariable(slot, addend[0], addend[1]);
+            } else {
+                putVariable(slot, numerators[slot].multiply(addend[1]).add(addend[0].multiply(denominators[slot])),
+                        denominators[slot].multiply(addend[1]));
+            }
+        }
+        changed(slot);
+    }
+
+    /**
+     * Defines a function of x, replacing any earlier definition of the name
+     *
+     * @param name The name of the function
+     * @param body The expression it computes, in x
+     * @throws MalformedExpressionException If the body cannot be compiled, e.g. because it
+     *                                      refers to an unknown name or calls itself
+     */
+    public void defineFunction(String name, String body) {
+        int slot;
+        synchronized (this) {
+            slot = intern(name);
+            BigInteger numerator = numerators[slot];
+            BigInteger denominator = denominators[slot];
+            String previous = bodies[slot];
+            putFunction(slot, body);
+            try {
+                ExpressionCompiler.compile(name + "(0)", this);
+            } catch (MalformedExpressionException e) {
+                numerators[slot] = numerator;
+                denominators[slot] = denominator;
+                bodies[slot] = previous;
+                throw e;
+            }
+        }
+        changed(slot);
+    }
+
+    /**
+     * Removes the definition of a name; its slot stays interned
+     *
+     * @param name The name to remove
+     */
+    public void remove(String name) {
+        int slot;
+        synchronized (this) {
+            slot = slotOf(name);
+            if (slot < 0 || (numerators[slot] == null && bodies[slot] == null)) {
+                return;
+            }
+            numerators[slot] = null;
+            denominators[slot] = null;
+            bodies[slot] = null;
+        }
+        changed(slot);
+    }
+
+    // Stores a function without checking its body, for definitions restored from disk
+    void restoreFunction(String name, String body) {
+        int slot;
+        synchronized (this) {
+            slot = intern(name);
+            putFunction(slot, body);
+        }
+        changed(slot);
+    }
+
+    private void putVariable(int slot, BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() == 0) {
+            throw new UnsupportedOperationException("Cannot divide by zero");
+        }
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger gcd = numerator.gcd(denominator);
+        numerators[slot] = numerator.divide(gcd);
+        denominators[slot] = denominator.divide(gcd);
+        bodies[slot] = null;
+    }
+
+    private void putFunction(int slot, String body) {
+        numerators[slot] = null;
+        denominators[slot] = null;
+        bodies[slot] = body;
+    }
+
+    // Called without holding the lock, so that listeners may take locks of their own
+    private void changed(int slot) {
+        for (Listener listener : listeners) {
+            listener.symbolChanged(slot);
+        }
+    }
+
+    /**
+     * Parses a formatted result into a fraction
+     *
+     * @param value An integer, a decimal or a fraction {@code n÷d}, optionally negative
+     * @return The numerator and the denominator
+     * @throws NumberFormatException If the value is not a number
+     */
+    static BigInteger[] parseValue(String value) {
+        int divide = value.indexOf(Operators.symbolOf(Operators.DIVIDE));
+        if (divide >= 0) {
+            return new BigInteger[]{new BigInteger(value.substring(0, divide)), new BigInteger(value.substring(divide + 1))};
+        }
+        BigDecimal decimal = new BigDecimal(value);
+        if (decimal.scale() <= 0) {
+            return new BigInteger[]{decimal.toBigIntegerExact(), BigInteger.ONE};
+        }
+        return new BigInteger[]{decimal.unscaledValue(), BigInteger.TEN.pow(decimal.scale())};
+    }
+}
@@ -0,0 +1,374 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.MathFunction;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Applies one expression in the variable x to a whole column of values.
+ * <p>
+ * The program is translated once into a list of steps, each naming an operator kernel and
+ * where its operands come from: a register, the input column or a constant. A kernel is a
+ * plain counted loop over int lanes with the operator fixed, so nothing is dispatched per
+ * element and C2 can unroll and vectorize add, subtract and multiply. Values are processed
+ * in blocks that fit in the L1 cache, and large columns are split across cores. Function
+ * calls have no vector form and run element by element through {@link Operators}.
+ * <p>
+ * Results follow the 32-bit semantics of {@link Evaluator}: every input is narrowed to an
+ * int first, exactly like a literal. A zero divisor anywhere in the column fails the whole
+ * call, as it would fail the scalar evaluation of that element. Instances are immutable and
+ * can be shared between threads.
+ */
+public final class VectorEvaluator {
+
+    // Values per block; one int register of a block is 4 KB
+    static final int BLOCK = 1024;
+    // Columns shorter than this are evaluated on the calling thread
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    // Where an operand of a step comes from
+    private static final int REGISTER = 0;
+    private static final int INPUT = 1;
+    private static final int CONSTANT = 2;
+
+    // Steps, STEP_FIELDS ints each: opcode, left kind, left value, right kind, right value, target register;
+    // the opcode of a call is its whole instruction and its operands are never constants
+    private static final int STEP_FIELDS = 6;
+    private final int[] steps;
+    // Operand left on top of the stack: kind and value
+    private final int resultKind;
+    private final int resultValue;
+    private final int registers;
+
+    /**
+     * Translates a program compiled with variables
+     *
+     * @param program The program, typically from {@link ExpressionCompiler#compile(CharSequence, boolean)}
+     */
+    public VectorEvaluator(Program program) {
+        int[] code = program.code();
+        int[] kinds = new int[program.maxStack()];
+        int[] values = new int[program.maxStack()];
+        int[] steps = new int[code.length * 2 * STEP_FIELDS];
+        int stepCount = 0;
+        int top = -1;
+        for (int instruction : code) {
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.PUSH) {
+                top++;
+                kinds[top] = CONSTANT;
+                values[top] = (int) program.constant(Program.argument(instruction));
+            } else if (opcode == Operators.LOAD) {
+                top++;
+                kinds[top] = INPUT;
+            } else if (opcode == Operators.CALL) {
+                int arity = MathFunction.of(Program.argument(instruction)).arity();
+                top -= arity - 1;
+                for (int slot = top; slot < top + arity; slot++) {
+                    if (kinds[slot] == CONSTANT) {
+                        stepCount = emit(steps, stepCount, Operators.PUSH, CONSTANT, values[slot], CONSTANT, 0, slot);
+                        kinds[slot] = REGISTER;
+                        values[slot] = slot;
+                    }
+                }
+                int right = arity == 2 ? top + 1 : top;
+                stepCount = emit(steps, stepCount, instruction, kinds[top], values[top], kinds[right], values[right], top);
+                kinds[top] = REGISTER;
+                values[top] = top;
+            } else {
+                top--;
+                int left = top;
+                if (kinds[left] == CONSTANT && kinds[left + 1] == CONSTANT) {
+                    // Kernels take at most one constant, so the left one gets a register
+                    stepCount = emit(steps, stepCount, Operators.PUSH, CONSTANT, values[left], CONSTANT, 0, left);
+                    kinds[left] = REGISTER;
+                    values[left] = left;
+                }
+                stepCount = emit(steps, stepCount, opcode, kinds[left], values[left], kinds[left + 1], values[left + 1], left);
+                kinds[left] = REGISTER;
+                values[left] = left;
+            }
+        }
+        this.steps = Arrays.copyOf(steps, stepCount);
+        this.resultKind = kinds[top];
+        this.resultValue = values[top];
+        this.registers = program.maxStack();
+    }
+
+    /**
+     * Evaluates the expression for every value of a column
+     *
+     * @param x The values of the variable
+     * @return The results, one per value
+     * @throws UnsupportedOperationException If the expression divides by zero for some value
+     */
+    public long[] evaluate(long[] x) {
+        long[] out = new long[x.length];
+        evaluate(x, out);
+        return out;
+    }
+
+    /**
+     * Evaluates the expression for every value of a column into a result column
+     *
+     * @param x The values of the variable
+     * @param out The results, at least as long as x
+     * @throws UnsupportedOperationException If the expression divides by zero for some value
+     */
+    public void evaluate(long[] x, long[] out) {
+        if (out.length < x.length) {
+            throw new IllegalArgumentException("Result column is shorter than the input");
+        }
+        if (x.length < PARALLEL_THRESHOLD) {
+            evaluate(x, 0, x.length, out);
+        } else {
+            ForkJoinPool.commonPool().invoke(new Slice(x, 0, x.length, out));
+        }
+    }
+
+    /**
+     * Evaluates the expression for a range of a column on the calling thread
+     *
+     * @param x The values of the variable
+     * @param from The first index, inclusive
+     * @param to The last index, exclusive
+     * @param out The results, written at the same indexes
+     */
+    public void evaluate(long[] x, int from, int to, long[] out) {
+        int[][] registers = new int[this.registers][BLOCK];
+        int[] input = new int[BLOCK];
+        for (int start = from; start < to; start += BLOCK) {
+            Cancellation.check();
+            int n = Math.min(BLOCK, to - start);
+            for (int i = 0; i < n; i++) {
+                input[i] = (int) x[start + i];
+            }
+            runBlock(registers, input, n);
+            if (resultKind == CONSTANT) {
+                Arrays.fill(out, start, start + n, resultValue);
+            } else {
+                int[] result = resultKind == INPUT ? input : registers[resultValue];
+                for (int i = 0; i < n; i++) {
+                    out[start + i] = result[i];
+                }
+            }
+        }
+    }
+
+    private void runBlock(int[][] registers, int[] input, int n) {
+        int[] steps = this.steps;
+        for (int s = 0; s < steps.length; s += STEP_FIELDS) {
+            int opcode = steps[s];
+            int[] target = registers[steps[s + 5]];
+            if (opcode == Operators.PUSH) {
+                Arrays.fill(target, 0, n, steps[s + 2]);
+                continue;
+            }
+            if (Program.opcode(opcode) == Operators.CALL) {
+                int[] a = steps[s + 1] == INPUT ? input : registers[steps[s + 2]];
+                int[] b = steps[s + 3] == INPUT ? input : registers[steps[s + 4]];
+                call(MathFunction.of(Program.argument(opcode)), a, b, target, n);
+                continue;
+            }
+            int leftKind = steps[s + 1];
+            int rightKind = steps[s + 3];
+            int[] a = leftKind == INPUT ? input : leftKind == REGISTER ? registers[steps[s + 2]] : null;
+            int[] b = rightKind == INPUT ? input : rightKind == REGISTER ? registers[steps[s + 4]] : null;
+            if (a != null && b != null) {
+                vectorVector(opcode, a, b, target, n);
+            } else if (b == null) {
+                vectorScalar(opcode, a, steps[s + 4], target, n);
+            } else {
+                scalarVector(opcode, steps[s + 2], b, target, n);
+            }
+        }
+    }
+
+    private static int emit(int[] steps, int position, int opcode, int leftKind, int left,
+                            int rightKind, int right, int target) {
+        steps[position] = opcode;
+        steps[position + 1] = leftKind;
+        steps[position + 2] = left;
+        steps[position + 3] = rightKind;
+        steps[position + 4] = right;
+        steps[position + 5] = target;
+        return position + STEP_FIELDS;
+    }
+
+    // Kernels: one loop per operator and operand shape, the target may alias an operand
+
+    private static void vectorVector(int opcode, int[] a, int[] b, int[] r, int n) {
+        switch (opcode) {
+            case Operators.ADD:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] + b[i];
+                }
+                break;
+            case Operators.SUBTRACT:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] - b[i];
+                }
+                break;
+            case Operators.MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] * b[i];
+                }
+                break;
+            case Operators.DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Operators.divide(a[i], b[i]);
+                }
+                break;
+            case Operators.POWER:
+                for (int i = 0; i < n; i++) {
+                    r[i] = (int) Math.pow(a[i], b[i]);
+                }
+                break;
+            default:
+                checkBitwise(opcode);
+                for (int i = 0; i < n; i++) {
+                    r[i] = Operators.apply(opcode, a[i], b[i]);
+                }
+        }
+    }
+
+    private static void vectorScalar(int opcode, int[] a, int b, int[] r, int n) {
+        switch (opcode) {
+            case Operators.ADD:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] + b;
+                }
+                break;
+            case Operators.SUBTRACT:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] - b;
+                }
+                break;
+            case Operators.MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] * b;
+                }
+                break;
+            case Operators.DIVIDE:
+                if (b == 0)
+                    throw new UnsupportedOperationException("Cannot divide by zero");
+                for (int i = 0; i < n; i++) {
+                    r[i] = a[i] / b;
+                }
+                break;
+            case Operators.POWER:
+                powerScalar(a, b, r, n);
+                break;
+            default:
+                checkBitwise(opcode);
+                for (int i = 0; i < n; i++) {
+                    r[i] = Operators.apply(opcode, a[i], b);
+                }
+        }
+    }
+
+    private static void scalarVector(int opcode, int a, int[] b, int[] r, int n) {
+        switch (opcode) {
+            case Operators.ADD:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a + b[i];
+                }
+                break;
+            case Operators.SUBTRACT:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a - b[i];
+                }
+                break;
+            case Operators.MULTIPLY:
+                for (int i = 0; i < n; i++) {
+                    r[i] = a * b[i];
+                }
+                break;
+            case Operators.DIVIDE:
+                for (int i = 0; i < n; i++) {
+                    r[i] = Operators.divide(a, b[i]);
+                }
+                break;
+            case Operators.POWER:
+                for (int i = 0; i < n; i++) {
+                    r[i] = (int) Math.pow(a, b[i]);
+                }
+                break;
+            default:
+                checkBitwise(opcode);
+                for (int i = 0; i < n; i++) {
+                    r[i] = Operators.apply(opcode, a, b[i]);
+                }
+        }
+    }
+
+    // The bitwise operators and shifts share one generic loop per shape
+    private static void checkBitwise(int opcode) {
+        if (!Operators.isBitwise(opcode)) {
+            throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+        }
+    }
+
+    // Calls a function per element; b is ignored by functions of one argument
+    private static void call(MathFunction function, int[] a, int[] b, int[] r, int n) {
+        if (function.arity() == 2) {
+            for (int i = 0; i < n; i++) {
+                r[i] = Operators.call(function, a[i], b[i]);
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                r[i] = Operators.call(function, a[i]);
+            }
+        }
+    }
+
+    // Power with a constant exponent; small exponents avoid Math.pow but saturate like it
+    private static void powerScalar(int[] a, int b, int[] r, int n) {
+        switch (b) {
+            case 0:
+                Arrays.fill(r, 0, n, 1);
+                break;
+            case 1:
+                System.arraycopy(a, 0, r, 0, n);
+                break;
+            case 2:
+                for (int i = 0; i < n; i++) {
+                    long square = (long) a[i] * a[i];
+                    r[i] = square > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) square;
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    r[i] = (int) Math.pow(a[i], b);
+                }
+        }
+    }
+
+    // Splits a column range in halves until it is small enough for one thread
+    private final class Slice extends RecursiveAction {
+        private final long[] x;
+        private final int from;
+        private final int to;
+        private final long[] out;
+
+        Slice(long[] x, int from, int to, long[] out) {
+            this.x = x;
+            this.from = from;
+            this.to = to;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                evaluate(x, from, to, out);
+                return;
+            }
+            // Split on a block boundary
+            int middle = from + ((to - from) / 2 / BLOCK) * BLOCK;
+            invokeAll(new Slice(x, from, middle, out), new Slice(x, middle, to, out));
+        }
+    }
+}
@@ -0,0 +1,579 @@
+package com.example.calculator.engine.history;
+
+import com.example.calculator.engine.metrics.Metrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only log of calculations.
+ * <p>
+ * Records are stored back to back in {@value #DATA_FILE} as
+ * {@code [int payload length][int CRC32 of payload][payload]}, where the payload is the
+ * UTF-8 expression, prefixed with its varint byte length, followed by the UTF-8 result.
+ * The sparse index {@value #INDEX_FILE} holds the file offset of every
+ * {@value #INDEX_INTERVAL}th record, so any page of entries, in particular the newest,
+ * is found with one lookup and read with one positional read per block.
+ * <p>
+ * {@link #append} only queues the entry; a single writer thread drains everything queued
+ * since its last run into one write and one {@code force} (group commit). Queued entries
+ * are readable immediately. On open, a torn or corrupt tail left by a crash is cut off
+ * and missing index entries are rebuilt.
+ * <p>
+ * Every entry is also indexed for {@link #search()} as it is appended. Entries the saved
+ * search index does not cover are indexed on the writer thread after open returns, a run at
+ * a time between batches of appends, so opening stays as cheap as recovering the log.
+ */
+public final class HistoryLog implements Closeable {
+
+    public static final String DATA_FILE = "history.log";
+    public static final String INDEX_FILE = "history.idx";
+    // Records between two sparse index entries
+    public static final int INDEX_INTERVAL = 64;
+
+    private static final int HEADER_BYTES = 8;
+    // Largest payload accepted when reading, guards against corrupt lengths
+    private static final int MAX_PAYLOAD_BYTES = 1 << 24;
+    // Entries indexed for search by one run of the writer thread after open, one block's worth
+    // so that appends queued behind a run wait little
+    private static final int CATCH_UP_ENTRIES = INDEX_INTERVAL;
+
+    // Files, both null for a log that only lives in memory
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ExecutorService writer;
+    private final HistorySearch search;
+
+    // Guards every field below
+    private final Object lock = new Object();
+    // File offsets of records 0, INDEX_INTERVAL, 2 * INDEX_INTERVAL, ...
+    private long[] blockOffsets = new long[16];
+    private int blockCount;
+    // Bytes of valid records in the data file
+    private long dataSize;
+    // Records written to the data file
+    private int durableCount;
+    // Entries appended but not yet written, oldest first
+    private final ArrayList<HistoryEntry> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    // Incremented by clear() so an in-flight batch does not resurrect cleared state
+    private int generation;
+    // Generation the files hold, read and written on the writer thread only
+    private int writtenGeneration;
+    // Last block decoded by a read, reused while paging through it
+    private int cachedBlock = -1;
+    private List<HistoryEntry> cachedEntries;
+
+    private HistoryLog(File directory, FileChannel data, FileChannel index, int mergeThreshold) {
+        this.data = data;
+        this.index = index;
+        this.search = new HistorySearch(directory, this, mergeThreshold);
+        this.writer = data == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens the log in a directory, creating it if needed and repairing a torn tail
+     *
+     * @param directory The directory holding the log files
+     * @return The opened log
+     * @throws IOException If the files cannot be opened or read
+     */
+    public static HistoryLog open(File directory) throws IOException {
+        return open(directory, HistorySearch.MERGE_THRESHOLD);
+    }
+
+    static HistoryLog open(File directory, int mergeThreshold) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        FileChannel data = FileChannel.open(new File(directory, DATA_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel index;
+        try {
+            index = FileChannel.open(new File(directory, INDEX_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        HistoryLog log = new HistoryLog(directory, data, index, mergeThreshold);
+        try {
+            log.recover();
+            if (log.search.load() < log.size()) {
+                log.writer.execute(log::catchUpSearch);
+            }
+        } catch (IOException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * Creates a log that keeps its entries in memory only, for when the files are unavailable
+     *
+     * @return An empty in-memory log
+     */
+    public static HistoryLog inMemory() {
+        return new HistoryLog(null, null, null, HistorySearch.MERGE_THRESHOLD);
+    }
+
+    /**
+     * @return The number of entries, including those not yet written
+     */
+    public int size() {
+        synchronized (lock) {
+            return durableCount + pending.size();
+        }
+    }
+
+    /**
+     * @return The search over the entries of this log
+     */
+    public HistorySearch search() {
+        return search;
+    }
+
+    /**
+     * Queues an entry for the writer thread
+     *
+     * @param expression The expression that was calculated
+     * @param result The result it produced
+     */
+    public void append(String expression, String result) {
+        synchronized (lock) {
+            HistoryEntry entry = new HistoryEntry(expression, result);
+            pending.add(entry);
+            int position = durableCount + pending.size() - 1;
+            // Until the search has caught up after open, the catch-up indexes this entry in turn
+            if (search.indexed() == position) {
+                indexForSearch(position, entry);
+            }
+            if (writer != null && !flushScheduled) {
+                flushScheduled = true;
+                writer.execute(this::writePending);
+            }
+        }
+    }
+
+    /**
+     * Reads one entry
+     *
+     * @param position The position of the entry, 0 being the oldest
+     * @return The entry
+     * @throws IOException If the log cannot be read
+     */
+    public HistoryEntry read(int position) throws IOException {
+        int block;
+        synchronized (lock) {
+            if (position < 0 || position >= durableCount + pending.size()) {
+                throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+            }
+            if (position >= durableCount) {
+                return pending.get(position - durableCount);
+            }
+            block = position / INDEX_INTERVAL;
+        }
+        return readBlock(block).get(position % INDEX_INTERVAL);
+    }
+
+    /**
+     * Reads consecutive entries
+     *
+     * @param from The position of the first entry, inclusive
+     * @param to The position of the last entry, exclusive
+     * @return The entries, oldest first
+     * @throws IOException If the log cannot be read
+     */
+    public List<HistoryEntry> read(int from, int to) throws IOException {
+        List<HistoryEntry> entries = new ArrayList<>(Math.max(0, to - from));
+        int position = from;
+        while (position < to) {
+            int block;
+            synchronized (lock) {
+                if (position >= durableCount) {
+                    int end = Math.min(to, durableCount + pending.size());
+                    entries.addAll(pending.subList(position - durableCount, end - durableCount));
+                    return entries;
+                }
+                block = position / INDEX_INTERVAL;
+            }
+            List<HistoryEntry> blockEntries = readBlock(block);
+            int first = position % INDEX_INTERVAL;
+            int last = Math.min(blockEntries.size(), first + to - position);
+            entries.addAll(blockEntries.subList(first, last));
+            position += last - first;
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the newest entries
+     *
+     * @param count The largest number of entries to read
+     * @return Up to count entries, oldest first
+     * @throws IOException If the log cannot be read
+     */
+    public List<HistoryEntry> newest(int count) throws IOException {
+        int size = size();
+        return read(Math.max(0, size - count), size);
+    }
+
+    /**
+     * Removes every entry, from memory and from disk
+     */
+    public void clear() {
+        synchronized (lock) {
+            generation++;
+            pending.clear();
+            durableCount = 0;
+            blockCount = 0;
+            dataSize = 0;
+            cachedBlock = -1;
+            cachedEntries = null;
+            search.clear();
+            // The writer truncates the files before it writes anything of the new generation
+            if (writer != null && !flushScheduled) {
+                flushScheduled = true;
+                writer.execute(this::writePending);
+            }
+        }
+    }
+
+    /**
+     * Blocks until every entry appended so far has been written
+     *
+     * @throws IOException If the writer failed
+     */
+    public void flush() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        Future<?> done = writer.submit(() -> {
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing history", e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Writes pending entries and closes the files
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    // Runs on the writer thread: one write and one force for everything queued
+    private void writePending() {
+        List<HistoryEntry> batch;
+        int batchGeneration;
+        long offset;
+        int firstRecord;
+        synchronized (lock) {
+            flushScheduled = false;
+            batch = new ArrayList<>(pending);
+            batchGeneration = generation;
+            offset = dataSize;
+            firstRecord = durableCount;
+        }
+        if (batchGeneration != writtenGeneration) {
+            try {
+                data.truncate(0);
+                index.truncate(0);
+                search.deleteSegment();
+            } catch (IOException e) {
+                // Entries stay pending, and the truncation is retried with the next append
+                return;
+            }
+            writtenGeneration = batchGeneration;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        byte[][] payloads = new byte[batch.size()][];
+        int bytes = 0;
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = encode(batch.get(i));
+            bytes += HEADER_BYTES + payloads[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        long[] newBlocks = new long[payloads.length / INDEX_INTERVAL + 1];
+        int newBlockCount = 0;
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < payloads.length; i++) {
+            if ((firstRecord + i) % INDEX_INTERVAL == 0) {
+                newBlocks[newBlockCount++] = offset + buffer.position();
+            }
+            crc.reset();
+            crc.update(payloads[i], 0, payloads[i].length);
+            buffer.putInt(payloads[i].length).putInt((int) crc.getValue()).put(payloads[i]);
+        }
+        buffer.flip();
+        long start = Metrics.start();
+        try {
+            writeFully(data, buffer, offset);
+            // Data is durable before the index points at it
+            data.force(false);
+            if (newBlockCount > 0) {
+                ByteBuffer indexBuffer = ByteBuffer.allocate(newBlockCount * 8);
+                for (int i = 0; i < newBlockCount; i++) {
+                    indexBuffer.putLong(newBlocks[i]);
+                }
+                indexBuffer.flip();
+                writeFully(index, indexBuffer, (long) ((firstRecord + INDEX_INTERVAL - 1) / INDEX_INTERVAL) * 8);
+                index.force(false);
+            }
+        } catch (IOException e) {
+            // Entries stay pending and are retried with the next append
+            return;
+        }
+        Metrics.HISTORY_WRITE.stop(start);
+        synchronized (lock) {
+            if (batchGeneration != generation) {
+                return;
+            }
+            for (int i = 0; i < newBlockCount; i++) {
+                addBlock(newBlocks[i]);
+            }
+            dataSize = offset + bytes;
+            durableCount += batch.size();
+            pending.subList(0, batch.size()).clear();
+        }
+    }
+
+    // Rebuilds the in-memory state from the files, cutting off a torn tail
+    private void recover() throws IOException {
+        long indexSize = index.size() / 8 * 8;
+        ByteBuffer indexBuffer = ByteBuffer.allocate((int) indexSize);
+        readFully(index, indexBuffer, 0);
+        indexBuffer.flip();
+        long fileSize = data.size();
+        while (indexBuffer.remaining() >= 8) {
+            long offset = indexBuffer.getLong();
+            if (offset >= fileSize || (blockCount > 0 && offset <= blockOffsets[blockCount - 1])) {
+                break;
+            }
+            addBlock(offset);
+        }
+        // Scan forward from the last indexed record to find the end of the valid data
+        long offset = blockCount > 0 ? blockOffsets[blockCount - 1] : 0;
+        int record = blockCount > 0 ? (blockCount - 1) * INDEX_INTERVAL : 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        while (offset + HEADER_BYTES <= fileSize) {
+            header.clear();
+            readFully(data, header, offset);
+            int length = header.getInt(0);
+            if (length < 0 || length > MAX_PAYLOAD_BYTES || offset + HEADER_BYTES + length > fileSize) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(data, payload, offset + HEADER_BYTES);
+            crc.reset();
+            crc.update(payload.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            if (record % INDEX_INTERVAL == 0 && record / INDEX_INTERVAL >= blockCount) {
+                addBlock(offset);
+            }
+            offset += HEADER_BYTES + length;
+            record++;
+        }
+        if (blockCount > 0 && blockOffsets[blockCount - 1] >= offset && record <= (blockCount - 1) * INDEX_INTERVAL) {
+            // The last indexed record itself was torn
+            blockCount--;
+        }
+        dataSize = offset;
+        durableCount = record;
+        data.truncate(dataSize);
+        ByteBuffer rewritten = ByteBuffer.allocate(blockCount * 8);
+        for (int i = 0; i < blockCount; i++) {
+            rewritten.putLong(blockOffsets[i]);
+        }
+        rewritten.flip();
+        index.truncate(0);
+        writeFully(index, rewritten, 0);
+        index.force(false);
+    }
+
+    // Runs on the writer thread: indexes the next run of entries the search does not cover,
+    // then queues the rest behind whatever was appended meanwhile. The run is read and its
+    // grams are computed outside the lock, which is only held to publish them
+    private void catchUpSearch() {
+        int from;
+        int to;
+        int catchUpGeneration;
+        synchronized (lock) {
+            from = search.indexed();
+            to = Math.min(durableCount + pending.size(), from + CATCH_UP_ENTRIES);
+            catchUpGeneration = generation;
+        }
+        if (from >= to) {
+            return;
+        }
+        HistorySearch.Prepared run;
+        try {
+            run = HistorySearch.prepare(read(from, to));
+        } catch (IOException | RuntimeException e) {
+            // The log was cleared or cannot be read; the search stays incomplete until reopened
+            return;
+        }
+        synchronized (lock) {
+            if (catchUpGeneration != generation || search.indexed() != from) {
+                return;
+            }
+            if (search.add(from, run)) {
+                writer.execute(search::merge);
+            }
+            if (to < durableCount + pending.size()) {
+                try {
+                    writer.execute(this::catchUpSearch);
+                } catch (RejectedExecutionException e) {
+                    // Closed meanwhile; the next open catches up
+                }
+            }
+        }
+    }
+
+    // Indexes an entry, handing a full batch of postings to the writer thread to merge
+    private void indexForSearch(int position, HistoryEntry entry) {
+        if (search.add(position, entry)) {
+            writer.execute(search::merge);
+        }
+    }
+
+    // Reads and decodes one block of up to INDEX_INTERVAL records
+    private List<HistoryEntry> readBlock(int block) throws IOException {
+        long start;
+        long end;
+        int records;
+        int readGeneration;
+        synchronized (lock) {
+            if (block == cachedBlock) {
+                return cachedEntries;
+            }
+            readGeneration = generation;
+            start = blockOffsets[block];
+            end = block + 1 < blockCount ? blockOffsets[block + 1] : dataSize;
+            records = Math.min(INDEX_INTERVAL, durableCount - block * INDEX_INTERVAL);
+        }
+        long started = Metrics.start();
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        readFully(data, buffer, start);
+        Metrics.HISTORY_READ.stop(started);
+        buffer.flip();
+        List<HistoryEntry> entries = new ArrayList<>(records);
+        for (int i = 0; i < records; i++) {
+            int length = buffer.getInt();
+            buffer.getInt();
+            entries.add(decode(buffer.array(), buffer.position(), length));
+            buffer.position(buffer.position() + length);
+        }
+        synchronized (lock) {
+            // A full block never changes until the log is cleared; the last one may still grow
+            if (records == INDEX_INTERVAL && readGeneration == generation) {
+                cachedBlock = block;
+                cachedEntries = entries;
+            }
+        }
+        return entries;
+    }
+
+    private void addBlock(long offset) {
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+        }
+        blockOffsets[blockCount++] = offset;
+    }
+
+    private static byte[] encode(HistoryEntry entry) {
+        byte[] expression = entry.getExpression().getBytes(StandardCharsets.UTF_8);
+        byte[] result = entry.getResult().getBytes(StandardCharsets.UTF_8);
+        int prefix = 1;
+        for (int length = expression.length; length >= 0x80; length >>>= 7) {
+            prefix++;
+        }
+        byte[] payload = new byte[prefix + expression.length + result.length];
+        int position = 0;
+        int length = expression.length;
+        while (length >= 0x80) {
+            payload[position++] = (byte) (length | 0x80);
+            length >>>= 7;
+        }
+        payload[position++] = (byte) length;
+        System.arraycopy(expression, 0, payload, position, expression.length);
+        System.arraycopy(result, 0, payload, position + expression.length, result.length);
+        return payload;
+    }
+
+    private static HistoryEntry decode(byte[] bytes, int offset, int length) {
+        int position = offset;
+        int expressionLength = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position++];
+            expressionLength |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        String expression = new String(bytes, position, expressionLength, StandardCharsets.UTF_8);
+        int resultStart = position + expressionLength;
+        String result = new String(bytes, resultStart, offset + length - resultStart, StandardCharsets.UTF_8);
+        return new HistoryEntry(expression, result);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of history file");
+            }
+            position += read;
+        }
+    }
+}
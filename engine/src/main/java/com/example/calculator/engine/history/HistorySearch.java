@@ -0,0 +1,827 @@
+package com.example.calculator.engine.history;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Search over the entries of a {@link HistoryLog}, by text in the expression and by the value
+ * of the result.
+ * <p>
+ * Expressions are indexed by every run of one to {@value #GRAM_LENGTH} characters (n-gram).
+ * The postings of a gram are the positions of the entries that contain it, ascending and
+ * stored as varint gaps. A query of up to three characters is answered from one posting list;
+ * a longer one intersects the lists of its trigrams and checks the survivors against the log.
+ * Results that read as decimal numbers, such as {@code -12}, {@code 0.5} or {@code 1÷3}, are
+ * kept sorted by value, so a range of values takes two binary searches.
+ * <p>
+ * The log indexes every entry as it is appended. The postings of the newest entries live in
+ * memory; once {@value #MERGE_THRESHOLD} have gathered, the writer thread of the log merges
+ * them with the segment file {@value #SEGMENT_FILE}, writes the result beside it, renames it
+ * into place and maps it, so the heap only holds recent entries. On open, a segment that does
+ * not end with the log's entry at its position is dropped, and the entries it does not cover
+ * are indexed again from the log on the writer thread, after the log is open. Until then
+ * {@link #isComplete()} is false and queries only see the entries indexed so far.
+ */
+public final class HistorySearch {
+
+    public static final String SEGMENT_FILE = "history.search";
+    // Entries indexed in memory before they are merged into the segment
+    public static final int MERGE_THRESHOLD = 1 << 16;
+    // Longest gram; a longer query is narrowed by its grams of this length
+    static final int GRAM_LENGTH = 3;
+
+    private static final String TEMPORARY_FILE = SEGMENT_FILE + ".tmp";
+    private static final int MAGIC = 0x48535831;
+    // MAGIC, count, fingerprint, gram count, postings bytes, value count
+    private static final int HEADER_BYTES = 24;
+    private static final int[] NO_POSITIONS = new int[0];
+
+    // Directory of the segment, null for a log that only lives in memory
+    private final File directory;
+    private final HistoryLog log;
+    private final int mergeThreshold;
+
+    // Guards every field below
+    private final Object lock = new Object();
+    // Entries merged to disk, null while there are none
+    private Segment segment;
+    // Entries handed to the writer thread for merging, or null
+    private Postings frozen;
+    // Newest entries
+    private Postings recent = new Postings();
+    private boolean mergeScheduled;
+    // Incremented by clear() so an in-flight merge does not resurrect cleared entries
+    private int generation;
+    // Number of entries indexed, from position 0
+    private int indexed;
+
+    HistorySearch(File directory, HistoryLog log, int mergeThreshold) {
+        this.directory = directory;
+        this.log = log;
+        this.mergeThreshold = mergeThreshold;
+    }
+
+    /**
+     * Answers a query as typed into the history dialog: {@code low..high} finds results in
+     * that range, anything else is text to find in expressions
+     *
+     * @param query The query, e.g. {@code 1000..2000} or {@code ^}
+     * @return The positions of the entries, oldest first
+     * @throws IOException If the log cannot be read
+     */
+    public int[] find(String query) throws IOException {
+        int range = query.indexOf("..");
+        if (range > 0) {
+            double low = valueOf(query.substring(0, range).trim());
+            double high = valueOf(query.substring(range + 2).trim());
+            if (!Double.isNaN(low) && !Double.isNaN(high)) {
+                return resultsBetween(low, high);
+            }
+        }
+        return containing(query);
+    }
+
+    /**
+     * Finds the entries whose expression contains a text
+     *
+     * @param text The text, matched exactly
+     * @return The positions of the entries, oldest first
+     * @throws IOException If the log cannot be read
+     */
+    public int[] containing(String text) throws IOException {
+        if (text.isEmpty()) {
+            int[] all = new int[log.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        int[] candidates;
+        synchronized (lock) {
+            if (text.length() <= GRAM_LENGTH) {
+                return postings(gram(text, 0, text.length()));
+            }
+            int[][] lists = new int[text.length() - GRAM_LENGTH + 1][];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = postings(gram(text, i, GRAM_LENGTH));
+            }
+            // Shortest first, so the running intersection shrinks quickly
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+            candidates = lists[0];
+            for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+                candidates = intersect(candidates, lists[i]);
+            }
+        }
+        // All trigrams occur, but not necessarily in a row
+        int[] matches = new int[candidates.length];
+        int count = 0;
+        for (int position : candidates) {
+            if (position < log.size() && log.read(position).getExpression().contains(text)) {
+                matches[count++] = position;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * Finds the entries whose result lies in a range; results that are not decimal numbers,
+     * such as integers shown in another base with letters in them, never match
+     *
+     * @param low The smallest value, inclusive
+     * @param high The largest value, inclusive
+     * @return The positions of the entries, oldest first
+     */
+    public int[] resultsBetween(double low, double high) {
+        if (!(low <= high)) {
+            return NO_POSITIONS;
+        }
+        int[] positions;
+        synchronized (lock) {
+            int fromSegment = segment == null ? 0 : segment.valueCount;
+            int first = segment == null ? 0 : segment.firstValueAtLeast(low);
+            positions = new int[16];
+            int count = 0;
+            for (int i = first; i < fromSegment && segment.value(i) <= high; i++) {
+                if (count == positions.length) {
+                    positions = Arrays.copyOf(positions, count * 2);
+                }
+                positions[count++] = segment.valuePosition(i);
+            }
+            for (Postings postings : new Postings[]{frozen, recent}) {
+                if (postings == null) {
+                    continue;
+                }
+                for (int i = 0; i < postings.valueCount; i++) {
+                    double value = postings.values[i];
+                    if (value >= low && value <= high) {
+                        if (count == positions.length) {
+                            positions = Arrays.copyOf(positions, count * 2);
+                        }
+                        positions[count++] = postings.valuePositions[i];
+                    }
+                }
+            }
+            positions = Arrays.copyOf(positions, count);
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * @return True if every entry of the log is indexed, false while older entries are still
+     *         being indexed after the log was opened
+     */
+    public boolean isComplete() {
+        return indexed() >= log.size();
+    }
+
+    /**
+     * @return The number of entries indexed, from position 0
+     */
+    int indexed() {
+        synchronized (lock) {
+            return indexed;
+        }
+    }
+
+    /**
+     * @return The number of entries whose postings are in the segment file rather than in memory
+     */
+    int segmentSize() {
+        synchronized (lock) {
+            return segment == null ? 0 : segment.count;
+        }
+    }
+
+    /**
+     * Maps the segment file, dropping it if it does not belong to the entries of the log
+     *
+     * @return The number of entries it covers, from position 0
+     */
+    int load() throws IOException {
+        File file = new File(directory, SEGMENT_FILE);
+        Segment loaded = file.isFile() ? Segment.map(file) : null;
+        if (loaded != null && (loaded.count > log.size()
+                || (loaded.count > 0 && loaded.fingerprint != fingerprint(log.read(loaded.count - 1))))) {
+            loaded = null;
+        }
+        if (loaded == null) {
+            Files.deleteIfExists(file.toPath());
+            return 0;
+        }
+        synchronized (lock) {
+            segment = loaded;
+            recent = new Postings();
+            recent.first = loaded.count;
+            indexed = loaded.count;
+        }
+        return loaded.count;
+    }
+
+    /**
+     * Indexes an entry; positions must be added in order
+     *
+     * @param position The position of the entry in the log
+     * @param entry The entry
+     * @return True if a merge is due, which the caller runs with {@link #merge()} on the writer thread
+     */
+    boolean add(int position, HistoryEntry entry) {
+        long[] grams = grams(entry.getExpression());
+        double value = valueOf(entry.getResult());
+        int fingerprint = fingerprint(entry);
+        synchronized (lock) {
+            return addLocked(position, grams, value, fingerprint);
+        }
+    }
+
+    /**
+     * Indexes a run of entries prepared beforehand, which only takes the lock to publish them
+     *
+     * @param first The position of the first entry of the run in the log
+     * @param run The entries, from {@link #prepare(List)}
+     * @return True if a merge is due, which the caller runs with {@link #merge()} on the writer thread
+     */
+    boolean add(int first, Prepared run) {
+        boolean mergeDue = false;
+        synchronized (lock) {
+            for (int i = 0; i < run.values.length; i++) {
+                mergeDue |= addLocked(first + i, run.grams[i], run.values[i], run.fingerprints[i]);
+            }
+        }
+        return mergeDue;
+    }
+
+    /**
+     * Computes the grams, values and fingerprints of a run of entries without taking any lock
+     *
+     * @param entries The entries, in log order
+     * @return The run, ready for {@link #add(int, Prepared)}
+     */
+    static Prepared prepare(List<HistoryEntry> entries) {
+        Prepared run = new Prepared(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            HistoryEntry entry = entries.get(i);
+            run.grams[i] = grams(entry.getExpression());
+            run.values[i] = valueOf(entry.getResult());
+            run.fingerprints[i] = fingerprint(entry);
+        }
+        return run;
+    }
+
+    // Adds one entry to the in-memory postings; the caller holds the lock
+    private boolean addLocked(int position, long[] grams, double value, int fingerprint) {
+        recent.add(position, grams, value, fingerprint);
+        indexed = position + 1;
+        if (directory == null || mergeScheduled || recent.count < mergeThreshold) {
+            return false;
+        }
+        if (frozen == null) {
+            frozen = recent;
+            recent = new Postings();
+            recent.first = position + 1;
+        } else if (recent.count != mergeThreshold) {
+            // An earlier merge failed; retry once more entries have gathered
+            return false;
+        }
+        mergeScheduled = true;
+        return true;
+    }
+
+    /**
+     * Merges the frozen postings into a new segment file, and the newest ones too if a full
+     * batch gathered meanwhile; runs on the writer thread
+     */
+    void merge() {
+        while (true) {
+            Segment base;
+            Postings batch;
+            int batchGeneration;
+            synchronized (lock) {
+                mergeScheduled = false;
+                base = segment;
+                batch = frozen;
+                batchGeneration = generation;
+            }
+            if (batch == null) {
+                return;
+            }
+            Segment merged;
+            try {
+                merged = Segment.write(directory, base, batch);
+            } catch (IOException e) {
+                // The batch stays frozen in memory, and is retried later
+                return;
+            }
+            synchronized (lock) {
+                if (batchGeneration != generation) {
+                    return;
+                }
+                segment = merged;
+                frozen = null;
+                if (recent.count < mergeThreshold) {
+                    return;
+                }
+                frozen = recent;
+                recent = new Postings();
+                recent.first = frozen.first + frozen.count;
+            }
+        }
+    }
+
+    /**
+     * Forgets every entry; the caller deletes the file with {@link #deleteSegment()} on the writer thread
+     */
+    void clear() {
+        synchronized (lock) {
+            generation++;
+            segment = null;
+            frozen = null;
+            recent = new Postings();
+            mergeScheduled = false;
+            indexed = 0;
+        }
+    }
+
+    void deleteSegment() throws IOException {
+        Files.deleteIfExists(new File(directory, SEGMENT_FILE).toPath());
+    }
+
+    // The positions of the entries containing a gram, from all three tiers
+    private int[] postings(long gram) {
+        int[] fromSegment = segment == null ? NO_POSITIONS : segment.postings(gram);
+        int[] fromFrozen = frozen == null ? NO_POSITIONS : frozen.postings(gram);
+        int[] fromRecent = recent.postings(gram);
+        int[] all = Arrays.copyOf(fromSegment, fromSegment.length + fromFrozen.length + fromRecent.length);
+        System.arraycopy(fromFrozen, 0, all, fromSegment.length, fromFrozen.length);
+        System.arraycopy(fromRecent, 0, all, fromSegment.length + fromFrozen.length, fromRecent.length);
+        return all;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                out[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, count);
+    }
+
+    // A gram as a key: its length above 16 bits per character, so keys of different lengths differ
+    private static long gram(CharSequence text, int start, int length) {
+        long key = 0;
+        for (int i = start; i < start + length; i++) {
+            key = key << 16 | text.charAt(i);
+        }
+        return (long) length << 48 | key;
+    }
+
+    // The distinct grams of an expression, sorted
+    private static long[] grams(String expression) {
+        int length = expression.length();
+        long[] grams = new long[length * GRAM_LENGTH];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            for (int n = 1; n <= GRAM_LENGTH && i + n <= length; n++) {
+                grams[count++] = gram(expression, i, n);
+            }
+        }
+        Arrays.sort(grams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                grams[distinct++] = grams[i];
+            }
+        }
+        return Arrays.copyOf(grams, distinct);
+    }
+
+    /**
+     * Reads a result as a number
+     *
+     * @param result The result as shown, e.g. {@code -12}, {@code 0.5}, {@code 2.5E+40} or {@code 1÷3}
+     * @return Its value, or NaN if it is not a decimal number
+     */
+    static double valueOf(String result) {
+        int divide = result.indexOf('÷');
+        if (divide >= 0) {
+            return valueOf(result.substring(0, divide)) / valueOf(result.substring(divide + 1));
+        }
+        int first = result.startsWith("-") ? 1 : 0;
+        if (first >= result.length() || result.charAt(first) < '0' || result.charAt(first) > '9') {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(result);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // Identifies an entry, to tell whether a segment still matches the log
+    private static int fingerprint(HistoryEntry entry) {
+        CRC32 crc = new CRC32();
+        byte[] expression = entry.getExpression().getBytes(StandardCharsets.UTF_8);
+        byte[] result = entry.getResult().getBytes(StandardCharsets.UTF_8);
+        crc.update(expression, 0, expression.length);
+        crc.update(0);
+        crc.update(result, 0, result.length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    // Postings of consecutive entries held in memory
+    // Grams, values and fingerprints of a run of entries, computed outside the lock
+    static final class Prepared {
+        final long[][] grams;
+        final double[] values;
+        final int[] fingerprints;
+
+        private Prepared(int count) {
+            grams = new long[count][];
+            values = new double[count];
+            fingerprints = new int[count];
+        }
+    }
+
+    private static final class Postings {
+        // Position of the first entry, and the number of entries
+        int first;
+        int count;
+        int lastFingerprint;
+        final HashMap<Long, PostingList> lists = new HashMap<>();
+        double[] values = new double[16];
+        int[] valuePositions = new int[16];
+        int valueCount;
+
+        void add(int position, long[] grams, double value, int fingerprint) {
+            for (long gram : grams) {
+                PostingList list = lists.get(gram);
+                if (list == null) {
+                    list = new PostingList();
+                    lists.put(gram, list);
+                }
+                list.add(position);
+            }
+            if (!Double.isNaN(value)) {
+                if (valueCount == values.length) {
+                    values = Arrays.copyOf(values, valueCount * 2);
+                    valuePositions = Arrays.copyOf(valuePositions, valueCount * 2);
+                }
+                values[valueCount] = value;
+                valuePositions[valueCount++] = position;
+            }
+            count++;
+            lastFingerprint = fingerprint;
+        }
+
+        int[] postings(long gram) {
+            PostingList list = lists.get(gram);
+            return list == null ? NO_POSITIONS : list.decode();
+        }
+    }
+
+    // Ascending positions: the first in full, then the gaps as varints
+    private static final class PostingList {
+        int first = -1;
+        int last;
+        int size;
+        byte[] gaps = new byte[4];
+        int length;
+
+        void add(int position) {
+            if (first < 0) {
+                first = position;
+            } else {
+                int gap = position - last;
+                if (length + 5 > gaps.length) {
+                    gaps = Arrays.copyOf(gaps, gaps.length * 2);
+                }
+                while ((gap & ~0x7F) != 0) {
+                    gaps[length++] = (byte) (gap & 0x7F | 0x80);
+                    gap >>>= 7;
+                }
+                gaps[length++] = (byte) gap;
+            }
+            last = position;
+            size++;
+        }
+
+        int[] decode() {
+            int[] positions = new int[size];
+            positions[0] = first;
+            int position = first;
+            int offset = 0;
+            for (int i = 1; i < size; i++) {
+                int gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = gaps[offset++];
+                    gap |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                position += gap;
+                positions[i] = position;
+            }
+            return positions;
+        }
+    }
+
+    /**
+     * An immutable, memory-mapped segment file:
+     * {@code [header][long gram]*[int last position]*[int postings start]*(+1)[postings]
+     * [double value]*[int position]*[int CRC32 of everything before]}, where the postings of a
+     * gram are its first position and gaps as varints, and values are ascending.
+     */
+    private static final class Segment {
+        final ByteBuffer buffer;
+        final int count;
+        final int fingerprint;
+        final int gramCount;
+        final int valueCount;
+        private final int gramsStart;
+        private final int lastsStart;
+        private final int startsStart;
+        private final int postingsStart;
+        private final int valuesStart;
+        private final int valuePositionsStart;
+
+        private Segment(ByteBuffer buffer) {
+            this.buffer = buffer;
+            count = buffer.getInt(4);
+            fingerprint = buffer.getInt(8);
+            gramCount = buffer.getInt(12);
+            int postingsBytes = buffer.getInt(16);
+            valueCount = buffer.getInt(20);
+            gramsStart = HEADER_BYTES;
+            lastsStart = gramsStart + gramCount * 8;
+            startsStart = lastsStart + gramCount * 4;
+            postingsStart = startsStart + (gramCount + 1) * 4;
+            valuesStart = postingsStart + postingsBytes;
+            valuePositionsStart = valuesStart + valueCount * 8;
+        }
+
+        // Maps a segment file, or returns null if it is torn or corrupt
+        static Segment map(File file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size < HEADER_BYTES + 8 || size > Integer.MAX_VALUE) {
+                    return null;
+                }
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (buffer.getInt(0) != MAGIC) {
+                    return null;
+                }
+                long gramCount = buffer.getInt(12);
+                long expected = HEADER_BYTES + gramCount * 16 + 4 + buffer.getInt(16) + buffer.getInt(20) * 12L + 4;
+                if (gramCount < 0 || expected != size) {
+                    return null;
+                }
+                CRC32 crc = new CRC32();
+                ByteBuffer body = buffer.duplicate();
+                body.limit((int) size - 4);
+                crc.update(body);
+                return (int) crc.getValue() == buffer.getInt((int) size - 4) ? new Segment(buffer) : null;
+            }
+        }
+
+        // Writes base and batch as one segment beside the live one, then renames and maps it
+        static Segment write(File directory, Segment base, Postings batch) throws IOException {
+            long[] batchGrams = new long[batch.lists.size()];
+            int n = 0;
+            for (Long gram : batch.lists.keySet()) {
+                batchGrams[n++] = gram;
+            }
+            Arrays.sort(batchGrams);
+            long[] grams = union(base, batchGrams);
+            // Postings of each gram: the base bytes, then the batch continuing from the base's last position
+            int[] lasts = new int[grams.length];
+            int[] starts = new int[grams.length + 1];
+            for (int g = 0, b = 0, i = 0; i < grams.length; i++) {
+                int bytes = 0;
+                int last = -1;
+                if (g < (base == null ? 0 : base.gramCount) && base.gram(g) == grams[i]) {
+                    bytes += base.postingsLength(g);
+                    last = base.last(g);
+                    g++;
+                }
+                if (b < batchGrams.length && batchGrams[b] == grams[i]) {
+                    PostingList list = batch.lists.get(grams[i]);
+                    bytes += varintLength(last < 0 ? list.first : list.first - last) + list.length;
+                    last = list.last;
+                    b++;
+                }
+                lasts[i] = last;
+                starts[i + 1] = starts[i] + bytes;
+            }
+            Integer[] order = new Integer[batch.valueCount];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(batch.values[a], batch.values[b]));
+
+            File temporary = new File(directory, TEMPORARY_FILE);
+            int baseValues = base == null ? 0 : base.valueCount;
+            CRC32 crc = new CRC32();
+            try (FileOutputStream file = new FileOutputStream(temporary)) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc);
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(batch.first + batch.count);
+                out.writeInt(batch.lastFingerprint);
+                out.writeInt(grams.length);
+                out.writeInt(starts[grams.length]);
+                out.writeInt(baseValues + batch.valueCount);
+                for (long gram : grams) {
+                    out.writeLong(gram);
+                }
+                for (int last : lasts) {
+                    out.writeInt(last);
+                }
+                for (int start : starts) {
+                    out.writeInt(start);
+                }
+                for (int g = 0, i = 0; i < grams.length; i++) {
+                    int last = -1;
+                    if (g < (base == null ? 0 : base.gramCount) && base.gram(g) == grams[i]) {
+                        base.copyPostings(g, out);
+                        last = base.last(g);
+                        g++;
+                    }
+                    PostingList list = batch.lists.get(grams[i]);
+                    if (list != null) {
+                        writeVarint(out, last < 0 ? list.first : list.first - last);
+                        out.write(list.gaps, 0, list.length);
+                    }
+                }
+                // Merge the sorted values of the base with the sorted values of the batch
+                int[] positions = new int[baseValues + batch.valueCount];
+                for (int i = 0, j = 0, k = 0; k < positions.length; k++) {
+                    if (j == order.length || (i < baseValues && base.value(i) <= batch.values[order[j]])) {
+                        out.writeDouble(base.value(i));
+                        positions[k] = base.valuePosition(i++);
+                    } else {
+                        out.writeDouble(batch.values[order[j]]);
+                        positions[k] = batch.valuePositions[order[j++]];
+                    }
+                }
+                for (int position : positions) {
+                    out.writeInt(position);
+                }
+                out.flush();
+                new DataOutputStream(file).writeInt((int) crc.getValue());
+                file.getFD().sync();
+            }
+            File target = new File(directory, SEGMENT_FILE);
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Segment segment = map(target);
+            if (segment == null) {
+                throw new IOException("Segment " + target + " did not read back");
+            }
+            return segment;
+        }
+
+        long gram(int index) {
+            return buffer.getLong(gramsStart + index * 8);
+        }
+
+        int last(int index) {
+            return buffer.getInt(lastsStart + index * 4);
+        }
+
+        int postingsLength(int index) {
+            return buffer.getInt(startsStart + (index + 1) * 4) - buffer.getInt(startsStart + index * 4);
+        }
+
+        double value(int index) {
+            return buffer.getDouble(valuesStart + index * 8);
+        }
+
+        int valuePosition(int index) {
+            return buffer.getInt(valuePositionsStart + index * 4);
+        }
+
+        int firstValueAtLeast(double low) {
+            int from = 0;
+            int to = valueCount;
+            while (from < to) {
+                int middle = (from + to) >>> 1;
+                if (value(middle) < low) {
+                    from = middle + 1;
+                } else {
+                    to = middle;
+                }
+            }
+            return from;
+        }
+
+        int[] postings(long gram) {
+            int from = 0;
+            int to = gramCount - 1;
+            while (from <= to) {
+                int middle = (from + to) >>> 1;
+                long key = gram(middle);
+                if (key < gram) {
+                    from = middle + 1;
+                } else if (key > gram) {
+                    to = middle - 1;
+                } else {
+                    return decode(middle);
+                }
+            }
+            return NO_POSITIONS;
+        }
+
+        private int[] decode(int index) {
+            int offset = postingsStart + buffer.getInt(startsStart + index * 4);
+            int end = postingsStart + buffer.getInt(startsStart + (index + 1) * 4);
+            int[] positions = new int[16];
+            int size = 0;
+            int position = 0;
+            while (offset < end) {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = buffer.get(offset++);
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                // The first varint is a position, the rest are gaps
+                position = size == 0 ? value : position + value;
+                if (size == positions.length) {
+                    positions = Arrays.copyOf(positions, size * 2);
+                }
+                positions[size++] = position;
+            }
+            return Arrays.copyOf(positions, size);
+        }
+
+        private void copyPostings(int index, DataOutputStream out) throws IOException {
+            ByteBuffer postings = buffer.duplicate();
+            int start = postingsStart + buffer.getInt(startsStart + index * 4);
+            postings.position(start).limit(start + postingsLength(index));
+            byte[] bytes = new byte[postings.remaining()];
+            postings.get(bytes);
+            out.write(bytes);
+        }
+
+        private static long[] union(Segment base, long[] batchGrams) {
+            int baseGrams = base == null ? 0 : base.gramCount;
+            long[] grams = new long[baseGrams + batchGrams.length];
+            int count = 0;
+            for (int g = 0, b = 0; g < baseGrams || b < batchGrams.length; ) {
+                long next;
+                if (b == batchGrams.length || (g < baseGrams && base.gram(g) < batchGrams[b])) {
+                    next = base.gram(g++);
+                } else if (g == baseGrams || batchGrams[b] < base.gram(g)) {
+                    next = batchGrams[b++];
+                } else {
+                    next = batchGrams[b++];
+                    g++;
+                }
+                grams[count++] = next;
+            }
+            return Arrays.copyOf(grams, count);
+        }
+
+        private static int varintLength(int value) {
+            int length = 1;
+            while ((value & ~0x7F) != 0) {
+                value >>>= 7;
+                length++;
+            }
+            return length;
+        }
+    }
+}
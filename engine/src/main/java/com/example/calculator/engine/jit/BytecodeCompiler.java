@@ -0,0 +1,326 @@
+package com.example.calculator.engine.jit;
+
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Program;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Translates a {@link Program} into a JVM class implementing {@link CompiledExpression}.
+ * <p>
+ * The generated {@code evaluate} method is straight-line code: the operand stack of the
+ * program becomes the JVM operand stack, + - x become {@code iadd}, {@code isub} and
+ * {@code imul}, and ÷ ^ call {@link Operators#divide} and {@link Operators#power}, so
+ * results are bit-identical to the interpreter. The class file uses version 49, which
+ * needs no stack map frames, and every class gets its own class loader so it can be
+ * unloaded once the expression is no longer used.
+ * <p>
+ * Runtimes that cannot load JVM bytecode, such as Android, make {@link #compile}
+ * throw {@link UnsupportedOperationException}; {@link ClosureCompiler} covers them.
+ */
+public final class BytecodeCompiler {
+
+    private static final String PACKAGE = "com/example/calculator/engine/jit/";
+    private static final String INTERFACE = PACKAGE + "CompiledExpression";
+    private static final String OPERATORS = "com/example/calculator/engine/Operators";
+    // Largest method body the JVM accepts
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    // Class file constants
+    private static final int CLASS_VERSION = 49;
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    // Instructions
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD_3 = 0x1d;
+    private static final int LLOAD_1 = 0x1f;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ISTORE_3 = 0x3e;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int IXOR = 0x82;
+    private static final int I2L = 0x85;
+    private static final int L2I = 0x88;
+    private static final int LRETURN = 0xad;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Compiles a program into a freshly loaded class
+     *
+     * @param program The program, may refer to the variable x
+     * @return An instance of the generated class
+     * @throws UnsupportedOperationException If the runtime cannot load bytecode or the program is too large
+     */
+    public static CompiledExpression compile(Program program) {
+        String name = PACKAGE + "GeneratedExpression" + CLASS_COUNTER.incrementAndGet();
+        byte[] bytes = generate(name, program);
+        Class<?> generated;
+        try {
+            generated = new Loader(CompiledExpression.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+        } catch (UnsupportedOperationException | LinkageError e) {
+            throw new UnsupportedOperationException("This runtime cannot load generated bytecode", e);
+        }
+        try {
+            return (CompiledExpression) generated.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate " + name, e);
+        }
+    }
+
+    /**
+     * Generates the class file of a program
+     *
+     * @param name The internal name of the class, with slashes
+     * @param program The program to translate
+     * @return The class file
+     * @throws UnsupportedOperationException If the program is too large for one method
+     */
+    static byte[] generate(String name, Program program) {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(name);
+        int superClass = pool.classRef("java/lang/Object");
+        int interfaceClass = pool.classRef(INTERFACE);
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int divide = pool.methodRef(OPERATORS, "divide", "(II)I");
+        int power = pool.methodRef(OPERATORS, "power", "(II)I");
+        int shiftLeft = pool.methodRef(OPERATORS, "shiftLeft", "(II)I");
+        int shiftRight = pool.methodRef(OPERATORS, "shiftRight", "(II)I");
+        int code = pool.utf8("Code");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int evaluateName = pool.utf8("evaluate");
+        int evaluateType = pool.utf8("(J)J");
+
+        // evaluate(long x): narrow x into local 3, then run the program on the operand stack
+        ByteArrayOutputStream body = new ByteArrayOutputStream(program.length() * 3 + 8);
+        body.write(LLOAD_1);
+        body.write(L2I);
+        body.write(ISTORE_3);
+        for (int i = 0; i < program.length(); i++) {
+            int instruction = program.instructionAt(i);
+            int opcode = Program.opcode(instruction);
+            switch (opcode) {
+                case Operators.PUSH:
+                    pushInt(body, pool, (int) program.constant(Program.argument(instruction)));
+                    break;
+                case Operators.LOAD:
+                    body.write(ILOAD_3);
+                    break;
+                case Operators.ADD:
+                    body.write(IADD);
+                    break;
+                case Operators.SUBTRACT:
+                    body.write(ISUB);
+                    break;
+                case Operators.MULTIPLY:
+                    body.write(IMUL);
+                    break;
+                case Operators.DIVIDE:
+                    writeIndex(body, INVOKESTATIC, divide);
+                    break;
+                case Operators.POWER:
+                    writeIndex(body, INVOKESTATIC, power);
+                    break;
+                case Operators.AND:
+                    body.write(IAND);
+                    break;
+                case Operators.OR:
+                    body.write(IOR);
+                    break;
+                case Operators.XOR:
+                    body.write(IXOR);
+                    break;
+                // The JVM masks shift counts to five bits, the calculator does not
+                case Operators.SHIFT_LEFT:
+                    writeIndex(body, INVOKESTATIC, shiftLeft);
+                    break;
+                case Operators.SHIFT_RIGHT:
+                    writeIndex(body, INVOKESTATIC, shiftRight);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+            }
+        }
+        // Operands left below the top are discarded by the return
+        body.write(I2L);
+        body.write(LRETURN);
+        if (body.size() > MAX_CODE_LENGTH || pool.size() > 0xFFFF) {
+            throw new UnsupportedOperationException("Expression too large to compile");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.size() + 512);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0);
+            out.writeShort(2);
+
+            // public <init>() { super(); }
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(initName);
+            out.writeShort(initType);
+            out.writeShort(1);
+            byte[] init = {(byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+            writeCode(out, code, 1, 1, init);
+
+            // The long result takes one slot more than the int it is widened from
+            out.writeShort(ACC_PUBLIC);
+            out.writeShort(evaluateName);
+            out.writeShort(evaluateType);
+            out.writeShort(1);
+            writeCode(out, code, program.maxStack() + 1, 4, body.toByteArray());
+
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void pushInt(ByteArrayOutputStream body, ConstantPool pool, int value) {
+        if (value >= -1 && value <= 5) {
+            body.write(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            body.write(BIPUSH);
+            body.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            body.write(SIPUSH);
+            body.write(value >> 8);
+            body.write(value);
+        } else {
+            int index = pool.integer(value);
+            if (index <= 0xFF) {
+                body.write(LDC);
+                body.write(index);
+            } else {
+                writeIndex(body, LDC_W, index);
+            }
+        }
+    }
+
+    private static void writeIndex(ByteArrayOutputStream body, int instruction, int index) {
+        body.write(instruction);
+        body.write(index >> 8);
+        body.write(index);
+    }
+
+    private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals,
+                                  byte[] code) throws IOException {
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        // No exception handlers, no attributes
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    // Deduplicating constant pool of a class file
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            return add("U" + value, CONSTANT_UTF8, value, 0, 0);
+        }
+
+        int integer(int value) {
+            return add("I" + value, CONSTANT_INTEGER, null, value, 0);
+        }
+
+        int classRef(String internalName) {
+            int name = utf8(internalName);
+            return add("C" + internalName, CONSTANT_CLASS, null, name, -1);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            int ownerClass = classRef(owner);
+            int nameAndType = add("N" + name + ' ' + descriptor, CONSTANT_NAME_AND_TYPE, null,
+                    utf8(name), utf8(descriptor));
+            return add("M" + owner + '.' + name + descriptor, CONSTANT_METHODREF, null, ownerClass, nameAndType);
+        }
+
+        int size() {
+            return count;
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(count);
+            bytes.writeTo(target);
+        }
+
+        // Writes an entry unless an equal one exists; a second index of -1 means there is none
+        private int add(String key, int tag, String text, int first, int second) {
+            Integer existing = indexes.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            try {
+                out.writeByte(tag);
+                if (tag == CONSTANT_UTF8) {
+                    out.writeUTF(text);
+                } else if (tag == CONSTANT_INTEGER) {
+                    out.writeInt(first);
+                } else {
+                    out.writeShort(first);
+                    if (second >= 0) {
+                        out.writeShort(second);
+                    }
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            indexes.put(key, count);
+            return count++;
+        }
+    }
+
+    // One loader per generated class, so the class is unloaded with its last instance
+    private static final class Loader extends ClassLoader {
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
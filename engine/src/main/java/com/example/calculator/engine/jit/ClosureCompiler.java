@@ -0,0 +1,299 @@
+package com.example.calculator.engine.jit;
+
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.math.MathFunction;
+
+import java.util.Arrays;
+
+/**
+ * Translates a {@link Program} into a tree of specialized node objects.
+ * <p>
+ * Every node class implements one operator for one operand shape, so evaluating the tree
+ * is a chain of monomorphic virtual calls without any opcode dispatch or operand stack.
+ * This works on every runtime, including Android where generated JVM bytecode cannot be
+ * loaded. Division, power and function calls go through {@link Operators}, so results are
+ * bit-identical to the interpreter.
+ */
+public final class ClosureCompiler {
+
+    // Deepest tree compiled; deeper trees could overflow the thread stack when evaluated
+    public static final int MAX_DEPTH = 512;
+
+    private ClosureCompiler() {
+    }
+
+    /**
+     * Compiles a program into a node tree
+     *
+     * @param program The program, may refer to the variable x
+     * @return The root of the tree
+     * @throws UnsupportedOperationException If the tree would be deeper than {@link #MAX_DEPTH}
+     */
+    public static CompiledExpression compile(Program program) {
+        Node[] stack = new Node[program.maxStack()];
+        int[] depths = new int[program.maxStack()];
+        int top = -1;
+        for (int i = 0; i < program.length(); i++) {
+            int instruction = program.instructionAt(i);
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.PUSH) {
+                stack[++top] = new Constant((int) program.constant(Program.argument(instruction)));
+                depths[top] = 1;
+            } else if (opcode == Operators.LOAD) {
+                stack[++top] = new Variable();
+                depths[top] = 1;
+            } else if (opcode == Operators.CALL && MathFunction.of(Program.argument(instruction)).arity() == 1) {
+                if (depths[top] + 1 > MAX_DEPTH) {
+                    throw new UnsupportedOperationException("Expression too deep to compile");
+                }
+                stack[top] = new Call(MathFunction.of(Program.argument(instruction)), stack[top]);
+                depths[top]++;
+            } else {
+                Node right = stack[top--];
+                int depth = Math.max(depths[top], depths[top + 1]) + 1;
+                if (depth > MAX_DEPTH) {
+                    throw new UnsupportedOperationException("Expression too deep to compile");
+                }
+                stack[top] = opcode == Operators.CALL
+                        ? new Call2(MathFunction.of(Program.argument(instruction)), stack[top], right)
+                        : node(opcode, stack[top], right);
+                depths[top] = depth;
+            }
+        }
+        // Operands left below the top are still evaluated, for the exceptions they may throw
+        return new Root(Arrays.copyOf(stack, top + 1));
+    }
+
+    private static Node node(int opcode, Node left, Node right) {
+        if (right instanceof Constant) {
+            int b = ((Constant) right).value;
+            switch (opcode) {
+                case Operators.ADD:
+                    return new AddConstant(left, b);
+                case Operators.SUBTRACT:
+                    return new AddConstant(left, -b);
+                case Operators.MULTIPLY:
+                    return new MultiplyConstant(left, b);
+                default:
+                    break;
+            }
+        }
+        switch (opcode) {
+            case Operators.ADD:
+                return new Add(left, right);
+            case Operators.SUBTRACT:
+                return new Subtract(left, right);
+            case Operators.MULTIPLY:
+                return new Multiply(left, right);
+            case Operators.DIVIDE:
+                return new Divide(left, right);
+            case Operators.POWER:
+                return new Power(left, right);
+            default:
+                if (!Operators.isBitwise(opcode)) {
+                    throw new UnsupportedOperationException("Unknown opcode: " + opcode);
+                }
+                return new Bitwise(opcode, left, right);
+        }
+    }
+
+    abstract static class Node {
+        abstract int evaluate(int x);
+    }
+
+    static final class Root implements CompiledExpression {
+        private final Node[] below;
+        private final Node node;
+
+        Root(Node[] nodes) {
+            this.below = Arrays.copyOf(nodes, nodes.length - 1);
+            this.node = nodes[nodes.length - 1];
+        }
+
+        @Override
+        public long evaluate(long x) {
+            int value = (int) x;
+            for (Node operand : below) {
+                operand.evaluate(value);
+            }
+            return node.evaluate(value);
+        }
+    }
+
+    static final class Constant extends Node {
+        final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return value;
+        }
+    }
+
+    static final class Variable extends Node {
+        @Override
+        int evaluate(int x) {
+            return x;
+        }
+    }
+
+    // Also serves subtraction of a constant: a - b == a + (-b) in two's complement
+    static final class AddConstant extends Node {
+        private final Node left;
+        private final int right;
+
+        AddConstant(Node left, int right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return left.evaluate(x) + right;
+        }
+    }
+
+    static final class MultiplyConstant extends Node {
+        private final Node left;
+        private final int right;
+
+        MultiplyConstant(Node left, int right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return left.evaluate(x) * right;
+        }
+    }
+
+    static final class Add extends Node {
+        private final Node left;
+        private final Node right;
+
+        Add(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return left.evaluate(x) + right.evaluate(x);
+        }
+    }
+
+    static final class Subtract extends Node {
+        private final Node left;
+        private final Node right;
+
+        Subtract(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return left.evaluate(x) - right.evaluate(x);
+        }
+    }
+
+    static final class Multiply extends Node {
+        private final Node left;
+        private final Node right;
+
+        Multiply(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return left.evaluate(x) * right.evaluate(x);
+        }
+    }
+
+    static final class Divide extends Node {
+        private final Node left;
+        private final Node right;
+
+        Divide(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return Operators.divide(left.evaluate(x), right.evaluate(x));
+        }
+    }
+
+    static final class Power extends Node {
+        private final Node left;
+        private final Node right;
+
+        Power(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return Operators.power(left.evaluate(x), right.evaluate(x));
+        }
+    }
+
+    // The bitwise operators and shifts of programmer mode, which are rare enough to share a node
+    static final class Bitwise extends Node {
+        private final int opcode;
+        private final Node left;
+        private final Node right;
+
+        Bitwise(int opcode, Node left, Node right) {
+            this.opcode = opcode;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return Operators.apply(opcode, left.evaluate(x), right.evaluate(x));
+        }
+    }
+
+    static final class Call extends Node {
+        private final MathFunction function;
+        private final Node operand;
+
+        Call(MathFunction function, Node operand) {
+            this.function = function;
+            this.operand = operand;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return Operators.call(function, operand.evaluate(x));
+        }
+    }
+
+    static final class Call2 extends Node {
+        private final MathFunction function;
+        private final Node left;
+        private final Node right;
+
+        Call2(MathFunction function, Node left, Node right) {
+            this.function = function;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evaluate(int x) {
+            return Operators.call(function, left.evaluate(x), right.evaluate(x));
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.calculator.engine.jit;
+
+/**
+ * An expression in the variable x translated into executable form, with the 32-bit
+ * semantics of {@link com.example.calculator.engine.Evaluator}.
+ */
+public interface CompiledExpression {
+
+    /**
+     * Evaluates the expression
+     *
+     * @param x The value of the variable, narrowed to an int like a literal
+     * @return The value of the expression
+     * @throws UnsupportedOperationException If the expression divides by zero
+     */
+    long evaluate(long x);
+}
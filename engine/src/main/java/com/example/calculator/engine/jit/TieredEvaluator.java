@@ -0,0 +1,102 @@
+package com.example.calculator.engine.jit;
+
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.Program;
+
+/**
+ * Evaluates one expression for many values of x, compiling it once it is hot.
+ * <p>
+ * The first evaluations run in the interpreter, which costs nothing up front. Once the
+ * invocation count reaches the threshold the program is compiled: into JVM bytecode where
+ * the runtime can load it, otherwise into a node tree with {@link ClosureCompiler}. A
+ * program neither backend accepts stays interpreted. All tiers give identical results.
+ * An instance is not thread-safe.
+ */
+public final class TieredEvaluator {
+
+    // Evaluations interpreted before the program is compiled
+    public static final int DEFAULT_THRESHOLD = 1000;
+
+    /**
+     * The tier an evaluator currently runs in
+     */
+    public enum Tier {
+        INTERPRETER,
+        CLOSURES,
+        BYTECODE
+    }
+
+    // Whether generated bytecode can be loaded here, decided by the first attempt
+    private static volatile boolean bytecodeSupported = true;
+
+    private final Program program;
+    private final int threshold;
+    private final Evaluator interpreter = new Evaluator();
+    private int invocations;
+    private CompiledExpression compiled;
+    private Tier tier = Tier.INTERPRETER;
+
+    /**
+     * @param program The program, may refer to the variable x
+     */
+    public TieredEvaluator(Program program) {
+        this(program, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param program The program, may refer to the variable x
+     * @param threshold The number of interpreted evaluations before compiling, 0 to compile at once
+     */
+    public TieredEvaluator(Program program, int threshold) {
+        this.program = program;
+        this.threshold = threshold;
+        if (threshold <= 0) {
+            compile();
+        }
+    }
+
+    /**
+     * Evaluates the expression
+     *
+     * @param x The value of the variable
+     * @return The value of the expression
+     * @throws UnsupportedOperationException If the expression divides by zero
+     */
+    public long evaluate(long x) {
+        if (compiled != null) {
+            return compiled.evaluate(x);
+        }
+        if (++invocations == threshold) {
+            compile();
+        }
+        return interpreter.evaluate(program, x);
+    }
+
+    /**
+     * @return The tier the next evaluation runs in
+     */
+    public Tier tier() {
+        return tier;
+    }
+
+    private void compile() {
+        if (bytecodeSupported) {
+            try {
+                compiled = BytecodeCompiler.compile(program);
+                tier = Tier.BYTECODE;
+                return;
+            } catch (UnsupportedOperationException e) {
+                // Too large, or a runtime such as Android that cannot load bytecode
+                if (e.getCause() != null) {
+                    bytecodeSupported = false;
+                }
+            }
+        }
+        try {
+            compiled = ClosureCompiler.compile(program);
+            tier = Tier.CLOSURES;
+        } catch (UnsupportedOperationException e) {
+            // Too deep for a tree; the interpreter handles any size
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.calculator.engine.keypad;
+
+/**
+ * A key of the calculator, as pressed by the user.
+ * <p>
+ * Digits and operators carry the character they type into the input; the other keys are
+ * commands. Every key has a token, the text that stands for it in a {@link KeyTrace}.
+ */
+public enum Key {
+    ZERO('0'),
+    ONE('1'),
+    TWO('2'),
+    THREE('3'),
+    FOUR('4'),
+    FIVE('5'),
+    SIX('6'),
+    SEVEN('7'),
+    EIGHT('8'),
+    NINE('9'),
+    // Hexadecimal digits of programmer mode
+    DIGIT_A('A'),
+    DIGIT_B('B'),
+    DIGIT_C('C'),
+    DIGIT_D('D'),
+    DIGIT_E('E'),
+    DIGIT_F('F'),
+    ADD('+'),
+    SUBTRACT('-'),
+    MULTIPLY('x'),
+    DIVIDE('÷'),
+    AND('&'),
+    OR('|'),
+    XOR('⊻'),
+    SHIFT_LEFT('«'),
+    SHIFT_RIGHT('»'),
+    POWER('^'),
+    POINT('.'),
+    EQUALS("="),
+    DELETE("DEL"),
+    CLEAR("CLR"),
+    // Clears the input, the history and programmer mode
+    RESET("CE"),
+    BINARY("BIN"),
+    OCTAL("OCT"),
+    HEXADECIMAL("HEX"),
+    MEMORY_CLEAR("MC"),
+    MEMORY_RECALL("MR"),
+    MEMORY_ADD("M+"),
+    MEMORY_SUBTRACT("M-"),
+    // Long press of equals: cycles through the precisions
+    PRECISION("PREC");
+
+    private static final Key[] VALUES = values();
+
+    private final char symbol;
+    private final String token;
+
+    Key(char symbol) {
+        this.symbol = symbol;
+        this.token = String.valueOf(symbol);
+    }
+
+    Key(String token) {
+        this.symbol = 0;
+        this.token = token;
+    }
+
+    /**
+     * @return The character the key types, or 0 for a command
+     */
+    public char symbol() {
+        return symbol;
+    }
+
+    /**
+     * @return The text that stands for the key in a trace
+     */
+    public String token() {
+        return token;
+    }
+
+    /**
+     * @return True for the keys that type an operand digit
+     */
+    public boolean isDigit() {
+        return ordinal() <= DIGIT_F.ordinal();
+    }
+
+    /**
+     * @return True for the binary operators, except ^ which has a key of its own
+     */
+    public boolean isOperator() {
+        return ordinal() >= ADD.ordinal() && ordinal() <= SHIFT_RIGHT.ordinal();
+    }
+
+    /**
+     * @param index The ordinal of a key
+     * @return The key
+     */
+    public static Key of(int index) {
+        return VALUES[index];
+    }
+
+    /**
+     * Finds the digit or operator key that types a character, e.g. the key of a button label
+     *
+     * @param symbol The character
+     * @return The key, or null if no key types it
+     */
+    public static Key ofSymbol(char symbol) {
+        for (Key key : VALUES) {
+            if (key.symbol == symbol && symbol != 0) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds a key by its token
+     *
+     * @param token The token, as written by {@link KeyTrace#toString()}
+     * @return The key, or null if no key has that token
+     */
+    public static Key ofToken(String token) {
+        for (Key key : VALUES) {
+            if (key.token.equals(token)) {
+                return key;
+            }
+        }
+        return null;
+    }
+}
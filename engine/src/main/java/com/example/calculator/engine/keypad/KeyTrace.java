@@ -0,0 +1,222 @@
+package com.example.calculator.engine.keypad;
+
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+
+/**
+ * A recorded sequence of key presses and evaluation results, to reproduce a session.
+ * <p>
+ * Events are kept one byte each: the ordinal of a key, or {@link #DELIVERY} where the
+ * result of the latest evaluation reached the keypad. Where results arrive decides what a
+ * session shows, since typing cancels a running evaluation, so a trace replays the same
+ * states as the session it was recorded from. A bounded trace keeps only its latest events,
+ * which is enough to report the steps that led to a bug.
+ * <p>
+ * The text form lists the {@link Key#token() tokens} separated by spaces, with
+ * {@value #DELIVERY_TOKEN} for a delivered result, e.g. {@code 1 2 + 3 = DONE}.
+ */
+public final class KeyTrace {
+
+    /** The event of a delivered evaluation, after the key ordinals */
+    public static final int DELIVERY = 0xFF;
+    /** The token of a delivered evaluation */
+    public static final String DELIVERY_TOKEN = "DONE";
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int capacity;
+    private byte[] events;
+    // Index of the oldest event once a bounded trace has wrapped around
+    private int start;
+    private int size;
+
+    /**
+     * Creates a trace that keeps every event
+     */
+    public KeyTrace() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param capacity The number of latest events kept
+     */
+    public KeyTrace(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.events = new byte[Math.min(capacity, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Reads a trace from its text form
+     *
+     * @param text The tokens, separated by white space
+     * @return The trace
+     * @throws IllegalArgumentException if a token stands for no event
+     */
+    public static KeyTrace parse(String text) {
+        KeyTrace trace = new KeyTrace();
+        for (String token : text.trim().split("\\s+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (token.equals(DELIVERY_TOKEN)) {
+                trace.recordDelivery();
+                continue;
+            }
+            Key key = Key.ofToken(token);
+            if (key == null) {
+                throw new IllegalArgumentException("Unknown key: " + token);
+            }
+            trace.record(key);
+        }
+        return trace;
+    }
+
+    /**
+     * @param key A pressed key
+     */
+    public void record(Key key) {
+        add(key.ordinal());
+    }
+
+    /**
+     * Records that the result of the latest evaluation reached the keypad, or its error
+     */
+    public void recordDelivery() {
+        add(DELIVERY);
+    }
+
+    /**
+     * @return The number of events kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index The index of an event, 0 for the oldest kept
+     * @return The event: a key ordinal or {@link #DELIVERY}
+     */
+    public int event(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Event " + index + " of " + size);
+        }
+        return events[(start + index) % events.length] & 0xFF;
+    }
+
+    /**
+     * Drops every event
+     */
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    /**
+     * Replays the trace on a keypad, from the keypad's current state. Evaluations run on the
+     * calling thread when their result is delivered, in the base and precision of the press
+     * of equals that asked for them; an evaluation cancelled by typing before its delivery
+     * is dropped, as in the session.
+     *
+     * @param keypad The keypad
+     * @param cache The cache evaluating expressions, over the symbols of the keypad
+     */
+    public void replay(Keypad keypad, ExpressionCache cache) {
+        Replayer replayer = new Replayer(keypad, cache);
+        for (int i = 0; i < size; i++) {
+            replayer.step(event(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(size * 2);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            int event = event(i);
+            text.append(event == DELIVERY ? DELIVERY_TOKEN : Key.of(event).token());
+        }
+        return text.toString();
+    }
+
+    private void add(int event) {
+        if (size == events.length) {
+            if (events.length == capacity) {
+                // Full: the newest event takes the place of the oldest
+                events[start] = (byte) event;
+                start = (start + 1) % events.length;
+                return;
+            }
+            byte[] grown = new byte[(int) Math.min(capacity, 2L * events.length)];
+            for (int i = 0; i < size; i++) {
+                grown[i] = events[(start + i) % events.length];
+            }
+            events = grown;
+            start = 0;
+        }
+        events[(start + size) % events.length] = (byte) event;
+        size++;
+    }
+
+    /**
+     * Drives a keypad with events, standing in for the evaluation executor of the app
+     */
+    static final class Replayer {
+
+        private final Keypad keypad;
+        private final ExpressionCache cache;
+        // The evaluation waiting for its delivery, or null
+        private String expression;
+        private Radix radix;
+        private Precision precision;
+
+        Replayer(Keypad keypad, ExpressionCache cache) {
+            this.keypad = keypad;
+            this.cache = cache;
+        }
+
+        /**
+         * @param event A key ordinal or {@link #DELIVERY}
+         * @return The effects of the event on the keypad
+         */
+        int step(int event) {
+            if (event == DELIVERY) {
+                if (expression == null) {
+                    return 0;
+                }
+                String evaluated = expression;
+                expression = null;
+                String result;
+                try {
+                    result = cache.evaluate(evaluated, radix, precision);
+                } catch (RuntimeException e) {
+                    // The cache has counted the error under its category
+                    return keypad.evaluationFailed();
+                }
+                return keypad.resultArrived(evaluated, result);
+            }
+            int effects = keypad.press(Key.of(event));
+            if ((effects & Keypad.INPUT_CHANGED) != 0) {
+                expression = null;
+            }
+            if ((effects & Keypad.EVALUATE) != 0) {
+                expression = keypad.input().toString();
+                radix = keypad.radix();
+                precision = keypad.precision();
+            }
+            return effects;
+        }
+
+        /**
+         * Forgets a pending evaluation, as when a session ends
+         */
+        void reset() {
+            expression = null;
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package com.example.calculator.engine.keypad;
+
+import com.example.calculator.engine.IncrementalEvaluator;
+import com.example.calculator.engine.InputBuffer;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.RadixNumber;
+import com.example.calculator.engine.SymbolTable;
+
+/**
+ * The input state of the calculator, driven by key presses.
+ * <p>
+ * The keypad holds what the user has typed, the last result and the active base and
+ * precision, and knows nothing of views or threads. Each press returns the effects the host
+ * has to carry out, such as cancelling a running evaluation or starting one; the result of
+ * an evaluation comes back through {@link #resultArrived} or {@link #evaluationFailed}. The
+ * same keypad thus runs under the activity, in tests and in the {@link ReplayHarness}.
+ * <p>
+ * Typing digits and operators does not allocate. A keypad is used by one thread at a time.
+ */
+public final class Keypad {
+
+    // Effects of a press, returned as a set of bits
+    /** The input changed, so a running evaluation is out of date */
+    public static final int INPUT_CHANGED = 1;
+    /** The display and the preview must be redrawn */
+    public static final int DISPLAY_CHANGED = 1 << 1;
+    /** The input is to be evaluated in the current base and precision */
+    public static final int EVALUATE = 1 << 2;
+    /** The solution line changed */
+    public static final int SOLUTION_CHANGED = 1 << 3;
+    /** The base changed, so the programmer keys are shown or hidden */
+    public static final int RADIX_CHANGED = 1 << 4;
+    /** The precision changed */
+    public static final int PRECISION_CHANGED = 1 << 5;
+    /** The history is to be cleared */
+    public static final int HISTORY_CLEARED = 1 << 6;
+    /** The input could not be rewritten into another base and was dropped */
+    public static final int CONVERSION_FAILED = 1 << 7;
+
+    // Variable backing the memory register; MR puts the name itself into the input
+    public static final String MEMORY = "M";
+
+    private static final RadixNumber ZERO = RadixNumber.of("0");
+
+    private final SymbolTable symbols;
+    // Expression being entered
+    private final InputBuffer input = new InputBuffer();
+    // Evaluator that follows the input for the live preview
+    private final IncrementalEvaluator liveEvaluator = new IncrementalEvaluator();
+    private boolean hasOperator;
+    private boolean hasResult;
+    private boolean decimalPressed;
+    // True while the display shows an error instead of the input
+    private boolean error;
+    private RadixNumber result = ZERO;
+    // Expression of the result, or null while the solution line shows 0
+    private String solved;
+    private Radix radix = Radix.DECIMAL;
+    private Precision precision = Precision.INT32;
+    // Effects of the press being handled
+    private int effects;
+
+    /**
+     * @param symbols The symbols holding the memory register
+     */
+    public Keypad(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Handles a key press
+     *
+     * @param key The key
+     * @return The effects to carry out, a set of the bits defined by this class
+     */
+    public int press(Key key) {
+        effects = 0;
+        if (key.isDigit()) {
+            number(key.symbol());
+        } else if (key.isOperator()) {
+            operator(key.symbol());
+        } else {
+            command(key);
+        }
+        return effects;
+    }
+
+    /**
+     * Shows the result of an evaluation asked for by {@link #EVALUATE}
+     *
+     * @param expression The expression that was evaluated
+     * @param result The result in decimal, as returned by the expression cache
+     * @return The effects to carry out
+     */
+    public int resultArrived(String expression, String result) {
+        effects = SOLUTION_CHANGED;
+        this.result = RadixNumber.of(result);
+        hasResult = true;
+        hasOperator = false;
+        decimalPressed = false;
+        solved = expression;
+        replace("");
+        redraw();
+        return effects;
+    }
+
+    /**
+     * Shows an error for an evaluation asked for by {@link #EVALUATE}
+     *
+     * @return The effects to carry out
+     */
+    public int evaluationFailed() {
+        effects = 0;
+        fail();
+        return effects;
+    }
+
+    /**
+     * Returns to the state of a new keypad, keeping the memory register
+     */
+    public void restart() {
+        replace("");
+        hasOperator = false;
+        hasResult = false;
+        decimalPressed = false;
+        error = false;
+        result = ZERO;
+        solved = null;
+        radix = Radix.DECIMAL;
+        precision = Precision.INT32;
+        readLiterals();
+    }
+
+    /**
+     * @return The expression being entered, a live view that changes with the next press
+     */
+    public CharSequence input() {
+        return input;
+    }
+
+    /**
+     * @return The text of the display, unless it {@link #showsError() shows an error}
+     */
+    public CharSequence display() {
+        if (!input.isEmpty()) {
+            return input;
+        }
+        return hasResult ? displayedResult() : "0";
+    }
+
+    /**
+     * @return True if the display shows an error
+     */
+    public boolean showsError() {
+        return error;
+    }
+
+    /**
+     * Computes the live preview of the input. It follows 32-bit decimal arithmetic without
+     * names, so it is only shown in that mode and once the input has an operator.
+     *
+     * @return True if {@link #preview()} is to be shown
+     */
+    public boolean hasPreview() {
+        return precision == Precision.INT32 && radix == Radix.DECIMAL && !input.containsName()
+                && liveEvaluator.hasOperator() && liveEvaluator.computePreview();
+    }
+
+    /**
+     * @return The live preview, valid after {@link #hasPreview()} returned true
+     */
+    public long preview() {
+        return liveEvaluator.preview();
+    }
+
+    /**
+     * @return The solution line: the expression of the result followed by =, or 0
+     */
+    public String solution() {
+        return solved == null ? "0" : solved + "=";
+    }
+
+    /**
+     * @return The current result in the active base; fractions and decimals stay decimal
+     */
+    public String displayedResult() {
+        return result.isInteger() ? result.toString(radix) : result.toString();
+    }
+
+    /**
+     * @return True while a result is shown and not yet replaced by new input
+     */
+    public boolean hasResult() {
+        return hasResult;
+    }
+
+    /**
+     * @return The base in which the input is read and the result is shown
+     */
+    public Radix radix() {
+        return radix;
+    }
+
+    /**
+     * @return The arithmetic used by the equals key
+     */
+    public Precision precision() {
+        return precision;
+    }
+
+    private void number(char c) {
+        if (hasResult) {
+            replace("");
+            hasResult = false;
+        }
+        append(c);
+        hasOperator = false;
+        redraw();
+    }
+
+    private void operator(char c) {
+        if (!hasOperator) {
+            if (input.isEmpty()) {
+                replace("0");
+            }
+            append(c);
+            hasOperator = true;
+        } else {
+            deleteLast();
+            append(c);
+        }
+        // The next operand may have its own decimal point
+        decimalPressed = false;
+        redraw();
+    }
+
+    private void command(Key key) {
+        switch (key) {
+            case POWER:
+                operator('^');
+                hasResult = false;
+                break;
+            case POINT:
+                point();
+                break;
+            case EQUALS:
+                if (!input.isEmpty()) {
+                    effects |= EVALUATE;
+                }
+                break;
+            case DELETE:
+                delete();
+                break;
+            case CLEAR:
+                clear();
+                redraw();
+                break;
+            case RESET:
+                clear();
+                radix = Radix.DECIMAL;
+                readLiterals();
+                effects |= HISTORY_CLEARED | RADIX_CHANGED;
+                redraw();
+                break;
+            case BINARY:
+                toggleRadix(Radix.BINARY);
+                break;
+            case OCTAL:
+                toggleRadix(Radix.OCTAL);
+                break;
+            case HEXADECIMAL:
+                toggleRadix(Radix.HEXADECIMAL);
+                break;
+            case MEMORY_CLEAR:
+                symbols.remove(MEMORY);
+                break;
+            case MEMORY_RECALL:
+                recall();
+                break;
+            case MEMORY_ADD:
+                if (hasResult && input.isEmpty()) {
+                    symbols.addToVariable(MEMORY, result.toString());
+                }
+                break;
+            case MEMORY_SUBTRACT:
+                if (hasResult && input.isEmpty()) {
+                    String value = result.toString();
+                    symbols.addToVariable(MEMORY, value.startsWith("-") ? value.substring(1) : "-" + value);
+                }
+                break;
+            case PRECISION:
+                togglePrecision();
+                break;
+            default:
+                throw new IllegalArgumentException("Not a command: " + key);
+        }
+    }
+
+    private void point() {
+        if (decimalPressed) {
+            return;
+        }
+        decimalPressed = true;
+        if (hasResult) {
+            replace("0.");
+            hasResult = false;
+        } else {
+            append('.');
+        }
+        redraw();
+    }
+
+    private void delete() {
+        if (!input.isEmpty()) {
+            deleteLast();
+        } else if (!error) {
+            // Deleting from a result takes its digits as the new input; an error is only cleared
+            CharSequence screen = display();
+            replace(screen.subSequence(0, screen.length() - 1));
+        }
+        redraw();
+    }
+
+    private void clear() {
+        replace("");
+        hasOperator = false;
+        decimalPressed = false;
+        hasResult = false;
+        solved = null;
+        effects |= SOLUTION_CHANGED;
+    }
+
+    private void recall() {
+        if (symbols.value(MEMORY) == null) {
+            return;
+        }
+        if (hasResult) {
+            replace(MEMORY);
+            hasResult = false;
+        } else {
+            append(MEMORY);
+        }
+        hasOperator = false;
+        redraw();
+    }
+
+    /**
+     * Switches to a base, or back to decimal if it is already active. A result on screen
+     * is only shown differently; literals being typed are rewritten into the new base.
+     */
+    private void toggleRadix(Radix target) {
+        Radix next = radix == target ? Radix.DECIMAL : target;
+        if (!input.isEmpty()) {
+            try {
+                replace(RadixNumber.convertLiterals(input, radix, next));
+            } catch (NumberFormatException e) {
+                effects |= CONVERSION_FAILED;
+                fail();
+                return;
+            }
+        }
+        radix = next;
+        readLiterals();
+        effects |= RADIX_CHANGED;
+        redraw();
+    }
+
+    /**
+     * Cycles through 32-bit, exact, fraction and floating-point arithmetic
+     */
+    private void togglePrecision() {
+        if (precision == Precision.INT32) {
+            precision = Precision.EXACT;
+        } else if (precision == Precision.EXACT) {
+            precision = Precision.RATIONAL;
+        } else if (precision == Precision.RATIONAL) {
+            precision = Precision.DECIMAL;
+        } else {
+            precision = Precision.INT32;
+        }
+        readLiterals();
+        effects |= PRECISION_CHANGED;
+        redraw();
+    }
+
+    // Tells the input how the compiler reads literals in the active mode, so its tokens match
+    private void readLiterals() {
+        input.setLiterals(radix, precision == Precision.RATIONAL || precision == Precision.DECIMAL);
+    }
+
+    // Shows an error and drops the input
+    private void fail() {
+        replace("");
+        hasResult = false;
+        hasOperator = false;
+        error = true;
+        effects |= DISPLAY_CHANGED;
+    }
+
+    private void redraw() {
+        error = false;
+        effects |= DISPLAY_CHANGED;
+    }
+
+    private void append(char c) {
+        input.insert(c);
+        liveEvaluator.append(c);
+        effects |= INPUT_CHANGED;
+    }
+
+    private void append(CharSequence text) {
+        input.insert(text);
+        liveEvaluator.append(text);
+        effects |= INPUT_CHANGED;
+    }
+
+    private void deleteLast() {
+        input.deleteBackward();
+        liveEvaluator.deleteLast();
+        effects |= INPUT_CHANGED;
+    }
+
+    private void replace(CharSequence text) {
+        input.replace(text);
+        liveEvaluator.reset();
+        liveEvaluator.append(text);
+        effects |= INPUT_CHANGED;
+    }
+}
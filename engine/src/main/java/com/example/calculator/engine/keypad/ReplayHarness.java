@@ -0,0 +1,214 @@
+package com.example.calculator.engine.keypad;
+
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays recorded sessions over and over on several threads, to measure the latency of a
+ * keystroke and to shake out bugs that only some sequences of keys reach.
+ * <p>
+ * Each thread has a keypad, symbols and expression cache of its own and goes through the
+ * sessions from its own starting point, restarting the keypad and the memory register
+ * before each one, so no thread waits for another. Every {@value #SAMPLE_INTERVAL}th event
+ * is timed into an array of the thread's, which costs two clock reads and keeps the rest of
+ * the loop free of measurement.
+ */
+public final class ReplayHarness {
+
+    // Events between two latency samples
+    private static final int SAMPLE_INTERVAL = 16;
+    // Samples kept per thread; later ones overwrite the oldest
+    private static final int MAX_SAMPLES = 1 << 18;
+    // Total weight of the expressions each thread caches, as in the app
+    private static final int EXPRESSION_CACHE_WEIGHT = 64 * 1024;
+
+    private ReplayHarness() {
+    }
+
+    /**
+     * Replays sessions until the duration has passed
+     *
+     * @param sessions The sessions, each replayed from a fresh keypad
+     * @param threads The number of threads
+     * @param durationNanos How long to replay
+     * @return The report of the run
+     * @throws InterruptedException if interrupted while waiting for the threads
+     * @throws IllegalStateException if a replay threw, which ends the run; the message holds the session
+     */
+    public static Report run(List<KeyTrace> sessions, int threads, long durationNanos) throws InterruptedException {
+        if (sessions.isEmpty() || threads <= 0) {
+            throw new IllegalArgumentException("Needs sessions and threads");
+        }
+        Worker[] workers = new Worker[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(sessions, i * sessions.size() / threads);
+            workers[i] = worker;
+            Thread thread = new Thread(() -> {
+                try {
+                    worker.run(deadline, failure);
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "replay-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        long replayed = 0;
+        long events = 0;
+        List<long[]> samples = new ArrayList<>(threads);
+        for (Worker worker : workers) {
+            replayed += worker.sessions;
+            events += worker.events;
+            samples.add(Arrays.copyOf(worker.samples, (int) Math.min(worker.sampled, MAX_SAMPLES)));
+        }
+        return new Report(replayed, events, elapsed, merge(samples));
+    }
+
+    private static long[] merge(List<long[]> samples) {
+        int total = 0;
+        for (long[] s : samples) {
+            total += s.length;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (long[] s : samples) {
+            System.arraycopy(s, 0, merged, offset, s.length);
+            offset += s.length;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * The sessions of one thread
+     */
+    private static final class Worker {
+
+        private final List<KeyTrace> traces;
+        private final SymbolTable symbols = new SymbolTable();
+        private final Keypad keypad = new Keypad(symbols);
+        private final KeyTrace.Replayer replayer =
+                new KeyTrace.Replayer(keypad, new ExpressionCache(EXPRESSION_CACHE_WEIGHT, symbols));
+        private final long[] samples = new long[MAX_SAMPLES];
+        private int next;
+        private long sessions;
+        private long events;
+        private long sampled;
+
+        Worker(List<KeyTrace> traces, int first) {
+            this.traces = traces;
+            this.next = first;
+        }
+
+        void run(long deadline, AtomicReference<RuntimeException> failure) {
+            while (System.nanoTime() < deadline && failure.get() == null) {
+                KeyTrace trace = traces.get(next);
+                next = next + 1 == traces.size() ? 0 : next + 1;
+                keypad.restart();
+                symbols.remove(Keypad.MEMORY);
+                replayer.reset();
+                int size = trace.size();
+                try {
+                    for (int i = 0; i < size; i++) {
+                        int event = trace.event(i);
+                        if ((events + i) % SAMPLE_INTERVAL == 0) {
+                            long begin = System.nanoTime();
+                            replayer.step(event);
+                            samples[(int) (sampled++ % MAX_SAMPLES)] = System.nanoTime() - begin;
+                        } else {
+                            replayer.step(event);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    throw new IllegalStateException("Replay failed: " + trace, e);
+                }
+                events += size;
+                sessions++;
+            }
+        }
+    }
+
+    /**
+     * The outcome of a run
+     */
+    public static final class Report {
+
+        private final long sessions;
+        private final long events;
+        private final long elapsedNanos;
+        // Sampled event latencies in nanoseconds, sorted
+        private final long[] latencies;
+
+        Report(long sessions, long events, long elapsedNanos, long[] latencies) {
+            this.sessions = sessions;
+            this.events = events;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+
+        /**
+         * @return The number of sessions replayed
+         */
+        public long sessions() {
+            return sessions;
+        }
+
+        /**
+         * @return The number of key presses and deliveries replayed
+         */
+        public long events() {
+            return events;
+        }
+
+        /**
+         * @return The wall-clock time of the run
+         */
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return Sessions replayed per second, over all threads
+         */
+        public double sessionsPerSecond() {
+            return sessions * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param quantile The quantile, between 0 and 1
+         * @return The latency of an event at that quantile in nanoseconds, or 0 without samples
+         */
+        public long latencyNanos(double quantile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d sessions, %d events in %.2f s (%.0f sessions/s); "
+                            + "event latency p50 %d ns, p99 %d ns, p99.9 %d ns, max %d ns",
+                    sessions, events, elapsedNanos / 1e9, sessionsPerSecond(),
+                    latencyNanos(0.5), latencyNanos(0.99), latencyNanos(0.999), latencyNanos(1));
+        }
+    }
+}
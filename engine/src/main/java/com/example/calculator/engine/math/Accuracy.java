@@ -0,0 +1,11 @@
+package com.example.calculator.engine.math;
+
+/**
+ * Accuracy tier of the floating-point functions in {@link MathFunction}.
+ */
+public enum Accuracy {
+    // Range reduction, lookup tables and polynomials from FastMath: a few units in the last place, much faster
+    FAST,
+    // StrictMath: the fdlibm results, identical on every device
+    STRICT
+}
@@ -0,0 +1,290 @@
+package com.example.calculator.engine.math;
+
+import java.math.BigInteger;
+
+/**
+ * Exact factorials and binomial coefficients.
+ * <p>
+ * Large factorials use Luschny's prime swing: n! is the square of (n/2)! times the swing
+ * n!/((n/2)!)², whose prime factorization follows directly from n, and the factors of two
+ * are shifted in at the end. Binomial coefficients of moderate n are likewise built from
+ * their prime factorization (Legendre's formula), and otherwise from the falling product
+ * n(n-1)...(n-k+1) divided by k!. Every product is split recursively into halves of equal
+ * size, so the big multiplications work on balanced operands where Karatsuba and Toom-Cook
+ * multiplication pay off.
+ */
+public final class Combinatorics {
+
+    // Largest n whose factorial is a finite double
+    public static final int MAX_DOUBLE_FACTORIAL = 170;
+
+    // Below this size products are multiplied one factor at a time
+    private static final int PRODUCT_LEAF = 16;
+    // Largest n whose binomial coefficients are built from a sieve of primes up to n
+    private static final long PRIME_BINOMIAL_LIMIT = 1 << 22;
+    // Smallest k, after k is replaced by min(k, n - k), for which the prime factorization pays off
+    private static final long PRIME_BINOMIAL_MIN_K = 64;
+    private static final double LOG2_E = 1 / Math.log(2);
+
+    // 0! to 20!, the factorials that fit in a long
+    private static final long[] SMALL_FACTORIALS = new long[21];
+    // Odd parts of 0! to 20!
+    private static final long[] SMALL_ODD_FACTORIALS = new long[SMALL_FACTORIALS.length];
+    // 0! to 170! rounded to doubles, built on first use
+    private static double[] doubleFactorials;
+
+    static {
+        SMALL_FACTORIALS[0] = 1;
+        for (int n = 1; n < SMALL_FACTORIALS.length; n++) {
+            SMALL_FACTORIALS[n] = SMALL_FACTORIALS[n - 1] * n;
+        }
+        for (int n = 0; n < SMALL_FACTORIALS.length; n++) {
+            // n! holds n - bitCount(n) factors of two
+            SMALL_ODD_FACTORIALS[n] = SMALL_FACTORIALS[n] >> (n - Integer.bitCount(n));
+        }
+    }
+
+    private Combinatorics() {
+    }
+
+    /**
+     * Computes n!
+     *
+     * @param n A non-negative number
+     * @return The factorial
+     * @throws ArithmeticException If n is negative
+     */
+    public static BigInteger factorial(int n) {
+        if (n < 0) {
+            throw new ArithmeticException("Factorial of a negative number");
+        }
+        if (n < SMALL_FACTORIALS.length) {
+            return BigInteger.valueOf(SMALL_FACTORIALS[n]);
+        }
+        return oddFactorial(n, primes(n)).shiftLeft(n - Integer.bitCount(n));
+    }
+
+    /**
+     * @param n A number between 0 and {@link #MAX_DOUBLE_FACTORIAL}
+     * @return n! rounded to the nearest double
+     */
+    public static double factorialAsDouble(int n) {
+        double[] table = doubleFactorials;
+        if (table == null) {
+            table = new double[MAX_DOUBLE_FACTORIAL + 1];
+            BigInteger factorial = BigInteger.ONE;
+            for (int i = 0; i <= MAX_DOUBLE_FACTORIAL; i++) {
+                if (i > 0) {
+                    factorial = factorial.multiply(BigInteger.valueOf(i));
+                }
+                table[i] = factorial.doubleValue();
+            }
+            doubleFactorials = table;
+        }
+        return table[n];
+    }
+
+    /**
+     * Computes the binomial coefficient n choose k
+     *
+     * @param n A non-negative number
+     * @param k Any number
+     * @return The number of ways to choose k of n items, 0 if k is negative or above n
+     * @throws ArithmeticException If n is negative
+     */
+    public static BigInteger binomial(long n, long k) {
+        return binomial(BigInteger.valueOf(n), BigInteger.valueOf(k));
+    }
+
+    /**
+     * Computes the binomial coefficient n choose k
+     *
+     * @param n A non-negative number
+     * @param k Any number
+     * @return The number of ways to choose k of n items, 0 if k is negative or above n
+     * @throws ArithmeticException If n is negative, or k and n - k are both beyond the int range
+     */
+    public static BigInteger binomial(BigInteger n, BigInteger k) {
+        if (n.signum() < 0) {
+            throw new ArithmeticException("Binomial coefficient of a negative number");
+        }
+        if (k.signum() < 0 || k.compareTo(n) > 0) {
+            return BigInteger.ZERO;
+        }
+        BigInteger rest = n.subtract(k);
+        if (rest.compareTo(k) < 0) {
+            k = rest;
+        }
+        if (k.bitLength() >= Integer.SIZE) {
+            throw new ArithmeticException("Result too large");
+        }
+        int small = k.intValue();
+        if (small == 0) {
+            return BigInteger.ONE;
+        }
+        if (n.bitLength() < Long.SIZE && n.longValue() <= PRIME_BINOMIAL_LIMIT && small >= PRIME_BINOMIAL_MIN_K) {
+            return primeBinomial((int) n.longValue(), small);
+        }
+        // n (n-1) ... (n-k+1) / k!
+        return fallingProduct(n, 0, small).divide(factorial(small));
+    }
+
+    /**
+     * Estimates the size of n!
+     *
+     * @param n A non-negative number
+     * @return log2(n!), from Stirling's series
+     */
+    public static double log2Factorial(double n) {
+        if (n < 2) {
+            return 0;
+        }
+        return (n * Math.log(n) - n + 0.5 * Math.log(2 * Math.PI * n) + 1 / (12 * n)) * LOG2_E;
+    }
+
+    /**
+     * Estimates the size of a binomial coefficient from above
+     *
+     * @param n A non-negative number
+     * @param k A number between 0 and n
+     * @return At least log2(n choose k), and close to it
+     */
+    public static double log2Binomial(double n, double k) {
+        k = Math.min(k, n - k);
+        if (k < 1) {
+            return 0;
+        }
+        if (n < 0x1p40) {
+            // Stirling is precise while n log n keeps enough digits; round up a little
+            return log2Factorial(n) - log2Factorial(k) - log2Factorial(n - k) + 1;
+        }
+        // (n choose k) <= (e n / k)^k
+        return k * (LOG2_E + Math.log(n / k) * LOG2_E);
+    }
+
+    // Odd part of n!: the square of the odd part of (n/2)! times the odd part of the swing of n
+    private static BigInteger oddFactorial(int n, int[] primes) {
+        if (n < SMALL_ODD_FACTORIALS.length) {
+            return BigInteger.valueOf(SMALL_ODD_FACTORIALS[n]);
+        }
+        BigInteger half = oddFactorial(n / 2, primes);
+        return half.multiply(half).multiply(oddSwing(n, primes));
+    }
+
+    // Odd part of n!/((n/2)!)²: every odd prime p appears once for each i with n / p^i odd
+    private static BigInteger oddSwing(int n, int[] primes) {
+        int sqrt = (int) Math.sqrt(n);
+        long[] factors = new long[primes.length];
+        int count = 0;
+        // primes[0] is 2, which the caller shifts in
+        for (int i = 1; i < primes.length && primes[i] <= n; i++) {
+            int p = primes[i];
+            if (p > n / 2) {
+                factors[count++] = p;
+            } else if (p > sqrt) {
+                if (((n / p) & 1) == 1) {
+                    factors[count++] = p;
+                }
+            } else {
+                long power = 1;
+                for (int q = n / p; q > 0; q /= p) {
+                    if ((q & 1) == 1) {
+                        power *= p;
+                    }
+                }
+                if (power > 1) {
+                    factors[count++] = power;
+                }
+            }
+        }
+        return product(factors, 0, count);
+    }
+
+    // n choose k from its prime factorization; p divides it once per carry when adding k and n - k in base p
+    private static BigInteger primeBinomial(int n, int k) {
+        int[] primes = primes(n);
+        long[] factors = new long[primes.length];
+        int count = 0;
+        for (int p : primes) {
+            if (p > n - k) {
+                // Every prime above n - k divides the falling product exactly once
+                factors[count++] = p;
+                continue;
+            }
+            long power = 1;
+            for (long a = n, b = k, c = n - k; a > 0; a /= p, b /= p, c /= p) {
+                if (a / p - b / p - c / p > 0) {
+                    power *= p;
+                }
+            }
+            if (power > 1) {
+                factors[count++] = power;
+            }
+        }
+        return product(factors, 0, count);
+    }
+
+    // Multiplies factors[from, to), each below 2^32, pairing them into longs and then splitting the range in halves
+    private static BigInteger product(long[] factors, int from, int to) {
+        int length = to - from;
+        if (length <= PRODUCT_LEAF) {
+            BigInteger result = BigInteger.ONE;
+            long packed = 1;
+            for (int i = from; i < to; i++) {
+                if (packed > Long.MAX_VALUE / factors[i]) {
+                    result = result.multiply(BigInteger.valueOf(packed));
+                    packed = 1;
+                }
+                packed *= factors[i];
+            }
+            return result.multiply(BigInteger.valueOf(packed));
+        }
+        int middle = from + length / 2;
+        return product(factors, from, middle).multiply(product(factors, middle, to));
+    }
+
+    // Multiplies n - from, n - from - 1, ..., n - to + 1, splitting the range in halves
+    private static BigInteger fallingProduct(BigInteger n, int from, int to) {
+        int length = to - from;
+        if (length <= PRODUCT_LEAF) {
+            BigInteger result = n.subtract(BigInteger.valueOf(from));
+            BigInteger factor = result;
+            for (int i = from + 1; i < to; i++) {
+                factor = factor.subtract(BigInteger.ONE);
+                result = result.multiply(factor);
+            }
+            return result;
+        }
+        int middle = from + length / 2;
+        return fallingProduct(n, from, middle).multiply(fallingProduct(n, middle, to));
+    }
+
+    // Primes up to n, from a sieve of odd numbers
+    static int[] primes(int n) {
+        if (n < 2) {
+            return new int[0];
+        }
+        // composite[i] is true if 2i + 1 is composite
+        boolean[] composite = new boolean[n / 2 + 1];
+        int count = 1;
+        for (int i = 1; 2 * i + 1 <= n; i++) {
+            if (composite[i]) {
+                continue;
+            }
+            count++;
+            long p = 2 * i + 1;
+            for (long j = p * p; j <= n; j += 2 * p) {
+                composite[(int) (j / 2)] = true;
+            }
+        }
+        int[] primes = new int[count];
+        primes[0] = 2;
+        int next = 1;
+        for (int i = 1; 2 * i + 1 <= n; i++) {
+            if (!composite[i]) {
+                primes[next++] = 2 * i + 1;
+            }
+        }
+        return primes;
+    }
+}
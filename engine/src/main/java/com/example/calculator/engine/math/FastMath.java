@@ -0,0 +1,216 @@
+package com.example.calculator.engine.math;
+
+/**
+ * Fast floating-point elementary functions, the {@link Accuracy#FAST} tier.
+ * <p>
+ * Each function reduces its argument to a small interval and evaluates a short polynomial
+ * there. sin, cos and tan reduce modulo π/2 with a three-part Cody-Waite constant and use
+ * the minimax polynomials of fdlibm on [-π/4, π/4]. exp splits off a multiple of ln 2 / 32
+ * and looks the power of two up in a table of 2^(j/32). ln splits the argument into its
+ * exponent and mantissa and looks the logarithm of the mantissa's leading bits up in a
+ * table of 128 entries, leaving a series in a remainder below 1/256. Results are within a
+ * few units in the last place; arguments outside the reduced ranges, NaN and infinities go
+ * to {@link StrictMath}.
+ */
+public final class FastMath {
+
+    // Largest |x| that sin, cos and tan reduce themselves; k π/2 stays exact for k < 2^20
+    private static final double TRIG_REDUCTION_LIMIT = 0x1p19;
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+    // π/2 in three parts of 33 bits each (fdlibm pio2_1, pio2_2, pio2_3)
+    private static final double PIO2_1 = 1.57079632673412561417e+00;
+    private static final double PIO2_2 = 6.07710050630396597660e-11;
+    private static final double PIO2_3 = 2.02226624871116645580e-21;
+    // Minimax coefficients of sin and cos on [-π/4, π/4] (fdlibm __kernel_sin, __kernel_cos)
+    private static final double S1 = -1.66666666666666324348e-01;
+    private static final double S2 = 8.33333333332248946124e-03;
+    private static final double S3 = -1.98412698298579493134e-04;
+    private static final double S4 = 2.75573137070700676789e-06;
+    private static final double S5 = -2.50507602534068634195e-08;
+    private static final double S6 = 1.58969099521155010221e-10;
+    private static final double C1 = 4.16666666666666019037e-02;
+    private static final double C2 = -1.38888888888741095749e-03;
+    private static final double C3 = 2.48015872894767294178e-05;
+    private static final double C4 = -2.75573143513906633035e-07;
+    private static final double C5 = 2.08757232129817482790e-09;
+    private static final double C6 = -1.13596475577881948265e-11;
+
+    // ln 2 in two parts; the high part has 32 bits, so multiples of it by an exponent are exact
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double INV_LN10 = 4.34294481903251816668e-01;
+
+    // Largest |x| that exp reduces itself; the result stays a normal double
+    private static final double EXP_LIMIT = 708;
+    private static final int EXP_TABLE_BITS = 5;
+    private static final double EXP_SCALE = (1 << EXP_TABLE_BITS) / Math.log(2);
+    // 2^(j/32)
+    private static final double[] EXP_TABLE = new double[1 << EXP_TABLE_BITS];
+
+    private static final int LOG_TABLE_BITS = 7;
+    // Below this distance from 1, ln uses its series directly, avoiding cancellation with the table
+    private static final double LOG_NEAR_ONE = 1.0 / 64;
+    // Centers of the mantissa intervals [1 + j/128, 1 + (j+1)/128), their inverses and logarithms;
+    // the upper half stores ln(center / 2), so that x just below 1 avoids cancelling against -ln 2
+    private static final double[] LOG_CENTERS = new double[1 << LOG_TABLE_BITS];
+    private static final double[] LOG_INVERSES = new double[LOG_CENTERS.length];
+    private static final double[] LOG_TABLE = new double[LOG_CENTERS.length];
+    // 1/k, for the series of ln(1 + u) near 1
+    private static final double[] RECIPROCALS = new double[13];
+
+    static {
+        for (int j = 0; j < EXP_TABLE.length; j++) {
+            EXP_TABLE[j] = StrictMath.pow(2, (double) j / EXP_TABLE.length);
+        }
+        for (int j = 0; j < LOG_CENTERS.length; j++) {
+            LOG_CENTERS[j] = 1 + (j + 0.5) / LOG_CENTERS.length;
+            LOG_INVERSES[j] = 1 / LOG_CENTERS[j];
+            LOG_TABLE[j] = StrictMath.log(j < LOG_CENTERS.length / 2 ? LOG_CENTERS[j] : LOG_CENTERS[j] / 2);
+        }
+        for (int k = 1; k < RECIPROCALS.length; k++) {
+            RECIPROCALS[k] = 1.0 / k;
+        }
+    }
+
+    private FastMath() {
+    }
+
+    /**
+     * @param x An angle in radians
+     * @return Its sine
+     */
+    public static double sin(double x) {
+        if (!(Math.abs(x) <= TRIG_REDUCTION_LIMIT)) {
+            return StrictMath.sin(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = reduce(x, k);
+        switch ((int) k & 3) {
+            case 0:
+                return sinKernel(r);
+            case 1:
+                return cosKernel(r);
+            case 2:
+                return -sinKernel(r);
+            default:
+                return -cosKernel(r);
+        }
+    }
+
+    /**
+     * @param x An angle in radians
+     * @return Its cosine
+     */
+    public static double cos(double x) {
+        if (!(Math.abs(x) <= TRIG_REDUCTION_LIMIT)) {
+            return StrictMath.cos(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = reduce(x, k);
+        switch ((int) k & 3) {
+            case 0:
+                return cosKernel(r);
+            case 1:
+                return -sinKernel(r);
+            case 2:
+                return -cosKernel(r);
+            default:
+                return sinKernel(r);
+        }
+    }
+
+    /**
+     * @param x An angle in radians
+     * @return Its tangent
+     */
+    public static double tan(double x) {
+        if (!(Math.abs(x) <= TRIG_REDUCTION_LIMIT)) {
+            return StrictMath.tan(x);
+        }
+        double k = Math.rint(x * TWO_OVER_PI);
+        double r = reduce(x, k);
+        double s = sinKernel(r);
+        double c = cosKernel(r);
+        return ((int) k & 1) == 0 ? s / c : -c / s;
+    }
+
+    /**
+     * @param x Any value
+     * @return e to the power x
+     */
+    public static double exp(double x) {
+        if (!(Math.abs(x) <= EXP_LIMIT)) {
+            return StrictMath.exp(x);
+        }
+        // x = (32 m + j) ln 2 / 32 + r with |r| <= ln 2 / 64
+        double k = Math.rint(x * EXP_SCALE);
+        double r = (x - k * (LN2_HI / EXP_TABLE.length)) - k * (LN2_LO / EXP_TABLE.length);
+        int n = (int) k;
+        double power = EXP_TABLE[n & (EXP_TABLE.length - 1)];
+        // e^r - 1 to the sixth power of r
+        double p = r + r * r * (0.5 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120 + r * (1.0 / 720)))));
+        return Math.scalb(power + power * p, n >> EXP_TABLE_BITS);
+    }
+
+    /**
+     * @param x Any value
+     * @return The natural logarithm of x
+     */
+    public static double ln(double x) {
+        if (!(x > 0) || x == Double.POSITIVE_INFINITY) {
+            return StrictMath.log(x);
+        }
+        // Exact for x near 1
+        double u = x - 1;
+        if (Math.abs(u) < LOG_NEAR_ONE) {
+            double s = RECIPROCALS[RECIPROCALS.length - 1];
+            for (int k = RECIPROCALS.length - 2; k > 0; k--) {
+                s = RECIPROCALS[k] - u * s;
+            }
+            return u * s;
+        }
+        long bits = Double.doubleToRawLongBits(x);
+        int exponent = (int) (bits >>> 52) - 1023;
+        if (exponent == -1023) {
+            // Subnormal: scale into the normal range first
+            bits = Double.doubleToRawLongBits(x * 0x1p54);
+            exponent = (int) (bits >>> 52) - 1023 - 54;
+        }
+        int j = (int) (bits >>> (52 - LOG_TABLE_BITS)) & (LOG_CENTERS.length - 1);
+        double mantissa = Double.longBitsToDouble((bits & 0x000FFFFFFFFFFFFFL) | 0x3FF0000000000000L);
+        if (j >= LOG_CENTERS.length / 2) {
+            exponent++;
+        }
+        // ln(mantissa) = ln(center) + ln(1 + r) with |r| <= 1/256
+        double r = (mantissa - LOG_CENTERS[j]) * LOG_INVERSES[j];
+        double p = r - r * r * (0.5 - r * (1.0 / 3 - r * (0.25 - r * (0.2 - r * (1.0 / 6)))));
+        return exponent * LN2_HI + (LOG_TABLE[j] + (p + exponent * LN2_LO));
+    }
+
+    /**
+     * @param x Any value
+     * @return The logarithm of x to base 10
+     */
+    public static double log10(double x) {
+        return ln(x) * INV_LN10;
+    }
+
+    // x - k π/2, exact enough for |k| < 2^20
+    private static double reduce(double x, double k) {
+        return ((x - k * PIO2_1) - k * PIO2_2) - k * PIO2_3;
+    }
+
+    private static double sinKernel(double x) {
+        double z = x * x;
+        double r = S2 + z * (S3 + z * (S4 + z * (S5 + z * S6)));
+        return x + x * z * (S1 + z * r);
+    }
+
+    private static double cosKernel(double x) {
+        double z = x * x;
+        double r = z * (C1 + z * (C2 + z * (C3 + z * (C4 + z * (C5 + z * C6)))));
+        double hz = 0.5 * z;
+        double w = 1 - hz;
+        return w + (((1 - w) - hz) + z * r);
+    }
+}
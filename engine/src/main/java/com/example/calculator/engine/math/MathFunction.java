@@ -0,0 +1,148 @@
+package com.example.calculator.engine.math;
+
+/**
+ * Functions an expression can call.
+ * <p>
+ * A call is written as the keyword followed by its arguments in parentheses, separated by
+ * commas, e.g. {@code sin(30)} or {@code ncr(49, 6)}; the factorial is the postfix
+ * {@code !} instead. The ordinal of a function is the argument of its
+ * {@link com.example.calculator.engine.Operators#CALL} instruction.
+ */
+public enum MathFunction {
+    SIN("sin", 1),
+    COS("cos", 1),
+    TAN("tan", 1),
+    // Natural logarithm
+    LN("ln", 1),
+    // Logarithm to base 10
+    LOG("log", 1),
+    EXP("exp", 1),
+    SQRT("sqrt", 1),
+    // Written after its operand, e.g. 5!
+    FACTORIAL("!", 1),
+    // Binomial coefficient n choose k, written ncr(n, k)
+    BINOMIAL("ncr", 2);
+
+    private static final MathFunction[] VALUES = values();
+
+    private final String keyword;
+    private final int arity;
+
+    MathFunction(String keyword, int arity) {
+        this.keyword = keyword;
+        this.arity = arity;
+    }
+
+    /**
+     * @return The keyword of a call, or the postfix symbol of the factorial
+     */
+    public String keyword() {
+        return keyword;
+    }
+
+    /**
+     * @return The number of arguments
+     */
+    public int arity() {
+        return arity;
+    }
+
+    /**
+     * @param index The ordinal of a function, the argument of a CALL instruction
+     * @return The function
+     */
+    public static MathFunction of(int index) {
+        return VALUES[index];
+    }
+
+    /**
+     * Finds the call that starts at a position: a keyword directly followed by {@code (}
+     *
+     * @param text The text to look in
+     * @param position The position of the first character of the keyword
+     * @return The function called there, or null if there is no call
+     */
+    public static MathFunction callAt(CharSequence text, int position) {
+        char first = text.charAt(position);
+        if (first < 'a' || first > 'z') {
+            return null;
+        }
+        for (MathFunction function : VALUES) {
+            String keyword = function.keyword;
+            int end = position + keyword.length();
+            if (function != FACTORIAL && end < text.length() && text.charAt(end) == '(' && matches(text, position, keyword)) {
+                return function;
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(CharSequence text, int position, String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (text.charAt(position + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies a function of one argument in floating point
+     *
+     * @param x The argument; angles are in radians
+     * @param accuracy The accuracy tier
+     * @return The result, NaN where the function is undefined and infinite where it overflows
+     */
+    public double apply(double x, Accuracy accuracy) {
+        boolean fast = accuracy == Accuracy.FAST;
+        switch (this) {
+            case SIN:
+                return fast ? FastMath.sin(x) : StrictMath.sin(x);
+            case COS:
+                return fast ? FastMath.cos(x) : StrictMath.cos(x);
+            case TAN:
+                return fast ? FastMath.tan(x) : StrictMath.tan(x);
+            case LN:
+                return fast ? FastMath.ln(x) : StrictMath.log(x);
+            case LOG:
+                return fast ? FastMath.log10(x) : StrictMath.log10(x);
+            case EXP:
+                return fast ? FastMath.exp(x) : StrictMath.exp(x);
+            case SQRT:
+                // Both are correctly rounded; Math.sqrt is a single instruction on most CPUs
+                return fast ? Math.sqrt(x) : StrictMath.sqrt(x);
+            case FACTORIAL:
+                if (!(x >= 0) || x != Math.rint(x)) {
+                    return Double.NaN;
+                }
+                return x > Combinatorics.MAX_DOUBLE_FACTORIAL ? Double.POSITIVE_INFINITY : Combinatorics.factorialAsDouble((int) x);
+            default:
+                throw new IllegalArgumentException(keyword + " takes " + arity + " arguments");
+        }
+    }
+
+    /**
+     * Applies a function of two arguments in floating point
+     *
+     * @param x The first argument
+     * @param y The second argument
+     * @return The result, NaN where the function is undefined and infinite where it overflows
+     */
+    public double apply(double x, double y) {
+        if (this != BINOMIAL) {
+            throw new IllegalArgumentException(keyword + " takes " + arity + " argument");
+        }
+        if (!(x >= 0) || x != Math.rint(x) || y != Math.rint(y) || x > 0x1p53) {
+            return Double.NaN;
+        }
+        long n = (long) x;
+        long k = (long) y;
+        if (k < 0 || k > n) {
+            return 0;
+        }
+        if (Combinatorics.log2Binomial(n, k) > Double.MAX_EXPONENT + 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Combinatorics.binomial(n, k).doubleValue();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.calculator.engine.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free event counter. Updates are dropped while metrics are disabled.
+ */
+public final class Counter {
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Counts one event
+     */
+    public void increment() {
+        if (Metrics.isEnabled()) {
+            count.increment();
+        }
+    }
+
+    /**
+     * Counts several events at once
+     *
+     * @param events The number of events
+     */
+    public void add(long events) {
+        if (Metrics.isEnabled()) {
+            count.add(events);
+        }
+    }
+
+    /**
+     * @return The events counted since the last reset
+     */
+    public long sum() {
+        return count.sum();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    void reset() {
+        count.reset();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.calculator.engine.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets, in the style of HdrHistogram.
+ * <p>
+ * Values below {@value #SUB_BUCKETS} nanoseconds get a bucket each; above that, every power
+ * of two is split into {@value #SUB_BUCKETS} equal buckets, so any recorded value is known
+ * within about 3%. Recording is a few atomic adds on preallocated arrays and never allocates.
+ * Updates are dropped while metrics are disabled.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    // Buckets per power of two
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Enough buckets for every positive long
+    static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the time elapsed since a start obtained from {@link Metrics#start()}
+     *
+     * @param start The start time, 0 if metrics were disabled when it was taken
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records one latency
+     *
+     * @param nanos The latency in nanoseconds
+     */
+    public void record(long nanos) {
+        if (!Metrics.isEnabled()) {
+            return;
+        }
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // Another thread raised the maximum meanwhile; retry against the new value
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return The number of recorded values
+     */
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return The largest recorded value in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return The mean of the recorded values in nanoseconds, 0 if there are none
+     */
+    public long mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / n;
+    }
+
+    /**
+     * Estimates a percentile from the buckets
+     *
+     * @param percentile The percentile, between 0 and 100
+     * @return The highest value of the bucket holding the percentile, in nanoseconds
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(max.get(), i + 1 < BUCKETS ? lowestValueOf(i + 1) - 1 : Long.MAX_VALUE);
+            }
+        }
+        return max.get();
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    // Values below SUB_BUCKETS map to themselves; above, the top bits past the leading one pick the bucket
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        int top = (int) (value >>> shift);
+        return (shift + 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long top = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return top << shift;
+    }
+}
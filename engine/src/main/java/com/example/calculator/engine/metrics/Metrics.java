@@ -0,0 +1,131 @@
+package com.example.calculator.engine.metrics;
+
+import com.example.calculator.engine.MalformedExpressionException;
+
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Engine-wide metrics: latency histograms of the hot paths and counters of cache
+ * lookups and errors.
+ * <p>
+ * Metrics are off by default. While they are off, every probe is one read of a flag;
+ * while they are on, probes update lock-free counters and never allocate. Use
+ * {@link #snapshot()} or a {@link MetricsReporter} to read them.
+ */
+public final class Metrics {
+
+    // Latencies of the hot paths
+    public static final LatencyHistogram PARSE = new LatencyHistogram("parse");
+    public static final LatencyHistogram EVALUATE = new LatencyHistogram("evaluate");
+    public static final LatencyHistogram CONVERSION = new LatencyHistogram("conversion");
+    public static final LatencyHistogram HISTORY_WRITE = new LatencyHistogram("history.write");
+    public static final LatencyHistogram HISTORY_READ = new LatencyHistogram("history.read");
+
+    // Expression cache lookups
+    public static final Counter CACHE_HITS = new Counter("cache.hits");
+    public static final Counter CACHE_MISSES = new Counter("cache.misses");
+
+    // Instructions removed by the optimizing pass
+    public static final Counter OPTIMIZER_ELIMINATED = new Counter("optimizer.eliminated");
+
+    // Errors by category
+    public static final Counter DIVIDE_BY_ZERO_ERRORS = new Counter("errors.divideByZero");
+    public static final Counter PARSE_ERRORS = new Counter("errors.parse");
+    public static final Counter OVERFLOW_ERRORS = new Counter("errors.overflow");
+    public static final Counter CONVERSION_ERRORS = new Counter("errors.conversion");
+    public static final Counter OTHER_ERRORS = new Counter("errors.other");
+    public static final Counter CANCELLATIONS = new Counter("cancellations");
+
+    private static final LatencyHistogram[] HISTOGRAMS = {PARSE, EVALUATE, CONVERSION, HISTORY_WRITE, HISTORY_READ};
+    private static final Counter[] COUNTERS = {CACHE_HITS, CACHE_MISSES, OPTIMIZER_ELIMINATED,
+            DIVIDE_BY_ZERO_ERRORS, PARSE_ERRORS, OVERFLOW_ERRORS, CONVERSION_ERRORS, OTHER_ERRORS, CANCELLATIONS};
+
+    private static volatile boolean enabled;
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off; values recorded so far are kept
+     *
+     * @param enabled True to record
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a probe, to be finished with {@link LatencyHistogram#stop(long)}
+     *
+     * @return The current time in nanoseconds, or 0 while metrics are disabled
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Counts a failure under its category
+     *
+     * @param error The exception a computation failed with
+     */
+    public static void recordError(Throwable error) {
+        if (!enabled) {
+            return;
+        }
+        if (error instanceof MalformedExpressionException) {
+            PARSE_ERRORS.increment();
+        } else if (error instanceof NumberFormatException) {
+            CONVERSION_ERRORS.increment();
+        } else if (error instanceof ArithmeticException) {
+            OVERFLOW_ERRORS.increment();
+        } else if (error instanceof UnsupportedOperationException) {
+            // The only arithmetic failure reported this way is a zero divisor
+            DIVIDE_BY_ZERO_ERRORS.increment();
+        } else if (error instanceof CancellationException) {
+            CANCELLATIONS.increment();
+        } else {
+            OTHER_ERRORS.increment();
+        }
+    }
+
+    /**
+     * Formats every metric, one per line: histograms with count, mean, p50, p90, p99 and
+     * max in microseconds, counters with their sum
+     *
+     * @return The snapshot
+     */
+    public static String snapshot() {
+        StringBuilder sb = new StringBuilder();
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            sb.append(String.format(Locale.ROOT, "%s count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus%n",
+                    histogram.name(), histogram.count(), micros(histogram.mean()),
+                    micros(histogram.percentile(50)), micros(histogram.percentile(90)),
+                    micros(histogram.percentile(99)), micros(histogram.max())));
+        }
+        for (Counter counter : COUNTERS) {
+            sb.append(counter.name()).append(' ').append(counter.sum()).append(System.lineSeparator());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Clears every metric
+     */
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.calculator.engine.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically hands a {@link Metrics#snapshot()} to a sink, on a background thread.
+ */
+public final class MetricsReporter {
+
+    /**
+     * Receives the snapshots, e.g. a log or a file
+     */
+    public interface Sink {
+
+        /**
+         * Handles one snapshot
+         *
+         * @param snapshot The formatted metrics
+         * @throws IOException If the snapshot cannot be written
+         */
+        void report(String snapshot) throws IOException;
+    }
+
+    private final Sink sink;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param sink The receiver of the snapshots
+     */
+    public MetricsReporter(Sink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Starts reporting
+     *
+     * @param period The time between two snapshots
+     * @param unit The unit of the period
+     */
+    public void start(long period, TimeUnit unit) {
+        scheduler.scheduleAtFixedRate(this::reportNow, period, period, unit);
+    }
+
+    /**
+     * Reports one snapshot right away, on the calling thread
+     */
+    public void reportNow() {
+        try {
+            sink.report(Metrics.snapshot());
+        } catch (IOException e) {
+            // A failed snapshot is skipped; the next one carries the same totals
+        }
+    }
+
+    /**
+     * Stops reporting after a final snapshot
+     */
+    public void stop() {
+        scheduler.shutdown();
+        reportNow();
+    }
+
+    /**
+     * Creates a sink that appends every snapshot, with a timestamp line, to a file
+     *
+     * @param file The file to append to
+     * @return The sink
+     */
+    public static Sink fileSink(File file) {
+        return snapshot -> {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                out.write("# " + System.currentTimeMillis() + System.lineSeparator());
+                out.write(snapshot);
+            }
+        };
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.calculator.engine.plot;
+
+import com.example.calculator.engine.DecimalEvaluator;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.math.Accuracy;
+
+import java.util.Arrays;
+
+/**
+ * Samples a function of x over an interval, densely only where the curve needs it.
+ * <p>
+ * The interval starts as a coarse grid. A segment is halved while the curve at its middle
+ * strays from the straight line between its ends by more than the tolerance, or while the
+ * function is defined at some of these three points and not at others, down to a fixed
+ * depth. A segment still steep at that depth is probed further, following its steeper half:
+ * if the rise does not shrink with the width, it is a jump, such as 1÷x across 0 or tan(x)
+ * across π/2, and is cut by a NaN sample so that it is not drawn as a vertical line. Where
+ * the function has no value, such as at a division by zero, the sample is NaN as well.
+ * <p>
+ * Values come from {@link DecimalEvaluator} with {@link Accuracy#FAST} functions. An
+ * instance is not thread-safe; give each thread its own sampler.
+ */
+public final class AdaptiveSampler {
+
+    // Segments of the initial grid
+    static final int INITIAL_SEGMENTS = 16;
+    // Halvings of a segment of the initial grid
+    static final int MAX_DEPTH = 10;
+    // Tolerances a segment of the full depth must rise or fall by to be probed for a jump
+    private static final double JUMP_TOLERANCES = 16;
+    // Further halvings a probed segment goes through; the rise of a continuous curve halves with each
+    private static final int JUMP_PROBES = 24;
+    // Part of its rise a jump keeps after the probes, far more than any continuous curve
+    private static final double JUMP_REMAINDER = 1.0 / 1024;
+
+    private final Program program;
+    private final DecimalEvaluator evaluator;
+    private double tolerance;
+    private double[] xs = new double[256];
+    private double[] ys = new double[256];
+    private int size;
+
+    /**
+     * @param program The function, compiled with the variable x, usually by
+     *                {@link com.example.calculator.engine.ExpressionCompiler#compileDecimal(CharSequence, com.example.calculator.engine.SymbolTable, boolean)}
+     */
+    public AdaptiveSampler(Program program) {
+        this.program = program;
+        this.evaluator = new DecimalEvaluator(Accuracy.FAST);
+    }
+
+    /**
+     * Samples the function, replacing the previous samples
+     *
+     * @param from The start of the interval, sampled first
+     * @param to The end of the interval, sampled last
+     * @param tolerance How far the drawn line may stray from the curve, in units of y
+     * @return The number of samples
+     */
+    public int sample(double from, double to, double tolerance) {
+        this.tolerance = tolerance;
+        size = 0;
+        double x0 = from;
+        double y0 = value(from);
+        add(x0, y0);
+        for (int i = 1; i <= INITIAL_SEGMENTS; i++) {
+            double x1 = i == INITIAL_SEGMENTS ? to : from + (to - from) * i / INITIAL_SEGMENTS;
+            double y1 = value(x1);
+            refine(x0, y0, x1, y1, 0);
+            add(x1, y1);
+            x0 = x1;
+            y0 = y1;
+        }
+        return size;
+    }
+
+    /**
+     * @return The number of samples
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The x of the samples, ascending
+     */
+    public double[] xs() {
+        return Arrays.copyOf(xs, size);
+    }
+
+    /**
+     * @return The values of the samples, NaN where the function has none or the curve is cut
+     */
+    public double[] ys() {
+        return Arrays.copyOf(ys, size);
+    }
+
+    /**
+     * @param x A value of x
+     * @return The value of the function, or NaN if it has none there
+     */
+    public double value(double x) {
+        double y;
+        try {
+            y = evaluator.evaluate(program, x);
+        } catch (UnsupportedOperationException | ArithmeticException | IllegalArgumentException e) {
+            // Division by zero, or a function outside its domain
+            return Double.NaN;
+        }
+        return Double.isInfinite(y) ? Double.NaN : y;
+    }
+
+    // Adds the samples strictly between two samples that are already placed
+    private void refine(double x0, double y0, double x1, double y1, int depth) {
+        double xm = 0.5 * (x0 + x1);
+        if (xm == x0 || xm == x1) {
+            return;
+        }
+        double ym = value(xm);
+        boolean defined0 = !Double.isNaN(y0);
+        boolean split;
+        if (defined0 != !Double.isNaN(y1) || defined0 != !Double.isNaN(ym)) {
+            // The edge of the domain is in this segment
+            split = true;
+        } else {
+            split = defined0 && Math.abs(ym - 0.5 * (y0 + y1)) > tolerance;
+        }
+        if (!split) {
+            return;
+        }
+        if (depth == MAX_DEPTH) {
+            if (defined0 && !Double.isNaN(y1) && Math.abs(y1 - y0) > JUMP_TOLERANCES * tolerance
+                    && isJump(x0, y0, x1, y1)) {
+                add(xm, Double.NaN);
+            }
+            return;
+        }
+        refine(x0, y0, xm, ym, depth + 1);
+        add(xm, ym);
+        refine(xm, ym, x1, y1, depth + 1);
+    }
+
+    // True if the function jumps or is undefined somewhere between two samples
+    private boolean isJump(double x0, double y0, double x1, double y1) {
+        double flat = Math.max(tolerance, Math.abs(y1 - y0) * JUMP_REMAINDER);
+        for (int i = 0; i < JUMP_PROBES && Math.abs(y1 - y0) > flat; i++) {
+            double xm = 0.5 * (x0 + x1);
+            if (xm == x0 || xm == x1) {
+                break;
+            }
+            double ym = value(xm);
+            if (Double.isNaN(ym)) {
+                return true;
+            }
+            if (Math.abs(ym - y0) > Math.abs(y1 - ym)) {
+                x1 = xm;
+                y1 = ym;
+            } else {
+                x0 = xm;
+                y0 = ym;
+            }
+        }
+        return Math.abs(y1 - y0) > flat;
+    }
+
+    private void add(double x, double y) {
+        if (size == xs.length) {
+            xs = Arrays.copyOf(xs, size * 2);
+            ys = Arrays.copyOf(ys, size * 2);
+        }
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+}
@@ -0,0 +1,272 @@
+package com.example.calculator.engine.plot;
+
+import com.example.calculator.engine.Program;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The samples of one function, cut into tiles along x that are sampled in parallel and
+ * kept for panning and zooming.
+ * <p>
+ * A tile of level L spans 2<sup>L</sup> units of x, starting at a multiple of its width,
+ * and is sampled with a tolerance of half a pixel at the zoom that shows it as
+ * {@value #TILE_PIXELS} pixels. A view picks the level whose tiles span between half that
+ * and that many pixels, so one level serves every zoom within a factor of two and panning
+ * only samples the tiles that come into view. Missing tiles are sampled on the executor,
+ * each by its own {@link AdaptiveSampler}; until one is ready, its parent or both of its
+ * children stand in for it if they are cached, so the curve is drawn at once while zooming
+ * and sharpens as tiles arrive.
+ * <p>
+ * Axes are assumed to have the same scale, so a tolerance in x is one in y. Instances are
+ * thread-safe.
+ */
+public final class Plot {
+
+    /** Pixels a tile spans at the zoom it is sampled for */
+    public static final int TILE_PIXELS = 128;
+    // Tiles kept, a few screens at a few levels
+    private static final int CACHED_TILES = 256;
+    // Tiles a view may cover; more means x is too large for its zoom
+    private static final int MAX_VISIBLE_TILES = 1024;
+
+    private final Program program;
+    private final Executor executor;
+    // Sampled tiles, least recently used first
+    private final Map<TileKey, Tile> tiles = new LinkedHashMap<TileKey, Tile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> eldest) {
+            return size() > CACHED_TILES;
+        }
+    };
+    // Tiles being sampled
+    private final Set<TileKey> pending = new HashSet<>();
+    // Level of the latest view; tiles queued for levels far from it are skipped
+    private volatile int viewLevel;
+
+    /**
+     * Samples on the common fork-join pool
+     *
+     * @param program The function, compiled with the variable x
+     */
+    public Plot(Program program) {
+        this(program, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param program The function, compiled with the variable x
+     * @param executor Runs the sampling of tiles
+     */
+    public Plot(Program program, Executor executor) {
+        this.program = program;
+        this.executor = executor;
+    }
+
+    /**
+     * @param unitsPerPixel The units of x in one pixel of the view
+     * @return The level of the tiles that show the view best
+     */
+    public static int level(double unitsPerPixel) {
+        double width = unitsPerPixel * TILE_PIXELS;
+        int exponent = Math.getExponent(width);
+        return width == Math.scalb(1.0, exponent) ? exponent : exponent + 1;
+    }
+
+    /**
+     * Returns the tiles that cover a range of x, as far as they are sampled, and starts
+     * sampling the others
+     *
+     * @param from The left end of the view
+     * @param to The right end of the view
+     * @param unitsPerPixel The units of x in one pixel
+     * @param onReady Called on a thread of the executor each time a tile requested here is sampled
+     * @return The tiles ordered by x; stand-ins of other levels may overlap their neighbours
+     * @throws IllegalArgumentException If the range is empty or covers too many tiles
+     */
+    public List<Tile> visible(double from, double to, double unitsPerPixel, Runnable onReady) {
+        int level = level(unitsPerPixel);
+        double width = Math.scalb(1.0, level);
+        double first = Math.floor(from / width);
+        double last = Math.floor(to / width);
+        if (!(first <= last) || last - first >= MAX_VISIBLE_TILES) {
+            throw new IllegalArgumentException("Cannot show " + from + " to " + to);
+        }
+        viewLevel = level;
+        List<Tile> visible = new ArrayList<>((int) (last - first) + 1);
+        synchronized (this) {
+            for (long index = (long) first; index <= (long) last; index++) {
+                TileKey key = new TileKey(level, index);
+                Tile tile = tiles.get(key);
+                if (tile != null) {
+                    visible.add(tile);
+                    continue;
+                }
+                request(key, onReady);
+                Tile parent = tiles.get(new TileKey(level + 1, Math.floorDiv(index, 2)));
+                if (parent != null) {
+                    if (visible.isEmpty() || visible.get(visible.size() - 1) != parent) {
+                        visible.add(parent);
+                    }
+                    continue;
+                }
+                Tile left = tiles.get(new TileKey(level - 1, 2 * index));
+                Tile right = tiles.get(new TileKey(level - 1, 2 * index + 1));
+                if (left != null && right != null) {
+                    visible.add(left);
+                    visible.add(right);
+                }
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Returns a tile, sampling it on the calling thread unless it is cached
+     *
+     * @param level The level of the tile
+     * @param index The index of the tile, its start divided by its width
+     * @return The tile
+     */
+    public Tile tile(int level, long index) {
+        TileKey key = new TileKey(level, index);
+        synchronized (this) {
+            Tile tile = tiles.get(key);
+            if (tile != null) {
+                return tile;
+            }
+        }
+        Tile tile = sample(key);
+        synchronized (this) {
+            tiles.put(key, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * @return The number of tiles cached
+     */
+    public synchronized int cachedTiles() {
+        return tiles.size();
+    }
+
+    // Called with the lock held
+    private void request(TileKey key, Runnable onReady) {
+        if (!pending.add(key)) {
+            return;
+        }
+        executor.execute(() -> {
+            Tile tile = null;
+            try {
+                // The view has zoomed on since the request; sampling would only fill the cache
+                if (Math.abs(key.level - viewLevel) <= 1) {
+                    tile = sample(key);
+                }
+            } finally {
+                synchronized (this) {
+                    pending.remove(key);
+                    if (tile != null) {
+                        tiles.put(key, tile);
+                    }
+                }
+            }
+            if (tile != null) {
+                onReady.run();
+            }
+        });
+    }
+
+    private Tile sample(TileKey key) {
+        double width = Math.scalb(1.0, key.level);
+        double from = key.index * width;
+        AdaptiveSampler sampler = new AdaptiveSampler(program);
+        // Half a pixel at the zoom the tile is sampled for
+        sampler.sample(from, from + width, width / TILE_PIXELS / 2);
+        return new Tile(key.level, key.index, sampler.xs(), sampler.ys());
+    }
+
+    /**
+     * The samples of the function over the span of x of one tile
+     */
+    public static final class Tile {
+
+        private final int level;
+        private final long index;
+        private final double[] xs;
+        private final double[] ys;
+
+        Tile(int level, long index, double[] xs, double[] ys) {
+            this.level = level;
+            this.index = index;
+            this.xs = xs;
+            this.ys = ys;
+        }
+
+        /**
+         * @return The level of the tile, whose width is 2 to that power
+         */
+        public int level() {
+            return level;
+        }
+
+        /**
+         * @return The index of the tile, its start divided by its width
+         */
+        public long index() {
+            return index;
+        }
+
+        /**
+         * @return The number of samples, including those at both ends
+         */
+        public int size() {
+            return xs.length;
+        }
+
+        /**
+         * @param i The index of a sample, ascending with x
+         * @return Its x
+         */
+        public double x(int i) {
+            return xs[i];
+        }
+
+        /**
+         * @param i The index of a sample
+         * @return Its value, NaN where the curve is not drawn
+         */
+        public double y(int i) {
+            return ys[i];
+        }
+    }
+
+    private static final class TileKey {
+
+        final int level;
+        final long index;
+
+        TileKey(int level, long index) {
+            this.level = level;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey)) {
+                return false;
+            }
+            TileKey other = (TileKey) o;
+            return level == other.level && index == other.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * level + Long.hashCode(index);
+        }
+    }
+}
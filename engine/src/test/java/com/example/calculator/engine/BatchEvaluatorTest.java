@@ -0,0 +1,44 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class BatchEvaluatorTest {
+
+    @Test
+    public void evaluateLine_matchesCalculatorSemantics() {
+        assertEquals("14", BatchEvaluator.evaluateLine("2+3x4", Precision.INT32));
+        assertEquals("-1", BatchEvaluator.evaluateLine("7÷2-4", Precision.INT32));
+        assertEquals("2147483647", BatchEvaluator.evaluateLine("2^40", Precision.INT32));
+        assertEquals("1099511627776", BatchEvaluator.evaluateLine("2^40", Precision.EXACT));
+        assertEquals("Error: Cannot divide by zero", BatchEvaluator.evaluateLine("1÷0", Precision.INT32));
+        assertTrue(BatchEvaluator.evaluateLine("", Precision.INT32).startsWith(BatchEvaluator.ERROR_PREFIX));
+    }
+
+    @Test
+    public void evaluate_keepsInputOrderAcrossChunks() throws Exception {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            input.append(i).append("x2+1\n");
+            expected.append(i * 2 + 1).append('\n');
+        }
+        StringWriter out = new StringWriter();
+        BatchEvaluator batch = new BatchEvaluator(Precision.INT32, 4, 7);
+        long lines = batch.evaluate(new BufferedReader(new StringReader(input.toString())), out);
+        assertEquals(10000, lines);
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void evaluate_emptyInputWritesNothing() throws Exception {
+        StringWriter out = new StringWriter();
+        assertEquals(0, new BatchEvaluator(Precision.EXACT).evaluate(new BufferedReader(new StringReader("")), out));
+        assertEquals("", out.toString());
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.calculator.engine;
+
+import com.example.calculator.engine.math.Accuracy;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class DecimalEvaluatorTest {
+
+    private static String decimal(String expression) {
+        return new DecimalEvaluator().evaluateToString(ExpressionCompiler.compileDecimal(expression));
+    }
+
+    private static String exact(String expression) {
+        return new ExactEvaluator().evaluateToString(ExpressionCompiler.compile(expression));
+    }
+
+    private static String rational(String expression) {
+        return new RationalEvaluator().evaluateToString(ExpressionCompiler.compileDecimal(expression));
+    }
+
+    @Test
+    public void arithmetic_isFloatingPoint() {
+        assertEquals("0.3", decimal("0.1+0.2"));
+        assertEquals("0.333333333333333", decimal("1÷3"));
+        assertEquals("1.4142135623731", decimal("2^0.5"));
+        assertEquals("120", decimal("5!"));
+        // Trailing zeros after the point do not change the rounding of long literals
+        assertEquals(decimal("393720368922337203681.748364854775803+0"),
+                decimal("393720368922337203681.7483648547758030+0"));
+        assertEquals(decimal("0.1"), decimal("0.1000"));
+        try {
+            decimal("1÷0");
+            fail("Expected an exception");
+        } catch (UnsupportedOperationException e) {
+            assertEquals("Cannot divide by zero", e.getMessage());
+        }
+    }
+
+    @Test
+    public void functions_callTheLibrary() {
+        assertEquals("1", decimal("sin(1.5707963267949)"));
+        assertEquals("1", decimal("cos(0)"));
+        assertEquals("2", decimal("ln(exp(2))"));
+        assertEquals("3", decimal("log(1000)"));
+        assertEquals("1.5", decimal("sqrt(2.25)"));
+        assertEquals("13983816", decimal("ncr(49, 6)"));
+        // A call is one operand, so x and ^ bind around it as usual
+        assertEquals("7", decimal("1+2xsqrt(9)"));
+        assertEquals("20", decimal("sqrt(4)x10"));
+        assertEquals("8", decimal("sqrt(4)^3"));
+        assertEquals(Math.sin(0.5), new DecimalEvaluator(Accuracy.FAST).evaluate(
+                ExpressionCompiler.compile("sin(x)", true), 0.5), 1e-16);
+        try {
+            decimal("ln(0-1)");
+            fail("Expected an exception");
+        } catch (ArithmeticException e) {
+            assertEquals("Not a number", e.getMessage());
+        }
+    }
+
+    @Test
+    public void functions_areExactInIntegerAndFractionPrecisions() {
+        assertEquals("265252859812191058636308480000000", exact("30!"));
+        // The factorial binds tighter than any operator
+        assertEquals("62", exact("2+3!x10"));
+        assertEquals("100891344545564193334812497256", exact("ncr(100, 50)"));
+        // n beyond the range of a double, which used to make the size estimate infinite
+        assertEquals(BigInteger.ONE.shiftLeft(2000).toString(), exact("ncr(2^2000, 1)"));
+        assertEquals("99999999", exact("sqrt(9999999999999999)"));
+        assertEquals("3", exact("ln(30)"));
+        assertEquals("1.5", rational("sqrt(2.25)"));
+        assertEquals("2÷3", rational("sqrt(4÷9)"));
+        assertEquals("6", rational("3!"));
+        assertEquals(120, new Evaluator().evaluate(ExpressionCompiler.compile("5!")));
+        assertEquals(0, new Evaluator().evaluate(ExpressionCompiler.compile("40!")));
+        try {
+            rational("sqrt(2)");
+            fail("Expected an exception");
+        } catch (ArithmeticException e) {
+            assertEquals("Square root has no exact result", e.getMessage());
+        }
+        try {
+            rational("0.5!");
+            fail("Expected an exception");
+        } catch (ArithmeticException e) {
+            assertEquals("Argument must be a whole number", e.getMessage());
+        }
+    }
+
+    @Test
+    public void calls_reportMalformedArguments() {
+        String[] malformed = {"ncr(5)", "sin(1, 2)", "sqrt(", "sqrt()"};
+        for (String expression : malformed) {
+            try {
+                ExpressionCompiler.compile(expression);
+                fail("Expected an exception for " + expression);
+            } catch (MalformedExpressionException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void bitwiseOperators_needWholeNumbers() {
+        assertEquals("12", decimal("1.5x2«2"));
+        assertEquals("7", decimal("sqrt(16)|3"));
+        try {
+            decimal("0.5&1");
+            fail();
+        } catch (ArithmeticException expected) {
+            assertEquals("Argument must be a whole number", expected.getMessage());
+        }
+    }
+}
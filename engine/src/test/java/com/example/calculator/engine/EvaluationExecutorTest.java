@@ -0,0 +1,96 @@
+package com.example.calculator.engine;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EvaluationExecutorTest {
+
+    private final EvaluationExecutor executor = new EvaluationExecutor(Runnable::run, 20);
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    @After
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void newerSubmission_cancelsTheOneInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.submit(() -> {
+            started.countDown();
+            // Spins until the cooperative check sees the interrupt
+            for (int i = 0; ; i++) {
+                Cancellation.check(i);
+            }
+        }, new Recorder<>("slow"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.submit(() -> "2", new Recorder<>("fast"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(events.contains("slow:2"));
+        assertEquals("fast:2", events.get(events.size() - 1));
+    }
+
+    @Test
+    public void slowEvaluation_reportsBudgetBeforeResult() throws Exception {
+        executor.submit(() -> {
+            Thread.sleep(200);
+            return "done";
+        }, new Recorder<>("task"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("task:budget", events.get(0));
+        assertEquals("task:done", events.get(1));
+    }
+
+    @Test
+    public void cancel_dropsTheOutcome() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            release.await();
+            return "late";
+        }, new Recorder<>("task"));
+        executor.cancel();
+        release.countDown();
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void errors_areDelivered() throws Exception {
+        executor.submit(() -> new Evaluator().evaluate(ExpressionCompiler.compile("5÷0")), new Recorder<>("task"));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("task:UnsupportedOperationException", events.get(events.size() - 1));
+    }
+
+    private final class Recorder<T> implements EvaluationExecutor.Callback<T> {
+        private final String name;
+
+        Recorder(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void onResult(T result) {
+            events.add(name + ":" + result);
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Exception error) {
+            events.add(name + ":" + error.getClass().getSimpleName());
+            done.countDown();
+        }
+
+        @Override
+        public void onBudgetExceeded() {
+            events.add(name + ":budget");
+        }
+    }
+}
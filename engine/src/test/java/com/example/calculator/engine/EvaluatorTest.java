@@ -0,0 +1,120 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.Stack;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the compiled engine against the original stack-walking evaluator.
+ */
+public class EvaluatorTest {
+
+    private final Evaluator evaluator = new Evaluator();
+
+    private long evaluate(String expression) {
+        return evaluator.evaluate(ExpressionCompiler.compile(expression));
+    }
+
+    // The evaluator MainActivity used before the engine existed
+    private static int legacyEvaluate(String expression) {
+        Stack<Integer> operands = new Stack<>();
+        Stack<Character> operators = new Stack<>();
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (Character.isDigit(c)) {
+                int num = c - '0';
+                while (i + 1 < expression.length() && Character.isDigit(expression.charAt(i + 1))) {
+                    num = num * 10 + (expression.charAt(i + 1) - '0');
+                    i++;
+                }
+                operands.push(num);
+            } else if (Operators.isOperator(c)) {
+                while (!operators.isEmpty() && Operators.hasPrecedence(c, operators.peek())) {
+                    operands.push(Operators.performOperation(operands.pop(), operands.pop(), operators.pop()));
+                }
+                operators.push(c);
+            }
+        }
+        while (!operators.isEmpty()) {
+            operands.push(Operators.performOperation(operands.pop(), operands.pop(), operators.pop()));
+        }
+        return operands.pop();
+    }
+
+    @Test
+    public void precedence_matchesKeypadRules() {
+        assertEquals(7, evaluate("1+2x3"));
+        assertEquals(16, evaluate("2^3x2"));
+        assertEquals(36, evaluate("2x3^2"));
+        assertEquals(2, evaluate("10-5-3"));
+        assertEquals(1, evaluate("12÷4÷3"));
+    }
+
+    @Test
+    public void matchesLegacyEvaluator() {
+        String[] expressions = {
+                "0", "42", "1+2-3x4÷5^2", "2^31", "2^40", "0^0", "99999999999",
+                "1.5+2", "46341x46341", "3 4+5", "100-2x3+4÷2^2", "5x5x5x5x5x5x5x5x5x5x5x5x5x5"
+        };
+        for (String expression : expressions) {
+            assertEquals(expression, legacyEvaluate(expression), evaluate(expression));
+        }
+    }
+
+    @Test
+    public void divideByZero_throws() {
+        try {
+            evaluate("5÷0");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            assertEquals("Cannot divide by zero", expected.getMessage());
+        }
+    }
+
+    @Test(expected = MalformedExpressionException.class)
+    public void trailingOperator_isMalformed() {
+        evaluate("5+");
+    }
+
+    @Test(expected = MalformedExpressionException.class)
+    public void emptyExpression_isMalformed() {
+        evaluate("");
+    }
+
+    @Test
+    public void evaluator_isReusableAcrossPrograms() {
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 0; i < 100; i++) {
+            sb.append("+1x1");
+        }
+        assertEquals(101, evaluate(sb.toString()));
+        assertEquals(3, evaluate("1+2"));
+    }
+
+    @Test
+    public void radixLiterals_areReadInTheirBase() {
+        assertEquals(256, evaluator.evaluate(ExpressionCompiler.compile("FF+1", Radix.HEXADECIMAL, null)));
+        assertEquals(15, evaluator.evaluate(ExpressionCompiler.compile("101x11", Radix.BINARY, null)));
+        assertEquals(-1, evaluator.evaluate(ExpressionCompiler.compile("0-777÷777", Radix.OCTAL, null)));
+        try {
+            ExpressionCompiler.compile("102", Radix.BINARY, null);
+            fail();
+        } catch (MalformedExpressionException expected) {
+            assertEquals("2 is not a digit in base 2", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void bitwiseOperators_bindLooserThanArithmetic() {
+        assertEquals(3, evaluate("1|2&3"));
+        assertEquals(24, evaluate("1+2«3"));
+        assertEquals(7, evaluate("6⊻3&5"));
+        assertEquals(4, evaluate("8«0-1"));
+        assertEquals(-4, evaluate("0-8»1"));
+        // Unlike Java, shift counts are not masked
+        assertEquals(0, evaluate("1«40"));
+        assertEquals(-1, evaluate("0-1»99"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class ExactEvaluatorTest {
+
+    private final ExactEvaluator evaluator = new ExactEvaluator();
+
+    private String evaluate(String expression) {
+        return evaluator.evaluateToString(ExpressionCompiler.compile(expression));
+    }
+
+    @Test
+    public void smallResults_matchIntegerArithmetic() {
+        assertEquals("7", evaluate("1+2x3"));
+        assertEquals("-3", evaluate("7÷2-6"));
+        assertEquals("1", evaluate("0^0"));
+    }
+
+    @Test
+    public void overflow_promotesInsteadOfWrapping() {
+        assertEquals("9223372036854775808", evaluate("9223372036854775807+1"));
+        assertEquals("-9223372036854775809", evaluate("0-9223372036854775807-2"));
+        assertEquals("2147488281", evaluate("46341x46341"));
+        assertEquals("85070591730234615847396907784232501249", evaluate("9223372036854775807x9223372036854775807"));
+        assertEquals("-9223372036854775808", evaluate("0-9223372036854775807-1"));
+    }
+
+    @Test
+    public void bigLiterals_areExact() {
+        assertEquals("123456789012345678901234567890", evaluate("123456789012345678901234567890"));
+        assertEquals("123456789012345678901234567891", evaluate("123456789012345678901234567890+1"));
+    }
+
+    @Test
+    public void power_usesExactSquaring() {
+        assertEquals(BigInteger.valueOf(2).pow(100).toString(), evaluate("2^100"));
+        assertEquals(BigInteger.valueOf(3).pow(39).toString(), evaluate("3^39"));
+        assertEquals(BigInteger.valueOf(7).pow(22).toString(), evaluate("7^22"));
+        assertEquals("1", evaluate("1^99999999999999999999"));
+        assertEquals("0", evaluate("0^99999999999999999999"));
+    }
+
+    @Test
+    public void thousandDigitResults_areExact() {
+        String result = evaluate("7^1200x3-1");
+        assertEquals(BigInteger.valueOf(7).pow(1200).multiply(BigInteger.valueOf(3)).subtract(BigInteger.ONE).toString(), result);
+        assertTrue(result.length() > 1000);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void hugeResults_areRejected() {
+        evaluate("2^99999999");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void divideByZero_throws() {
+        evaluate("99999999999999999999÷0");
+    }
+
+    @Test
+    public void bitwiseOperators_actOnUnboundedTwosComplement() {
+        assertEquals("1", evaluate("5&3"));
+        assertEquals("-1", evaluate("0-2|1"));
+        assertEquals("6", evaluate("5⊻3"));
+        assertEquals("1267650600228229401496703205376", evaluate("1«100"));
+        assertEquals("-1", evaluate("0-5»9999999999"));
+        assertEquals("1", evaluate("9223372036854775807x4»64"));
+        assertEquals(BigInteger.ONE.shiftLeft(200).or(BigInteger.ONE),
+                evaluator.evaluate(ExpressionCompiler.compile("1«200|1")));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void shiftNearIntRange_isRejectedBeforeShifting() {
+        // bitLength + count used to overflow an int and pass the size check
+        evaluate("139«2147483647");
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExpressionCacheTest {
+
+    @Test
+    public void normalize_dropsLeadingZerosAndSkippedCharacters() {
+        assertEquals("7+12", ExpressionCache.normalize(" 007 + 12 "));
+        assertEquals("0x5", ExpressionCache.normalize("000x5"));
+        assertEquals("3 4+5", ExpressionCache.normalize("3  4+5"));
+        assertEquals("1 5", ExpressionCache.normalize("1.5"));
+    }
+
+    @Test
+    public void equivalentSpellings_shareOneEntry() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        assertEquals(9, cache.evaluate("007+2", 10));
+        assertEquals(9, cache.evaluate(" 7 + 2", 10));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void modes_arePartitioned() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        cache.evaluate("1+1", 10);
+        cache.evaluate("1+1", 2);
+        assertEquals(2, cache.missCount());
+        assertEquals(2, cache.size());
+        cache.invalidate(2);
+        assertEquals(1, cache.size());
+        cache.evaluate("1+1", 10);
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void precisions_keepSeparateResults() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        assertEquals("2147483647", cache.evaluate("2^40", 10, Precision.INT32));
+        assertEquals("1099511627776", cache.evaluate("2^40", 10, Precision.EXACT));
+        assertEquals("2147483647", cache.evaluate("2^40", 10, Precision.INT32));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void rational_readsDecimalPoints() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        assertEquals("1.5+1.5+0+2", ExpressionCache.normalize("1.5 +01.50+.00+2.0", true));
+        // A second point starts another operand, which must stay apart from the first
+        assertEquals("5 .25", ExpressionCache.normalize("5.0.25", true));
+        assertEquals("0.25", new ExpressionCache(16).evaluate("5.0.25", 10, Precision.RATIONAL));
+        assertEquals("3", cache.evaluate("1.5+1.5", 10, Precision.RATIONAL));
+        assertEquals("3", cache.evaluate("01.5 + 1.50", 10, Precision.RATIONAL));
+        // Without decimal literals the points split the operands
+        assertEquals("6", cache.evaluate("1.5+1.5", 10, Precision.EXACT));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void weightBound_evictsLeastRecentlyUsed() {
+        // "1+1" weighs 3 characters plus 3 instructions
+        ExpressionCache cache = new ExpressionCache(12);
+        cache.evaluate("1+1", 10);
+        cache.evaluate("2+2", 10);
+        cache.evaluate("1+1", 10);
+        cache.evaluate("3+3", 10);
+        assertEquals(1, cache.evictionCount());
+        assertEquals(12, cache.weight());
+        cache.evaluate("1+1", 10);
+        assertEquals(2, cache.hitCount());
+    }
+
+    @Test
+    public void failedEvaluation_isRetriedNotCached() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        for (int i = 0; i < 2; i++) {
+            try {
+                cache.evaluate("1÷0", 10);
+                fail();
+            } catch (UnsupportedOperationException expected) {
+                // Thrown on every call
+            }
+        }
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void symbolChange_dropsOnlyDependentEntries() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.setVariable("A", "2");
+        symbols.setVariable("B", "10");
+        symbols.defineFunction("F", "x+A");
+        ExpressionCache cache = new ExpressionCache(1024, symbols);
+        assertEquals(4, cache.evaluate("A+2", 10));
+        assertEquals(30, cache.evaluate("F(1)xB", 10));
+        assertEquals(11, cache.evaluate("B+1", 10));
+        assertEquals(5, cache.evaluate("2+3", 10));
+        assertEquals("3", cache.evaluate("F(1)", 10, Precision.RATIONAL));
+
+        symbols.setVariable("A", "0.5");
+        // Everything that reads A, directly or through F, is dropped; the rest stays
+        assertEquals(3, cache.symbolInvalidationCount());
+        assertEquals(2, cache.size());
+        assertEquals(11, cache.evaluate("B+1", 10));
+        assertEquals(5, cache.evaluate("2+3", 10));
+        assertEquals(2, cache.hitCount());
+        assertEquals(2, cache.evaluate("A+2", 10));
+        assertEquals(10, cache.evaluate("F(1)xB", 10));
+        assertEquals("1.5", cache.evaluate("F(1)", 10, Precision.RATIONAL));
+
+        symbols.remove("B");
+        assertEquals(5, cache.symbolInvalidationCount());
+        try {
+            cache.evaluate("B+1", 10);
+            fail();
+        } catch (MalformedExpressionException expected) {
+            assertEquals("Unknown name B", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void radixes_readLiteralsAndKeepSeparateEntries() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        assertEquals("255", cache.evaluate("0FF", Radix.HEXADECIMAL, Precision.EXACT));
+        assertEquals("255", cache.evaluate("FF", Radix.HEXADECIMAL, Precision.EXACT));
+        assertEquals(1, cache.hitCount());
+        assertEquals("3", cache.evaluate("11", Radix.BINARY, Precision.EXACT));
+        assertEquals("11", cache.evaluate("11", Radix.DECIMAL, Precision.EXACT));
+        assertEquals("0.5", cache.evaluate("0.1", Radix.BINARY, Precision.RATIONAL));
+        assertEquals("FF", ExpressionCache.normalize("00FF", false, Radix.HEXADECIMAL));
+    }
+}
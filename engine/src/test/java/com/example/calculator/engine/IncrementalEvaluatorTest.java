@@ -0,0 +1,83 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IncrementalEvaluatorTest {
+
+    private static final String KEYS = "0123456789+-x÷^. ";
+
+    // The preview must equal a full compile of the same text
+    private static void assertMatchesCompiler(IncrementalEvaluator incremental, String text) {
+        Long expected;
+        try {
+            expected = new Evaluator().evaluate(ExpressionCompiler.compile(text));
+        } catch (RuntimeException e) {
+            expected = null;
+        }
+        boolean hasPreview = incremental.computePreview();
+        if (expected == null) {
+            assertFalse(text, hasPreview);
+        } else {
+            assertTrue(text, hasPreview);
+            assertEquals(text, expected.longValue(), incremental.preview());
+        }
+    }
+
+    @Test
+    public void preview_followsTyping() {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        incremental.append("1+2");
+        assertTrue(incremental.computePreview());
+        assertEquals(3, incremental.preview());
+        incremental.append("x3");
+        assertTrue(incremental.computePreview());
+        assertEquals(7, incremental.preview());
+        incremental.append('+');
+        assertFalse(incremental.computePreview());
+    }
+
+    @Test
+    public void deleteLast_rollsBackOneCharacter() {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        incremental.append("12÷0+");
+        assertFalse(incremental.computePreview());
+        incremental.deleteLast();
+        incremental.deleteLast();
+        incremental.append('4');
+        assertTrue(incremental.computePreview());
+        assertEquals(3, incremental.preview());
+        assertEquals(4, incremental.length());
+    }
+
+    @Test
+    public void unicodeDigits_readLikeTheCompiler() {
+        IncrementalEvaluator incremental = new IncrementalEvaluator();
+        incremental.append("\uFF14+\u0663");
+        assertMatchesCompiler(incremental, "\uFF14+\u0663");
+        assertEquals(7, incremental.preview());
+    }
+
+    @Test
+    public void randomTypingAndDeleting_matchesCompiler() {
+        Random random = new Random(1);
+        for (int session = 0; session < 2000; session++) {
+            IncrementalEvaluator incremental = new IncrementalEvaluator();
+            StringBuilder text = new StringBuilder();
+            for (int key = 0; key < 40; key++) {
+                if (text.length() > 0 && random.nextInt(4) == 0) {
+                    text.setLength(text.length() - 1);
+                    incremental.deleteLast();
+                } else {
+                    char c = KEYS.charAt(random.nextInt(KEYS.length()));
+                    text.append(c);
+                    incremental.append(c);
+                }
+                assertMatchesCompiler(incremental, text.toString());
+            }
+        }
+    }
+}
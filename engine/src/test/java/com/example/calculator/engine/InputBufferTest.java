@@ -0,0 +1,161 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class InputBufferTest {
+
+    private static final String KEYS = "0123456789+-x÷^. M";
+
+    // Counts tokens the way the buffer documents them
+    private static int countTokens(String text) {
+        int tokens = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (i == 0 || Operators.isOperator(c)) {
+                tokens++;
+                continue;
+            }
+            char previous = text.charAt(i - 1);
+            boolean digit = Character.isDigit(c);
+            boolean previousOther = !Character.isDigit(previous) && !Operators.isOperator(previous);
+            if (digit != Character.isDigit(previous) || (!digit && !previousOther)) {
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+
+    @Test
+    public void insertAndDelete_atEnd() {
+        InputBuffer buffer = new InputBuffer(2);
+        buffer.insert("12+3");
+        buffer.insert('4');
+        assertEquals("12+34", buffer.toString());
+        assertEquals(3, buffer.tokenCount());
+        buffer.deleteBackward();
+        buffer.deleteBackward();
+        buffer.deleteBackward();
+        assertEquals("12", buffer.toString());
+        assertEquals(1, buffer.tokenCount());
+        buffer.replace("");
+        buffer.deleteBackward();
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void editAtCursor_keepsTokenIndex() {
+        InputBuffer buffer = new InputBuffer();
+        buffer.insert("12+34");
+        buffer.setCursor(1);
+        buffer.insert('x');
+        assertEquals("1x2+34", buffer.toString());
+        assertEquals(5, buffer.tokenCount());
+        assertEquals(2, buffer.tokenStart(2));
+        assertEquals(3, buffer.tokenEnd(2));
+        buffer.deleteBackward();
+        assertEquals("12+34", buffer.toString());
+        assertEquals(3, buffer.tokenCount());
+        assertEquals(0, buffer.tokenStart(1));
+        assertEquals(5, buffer.tokenEnd(3));
+        assertEquals("+3", buffer.subSequence(2, 4).toString());
+    }
+
+    @Test
+    public void hexadecimalDigits_belongToTheLiteral() {
+        InputBuffer buffer = new InputBuffer();
+        buffer.setLiterals(Radix.HEXADECIMAL, false);
+        buffer.insert("1A+FF");
+        assertEquals(3, buffer.tokenCount());
+        assertEquals(0, buffer.tokenStart(1));
+        assertEquals(2, buffer.tokenEnd(0));
+        assertEquals(5, buffer.tokenEnd(3));
+        // Back in decimal, letters are names again
+        buffer.setLiterals(Radix.DECIMAL, false);
+        assertEquals(4, buffer.tokenCount());
+        assertEquals(1, buffer.tokenStart(1));
+    }
+
+    @Test
+    public void decimalPoint_belongsToTheLiteralOnlyWhereLiteralsHaveOne() {
+        InputBuffer buffer = new InputBuffer();
+        buffer.insert("1.5x2");
+        assertEquals(5, buffer.tokenCount());
+        buffer.setLiterals(Radix.DECIMAL, true);
+        assertEquals(3, buffer.tokenCount());
+        assertEquals(0, buffer.tokenStart(2));
+        assertEquals(3, buffer.tokenEnd(1));
+        buffer.setCursor(2);
+        buffer.deleteBackward();
+        buffer.insert('.');
+        buffer.insert('2');
+        assertEquals("1.25x2", buffer.toString());
+        assertEquals(3, buffer.tokenCount());
+        assertEquals(4, buffer.tokenEnd(0));
+    }
+
+    @Test
+    public void namesAndCalls_areNotModelled() {
+        InputBuffer buffer = new InputBuffer();
+        buffer.insert("X2+sqrt(4)");
+        // X, 2, +, sqrt(, 4, )
+        assertEquals(6, buffer.tokenCount());
+        assertEquals(1, buffer.tokenEnd(0));
+        assertEquals(3, buffer.tokenStart(7));
+        assertEquals(8, buffer.tokenEnd(3));
+    }
+
+    @Test
+    public void containsName_followsEdits() {
+        InputBuffer buffer = new InputBuffer();
+        buffer.insert("12+3");
+        assertFalse(buffer.containsName());
+        buffer.insert("xM");
+        assertTrue(buffer.containsName());
+        buffer.setCursor(3);
+        buffer.insert('X');
+        buffer.setCursor(buffer.length());
+        buffer.deleteBackward();
+        assertTrue(buffer.containsName());
+        buffer.setCursor(4);
+        buffer.deleteBackward();
+        assertEquals("12+3x", buffer.toString());
+        assertFalse(buffer.containsName());
+        buffer.replace("M");
+        assertTrue(buffer.containsName());
+        buffer.clear();
+        assertFalse(buffer.containsName());
+    }
+
+    @Test
+    public void randomEditing_matchesString() {
+        Random random = new Random(1);
+        InputBuffer buffer = new InputBuffer(1);
+        StringBuilder expected = new StringBuilder();
+        for (int step = 0; step < 20000; step++) {
+            int cursor = random.nextInt(expected.length() + 1);
+            buffer.setCursor(cursor);
+            if (random.nextInt(3) == 0) {
+                buffer.deleteBackward();
+                if (cursor > 0) {
+                    expected.deleteCharAt(cursor - 1);
+                }
+            } else {
+                char c = KEYS.charAt(random.nextInt(KEYS.length()));
+                buffer.insert(c);
+                expected.insert(cursor, c);
+            }
+            String text = expected.toString();
+            assertEquals(text, buffer.toString());
+            assertEquals(text, countTokens(text), buffer.tokenCount());
+            assertEquals(text, SymbolTable.containsName(text), buffer.containsName());
+        }
+        String text = expected.toString();
+        for (int i = 0; i < text.length(); i++) {
+            assertEquals(text.charAt(i), buffer.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OptimizedProgramTest {
+
+    private static final String[] OPERANDS = {"x", "2", "7", "0", "46341", "65536", "sqrt(x)", "ncr(9, 4)", "x!", "3!"};
+    private static final String[] OPERATORS = {"+", "-", "x", "÷", "^", "&", "|", "⊻", "«", "»"};
+
+    @Test
+    public void constructor_foldsLiteralSubterms() {
+        OptimizedProgram optimized = new OptimizedProgram(ExpressionCompiler.compile("2x3+2x3"));
+        assertEquals(12, optimized.evaluate());
+        assertEquals(0, optimized.steps());
+        assertEquals(6, optimized.eliminated());
+        assertEquals(3024001, new OptimizedProgram(ExpressionCompiler.compile("ncr(10, 3)x7!x5-3+sqrt(16)")).evaluate());
+    }
+
+    @Test
+    public void constructor_sharesRepeatedSubterms() {
+        OptimizedProgram optimized = new OptimizedProgram(ExpressionCompiler.compile("xx2+xx2", true));
+        assertEquals(20, optimized.evaluate(5));
+        // Seven instructions become x, 2, xx2 and the sum
+        assertEquals(2, optimized.steps());
+        assertEquals(3, optimized.eliminated());
+    }
+
+    @Test
+    public void constructor_sharesInlinedFunctionArguments() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.defineFunction("F", "xxx+x");
+        Program program = ExpressionCompiler.compile("F(5x5+1)", symbols);
+        OptimizedProgram optimized = new OptimizedProgram(program);
+        assertEquals(new Evaluator().evaluate(program), optimized.evaluate());
+        assertEquals(0, optimized.steps());
+        assertEquals(program.length() - 1, optimized.eliminated());
+    }
+
+    @Test
+    public void constructor_chainsPowersWithLiteralExponents() {
+        OptimizedProgram optimized = new OptimizedProgram(ExpressionCompiler.compile("x^3", true));
+        assertEquals(1, optimized.steps());
+        assertEquals(1, optimized.eliminated());
+        assertEquals(125, optimized.evaluate(5));
+        assertEquals(-27, optimized.evaluate(-3));
+        assertEquals(Integer.MAX_VALUE, new OptimizedProgram(ExpressionCompiler.compile("x^2", true)).evaluate(70000));
+        assertEquals(Integer.MIN_VALUE, new OptimizedProgram(ExpressionCompiler.compile("x^31", true)).evaluate(-2));
+        assertEquals(Integer.MIN_VALUE, new OptimizedProgram(ExpressionCompiler.compile("x^33", true)).evaluate(-2));
+        assertEquals(Integer.MAX_VALUE, new OptimizedProgram(ExpressionCompiler.compile("x^32", true)).evaluate(-2));
+    }
+
+    @Test
+    public void paysOnce_onlyForProgramsThatCallFunctions() {
+        assertFalse(OptimizedProgram.paysOnce(ExpressionCompiler.compile("2x3+2x3")));
+        assertTrue(OptimizedProgram.paysOnce(ExpressionCompiler.compile("ncr(40, 20)+ncr(40, 20)")));
+    }
+
+    @Test
+    public void power_matchesOperators() {
+        int[] bases = {Integer.MIN_VALUE, -65536, -46341, -46340, -1291, -1290, -3, -2, -1, 0, 1, 2, 3, 1290, 1291,
+                46340, 46341, 65536, Integer.MAX_VALUE};
+        for (int base : bases) {
+            for (int exponent = 0; exponent < 70; exponent++) {
+                assertEquals(base + "^" + exponent, Operators.power(base, exponent), OptimizedProgram.power(base, exponent));
+            }
+        }
+        for (int base = -200; base <= 200; base++) {
+            for (int exponent = 0; exponent < 40; exponent++) {
+                assertEquals(base + "^" + exponent, Operators.power(base, exponent), OptimizedProgram.power(base, exponent));
+            }
+        }
+    }
+
+    @Test
+    public void evaluate_matchesEvaluatorOnRandomPrograms() {
+        Random random = new Random(22);
+        Evaluator evaluator = new Evaluator();
+        long[] xs = {0, 1, -1, 5, -7, 46341, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int i = 0; i < 3000; i++) {
+            // A repeated fragment gives the optimizer something to share
+            String fragment = expression(random, 1 + random.nextInt(3));
+            String expression = fragment + operator(random) + expression(random, random.nextInt(3))
+                    + operator(random) + fragment;
+            Program program;
+            try {
+                program = ExpressionCompiler.compile(expression, true);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            OptimizedProgram optimized = new OptimizedProgram(program);
+            for (long x : xs) {
+                assertEquals(expression + " at x=" + x, outcome(() -> evaluator.evaluate(program, x)),
+                        outcome(() -> optimized.evaluate(x)));
+            }
+        }
+    }
+
+    @Test
+    public void evaluate_failsWhereTheInterpreterFails() {
+        try {
+            new OptimizedProgram(ExpressionCompiler.compile("1÷0+2x3")).evaluate();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals("Cannot divide by zero", e.getMessage());
+        }
+        try {
+            new OptimizedProgram(ExpressionCompiler.compile("x÷0", true)).evaluate(3);
+            fail();
+        } catch (UnsupportedOperationException e) {
+            assertEquals("Cannot divide by zero", e.getMessage());
+        }
+        OptimizedProgram optimized = new OptimizedProgram(ExpressionCompiler.compile("x!+x!", true));
+        assertEquals(240, optimized.evaluate(5));
+        try {
+            optimized.evaluate(-5);
+            fail();
+        } catch (ArithmeticException expected) {
+        }
+    }
+
+    private static String expression(Random random, int operands) {
+        StringBuilder expression = new StringBuilder(OPERANDS[random.nextInt(OPERANDS.length)]);
+        for (int i = 1; i < operands; i++) {
+            expression.append(operator(random)).append(OPERANDS[random.nextInt(OPERANDS.length)]);
+        }
+        return expression.toString();
+    }
+
+    private static String operator(Random random) {
+        return OPERATORS[random.nextInt(OPERATORS.length)];
+    }
+
+    private interface Computation {
+        long run();
+    }
+
+    private static String outcome(Computation computation) {
+        try {
+            return Long.toString(computation.run());
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.calculator.engine;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class ParallelEvaluatorTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+    // A tiny cutoff, so that even short expressions are split down to single terms
+    private static final ParallelEvaluator PARALLEL = new ParallelEvaluator(POOL, 4);
+
+    @AfterClass
+    public static void shutDown() {
+        POOL.shutdownNow();
+    }
+
+    @Test
+    public void runs_matchLeftToRightEvaluation() {
+        String[] expressions = {
+                "1+2+3+4+5+6+7+8+9", "1-2-3+4-5+6-7-8+9", "2x3x4x5x6x7x8x9x10x11x12x13", "1+2x3-4x5x6+7",
+                "1+2-3+4-5+6-7-8", "0-1-2-3-4-5-6", "1÷2+3÷4+5÷6+7÷8+9÷10", "2^3^2+1-2-3", "100-99-98-97÷2x3x4",
+                "5 1+2+3+4+5+6", "2147483647+1+2+3+4+5", "65536x65536x3+1+2+3", "ncr(10, 3)+sqrt(16)+3!+4+5+6",
+                "7&3+1+2+3+4|8+9+10+11", "1-2-3-4-5-6+7+8+9"
+        };
+        for (Precision precision : new Precision[]{Precision.INT32, Precision.EXACT, Precision.RATIONAL}) {
+            for (String expression : expressions) {
+                Program program = ExpressionCompiler.compileDecimal(expression);
+                assertEquals(expression + " in " + precision, sequential(program, precision),
+                        PARALLEL.evaluateToString(program, precision));
+            }
+        }
+    }
+
+    @Test
+    public void randomRuns_matchLeftToRightEvaluation() {
+        Random random = new Random(7);
+        char[] operators = {'+', '-', 'x', '÷', '^'};
+        for (int i = 0; i < 300; i++) {
+            StringBuilder sb = new StringBuilder().append(random.nextInt(100));
+            int terms = 1 + random.nextInt(60);
+            for (int t = 1; t < terms; t++) {
+                // Mostly + - and x, so that runs are long
+                char operator = operators[random.nextInt(10) < 8 ? random.nextInt(3) : 3 + random.nextInt(2)];
+                sb.append(operator);
+                if (operator == '^') {
+                    // Small powers, so that exact results stay quick
+                    sb.append(random.nextInt(4));
+                } else if (random.nextInt(8) == 0) {
+                    int root = random.nextInt(50);
+                    sb.append("sqrt(").append(root * root).append('-').append(random.nextInt(2)).append(')');
+                } else {
+                    sb.append(1 + random.nextInt(random.nextBoolean() ? 9 : 100000));
+                }
+            }
+            String expression = sb.toString();
+            Program program = ExpressionCompiler.compileDecimal(expression);
+            for (Precision precision : new Precision[]{Precision.INT32, Precision.EXACT, Precision.RATIONAL}) {
+                String expected;
+                try {
+                    expected = sequential(program, precision);
+                } catch (RuntimeException e) {
+                    expected = e.getClass().getSimpleName() + ": " + e.getMessage();
+                }
+                String actual;
+                try {
+                    actual = PARALLEL.evaluateToString(program, precision);
+                } catch (RuntimeException e) {
+                    actual = e.getClass().getSimpleName() + ": " + e.getMessage();
+                }
+                assertEquals(expression + " in " + precision, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void hugeSum_isSplitAcrossTasks() {
+        StringBuilder sb = new StringBuilder();
+        long sum = 0;
+        for (int i = 1; i <= 200000; i++) {
+            sb.append(i % 7 == 0 ? '-' : '+').append(i);
+            sum += i % 7 == 0 ? -i : i;
+        }
+        Program program = ExpressionCompiler.compileDecimal(sb.substring(1));
+        ParallelEvaluator parallel = new ParallelEvaluator(POOL, 1024);
+        assertTrue(parallel.splits(program, Precision.EXACT));
+        assertEquals(Long.toString(sum), parallel.evaluateToString(program, Precision.EXACT));
+        assertEquals((int) sum, parallel.evaluate(program));
+    }
+
+    @Test
+    public void hugeProduct_isExact() {
+        StringBuilder sb = new StringBuilder("1");
+        for (int i = 2; i <= 3000; i++) {
+            sb.append('x').append(i);
+        }
+        Program program = ExpressionCompiler.compile(sb);
+        assertEquals(new ExactEvaluator().evaluateToString(ExpressionCompiler.compile("3000!")),
+                new ParallelEvaluator(POOL, 256).evaluateToString(program, Precision.EXACT));
+    }
+
+    @Test
+    public void errors_areTheLeftToRightOnes() {
+        String[] expressions = {"1+2+3÷0+4+5+6+7", "1+2+2^2000000x2^2000000+1÷0", "1+2+3+sqrt(2)+5+6"};
+        for (String expression : expressions) {
+            Program program = ExpressionCompiler.compileDecimal(expression);
+            for (Precision precision : new Precision[]{Precision.INT32, Precision.EXACT, Precision.RATIONAL}) {
+                String expected;
+                try {
+                    expected = sequential(program, precision);
+                } catch (RuntimeException e) {
+                    expected = e.getClass().getSimpleName() + ": " + e.getMessage();
+                }
+                try {
+                    assertEquals(expression + " in " + precision, expected, PARALLEL.evaluateToString(program, precision));
+                } catch (RuntimeException e) {
+                    assertEquals(expression + " in " + precision, expected, e.getClass().getSimpleName() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decimal_staysLeftToRight() {
+        Program program = ExpressionCompiler.compileDecimal("0.1+0.2+0.3+0.4+0.5+0.6+0.7+0.8+0.9");
+        assertFalse(PARALLEL.splits(program, Precision.DECIMAL));
+        assertEquals(new DecimalEvaluator().evaluateToString(program), PARALLEL.evaluateToString(program, Precision.DECIMAL));
+    }
+
+    @Test
+    public void interruptedCaller_cancels() {
+        Program program = ExpressionCompiler.compile("1+2+3+4+5+6+7+8+9+10");
+        Thread.currentThread().interrupt();
+        try {
+            PARALLEL.evaluateToString(program, Precision.EXACT);
+            fail("Expected a cancellation");
+        } catch (CancellationException e) {
+            assertFalse(Thread.interrupted());
+        }
+    }
+
+    private static String sequential(Program program, Precision precision) {
+        switch (precision) {
+            case INT32:
+                return Long.toString(new Evaluator().evaluate(program));
+            case EXACT:
+                return new ExactEvaluator().evaluateToString(program);
+            default:
+                return new RationalEvaluator().evaluateToString(program);
+        }
+    }
+}
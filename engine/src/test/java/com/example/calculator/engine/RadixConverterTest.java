@@ -0,0 +1,87 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RadixConverterTest {
+
+    private static final int[] RADIXES = {2, 4, 8, 10, 16, 32};
+
+    @Test
+    public void smallNumbers_matchIntegerFormatting() {
+        assertEquals("101010", RadixConverter.convert("42", 10, 2));
+        assertEquals("2A", RadixConverter.convert("42", 10, 16));
+        assertEquals("52", RadixConverter.convert("2A", 16, 8));
+        assertEquals("42", RadixConverter.convert("52", 8, 10));
+        assertEquals("0", RadixConverter.convert("0000", 2, 16));
+        assertEquals("7FFFFFFF", RadixConverter.convert("2147483647", 10, 16));
+    }
+
+    @Test
+    public void negativeNumbers_keepTheirSign() {
+        assertEquals("-101", RadixConverter.convert("-5", 10, 2));
+        assertEquals("-5", RadixConverter.convert("-101", 2, 10));
+        assertEquals("0", RadixConverter.convert("-0", 16, 2));
+    }
+
+    @Test
+    public void randomNumbers_matchBigInteger() {
+        Random random = new Random(42);
+        for (int bits : new int[]{1, 31, 64, 65, 300, 1000, 5000}) {
+            for (int trial = 0; trial < 20; trial++) {
+                BigInteger value = new BigInteger(bits, random);
+                if (random.nextBoolean()) {
+                    value = value.negate();
+                }
+                for (int from : RADIXES) {
+                    for (int to : RADIXES) {
+                        String input = value.toString(from).toUpperCase();
+                        assertEquals(from + "->" + to + " " + input,
+                                value.toString(to).toUpperCase(), RadixConverter.convert(input, from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void leadingZeros_areDropped() {
+        assertEquals("F", RadixConverter.convert("0000001111", 2, 16));
+        assertEquals("17", RadixConverter.convert("000F", 16, 8));
+        assertEquals("15", RadixConverter.convert("00000000000000000000000000015", 10, 10));
+    }
+
+    @Test
+    public void longHexDump_convertsLinearly() {
+        StringBuilder hex = new StringBuilder();
+        Random random = new Random(7);
+        for (int i = 0; i < 1 << 20; i++) {
+            hex.append(Character.toUpperCase(Character.forDigit(1 + random.nextInt(15), 16)));
+        }
+        String octal = RadixConverter.convert(hex, 16, 8);
+        assertEquals(hex.toString(), RadixConverter.convert(octal.toCharArray(), 8, 16));
+        assertEquals(hex.toString(), RadixConverter.convert(RadixConverter.convert(hex, 16, 2), 2, 16));
+    }
+
+    @Test
+    public void hugeDecimals_roundTrip() {
+        BigInteger value = BigInteger.valueOf(7).pow(20000);
+        String hex = RadixConverter.convert(value.toString(), 10, 16);
+        assertEquals(value.toString(16).toUpperCase(), hex);
+        assertEquals(value.toString(), RadixConverter.convert(hex, 16, 10));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void invalidDigit_throws() {
+        RadixConverter.convert("102", 2, 10);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void empty_throws() {
+        RadixConverter.convert("", 10, 2);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class RadixNumberTest {
+
+    @Test
+    public void spellings_areConvertedOnceAndKept() {
+        RadixNumber number = RadixNumber.of("255");
+        String hexadecimal = number.toString(Radix.HEXADECIMAL);
+        assertEquals("FF", hexadecimal);
+        assertSame(hexadecimal, number.toString(Radix.HEXADECIMAL));
+        assertEquals("11111111", number.toString(Radix.BINARY));
+        assertEquals("377", number.toString(Radix.OCTAL));
+        assertEquals("255", number.toString(Radix.DECIMAL));
+        assertEquals("255", number.toString());
+    }
+
+    @Test
+    public void parse_keepsTheSourceSpelling() {
+        RadixNumber number = RadixNumber.parse("-1010", Radix.BINARY);
+        assertEquals("-10", number.toString());
+        assertEquals("-1010", number.toString(Radix.BINARY));
+        assertEquals("-A", number.toString(Radix.HEXADECIMAL));
+    }
+
+    @Test
+    public void fractions_areDecimalOnly() {
+        RadixNumber number = RadixNumber.of("1÷3");
+        assertFalse(number.isInteger());
+        assertEquals("1÷3", number.toString(Radix.DECIMAL));
+        try {
+            number.toString(Radix.HEXADECIMAL);
+            fail();
+        } catch (NumberFormatException expected) {
+            assertTrue(expected.getMessage().contains("1÷3"));
+        }
+        assertFalse(RadixNumber.of("-").isInteger());
+        assertTrue(RadixNumber.of("-0").isInteger());
+    }
+
+    @Test
+    public void hugeIntegers_areWrittenFromTheirValue() {
+        String decimal = new BigInteger("7").pow(5000).negate().toString();
+        RadixNumber number = RadixNumber.of(decimal);
+        RadixNumber hexadecimal = RadixNumber.parse(number.toString(Radix.HEXADECIMAL), Radix.HEXADECIMAL);
+        assertEquals(decimal, hexadecimal.toString());
+        assertEquals(number.toString(Radix.BINARY), hexadecimal.toString(Radix.BINARY));
+    }
+
+    @Test
+    public void radixDigits_rejectLowerCase() {
+        assertEquals(11, Radix.HEXADECIMAL.digit('B'));
+        assertEquals(-1, Radix.HEXADECIMAL.digit('b'));
+        assertEquals(9, Radix.BINARY.digit('9'));
+        assertEquals(-1, Radix.OCTAL.digit('A'));
+        assertEquals(Radix.OCTAL, Radix.of(8));
+    }
+
+    @Test
+    public void convertLiterals_keepsOperatorsAndNames() {
+        assertEquals("C+M«1", RadixNumber.convertLiterals("12+M«1", Radix.DECIMAL, Radix.HEXADECIMAL));
+        assertEquals("1100x10110010", RadixNumber.convertLiterals("CxB2", Radix.HEXADECIMAL, Radix.BINARY));
+        assertEquals("sqrt(4)+X2", RadixNumber.convertLiterals("sqrt(100)+X2", Radix.BINARY, Radix.DECIMAL));
+        try {
+            RadixNumber.convertLiterals("1.5+2", Radix.DECIMAL, Radix.BINARY);
+            fail();
+        } catch (NumberFormatException expected) {
+            assertTrue(expected.getMessage().contains("1.5+2"));
+        }
+    }
+
+    @Test
+    public void convertLiterals_refusesNamesThatReadAsDigits() {
+        // In hexadecimal the compiler would read A as the digit 10 rather than the variable
+        try {
+            RadixNumber.convertLiterals("12+A", Radix.DECIMAL, Radix.HEXADECIMAL);
+            fail();
+        } catch (NumberFormatException expected) {
+            assertTrue(expected.getMessage().contains("12+A"));
+        }
+        try {
+            RadixNumber.convertLiterals("FX+1", Radix.OCTAL, Radix.HEXADECIMAL);
+            fail();
+        } catch (NumberFormatException expected) {
+            assertTrue(expected.getMessage().contains("base 16"));
+        }
+        // Names that stay names in the new base are kept, and A is a name again in decimal
+        assertEquals("C+X2+M", RadixNumber.convertLiterals("12+X2+M", Radix.DECIMAL, Radix.HEXADECIMAL));
+        assertEquals("14+A", RadixNumber.convertLiterals("12+A", Radix.DECIMAL, Radix.OCTAL));
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RationalEvaluatorTest {
+
+    private static String evaluate(String expression) {
+        return new RationalEvaluator().evaluateToString(ExpressionCompiler.compileDecimal(expression));
+    }
+
+    // Evaluates with fractions reduced after every step, as a reference; returns {numerator, denominator}
+    private static BigInteger[] reference(Program program) {
+        ArrayDeque<BigInteger[]> stack = new ArrayDeque<>();
+        for (int pc = 0; pc < program.length(); pc++) {
+            int instruction = program.instructionAt(pc);
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.PUSH) {
+                int index = Program.argument(instruction);
+                BigInteger[] big = program.bigConstants();
+                BigInteger value = big != null && big[index] != null ? big[index]
+                        : BigInteger.valueOf(program.constants()[index]);
+                stack.push(new BigInteger[]{value, BigInteger.ONE});
+                continue;
+            }
+            BigInteger[] right = stack.pop();
+            BigInteger[] left = stack.pop();
+            BigInteger n;
+            BigInteger d;
+            switch (opcode) {
+                case Operators.ADD:
+                    n = left[0].multiply(right[1]).add(right[0].multiply(left[1]));
+                    d = left[1].multiply(right[1]);
+                    break;
+                case Operators.SUBTRACT:
+                    n = left[0].multiply(right[1]).subtract(right[0].multiply(left[1]));
+                    d = left[1].multiply(right[1]);
+                    break;
+                case Operators.MULTIPLY:
+                    n = left[0].multiply(right[0]);
+                    d = left[1].multiply(right[1]);
+                    break;
+                case Operators.DIVIDE:
+                    if (right[0].signum() == 0) {
+                        return null;
+                    }
+                    n = left[0].multiply(right[1]);
+                    d = left[1].multiply(right[0]);
+                    break;
+                default:
+                    throw new AssertionError("Unexpected opcode " + opcode);
+            }
+            if (d.signum() < 0) {
+                n = n.negate();
+                d = d.negate();
+            }
+            BigInteger gcd = n.gcd(d);
+            stack.push(new BigInteger[]{n.divide(gcd), d.divide(gcd)});
+        }
+        return stack.peek();
+    }
+
+    // Reads a formatted result back into a reduced fraction
+    private static BigInteger[] parse(String result) {
+        BigInteger[] fraction = reference(ExpressionCompiler.compileDecimal(result.replace("-", "0-")));
+        assertNotNull(result, fraction);
+        return fraction;
+    }
+
+    @Test
+    public void evaluate_isExact() {
+        assertEquals("3.5", evaluate("7÷2"));
+        assertEquals("7÷3", evaluate("7÷3"));
+        assertEquals("0.3", evaluate("0.1+0.2"));
+        assertEquals("1", evaluate("1÷3+2÷3"));
+        assertEquals("-0.375", evaluate("1-1.375"));
+        assertEquals("2.25", evaluate("1.5^2"));
+        // ÷ and ^ share a level and associate to the left
+        assertEquals("4÷9", evaluate("2÷3^2"));
+        assertEquals("0.000244140625", evaluate("0.5^3÷0.5^6"));
+        // A second point starts a new literal, and the last operand is the result
+        assertEquals("0.3", evaluate("1.2.3"));
+    }
+
+    @Test
+    public void evaluate_rejectsWhatIsNotRational() {
+        try {
+            evaluate("1÷0.0");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            assertEquals("Cannot divide by zero", expected.getMessage());
+        }
+        try {
+            evaluate("4^0.5");
+            fail();
+        } catch (ArithmeticException expected) {
+            // 2 is rational, but a root in general is not
+        }
+        assertEquals("4", evaluate("16^1.0÷4"));
+    }
+
+    @Test
+    public void randomExpressions_matchReducedReference() {
+        Random random = new Random(7);
+        String[] operators = {"+", "-", "x", "÷"};
+        RationalEvaluator evaluator = new RationalEvaluator();
+        for (int round = 0; round < 3000; round++) {
+            StringBuilder sb = new StringBuilder();
+            int operands = 1 + random.nextInt(12);
+            for (int i = 0; i < operands; i++) {
+                if (i > 0) {
+                    sb.append(operators[random.nextInt(operators.length)]);
+                }
+                long value = random.nextInt(4) == 0 ? random.nextLong() & Long.MAX_VALUE : random.nextInt(1000);
+                sb.append(value);
+                if (random.nextBoolean()) {
+                    sb.append('.').append(random.nextInt(100000));
+                }
+            }
+            String expression = sb.toString();
+            Program program = ExpressionCompiler.compileDecimal(expression);
+            BigInteger[] expected = reference(program);
+            if (expected == null) {
+                try {
+                    evaluator.evaluateToString(program);
+                    fail(expression);
+                } catch (UnsupportedOperationException ignored) {
+                    continue;
+                }
+            }
+            String result = evaluator.evaluateToString(program);
+            assertArrayEquals(expression + " = " + result, expected, parse(result));
+        }
+    }
+
+    @Test
+    public void longChain_staysExact() {
+        // 1/1 - 1/2 + 1/3 - ... over thousands of terms; denominators grow to thousands of bits
+        StringBuilder sb = new StringBuilder("1");
+        for (int k = 2; k <= 3000; k++) {
+            sb.append(k % 2 == 0 ? '-' : '+').append("1÷").append(k);
+        }
+        Program program = ExpressionCompiler.compileDecimal(sb.toString());
+        assertArrayEquals(reference(program), parse(new RationalEvaluator().evaluateToString(program)));
+    }
+
+    @Test
+    public void gcd_isBinaryGcd() {
+        assertEquals(6, RationalEvaluator.gcd(-48, 18));
+        assertEquals(7, RationalEvaluator.gcd(0, 7));
+        assertEquals(1L << 62, RationalEvaluator.gcd(Long.MIN_VALUE, 1L << 62));
+        assertEquals(1, RationalEvaluator.gcd(Long.MAX_VALUE, 2));
+    }
+
+    @Test
+    public void bitwiseOperators_needWholeNumbers() {
+        assertEquals("6", evaluate("4÷2|4"));
+        assertEquals("40", evaluate("2.5x2«3"));
+        try {
+            evaluate("1÷2&1");
+            fail();
+        } catch (ArithmeticException expected) {
+            assertEquals("Argument must be a whole number", expected.getMessage());
+        }
+    }
+}
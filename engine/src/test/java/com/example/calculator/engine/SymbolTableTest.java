@@ -0,0 +1,146 @@
+package com.example.calculator.engine;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class SymbolTableTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static long evaluate(String expression, SymbolTable symbols) {
+        return new Evaluator().evaluate(ExpressionCompiler.compile(expression, symbols));
+    }
+
+    private static String rational(String expression, SymbolTable symbols) {
+        return new RationalEvaluator().evaluateToString(ExpressionCompiler.compileDecimal(expression, symbols));
+    }
+
+    @Test
+    public void variables_areBoundAtCompileTime() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.setVariable("M", "7÷2");
+        symbols.setVariable("RATE_2", "-0.25");
+        assertEquals("-0.875", rational("RATE_2xM", symbols));
+        // Integer precisions use the value truncated toward zero
+        assertEquals(10, evaluate("M+7", symbols));
+        assertEquals(0, evaluate("RATE_2", symbols));
+        assertEquals("10.5", rational("M+7", symbols));
+        // x stays multiplication next to names
+        assertEquals("12.25", rational("MxM", symbols));
+        symbols.addToVariable("M", "0.5");
+        assertEquals("4", symbols.value("M"));
+        symbols.remove("M");
+        assertNull(symbols.value("M"));
+        try {
+            evaluate("M+1", symbols);
+            fail();
+        } catch (MalformedExpressionException expected) {
+            assertEquals("Unknown name M", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void functions_expandWithTheirArgument() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.setVariable("K", "3");
+        symbols.defineFunction("SQ", "xxx");
+        symbols.defineFunction("F", "SQ(x)+K");
+        assertEquals(28, evaluate("F(5)", symbols));
+        // The argument is one operand, whatever its precedence
+        assertEquals(28, evaluate("F(2+3)", symbols));
+        assertEquals(59, evaluate("2xF(2+3)+3", symbols));
+        assertEquals(148, evaluate("F(SQ(2)+1)+SQ(11)-F(1)+F(0)", symbols));
+        assertEquals("3.25", rational("F(0.5)", symbols));
+        Program program = ExpressionCompiler.compile("F(1)", symbols);
+        assertTrue(program.dependsOn(symbols.slotOf("F")));
+        assertTrue(program.dependsOn(symbols.slotOf("SQ")));
+        assertTrue(program.dependsOn(symbols.slotOf("K")));
+        assertFalse(ExpressionCompiler.compile("SQ(1)", symbols).dependsOn(symbols.slotOf("K")));
+    }
+
+    @Test
+    public void badFunctions_areRejected() {
+        SymbolTable symbols = new SymbolTable();
+        symbols.defineFunction("F", "x+1");
+        String[] rejected = {"F", "F(1", "F()", "F(1 2)", "G(1)"};
+        for (String expression : rejected) {
+            try {
+                evaluate(expression, symbols);
+                fail(expression);
+            } catch (MalformedExpressionException expected) {
+                // The expression cannot be compiled
+            }
+        }
+        symbols.defineFunction("G", "F(x)");
+        try {
+            // G would call itself through F
+            symbols.defineFunction("F", "G(x)");
+            fail();
+        } catch (MalformedExpressionException expected) {
+            assertEquals("Functions nest too deeply", expected.getMessage());
+        }
+        assertEquals("x+1", symbols.body(symbols.slotOf("F")));
+        assertEquals(3, evaluate("G(2)", symbols));
+    }
+
+    @Test
+    public void definitions_surviveReopening() throws Exception {
+        File directory = folder.getRoot();
+        SymbolTable symbols = new SymbolTable();
+        try (SymbolStore store = SymbolStore.open(directory, symbols)) {
+            // Enough changes to one name to compact the journal into a snapshot more than once
+            for (int i = 0; i < 3 * SymbolStore.COMPACT_MIN_RECORDS; i++) {
+                symbols.addToVariable("M", "1");
+            }
+            symbols.setVariable("HALF", "1÷2");
+            symbols.defineFunction("F", "xxHALF");
+            symbols.setVariable("GONE", "1");
+            symbols.remove("GONE");
+            store.flush();
+            assertTrue(new File(directory, SymbolStore.SNAPSHOT_FILE).length() > 0);
+            assertTrue(new File(directory, SymbolStore.JOURNAL_FILE).length() > 0);
+        }
+        SymbolTable restored = new SymbolTable();
+        try (SymbolStore ignored = SymbolStore.open(directory, restored)) {
+            assertEquals("192", restored.value("M"));
+            assertEquals("0.5", restored.value("HALF"));
+            assertEquals("xxHALF", restored.body(restored.slotOf("F")));
+            assertNull(restored.value("GONE"));
+            assertEquals("1.5", rational("F(3)", restored));
+        }
+    }
+
+    @Test
+    public void tornJournalTail_isCutOffOnOpen() throws Exception {
+        File directory = folder.getRoot();
+        SymbolTable symbols = new SymbolTable();
+        try (SymbolStore ignored = SymbolStore.open(directory, symbols)) {
+            symbols.setVariable("A", "1");
+            symbols.setVariable("B", "2");
+        }
+        File journal = new File(directory, SymbolStore.JOURNAL_FILE);
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        long torn = journal.length();
+        SymbolTable restored = new SymbolTable();
+        try (SymbolStore store = SymbolStore.open(directory, restored)) {
+            assertEquals("1", restored.value("A"));
+            assertNull(restored.value("B"));
+            assertTrue(journal.length() < torn);
+            restored.setVariable("B", "3");
+            store.flush();
+        }
+        restored = new SymbolTable();
+        try (SymbolStore ignored = SymbolStore.open(directory, restored)) {
+            assertEquals("3", restored.value("B"));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.calculator.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class VectorEvaluatorTest {
+
+    @Test
+    public void compile_readsXInOperandPositionAsTheVariable() {
+        Program program = ExpressionCompiler.compile("x^2+3xx", true);
+        assertEquals(Operators.LOAD, Program.opcode(program.instructionAt(0)));
+        assertEquals(Operators.LOAD, Program.opcode(program.instructionAt(4)));
+        assertEquals(Operators.MULTIPLY, Program.opcode(program.instructionAt(5)));
+        assertEquals(Operators.MULTIPLY, Program.opcode(ExpressionCompiler.compile("2x3", true).instructionAt(2)));
+    }
+
+    @Test
+    public void evaluate_matchesScalarSemantics() {
+        String[] expressions = {"x^2+3", "x", "7", "1+2", "100÷x", "2^x", "xxx-x÷7+x^3", "5-x x2", "x^0+x^1", "x&6|1", "x⊻3«x", "0-64»x"};
+        Random random = new Random(11);
+        long[] x = new long[3000];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i % 3 == 0 ? random.nextInt() : random.nextInt(200) - 100;
+            if (x[i] == 0) {
+                x[i] = 1;
+            }
+        }
+        x[1] = 46341;
+        x[2] = -46341;
+        for (String expression : expressions) {
+            Program program = ExpressionCompiler.compile(expression, true);
+            long[] out = new VectorEvaluator(program).evaluate(x);
+            for (int i = 0; i < x.length; i++) {
+                assertEquals(expression + " at x=" + x[i], scalar(program, x[i]), out[i]);
+            }
+        }
+    }
+
+    @Test
+    public void evaluate_splitsLargeColumnsAcrossCores() {
+        long[] x = new long[VectorEvaluator.PARALLEL_THRESHOLD * 4 + 123];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = i;
+        }
+        long[] out = new VectorEvaluator(ExpressionCompiler.compile("xx2+1", true)).evaluate(x);
+        for (int i = 0; i < x.length; i++) {
+            assertEquals(i * 2 + 1, out[i]);
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void evaluate_zeroDivisorFails() {
+        new VectorEvaluator(ExpressionCompiler.compile("1÷x", true)).evaluate(new long[]{3, 0, 5});
+    }
+
+    // Element-at-a-time reference with the scalar operator table
+    private static long scalar(Program program, long x) {
+        int[] stack = new int[program.maxStack()];
+        int top = -1;
+        for (int i = 0; i < program.length(); i++) {
+            int instruction = program.instructionAt(i);
+            int opcode = Program.opcode(instruction);
+            if (opcode == Operators.PUSH) {
+                stack[++top] = (int) program.constant(Program.argument(instruction));
+            } else if (opcode == Operators.LOAD) {
+                stack[++top] = (int) x;
+            } else {
+                int operand2 = stack[top--];
+                stack[top] = Operators.apply(opcode, stack[top], operand2);
+            }
+        }
+        return stack[top];
+    }
+}
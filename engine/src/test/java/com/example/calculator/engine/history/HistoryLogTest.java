@@ -0,0 +1,145 @@
+package com.example.calculator.engine.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entries_surviveReopening() throws Exception {
+        File directory = folder.getRoot();
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            for (int i = 0; i < 200; i++) {
+                log.append(i + "+1", String.valueOf(i + 1));
+            }
+            assertEquals(200, log.size());
+            assertEquals("5+1", log.read(5).getExpression());
+        }
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            assertEquals(200, log.size());
+            assertEquals("130+1", log.read(130).getExpression());
+            assertEquals("131", log.read(130).getResult());
+            List<HistoryEntry> newest = log.newest(70);
+            assertEquals(70, newest.size());
+            assertEquals("130+1", newest.get(0).getExpression());
+            assertEquals("199+1", newest.get(69).getExpression());
+        }
+    }
+
+    @Test
+    public void pendingEntries_areReadableBeforeFlush() throws Exception {
+        try (HistoryLog log = HistoryLog.open(folder.getRoot())) {
+            log.append("2x3", "6");
+            assertEquals("6", log.read(0).getResult());
+            log.flush();
+            log.append("7÷7", "1");
+            List<HistoryEntry> all = log.read(0, 2);
+            assertEquals("2x3 = 6", all.get(0).toString());
+            assertEquals("7÷7 = 1", all.get(1).toString());
+        }
+    }
+
+    @Test
+    public void tornTail_isCutOffOnOpen() throws Exception {
+        File directory = folder.getRoot();
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            for (int i = 0; i < 65; i++) {
+                log.append(String.valueOf(i), String.valueOf(i));
+            }
+        }
+        // Simulate a crash in the middle of writing the last record
+        File data = new File(directory, HistoryLog.DATA_FILE);
+        try (RandomAccessFile file = new RandomAccessFile(data, "rw")) {
+            file.setLength(file.length() - 1);
+        }
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            assertEquals(64, log.size());
+            assertEquals("63", log.read(63).getResult());
+            log.append("next", "1");
+        }
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            assertEquals(65, log.size());
+            assertEquals("next", log.read(64).getExpression());
+        }
+    }
+
+    @Test
+    public void missingIndex_isRebuilt() throws Exception {
+        File directory = folder.getRoot();
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            for (int i = 0; i < 300; i++) {
+                log.append("é" + i, String.valueOf(i));
+            }
+        }
+        assertTrue(new File(directory, HistoryLog.INDEX_FILE).delete());
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            assertEquals(300, log.size());
+            assertEquals("é299", log.read(299).getExpression());
+        }
+    }
+
+    @Test
+    public void clear_removesEntriesFromDisk() throws Exception {
+        File directory = folder.getRoot();
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            log.append("1+1", "2");
+            log.flush();
+            log.clear();
+            assertEquals(0, log.size());
+            log.append("2+2", "4");
+        }
+        try (HistoryLog log = HistoryLog.open(directory)) {
+            assertEquals(1, log.size());
+            assertEquals("4", log.read(0).getResult());
+        }
+    }
+
+    @Test
+    public void appendAfterClear_isNotLostToTheTruncation() throws Exception {
+        File directory = folder.getRoot();
+        for (int trial = 0; trial < 50; trial++) {
+            try (HistoryLog log = HistoryLog.open(directory)) {
+                for (int i = 0; i < 100; i++) {
+                    log.append(trial + "+" + i, String.valueOf(trial + i));
+                }
+                log.flush();
+                // The first append schedules a write that the clear and the second append race
+                log.append("1+1", "2");
+                log.clear();
+                log.append("2+2", "4");
+                log.flush();
+                List<HistoryEntry> entries = log.read(0, log.size());
+                assertEquals(1, entries.size());
+                assertEquals("2+2 = 4", entries.get(0).toString());
+                log.append("3+3", "6");
+            }
+            try (HistoryLog log = HistoryLog.open(directory)) {
+                assertEquals(2, log.size());
+                assertEquals("4", log.read(0).getResult());
+                assertEquals("6", log.read(1).getResult());
+                log.clear();
+            }
+        }
+    }
+
+    @Test
+    public void inMemoryLog_keepsEntries() throws Exception {
+        HistoryLog log = HistoryLog.inMemory();
+        log.append("1", "1");
+        log.append("2", "2");
+        assertEquals(2, log.size());
+        assertEquals(1, log.newest(1).size());
+        assertEquals("2", log.newest(1).get(0).getResult());
+        log.close();
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.calculator.engine.history;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistorySearchTest {
+
+    private static final String[] RESULTS = {"12", "-3", "0.5", "1÷3", "1500", "2.5E+40", "FF", "1999.99", "Error"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void containing_findsShortAndLongTexts() throws Exception {
+        HistoryLog log = HistoryLog.inMemory();
+        log.append("2^10", "1024");
+        log.append("3x4+5", "17");
+        log.append("12x12^2", "1728");
+        log.append("1234+1", "1235");
+        log.append("1+2+3+4", "10");
+        HistorySearch search = log.search();
+        assertArrayEquals(new int[]{0, 2}, search.containing("^"));
+        assertArrayEquals(new int[]{2}, search.containing("x12"));
+        // Contains the trigrams 123 and 234 apart from each other, so only the log can rule it out
+        log.append("1230+2345", "3575");
+        assertArrayEquals(new int[]{3}, search.containing("1234"));
+        assertArrayEquals(new int[]{}, search.containing("7÷7"));
+        assertEquals(6, search.containing("").length);
+    }
+
+    @Test
+    public void resultsBetween_readsDecimalResults() throws Exception {
+        HistoryLog log = HistoryLog.inMemory();
+        for (String result : RESULTS) {
+            log.append("1+1", result);
+        }
+        HistorySearch search = log.search();
+        assertArrayEquals(new int[]{4, 7}, search.resultsBetween(1000, 2000));
+        assertArrayEquals(new int[]{1, 2, 3}, search.resultsBetween(-3, 0.5));
+        assertArrayEquals(new int[]{5}, search.resultsBetween(1e40, Double.POSITIVE_INFINITY));
+        assertArrayEquals(new int[]{}, search.resultsBetween(2, 1));
+        assertArrayEquals(new int[]{4, 7}, search.find("1000..2000"));
+        assertArrayEquals(new int[]{1, 2, 3}, search.find("-3 .. 1÷2"));
+        assertEquals(Double.NaN, HistorySearch.valueOf("Error"), 0);
+        assertEquals(-1 / 3.0, HistorySearch.valueOf("-1÷3"), 1e-15);
+    }
+
+    @Test
+    public void mergedSegment_answersLikeMemoryAndSurvivesReopening() throws Exception {
+        File directory = folder.getRoot();
+        List<String> expressions = new ArrayList<>();
+        List<String> results = new ArrayList<>();
+        Random random = new Random(23);
+        for (int i = 0; i < 1000; i++) {
+            expressions.add(random.nextInt(1000) + "x" + random.nextInt(50) + (random.nextInt(5) == 0 ? "^2" : "+7"));
+            results.add(random.nextInt(10) == 0 ? "Error" : String.valueOf(random.nextInt(4000) - 1000));
+        }
+        HistoryLog memory = HistoryLog.inMemory();
+        try (HistoryLog log = HistoryLog.open(directory, 64)) {
+            for (int i = 0; i < expressions.size(); i++) {
+                log.append(expressions.get(i), results.get(i));
+                memory.append(expressions.get(i), results.get(i));
+            }
+            log.flush();
+            assertTrue(log.search().segmentSize() >= 896);
+            assertSameAnswers(memory.search(), log.search());
+        }
+        assertTrue(new File(directory, HistorySearch.SEGMENT_FILE).isFile());
+        try (HistoryLog log = HistoryLog.open(directory, 64)) {
+            awaitCatchUp(log);
+            assertSameAnswers(memory.search(), log.search());
+            log.append("999x999", "998001");
+            assertArrayEquals(new int[]{1000}, log.search().resultsBetween(998001, 998001));
+        }
+    }
+
+    @Test
+    public void staleSegment_isRebuiltFromTheLog() throws Exception {
+        File directory = folder.getRoot();
+        try (HistoryLog log = HistoryLog.open(directory, 16)) {
+            for (int i = 0; i < 40; i++) {
+                log.append(i + "^2", String.valueOf(i * i));
+            }
+            log.flush();
+        }
+        File saved = new File(folder.getRoot(), "saved");
+        assertTrue(new File(directory, HistorySearch.SEGMENT_FILE).renameTo(saved));
+        try (HistoryLog log = HistoryLog.open(directory, 16)) {
+            log.clear();
+            for (int i = 0; i < 40; i++) {
+                log.append(i + "x2", String.valueOf(i * 2));
+            }
+            log.flush();
+        }
+        // A segment of the old entries is put back, as if the clear had not reached the disk
+        assertTrue(saved.renameTo(new File(directory, HistorySearch.SEGMENT_FILE)));
+        try (HistoryLog log = HistoryLog.open(directory, 1 << 10)) {
+            awaitCatchUp(log);
+            assertArrayEquals(new int[]{}, log.search().containing("^"));
+            assertEquals(40, log.search().containing("x2").length);
+            assertArrayEquals(new int[]{5}, log.search().resultsBetween(10, 10));
+        }
+    }
+
+    @Test
+    public void clear_dropsTheIndex() throws Exception {
+        File directory = folder.getRoot();
+        try (HistoryLog log = HistoryLog.open(directory, 8)) {
+            for (int i = 0; i < 20; i++) {
+                log.append("2^" + i, String.valueOf(1 << i));
+            }
+            log.flush();
+            log.clear();
+            log.append("1+1", "2");
+            assertArrayEquals(new int[]{}, log.search().containing("^"));
+            assertArrayEquals(new int[]{0}, log.search().resultsBetween(2, 2));
+            log.flush();
+        }
+        assertFalse(new File(directory, HistorySearch.SEGMENT_FILE).exists());
+        try (HistoryLog log = HistoryLog.open(directory, 8)) {
+            awaitCatchUp(log);
+            assertArrayEquals(new int[]{0}, log.search().containing("1+1"));
+        }
+    }
+
+    @Test
+    public void entriesAppendedWhileCatchingUp_areIndexedInOrder() throws Exception {
+        File directory = folder.getRoot();
+        try (HistoryLog log = HistoryLog.open(directory, 1 << 16)) {
+            for (int i = 0; i < 5000; i++) {
+                log.append(i + "+0", String.valueOf(i));
+            }
+        }
+        // No segment was merged, so every entry is indexed again after open returns
+        assertFalse(new File(directory, HistorySearch.SEGMENT_FILE).exists());
+        try (HistoryLog log = HistoryLog.open(directory, 1 << 16)) {
+            log.append("5000+0", "5000");
+            awaitCatchUp(log);
+            assertTrue(log.search().isComplete());
+            assertArrayEquals(new int[]{4999, 5000}, log.search().resultsBetween(4999, 5000));
+            assertEquals(5001, log.search().containing("+0").length);
+            assertArrayEquals(new int[]{1234}, log.search().containing("1234+"));
+        }
+    }
+
+    // Waits until the writer has indexed the entries the saved segment does not cover
+    private static void awaitCatchUp(HistoryLog log) throws Exception {
+        while (!log.search().isComplete()) {
+            log.flush();
+        }
+    }
+
+    private static void assertSameAnswers(HistorySearch expected, HistorySearch actual) throws Exception {
+        for (String text : new String[]{"^", "x", "+7", "12", "x1", "99x", "7x10^2", "123"}) {
+            assertArrayEquals(text, expected.containing(text), actual.containing(text));
+        }
+        assertArrayEquals(expected.resultsBetween(1000, 2000), actual.resultsBetween(1000, 2000));
+        assertArrayEquals(expected.resultsBetween(-1000, 0), actual.resultsBetween(-1000, 0));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.calculator.engine.jit;
+
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.Program;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TieredEvaluatorTest {
+
+    private static final String[] EXPRESSIONS = {
+            "x^2+3", "x", "42", "2147483647+x", "100000x70000", "7÷x-x÷3", "2^x", "x^x",
+            "xxx-x÷7+x^3", "5-x x2", "1-2-3-x", "x 4 9", "0-x-1", "99999999999+x",
+            "x&6|1", "x⊻x«2", "1«x", "0-64»x"
+    };
+
+    @Test
+    public void compiledTiers_matchTheInterpreter() {
+        Evaluator interpreter = new Evaluator();
+        Random random = new Random(5);
+        for (String expression : EXPRESSIONS) {
+            Program program = ExpressionCompiler.compile(expression, true);
+            CompiledExpression bytecode = BytecodeCompiler.compile(program);
+            CompiledExpression closures = ClosureCompiler.compile(program);
+            for (int i = 0; i < 500; i++) {
+                long x = i < 20 ? i - 10 : random.nextInt();
+                String expected;
+                try {
+                    expected = String.valueOf(interpreter.evaluate(program, x));
+                } catch (UnsupportedOperationException e) {
+                    expected = e.getMessage();
+                }
+                assertEquals(expression + " at " + x, expected, outcome(bytecode, x));
+                assertEquals(expression + " at " + x, expected, outcome(closures, x));
+            }
+        }
+    }
+
+    @Test
+    public void leftoverOperands_stillThrow() {
+        Program program = ExpressionCompiler.compile("5÷x+2 3", true);
+        assertEquals("Cannot divide by zero", outcome(ClosureCompiler.compile(program), 0));
+        assertEquals("Cannot divide by zero", outcome(BytecodeCompiler.compile(program), 0));
+        assertEquals("5", outcome(ClosureCompiler.compile(program), 1));
+    }
+
+    @Test
+    public void evaluator_compilesAfterThreshold() {
+        TieredEvaluator evaluator = new TieredEvaluator(ExpressionCompiler.compile("x^2+3", true), 3);
+        assertEquals(TieredEvaluator.Tier.INTERPRETER, evaluator.tier());
+        assertEquals(7, evaluator.evaluate(2));
+        assertEquals(12, evaluator.evaluate(3));
+        assertEquals(19, evaluator.evaluate(4));
+        assertEquals(TieredEvaluator.Tier.BYTECODE, evaluator.tier());
+        assertEquals(28, evaluator.evaluate(5));
+    }
+
+    @Test
+    public void deepExpressions_fallBack() {
+        StringBuilder sb = new StringBuilder("x");
+        for (int i = 0; i < 20000; i++) {
+            sb.append("+1");
+        }
+        Program program = ExpressionCompiler.compile(sb, true);
+        try {
+            ClosureCompiler.compile(program);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // Too deep for a tree
+        }
+        TieredEvaluator evaluator = new TieredEvaluator(program, 0);
+        assertEquals(TieredEvaluator.Tier.BYTECODE, evaluator.tier());
+        assertEquals(20005, evaluator.evaluate(5));
+    }
+
+    private static String outcome(CompiledExpression expression, long x) {
+        try {
+            return String.valueOf(expression.evaluate(x));
+        } catch (UnsupportedOperationException e) {
+            return e.getMessage();
+        }
+    }
+}
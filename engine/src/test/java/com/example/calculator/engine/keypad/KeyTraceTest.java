@@ -0,0 +1,71 @@
+package com.example.calculator.engine.keypad;
+
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.SymbolTable;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class KeyTraceTest {
+
+    @Test
+    public void text_roundTrips() {
+        String text = "1 2 + F « 3 = DONE M+ MR ÷ . DEL PREC HEX CE";
+        KeyTrace trace = KeyTrace.parse("  " + text.replace(" ", "\t ") + "\n");
+        assertEquals(16, trace.size());
+        assertEquals(KeyTrace.DELIVERY, trace.event(7));
+        assertEquals(text, trace.toString());
+        assertEquals(text, KeyTrace.parse(trace.toString()).toString());
+        assertEquals("", KeyTrace.parse(" ").toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parse_rejectsUnknownKeys() {
+        KeyTrace.parse("1 + SIN");
+    }
+
+    @Test
+    public void boundedTrace_keepsTheLatestEvents() {
+        KeyTrace trace = new KeyTrace(4);
+        for (Key key : new Key[]{Key.ONE, Key.TWO, Key.ADD, Key.THREE, Key.EQUALS}) {
+            trace.record(key);
+        }
+        trace.recordDelivery();
+        assertEquals("+ 3 = DONE", trace.toString());
+        trace.clear();
+        trace.record(Key.NINE);
+        assertEquals("9", trace.toString());
+    }
+
+    @Test
+    public void replay_deliversOnlyTheLatestEvaluation() {
+        SymbolTable symbols = new SymbolTable();
+        Keypad keypad = new Keypad(symbols);
+        ExpressionCache cache = new ExpressionCache(1024, symbols);
+        KeyTrace.parse("1 2 x 2 = DONE M+ 1 = 5 DONE").replay(keypad, cache);
+        // Typing 5 cancelled the evaluation of 1
+        assertEquals("15", keypad.display().toString());
+        assertEquals("24", symbols.value(Keypad.MEMORY));
+        // Evaluated in the precision of its equals, exact integers, though fractions are on by then
+        KeyTrace.parse("= DONE PREC 1 ÷ 3 = PREC DONE").replay(keypad, cache);
+        assertEquals("0", keypad.display().toString());
+        assertEquals("1÷3=", keypad.solution());
+        KeyTrace.parse("1 ÷ 3 = DONE").replay(keypad, cache);
+        assertEquals("1÷3", keypad.displayedResult());
+        KeyTrace.parse("7 ÷ 0 = DONE").replay(keypad, cache);
+        assertTrue(keypad.showsError());
+    }
+
+    @Test
+    public void harness_replaysSessionsOnThreads() throws Exception {
+        KeyTrace session = KeyTrace.parse("1 2 x 3 = DONE M+ MR + 4 = DONE HEX BIN 1 0 = DONE CE");
+        ReplayHarness.Report report = ReplayHarness.run(Collections.singletonList(session), 2, 50_000_000L);
+        assertTrue(report.sessions() > 0);
+        assertEquals(report.sessions() * session.size(), report.events());
+        assertTrue(report.latencyNanos(0.5) > 0);
+        assertTrue(report.latencyNanos(0.5) <= report.latencyNanos(1));
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.calculator.engine.keypad;
+
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.SymbolTable;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeypadTest {
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final Keypad keypad = new Keypad(symbols);
+
+    // Presses the keys of a trace and returns the effects of the last one
+    private int type(String keys) {
+        int effects = 0;
+        KeyTrace trace = KeyTrace.parse(keys);
+        for (int i = 0; i < trace.size(); i++) {
+            effects = keypad.press(Key.of(trace.event(i)));
+        }
+        return effects;
+    }
+
+    @Test
+    public void typing_buildsTheInputAndPreview() {
+        int effects = type("1 2 + 3 x");
+        assertEquals("12+3x", keypad.display().toString());
+        assertEquals(Keypad.INPUT_CHANGED | Keypad.DISPLAY_CHANGED, effects);
+        // A second operator replaces the first
+        type("-");
+        assertEquals("12+3-", keypad.display().toString());
+        assertFalse(keypad.hasPreview());
+        type("4");
+        assertTrue(keypad.hasPreview());
+        assertEquals(11, keypad.preview());
+        type(". 5 .");
+        assertEquals("12+3-4.5", keypad.display().toString());
+        type("+ .");
+        assertEquals("12+3-4.5+.", keypad.display().toString());
+    }
+
+    @Test
+    public void operatorFirst_startsFromZero() {
+        type("x 2");
+        assertEquals("0x2", keypad.display().toString());
+        type("CLR ^");
+        assertEquals("0^", keypad.display().toString());
+    }
+
+    @Test
+    public void equals_asksForEvaluationAndShowsTheResult() {
+        assertEquals(0, type("="));
+        assertEquals(Keypad.EVALUATE, type("1 2 x 2 ="));
+        assertEquals("12x2", keypad.input().toString());
+        int effects = keypad.resultArrived("12x2", "24");
+        assertEquals(Keypad.INPUT_CHANGED | Keypad.DISPLAY_CHANGED | Keypad.SOLUTION_CHANGED, effects);
+        assertEquals("24", keypad.display().toString());
+        assertEquals("12x2=", keypad.solution());
+        assertTrue(keypad.hasResult());
+        // A digit starts a new expression, a point starts a fraction of one
+        type("7");
+        assertEquals("7", keypad.display().toString());
+        keypad.resultArrived("7", "7");
+        type(".");
+        assertEquals("0.", keypad.display().toString());
+    }
+
+    @Test
+    public void delete_editsTheResultButClearsAnError() {
+        type("9 9 DEL");
+        assertEquals("9", keypad.display().toString());
+        type("=");
+        keypad.resultArrived("9", "123");
+        type("DEL");
+        assertEquals("12", keypad.display().toString());
+        type("CLR 1 ÷ 0 =");
+        assertEquals(Keypad.DISPLAY_CHANGED | Keypad.INPUT_CHANGED, keypad.evaluationFailed());
+        assertTrue(keypad.showsError());
+        type("DEL");
+        assertFalse(keypad.showsError());
+        assertEquals("0", keypad.display().toString());
+    }
+
+    @Test
+    public void radix_rewritesTheInputAndTogglesBack() {
+        type("1 0 +");
+        int effects = type("HEX");
+        assertTrue((effects & Keypad.RADIX_CHANGED) != 0);
+        assertEquals(Radix.HEXADECIMAL, keypad.radix());
+        assertEquals("A+", keypad.display().toString());
+        assertFalse(keypad.hasPreview());
+        type("F HEX");
+        assertEquals(Radix.DECIMAL, keypad.radix());
+        assertEquals("10+15", keypad.display().toString());
+        // Other bases have no fractions, so the conversion fails
+        type("CLR 1 . 5");
+        effects = type("BIN");
+        assertTrue((effects & Keypad.CONVERSION_FAILED) != 0);
+        assertTrue(keypad.showsError());
+        assertEquals(Radix.DECIMAL, keypad.radix());
+        assertEquals("", keypad.input().toString());
+    }
+
+    @Test
+    public void result_isShownInTheActiveBase() {
+        type("2 5 5 =");
+        keypad.resultArrived("255", "255");
+        type("HEX");
+        assertEquals("FF", keypad.display().toString());
+        assertEquals("FF", keypad.displayedResult());
+    }
+
+    @Test
+    public void precision_cyclesAndHidesThePreview() {
+        type("1 + 2");
+        assertTrue(keypad.hasPreview());
+        assertEquals(Keypad.PRECISION_CHANGED | Keypad.DISPLAY_CHANGED, type("PREC"));
+        assertEquals(Precision.EXACT, keypad.precision());
+        assertFalse(keypad.hasPreview());
+        type("PREC PREC PREC");
+        assertEquals(Precision.INT32, keypad.precision());
+    }
+
+    @Test
+    public void memory_addsResultsAndIsRecalledByName() {
+        type("M+");
+        assertNull(symbols.value(Keypad.MEMORY));
+        type("5 =");
+        keypad.resultArrived("5", "5");
+        type("M+ M+");
+        assertEquals("10", symbols.value(Keypad.MEMORY));
+        keypad.resultArrived("3", "3");
+        type("M-");
+        assertEquals("7", symbols.value(Keypad.MEMORY));
+        type("MR + MR");
+        assertEquals("M+M", keypad.display().toString());
+        assertFalse(keypad.hasPreview());
+        type("MC CLR MR");
+        assertEquals("0", keypad.display().toString());
+        assertNull(symbols.value(Keypad.MEMORY));
+    }
+
+    @Test
+    public void reset_clearsHistoryAndBase() {
+        type("HEX A =");
+        keypad.resultArrived("A", "10");
+        int effects = type("CE");
+        assertEquals(Keypad.HISTORY_CLEARED | Keypad.RADIX_CHANGED | Keypad.SOLUTION_CHANGED
+                | Keypad.INPUT_CHANGED | Keypad.DISPLAY_CHANGED, effects);
+        assertEquals(Radix.DECIMAL, keypad.radix());
+        assertEquals("0", keypad.solution());
+        assertEquals("0", keypad.display().toString());
+    }
+}
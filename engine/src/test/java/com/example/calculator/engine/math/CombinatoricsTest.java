@@ -0,0 +1,69 @@
+package com.example.calculator.engine.math;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class CombinatoricsTest {
+
+    private static BigInteger naiveFactorial(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+        }
+        return result;
+    }
+
+    private static BigInteger naiveBinomial(long n, long k) {
+        BigInteger result = BigInteger.ONE;
+        for (long i = 0; i < k; i++) {
+            result = result.multiply(BigInteger.valueOf(n - i)).divide(BigInteger.valueOf(i + 1));
+        }
+        return result;
+    }
+
+    @Test
+    public void factorial_matchesNaiveProduct() {
+        for (int n = 0; n <= 300; n++) {
+            assertEquals("n = " + n, naiveFactorial(n), Combinatorics.factorial(n));
+        }
+        assertEquals(naiveFactorial(5000), Combinatorics.factorial(5000));
+    }
+
+    @Test
+    public void binomial_matchesNaiveProduct() {
+        for (int n = 0; n <= 200; n++) {
+            for (int k = 0; k <= n; k += 7) {
+                assertEquals(n + " choose " + k, naiveBinomial(n, k), Combinatorics.binomial(n, k));
+            }
+        }
+        // Both the prime factorization and the falling product
+        assertEquals(naiveBinomial(100_000, 300), Combinatorics.binomial(100_000, 300));
+        assertEquals(naiveBinomial(10_000_000, 70), Combinatorics.binomial(10_000_000, 70));
+        assertEquals(naiveBinomial(1L << 40, 3), Combinatorics.binomial(1L << 40, 3));
+        assertEquals(BigInteger.ZERO, Combinatorics.binomial(5, 6));
+        assertEquals(BigInteger.ZERO, Combinatorics.binomial(5, -1));
+    }
+
+    @Test
+    public void estimates_boundTheExactSize() {
+        for (int n = 2; n <= 2000; n += 37) {
+            assertEquals(naiveFactorial(n).bitLength(), Combinatorics.log2Factorial(n), 1);
+            for (int k = 1; k < n; k += 53) {
+                int bits = naiveBinomial(n, k).bitLength();
+                double estimate = Combinatorics.log2Binomial(n, k);
+                assertTrue(n + " choose " + k, estimate >= bits - 1 && estimate <= bits + 2);
+            }
+        }
+        assertEquals(naiveFactorial(170).doubleValue(), Combinatorics.factorialAsDouble(170), 0);
+    }
+
+    @Test
+    public void primes_areSieved() {
+        assertArrayEquals(new int[]{2, 3, 5, 7, 11, 13, 17, 19, 23, 29}, Combinatorics.primes(30));
+        assertEquals(78_498, Combinatorics.primes(1_000_000).length);
+        assertEquals(0, Combinatorics.primes(1).length);
+    }
+}
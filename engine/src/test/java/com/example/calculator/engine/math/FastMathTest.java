@@ -0,0 +1,63 @@
+package com.example.calculator.engine.math;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FastMathTest {
+
+    // Largest relative error accepted against StrictMath, a few units in the last place
+    private static final double TOLERANCE = 1e-15;
+
+    private static void assertClose(String name, double x, double expected, double actual) {
+        if (Double.isNaN(expected) || Double.isInfinite(expected) || expected == 0) {
+            assertEquals(name + "(" + x + ")", expected, actual, 0);
+            return;
+        }
+        double error = Math.abs(actual - expected) / Math.abs(expected);
+        assertTrue(name + "(" + x + ") = " + actual + ", expected " + expected, error <= TOLERANCE);
+    }
+
+    @Test
+    public void trigonometry_matchesStrictMath() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            // Mostly small angles, some up to the reduction limit
+            double x = i % 10 == 0 ? (random.nextDouble() - 0.5) * 0x1p20 : (random.nextDouble() - 0.5) * 20;
+            assertEquals("sin(" + x + ")", StrictMath.sin(x), FastMath.sin(x), 2e-16 + 1e-15 * Math.abs(StrictMath.sin(x)));
+            assertEquals("cos(" + x + ")", StrictMath.cos(x), FastMath.cos(x), 2e-16 + 1e-15 * Math.abs(StrictMath.cos(x)));
+            double tan = StrictMath.tan(x);
+            assertEquals("tan(" + x + ")", tan, FastMath.tan(x), 2e-16 + 2e-15 * Math.abs(tan) * Math.max(1, Math.abs(tan)));
+        }
+    }
+
+    @Test
+    public void expAndLogarithms_matchStrictMath() {
+        Random random = new Random(2);
+        for (int i = 0; i < 200_000; i++) {
+            double x = (random.nextDouble() - 0.5) * 1400;
+            assertClose("exp", x, StrictMath.exp(x), FastMath.exp(x));
+            double y = Math.exp((random.nextDouble() - 0.5) * 1400);
+            assertClose("ln", y, StrictMath.log(y), FastMath.ln(y));
+            assertClose("log10", y, StrictMath.log10(y), FastMath.log10(y));
+            double near = 1 + (random.nextDouble() - 0.5) / 16;
+            assertEquals("ln(" + near + ")", StrictMath.log(near), FastMath.ln(near), 1e-15 * Math.abs(StrictMath.log(near)) + 1e-300);
+        }
+    }
+
+    @Test
+    public void specialValues_matchStrictMath() {
+        double[] values = {0.0, -0.0, 1, -1, Double.MIN_VALUE, Double.MIN_NORMAL / 3, Double.MAX_VALUE,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e300, -800, 800};
+        for (double x : values) {
+            assertClose("sin", x, StrictMath.sin(x), FastMath.sin(x));
+            assertClose("exp", x, StrictMath.exp(x), FastMath.exp(x));
+            assertClose("ln", x, StrictMath.log(x), FastMath.ln(x));
+        }
+        assertEquals(0.0, FastMath.ln(1), 0);
+        assertEquals(1.0, FastMath.exp(0), 0);
+        assertEquals(2.0, FastMath.log10(100), 1e-15);
+    }
+}
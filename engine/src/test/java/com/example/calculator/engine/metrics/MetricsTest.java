@@ -0,0 +1,87 @@
+package com.example.calculator.engine.metrics;
+
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.RadixConverter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+
+    @Before
+    public void enable() {
+        Metrics.reset();
+        Metrics.setEnabled(true);
+    }
+
+    @After
+    public void disable() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+
+    @Test
+    public void buckets_coverEveryValueWithSmallError() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 63, 64, 1000, 123456789, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(bucket < LatencyHistogram.BUCKETS);
+            long lowest = LatencyHistogram.lowestValueOf(bucket);
+            assertTrue(value + " below " + lowest, lowest <= value);
+            assertTrue(value - lowest <= value / LatencyHistogram.SUB_BUCKETS);
+            if (bucket + 1 < LatencyHistogram.BUCKETS) {
+                assertTrue(value < LatencyHistogram.lowestValueOf(bucket + 1));
+            }
+        }
+    }
+
+    @Test
+    public void percentiles_followRecordedValues() {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        assertEquals(1000, histogram.count());
+        assertEquals(1000000, histogram.max());
+        assertEquals(500000, histogram.percentile(50), 500000 / 32);
+        assertEquals(990000, histogram.percentile(99), 990000 / 32);
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        Metrics.setEnabled(false);
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(5);
+        histogram.stop(Metrics.start());
+        Metrics.CACHE_HITS.increment();
+        assertEquals(0, histogram.count());
+        assertEquals(0, Metrics.CACHE_HITS.sum());
+    }
+
+    @Test
+    public void engine_reportsCacheAndErrors() {
+        ExpressionCache cache = new ExpressionCache(1024);
+        cache.evaluate("1+2", 10);
+        cache.evaluate("1+2", 10);
+        try {
+            cache.evaluate("1÷0", 10);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // Counted as a zero divisor
+        }
+        try {
+            RadixConverter.convert("12", 2, 10);
+            fail();
+        } catch (NumberFormatException expected) {
+            // Counted as a conversion error
+        }
+        assertEquals(1, Metrics.CACHE_HITS.sum());
+        assertEquals(2, Metrics.CACHE_MISSES.sum());
+        assertEquals(2, Metrics.PARSE.count());
+        assertEquals(1, Metrics.DIVIDE_BY_ZERO_ERRORS.sum());
+        assertEquals(1, Metrics.CONVERSION_ERRORS.sum());
+        assertTrue(Metrics.snapshot().contains("errors.divideByZero 1"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.calculator.engine.plot;
+
+import com.example.calculator.engine.ExpressionCompiler;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSamplerTest {
+
+    private static AdaptiveSampler sampler(String function) {
+        return new AdaptiveSampler(ExpressionCompiler.compileDecimal(function, null, true));
+    }
+
+    @Test
+    public void line_needsOnlyTheInitialGrid() {
+        AdaptiveSampler sampler = sampler("2xx+1");
+        assertEquals(AdaptiveSampler.INITIAL_SEGMENTS + 1, sampler.sample(-8, 8, 0.01));
+        double[] xs = sampler.xs();
+        double[] ys = sampler.ys();
+        assertEquals(-8, xs[0], 0);
+        assertEquals(8, xs[xs.length - 1], 0);
+        assertEquals(17, ys[ys.length - 1], 0);
+    }
+
+    @Test
+    public void curve_isRefinedWhereItBends() {
+        AdaptiveSampler sampler = sampler("sin(x)");
+        int coarse = sampler.sample(0, 6.3, 0.01);
+        int fine = sampler.sample(0, 6.3, 0.0001);
+        assertTrue(coarse > AdaptiveSampler.INITIAL_SEGMENTS + 1);
+        assertTrue(fine > coarse);
+        // Every segment is within the tolerance of the curve at its middle
+        double[] xs = sampler.xs();
+        double[] ys = sampler.ys();
+        for (int i = 1; i < xs.length; i++) {
+            assertTrue(xs[i] > xs[i - 1]);
+            double middle = Math.sin(0.5 * (xs[i - 1] + xs[i]));
+            assertEquals(middle, 0.5 * (ys[i - 1] + ys[i]), 0.0001);
+        }
+    }
+
+    @Test
+    public void divisionByZero_cutsTheCurve() {
+        AdaptiveSampler sampler = sampler("1÷x");
+        sampler.sample(-1, 1, 0.001);
+        double[] xs = sampler.xs();
+        double[] ys = sampler.ys();
+        int breaks = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (Double.isNaN(ys[i])) {
+                breaks++;
+                assertEquals(0, xs[i], 0);
+            } else {
+                assertEquals(1 / xs[i], ys[i], 1e-9 * Math.abs(ys[i]));
+            }
+        }
+        assertEquals(1, breaks);
+        // Samples crowd around the pole
+        int near = 0;
+        for (double x : xs) {
+            if (Math.abs(x) < 0.01) {
+                near++;
+            }
+        }
+        assertTrue(near > 10);
+    }
+
+    @Test
+    public void jump_isCutBetweenSamples() {
+        // 0 is not on the grid, so no sample lands on the pole
+        AdaptiveSampler sampler = sampler("1÷x");
+        sampler.sample(-1, 1.1, 0.001);
+        double[] xs = sampler.xs();
+        double[] ys = sampler.ys();
+        int breaks = 0;
+        for (int i = 1; i < xs.length; i++) {
+            if (Double.isNaN(ys[i])) {
+                breaks++;
+                assertEquals(0, xs[i], 1e-3);
+            } else if (!Double.isNaN(ys[i - 1])) {
+                assertFalse("The curve is drawn across the pole", xs[i - 1] < 0 && xs[i] > 0);
+            }
+        }
+        assertEquals(1, breaks);
+    }
+
+    @Test
+    public void steepCurve_isNotCut() {
+        AdaptiveSampler sampler = sampler("x^9");
+        sampler.sample(-3, 3, 0.001);
+        for (double y : sampler.ys()) {
+            assertFalse(Double.isNaN(y));
+        }
+    }
+
+    @Test
+    public void domainEdge_isFoundByBisection() {
+        AdaptiveSampler sampler = sampler("sqrt(x)");
+        sampler.sample(-1.05, 1, 0.001);
+        double[] xs = sampler.xs();
+        double[] ys = sampler.ys();
+        double firstDefined = Double.NaN;
+        for (int i = 0; i < xs.length; i++) {
+            if (!Double.isNaN(ys[i])) {
+                firstDefined = xs[i];
+                break;
+            }
+        }
+        assertTrue(firstDefined >= 0 && firstDefined < 1e-3);
+    }
+}
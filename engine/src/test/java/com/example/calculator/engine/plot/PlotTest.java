@@ -0,0 +1,106 @@
+package com.example.calculator.engine.plot;
+
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.SymbolTable;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PlotTest {
+
+    // Runs tasks only when asked, to see what a view shows in the meantime
+    private static final class QueuedExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        int runAll() {
+            int count = tasks.size();
+            List<Runnable> queued = new ArrayList<>(tasks);
+            tasks.clear();
+            queued.forEach(Runnable::run);
+            return count;
+        }
+    }
+
+    @Test
+    public void level_keepsTilesBetweenHalfAndFullSize() {
+        assertEquals(7, Plot.level(1));
+        assertEquals(7, Plot.level(0.6));
+        assertEquals(6, Plot.level(0.5));
+        assertEquals(-3, Plot.level(1.0 / 1024));
+    }
+
+    @Test
+    public void pan_samplesOnlyNewTiles() {
+        QueuedExecutor executor = new QueuedExecutor();
+        Plot plot = new Plot(ExpressionCompiler.compileDecimal("x^2", null, true), executor);
+        AtomicInteger ready = new AtomicInteger();
+        double unitsPerPixel = 1.0 / 64;
+        // Tiles of 2 units: -4..6 touches five of them
+        assertTrue(plot.visible(-4, 5.5, unitsPerPixel, ready::incrementAndGet).isEmpty());
+        assertEquals(5, executor.runAll());
+        assertEquals(5, ready.get());
+        List<Plot.Tile> tiles = plot.visible(-4, 5.5, unitsPerPixel, ready::incrementAndGet);
+        assertEquals(5, tiles.size());
+        assertEquals(-2, tiles.get(0).index());
+        assertEquals(6, tiles.get(4).x(tiles.get(4).size() - 1), 0);
+        assertEquals(0, executor.tasks.size());
+        plot.visible(-1, 8.5, unitsPerPixel, ready::incrementAndGet);
+        assertEquals(2, executor.runAll());
+        // A repeated request of a pending tile is queued once
+        plot.visible(20, 21, unitsPerPixel, ready::incrementAndGet);
+        plot.visible(20, 21, unitsPerPixel, ready::incrementAndGet);
+        assertEquals(1, executor.runAll());
+    }
+
+    @Test
+    public void zoom_showsCachedLevelsUntilTheTilesArrive() {
+        QueuedExecutor executor = new QueuedExecutor();
+        Plot plot = new Plot(ExpressionCompiler.compileDecimal("sin(x)", null, true), executor);
+        plot.visible(0, 3.9, 1.0 / 64, () -> { });
+        executor.runAll();
+        // Zoomed in: the parent tile stands in for both of its children
+        List<Plot.Tile> tiles = plot.visible(0, 1.9, 1.0 / 128, () -> { });
+        assertEquals(1, tiles.size());
+        assertEquals(1, tiles.get(0).level());
+        assertEquals(2, executor.runAll());
+        tiles = plot.visible(0, 1.9, 1.0 / 128, () -> { });
+        assertEquals(2, tiles.size());
+        assertEquals(0, tiles.get(1).level());
+        // Zoomed out: two cached children stand in for their parent
+        tiles = plot.visible(0, 1.9, 1.0 / 256, () -> { });
+        assertEquals(2, tiles.size());
+        // Once the view has zoomed far out, tiles queued for the close-up are not sampled
+        plot.visible(0, 100, 1, () -> { });
+        int cached = plot.cachedTiles();
+        assertEquals(5, executor.tasks.size());
+        executor.runAll();
+        assertEquals(cached + 1, plot.cachedTiles());
+    }
+
+    @Test
+    public void tiles_areSampledInParallel() throws Exception {
+        SymbolTable symbols = new SymbolTable();
+        symbols.setVariable("A", "3");
+        Plot plot = new Plot(ExpressionCompiler.compileDecimal("Axsin(x)÷x", symbols, true));
+        AtomicInteger ready = new AtomicInteger();
+        plot.visible(-50, 50, 1.0 / 16, ready::incrementAndGet);
+        assertTrue(ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS));
+        assertEquals(14, ready.get());
+        Plot.Tile tile = plot.tile(Plot.level(1.0 / 16), 0);
+        assertEquals(3, tile.y(1), 0.01);
+        assertTrue(Double.isNaN(tile.y(0)));
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.BatchEvaluator;
+import com.example.calculator.engine.DecimalEvaluator;
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.ExactEvaluator;
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.IncrementalEvaluator;
+import com.example.calculator.engine.OptimizedProgram;
+import com.example.calculator.engine.ParallelEvaluator;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.RationalEvaluator;
+import com.example.calculator.engine.VectorEvaluator;
+import com.example.calculator.engine.jit.BytecodeCompiler;
+import com.example.calculator.engine.jit.ClosureCompiler;
+
+import java.math.MathContext;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs one expression through every evaluator of the engine and compares each outcome with
+ * the {@link ReferenceEvaluator}.
+ * <p>
+ * The expression cache stands in for {@code MainActivity.evaluateExpression}, which evaluates
+ * through it with the current radix and precision. Behind it, the same text goes straight to
+ * the compiler and each evaluator of its precision: the interpreter, the optimized program,
+ * the closure tree, the vectorized evaluator and now and then the bytecode compiler for 32
+ * bits, the incremental evaluator that drives the preview, the batch entry point of the
+ * command line tool, and for a sample of cases the parallel reduction of runs.
+ * An instance keeps evaluators with reusable stacks, so it is not thread-safe; give each
+ * thread its own.
+ */
+final class Differential {
+
+    // Significant digits of a formatted double, DecimalEvaluator.FORMAT_DIGITS
+    private static final MathContext FORMAT_CONTEXT = new MathContext(DecimalEvaluator.FORMAT_DIGITS);
+    // Generating a class is slow, so only one case in this many goes through the bytecode compiler
+    private static final int BYTECODE_INTERVAL = 256;
+    // Handing work to the pool costs more than a short evaluation, so one case in this many is split
+    private static final int PARALLEL_INTERVAL = 16;
+    // Splits every run down to single terms, so that short expressions are reduced in parallel too
+    private static final ParallelEvaluator PARALLEL = new ParallelEvaluator(ForkJoinPool.commonPool(), 1);
+    // Candidates tried while shrinking, before settling for the smallest failure found so far
+    private static final int MAX_SHRINK_STEPS = 10000;
+
+    private final ExpressionCache cache = new ExpressionCache(1 << 16);
+    private final Evaluator evaluator = new Evaluator();
+    private final ExactEvaluator exactEvaluator = new ExactEvaluator();
+    private final RationalEvaluator rationalEvaluator = new RationalEvaluator();
+    private final DecimalEvaluator decimalEvaluator = new DecimalEvaluator();
+    private final IncrementalEvaluator incremental = new IncrementalEvaluator();
+    private final IncrementalEvaluator fresh = new IncrementalEvaluator();
+    private long cases;
+    private long unchecked;
+
+    /**
+     * Checks one expression
+     *
+     * @param expression The expression
+     * @param precision The arithmetic to evaluate it with
+     * @param radix The base of its literals
+     * @return Null if every evaluator agrees with the reference, otherwise what went wrong
+     */
+    String check(Expression expression, Precision precision, Radix radix) {
+        cases++;
+        Outcome expected = ReferenceEvaluator.evaluate(expression, precision, radix);
+        if (expected.kind == Outcome.Kind.UNCHECKED) {
+            unchecked++;
+            if (precision != Precision.DECIMAL) {
+                // A huge exact result; computing it would take the engine longer than a thousand other cases
+                return null;
+            }
+        } else if (expected.kind == Outcome.Kind.VALUE && precision == Precision.DECIMAL) {
+            // Results are written with 15 significant digits
+            expected = Outcome.of(Fraction.of(expected.value.toBigDecimal(FORMAT_CONTEXT)));
+        }
+        String text = expression.render(radix);
+        String failure = compare(expected, "cache", cacheOutcome(text, precision, radix));
+        if (failure != null) {
+            return describe(text, precision, radix, failure);
+        }
+        switch (precision) {
+            case INT32:
+                failure = checkInt32(expected, text, radix, expression.hasCalls());
+                break;
+            case EXACT:
+                failure = compare(expected, "exact", exactOutcome(text, radix));
+                break;
+            default:
+                failure = compare(expected, precision == Precision.RATIONAL ? "rational" : "decimal",
+                        fractionalOutcome(text, precision, radix));
+                break;
+        }
+        if (failure == null && precision != Precision.INT32 && radix == Radix.DECIMAL) {
+            failure = compare(expected, "batch", batchOutcome(text, precision));
+        }
+        if (failure == null && precision != Precision.DECIMAL && cases % PARALLEL_INTERVAL == 0) {
+            failure = compare(expected, "parallel", parallelOutcome(text, precision, radix));
+        }
+        return failure == null ? null : describe(text, precision, radix, failure);
+    }
+
+    /**
+     * Reduces a failing expression to a smaller one that still fails, one step at a time
+     *
+     * @param expression An expression for which {@link #check} fails
+     * @param precision The arithmetic it fails with
+     * @param radix The base of its literals
+     * @return The smallest failing expression found
+     */
+    Expression shrink(Expression expression, Precision precision, Radix radix) {
+        // Candidates do not count as cases
+        long casesBefore = cases;
+        long uncheckedBefore = unchecked;
+        int steps = 0;
+        boolean smaller = true;
+        while (smaller && steps < MAX_SHRINK_STEPS) {
+            smaller = false;
+            List<Expression> candidates = expression.simpler();
+            for (Expression candidate : candidates) {
+                steps++;
+                if (check(candidate, precision, radix) != null) {
+                    expression = candidate;
+                    smaller = true;
+                    break;
+                }
+            }
+        }
+        cases = casesBefore;
+        unchecked = uncheckedBefore;
+        return expression;
+    }
+
+    /**
+     * @return The number of expressions checked so far
+     */
+    long cases() {
+        return cases;
+    }
+
+    /**
+     * @return How many of them the reference could not predict, so they were only run for crashes
+     */
+    long unchecked() {
+        return unchecked;
+    }
+
+    private String checkInt32(Outcome expected, String text, Radix radix, boolean calls) {
+        Program program;
+        try {
+            program = ExpressionCompiler.compile(text, radix, null);
+        } catch (RuntimeException e) {
+            return compare(expected, "compiler", Outcome.of(e));
+        }
+        String failure = compare(expected, "interpreter", int32Outcome(() -> evaluator.evaluate(program)));
+        if (failure == null) {
+            failure = compare(expected, "optimizer", int32Outcome(() -> new OptimizedProgram(program).evaluate()));
+        }
+        if (failure == null) {
+            failure = compare(expected, "closure", int32Outcome(() -> ClosureCompiler.compile(program).evaluate(0)));
+        }
+        if (failure == null) {
+            failure = compare(expected, "vector",
+                    int32Outcome(() -> new VectorEvaluator(program).evaluate(new long[]{0})[0]));
+        }
+        if (failure == null && !calls && cases % BYTECODE_INTERVAL == 0) {
+            failure = compare(expected, "bytecode", int32Outcome(() -> BytecodeCompiler.compile(program).evaluate(0)));
+        }
+        if (failure == null && !calls && radix == Radix.DECIMAL) {
+            failure = checkIncremental(expected, text);
+        }
+        return failure;
+    }
+
+    // The incremental evaluator only previews plain arithmetic in decimal, and fails silently
+    private String checkIncremental(Outcome expected, String text) {
+        incremental.reset();
+        incremental.append(text);
+        boolean complete = incremental.computePreview();
+        if (expected.kind == Outcome.Kind.VALUE) {
+            if (!complete || incremental.preview() != expected.value.numerator.longValue()) {
+                return "incremental gave " + (complete ? incremental.preview() : "no preview") + ", expected " + expected;
+            }
+        } else if (expected.kind != Outcome.Kind.UNCHECKED && complete) {
+            return "incremental gave " + incremental.preview() + ", expected " + expected;
+        }
+        // Deleting back to a prefix must leave the same state as typing only the prefix
+        int keep = text.length() / 2;
+        while (incremental.length() > keep) {
+            incremental.deleteLast();
+        }
+        fresh.reset();
+        fresh.append(text.substring(0, keep));
+        boolean undone = incremental.computePreview();
+        if (undone != fresh.computePreview() || undone && incremental.preview() != fresh.preview()) {
+            return "incremental after deleting to \"" + text.substring(0, keep) + "\" gave "
+                    + (undone ? incremental.preview() : "no preview") + ", typing it gave "
+                    + (fresh.computePreview() ? fresh.preview() : "no preview");
+        }
+        return null;
+    }
+
+    private Outcome cacheOutcome(String text, Precision precision, Radix radix) {
+        try {
+            return Outcome.of(Fraction.parse(cache.evaluate(text, radix, precision)));
+        } catch (RuntimeException | StackOverflowError e) {
+            return Outcome.of(e);
+        }
+    }
+
+    private Outcome exactOutcome(String text, Radix radix) {
+        try {
+            return Outcome.of(Fraction.of(exactEvaluator.evaluate(ExpressionCompiler.compile(text, radix, null))));
+        } catch (RuntimeException | StackOverflowError e) {
+            return Outcome.of(e);
+        }
+    }
+
+    private Outcome fractionalOutcome(String text, Precision precision, Radix radix) {
+        try {
+            Program program = ExpressionCompiler.compileDecimal(text, radix, null);
+            String result = precision == Precision.RATIONAL
+                    ? rationalEvaluator.evaluateToString(program)
+                    : decimalEvaluator.evaluateToString(program);
+            return Outcome.of(Fraction.parse(result));
+        } catch (RuntimeException | StackOverflowError e) {
+            return Outcome.of(e);
+        }
+    }
+
+    private static Outcome parallelOutcome(String text, Precision precision, Radix radix) {
+        try {
+            Program program = precision == Precision.RATIONAL ? ExpressionCompiler.compileDecimal(text, radix, null)
+                    : ExpressionCompiler.compile(text, radix, null);
+            return Outcome.of(Fraction.parse(PARALLEL.evaluateToString(program, precision)));
+        } catch (RuntimeException | StackOverflowError e) {
+            return Outcome.of(e);
+        }
+    }
+
+    private static Outcome batchOutcome(String text, Precision precision) {
+        try {
+            return Outcome.ofLine(BatchEvaluator.evaluateLine(text, precision));
+        } catch (RuntimeException | StackOverflowError e) {
+            return Outcome.of(e);
+        }
+    }
+
+    private static Outcome int32Outcome(Int32Target target) {
+        try {
+            long result = target.evaluate();
+            if (result != (int) result) {
+                // Every 32-bit evaluator returns an int widened to a long
+                return Outcome.of(new IllegalStateException("Not a 32-bit result: " + result));
+            }
+            return Outcome.of(Fraction.of(result));
+        } catch (RuntimeException | StackOverflowError e) {
+            return Outcome.of(e);
+        }
+    }
+
+    private static String compare(Outcome expected, String target, Outcome actual) {
+        if (expected.matches(actual)) {
+            return null;
+        }
+        return target + " gave " + actual + ", expected " + expected;
+    }
+
+    private static String describe(String text, Precision precision, Radix radix, String failure) {
+        return "\"" + text + "\" in " + precision + " " + radix + ": " + failure;
+    }
+
+    // One 32-bit evaluator run on the program under test
+    private interface Int32Target {
+        long evaluate();
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A generated expression: operands separated by binary operators, in the flat form the
+ * keypad grammar reads, since parentheses do not group.
+ * <p>
+ * Instances are immutable. The harness keeps the structure rather than the text so that the
+ * reference evaluator never goes through the tokenizer under test, and so that a failing
+ * case can be shrunk term by term.
+ */
+final class Expression {
+
+    private final List<Term> operands;
+    // operators[i] is the opcode between operands i and i + 1
+    private final int[] operators;
+    // True to put a space, which the grammar skips, around every operator
+    private final boolean spaced;
+
+    private Expression(List<Term> operands, int[] operators, boolean spaced) {
+        this.operands = operands;
+        this.operators = operators;
+        this.spaced = spaced;
+    }
+
+    /**
+     * @param first The only operand
+     * @return An expression of one operand
+     */
+    static Expression of(Term first) {
+        return new Expression(Collections.singletonList(first), new int[0], false);
+    }
+
+    /**
+     * @param opcode The opcode of a binary operator
+     * @param next The operand after it
+     * @return This expression followed by the operator and the operand
+     */
+    Expression then(int opcode, Term next) {
+        List<Term> terms = new ArrayList<>(operands);
+        terms.add(next);
+        int[] ops = Arrays.copyOf(operators, operators.length + 1);
+        ops[operators.length] = opcode;
+        return new Expression(Collections.unmodifiableList(terms), ops, spaced);
+    }
+
+    /**
+     * @param spaced True to put spaces around the operators
+     * @return The same expression, written with or without spaces
+     */
+    Expression spaced(boolean spaced) {
+        return new Expression(operands, operators, spaced);
+    }
+
+    List<Term> operands() {
+        return operands;
+    }
+
+    int operatorAt(int index) {
+        return operators[index];
+    }
+
+    int operatorCount() {
+        return operators.length;
+    }
+
+    /**
+     * @return True if a function is called anywhere, which the incremental evaluator does not read
+     */
+    boolean hasCalls() {
+        for (Term term : operands) {
+            if (!(term instanceof Literal)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return True if a literal anywhere has a radix point
+     */
+    boolean hasPoints() {
+        for (Term term : operands) {
+            if (term.hasPoints()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the expression as it would be typed
+     *
+     * @param radix The base of the literals
+     * @return The text
+     */
+    String render(Radix radix) {
+        StringBuilder out = new StringBuilder();
+        render(radix, out);
+        return out.toString();
+    }
+
+    void render(Radix radix, StringBuilder out) {
+        for (int i = 0; i < operands.size(); i++) {
+            if (i > 0) {
+                if (spaced) {
+                    out.append(' ');
+                }
+                out.append(Operators.symbolOf(operators[i - 1]));
+                if (spaced) {
+                    out.append(' ');
+                }
+            }
+            operands.get(i).render(radix, out);
+        }
+    }
+
+    /**
+     * Lists expressions that are one step simpler, for shrinking a failing case
+     *
+     * @return The candidates, smallest changes last
+     */
+    List<Expression> simpler() {
+        List<Expression> candidates = new ArrayList<>();
+        // Drop an operand together with the operator before or after it
+        for (int i = 0; i < operands.size() && operands.size() > 1; i++) {
+            List<Term> terms = new ArrayList<>(operands);
+            terms.remove(i);
+            int[] ops = new int[operators.length - 1];
+            int drop = i == 0 ? 0 : i - 1;
+            for (int j = 0, k = 0; j < operators.length; j++) {
+                if (j != drop) {
+                    ops[k++] = operators[j];
+                }
+            }
+            candidates.add(new Expression(Collections.unmodifiableList(terms), ops, spaced));
+        }
+        // Simplify one operand
+        for (int i = 0; i < operands.size(); i++) {
+            for (Term term : operands.get(i).simpler()) {
+                List<Term> terms = new ArrayList<>(operands);
+                terms.set(i, term);
+                candidates.add(new Expression(Collections.unmodifiableList(terms), operators, spaced));
+            }
+        }
+        if (spaced) {
+            candidates.add(spaced(false));
+        }
+        return candidates;
+    }
+
+    @Override
+    public String toString() {
+        return render(Radix.DECIMAL);
+    }
+
+    /**
+     * An operand
+     */
+    abstract static class Term {
+        abstract void render(Radix radix, StringBuilder out);
+
+        abstract boolean hasPoints();
+
+        // Terms that are one step simpler
+        abstract List<Term> simpler();
+    }
+
+    /**
+     * A literal {@code digits ÷ radix^scale}, written with {@code scale} digits after the point
+     */
+    static final class Literal extends Term {
+        final BigInteger digits;
+        final int scale;
+        final int leadingZeros;
+
+        Literal(BigInteger digits, int scale, int leadingZeros) {
+            if (digits.signum() < 0 || scale < 0) {
+                throw new IllegalArgumentException("Literals are non-negative");
+            }
+            this.digits = digits;
+            this.scale = scale;
+            this.leadingZeros = leadingZeros;
+        }
+
+        static Literal of(long value) {
+            return new Literal(BigInteger.valueOf(value), 0, 0);
+        }
+
+        @Override
+        void render(Radix radix, StringBuilder out) {
+            for (int i = 0; i < leadingZeros; i++) {
+                out.append('0');
+            }
+            String text = digits.toString(radix.radix()).toUpperCase();
+            if (scale > 0) {
+                StringBuilder padded = new StringBuilder();
+                for (int i = text.length(); i <= scale; i++) {
+                    padded.append('0');
+                }
+                text = padded.append(text).insert(padded.length() - scale, '.').toString();
+            }
+            out.append(text);
+        }
+
+        @Override
+        boolean hasPoints() {
+            return scale > 0;
+        }
+
+        @Override
+        List<Term> simpler() {
+            List<Term> candidates = new ArrayList<>();
+            if (scale > 0) {
+                candidates.add(new Literal(digits, 0, leadingZeros));
+            }
+            if (leadingZeros > 0) {
+                candidates.add(new Literal(digits, scale, 0));
+            }
+            if (digits.bitLength() > 1) {
+                candidates.add(new Literal(digits.shiftRight(digits.bitLength() / 2), scale, leadingZeros));
+                candidates.add(new Literal(BigInteger.ONE, scale, leadingZeros));
+            }
+            if (digits.signum() > 0) {
+                candidates.add(new Literal(BigInteger.ZERO, scale, leadingZeros));
+            }
+            return candidates;
+        }
+    }
+
+    /**
+     * A call such as {@code sqrt(...)} or {@code ncr(..., ...)}
+     */
+    static final class Call extends Term {
+        final MathFunction function;
+        final List<Expression> arguments;
+
+        Call(MathFunction function, List<Expression> arguments) {
+            if (arguments.size() != function.arity()) {
+                throw new IllegalArgumentException(function.keyword() + " takes " + function.arity() + " arguments");
+            }
+            this.function = function;
+            this.arguments = Collections.unmodifiableList(new ArrayList<>(arguments));
+        }
+
+        @Override
+        void render(Radix radix, StringBuilder out) {
+            out.append(function.keyword()).append('(');
+            for (int i = 0; i < arguments.size(); i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                arguments.get(i).render(radix, out);
+            }
+            out.append(')');
+        }
+
+        @Override
+        boolean hasPoints() {
+            for (Expression argument : arguments) {
+                if (argument.hasPoints()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        List<Term> simpler() {
+            List<Term> candidates = new ArrayList<>();
+            for (int i = 0; i < arguments.size(); i++) {
+                Expression argument = arguments.get(i);
+                if (argument.operands.size() == 1) {
+                    candidates.add(argument.operands.get(0));
+                }
+                for (Expression smaller : argument.simpler()) {
+                    List<Expression> replaced = new ArrayList<>(arguments);
+                    replaced.set(i, smaller);
+                    candidates.add(new Call(function, replaced));
+                }
+            }
+            return candidates;
+        }
+    }
+
+    /**
+     * An operand followed by {@code !}
+     */
+    static final class Factorial extends Term {
+        final Term operand;
+
+        Factorial(Term operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        void render(Radix radix, StringBuilder out) {
+            operand.render(radix, out);
+            out.append('!');
+        }
+
+        @Override
+        boolean hasPoints() {
+            return operand.hasPoints();
+        }
+
+        @Override
+        List<Term> simpler() {
+            List<Term> candidates = new ArrayList<>();
+            candidates.add(operand);
+            for (Term smaller : operand.simpler()) {
+                candidates.add(new Factorial(smaller));
+            }
+            return candidates;
+        }
+    }
+}
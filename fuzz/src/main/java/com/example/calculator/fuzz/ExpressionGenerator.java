@@ -0,0 +1,115 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random expressions with a bounded number of operands, nesting depth and a
+ * chosen {@link OperatorMix}.
+ * <p>
+ * Literals are mostly small, so that results stay checkable, with a share close to the
+ * boundaries the engine switches paths at: the 32-bit wrap-around, the long fast paths of
+ * the exact evaluators and the big-number path beyond them. Calls to sqrt and ncr nest up to
+ * the depth limit. Points only appear where the precision reads them.
+ */
+final class ExpressionGenerator {
+
+    // Literals around which the engine changes representation
+    private static final long[] BOUNDARIES = {
+            0, 1, 2, 31, 32, 33, 63, 64, 0x7FFFFFFFL, 0x80000000L, 0xFFFFFFFFL, 0x100000000L,
+            Long.MAX_VALUE, 3037000499L, 3037000500L
+    };
+
+    private final Precision precision;
+    private final OperatorMix mix;
+    private final int maxOperands;
+    private final int maxDepth;
+
+    /**
+     * @param precision The arithmetic the expressions are meant for
+     * @param mix How often each operator appears
+     * @param maxOperands The largest number of operands at each level
+     * @param maxDepth The deepest nesting of calls
+     */
+    ExpressionGenerator(Precision precision, OperatorMix mix, int maxOperands, int maxDepth) {
+        if (maxOperands < 1 || maxDepth < 0) {
+            throw new IllegalArgumentException("Need at least one operand and a depth of zero");
+        }
+        this.precision = precision;
+        this.mix = mix;
+        this.maxOperands = maxOperands;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param random The source of randomness
+     * @return A new expression
+     */
+    Expression generate(Random random) {
+        return expression(random, maxDepth).spaced(random.nextInt(8) == 0);
+    }
+
+    private Expression expression(Random random, int depth) {
+        // Shorter expressions are more likely, and nested ones shorter still
+        int operands = 1 + random.nextInt(1 + random.nextInt(depth == maxDepth ? maxOperands : (maxOperands + 1) / 2));
+        Expression expression = Expression.of(term(random, depth));
+        for (int i = 1; i < operands; i++) {
+            expression = expression.then(mix.nextOperator(random), term(random, depth));
+        }
+        return expression;
+    }
+
+    private Expression.Term term(Random random, int depth) {
+        Expression.Term term;
+        if (depth > 0 && random.nextInt(100) < mix.callPercent) {
+            term = call(random, depth - 1);
+        } else {
+            term = literal(random);
+        }
+        if (random.nextInt(100) < mix.factorialPercent) {
+            term = new Expression.Factorial(term);
+        }
+        return term;
+    }
+
+    private Expression.Term call(Random random, int depth) {
+        MathFunction function = random.nextBoolean() ? MathFunction.SQRT : MathFunction.BINOMIAL;
+        List<Expression> arguments = new ArrayList<>();
+        for (int i = 0; i < function.arity(); i++) {
+            arguments.add(expression(random, depth));
+        }
+        return new Expression.Call(function, arguments);
+    }
+
+    private Expression.Literal literal(Random random) {
+        BigInteger digits;
+        int draw = random.nextInt(100);
+        if (draw < 60) {
+            digits = BigInteger.valueOf(random.nextInt(draw < 30 ? 10 : 1000));
+        } else if (draw < 75) {
+            digits = BigInteger.valueOf(random.nextInt(Integer.MAX_VALUE));
+        } else if (draw < 88) {
+            // A boundary, or one off it
+            long boundary = BOUNDARIES[random.nextInt(BOUNDARIES.length)];
+            digits = BigInteger.valueOf(boundary).add(BigInteger.valueOf(random.nextInt(3) - 1)).abs();
+        } else if (draw < 96) {
+            digits = new BigInteger(64, random);
+        } else {
+            digits = new BigInteger(200, random);
+        }
+        int scale = 0;
+        if (precision == Precision.RATIONAL && random.nextInt(4) == 0) {
+            scale = 1 + random.nextInt(4);
+        } else if (precision == Precision.DECIMAL && random.nextInt(16) == 0) {
+            // Few decimal fractions are doubles, so most of these are only checked for crashes
+            scale = 1 + random.nextInt(2);
+        }
+        int leadingZeros = random.nextInt(32) == 0 ? 1 + random.nextInt(3) : 0;
+        return new Expression.Literal(digits, scale, leadingZeros);
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.calculator.fuzz;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * An exact fraction, always reduced, with a positive denominator.
+ * <p>
+ * The reference arithmetic of the harness. It reduces after every operation and never takes
+ * a shortcut, so it shares no code and no strategy with the evaluators it checks.
+ */
+final class Fraction {
+
+    static final Fraction ZERO = new Fraction(BigInteger.ZERO, BigInteger.ONE);
+    static final Fraction ONE = new Fraction(BigInteger.ONE, BigInteger.ONE);
+
+    final BigInteger numerator;
+    final BigInteger denominator;
+
+    private Fraction(BigInteger numerator, BigInteger denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+    }
+
+    static Fraction of(BigInteger value) {
+        return new Fraction(value, BigInteger.ONE);
+    }
+
+    static Fraction of(long value) {
+        return of(BigInteger.valueOf(value));
+    }
+
+    /**
+     * @param numerator Any value
+     * @param denominator A non-zero value
+     * @return The reduced fraction
+     */
+    static Fraction of(BigInteger numerator, BigInteger denominator) {
+        if (denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger gcd = numerator.gcd(denominator);
+        if (gcd.signum() != 0 && !gcd.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+        return new Fraction(numerator, denominator);
+    }
+
+    /**
+     * @param value A finite decimal
+     * @return The same value as a fraction
+     */
+    static Fraction of(BigDecimal value) {
+        if (value.scale() <= 0) {
+            return of(value.toBigIntegerExact());
+        }
+        return of(value.unscaledValue(), BigInteger.TEN.pow(value.scale()));
+    }
+
+    /**
+     * Reads a result as the evaluators write it: an integer, a decimal or a fraction {@code a÷b}
+     *
+     * @param text The result
+     * @return Its value
+     * @throws NumberFormatException If the text is not a result
+     */
+    static Fraction parse(String text) {
+        int slash = text.indexOf('÷');
+        if (slash >= 0) {
+            return of(new BigInteger(text.substring(0, slash)), new BigInteger(text.substring(slash + 1)));
+        }
+        return of(new BigDecimal(text));
+    }
+
+    boolean isInteger() {
+        return denominator.equals(BigInteger.ONE);
+    }
+
+    int signum() {
+        return numerator.signum();
+    }
+
+    // Size in bits of the numerator and denominator together
+    int bitLength() {
+        return numerator.bitLength() + denominator.bitLength();
+    }
+
+    Fraction add(Fraction other) {
+        return of(numerator.multiply(other.denominator).add(other.numerator.multiply(denominator)),
+                denominator.multiply(other.denominator));
+    }
+
+    Fraction subtract(Fraction other) {
+        return add(other.negate());
+    }
+
+    Fraction multiply(Fraction other) {
+        return of(numerator.multiply(other.numerator), denominator.multiply(other.denominator));
+    }
+
+    Fraction divide(Fraction other) {
+        return of(numerator.multiply(other.denominator), denominator.multiply(other.numerator));
+    }
+
+    Fraction negate() {
+        return new Fraction(numerator.negate(), denominator);
+    }
+
+    // The integer part, rounded toward zero
+    BigInteger truncate() {
+        return numerator.divide(denominator);
+    }
+
+    /**
+     * @param exponent Any integer whose result is not too large
+     * @return This fraction to the power, which must not be 0 to a negative power
+     */
+    Fraction pow(int exponent) {
+        if (exponent < 0) {
+            return of(denominator.pow(-exponent), numerator.pow(-exponent));
+        }
+        return new Fraction(numerator.pow(exponent), denominator.pow(exponent));
+    }
+
+    /**
+     * @return True if a double holds this value exactly
+     */
+    boolean isDouble() {
+        if (numerator.signum() == 0) {
+            return true;
+        }
+        // value = odd × 2^exponent
+        int exponent = numerator.getLowestSetBit() - denominator.getLowestSetBit();
+        BigInteger odd = numerator.abs().shiftRight(numerator.getLowestSetBit());
+        return denominator.bitCount() == 1 && odd.bitLength() <= 53
+                && exponent >= -1074 && odd.bitLength() + exponent <= 1024;
+    }
+
+    /**
+     * @param context The number of significant digits
+     * @return The value rounded to them
+     */
+    BigDecimal toBigDecimal(MathContext context) {
+        return new BigDecimal(numerator).divide(new BigDecimal(denominator), context);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Fraction)) {
+            return false;
+        }
+        Fraction other = (Fraction) o;
+        return numerator.equals(other.numerator) && denominator.equals(other.denominator);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * numerator.hashCode() + denominator.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return isInteger() ? numerator.toString() : numerator + "÷" + denominator;
+    }
+}
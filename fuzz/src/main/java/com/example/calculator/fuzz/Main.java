@@ -0,0 +1,246 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.keypad.KeyTrace;
+import com.example.calculator.engine.keypad.ReplayHarness;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command-line entry point that checks random expressions against the reference for a while,
+ * on every core.
+ * <p>
+ * Usage: {@code fuzz [--seconds N] [--threads N] [--seed N] [--operands N] [--depth N] [--tokenizer]
+ * [--replay FILE]}. Every case follows from the seed and its index alone, so a failure
+ * reported with both can be rerun on its own. The first failure is shrunk, printed and ends
+ * the run with status 1. With {@code --tokenizer}, each thread runs a {@link TokenizerFuzzer}
+ * instead. With {@code --replay}, the threads replay the keypress traces of a file, one
+ * session per line, through the {@link ReplayHarness} and report the latency of a keystroke.
+ */
+public final class Main {
+
+    private static final String USAGE =
+            "Usage: fuzz [--seconds N] [--threads N] [--seed N] [--operands N] [--depth N] [--tokenizer] [--replay FILE]";
+    // Cases a thread claims at a time
+    private static final int BLOCK = 1024;
+    private static final long REPORT_INTERVAL_MILLIS = 5000;
+
+    private static final Precision[] PRECISIONS = Precision.values();
+    private static final Radix[] RADIXES = Radix.values();
+    private static final OperatorMix[] MIXES = OperatorMix.values();
+
+    private Main() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long seconds = 60;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        int operands = 8;
+        int depth = 2;
+        boolean tokenizer = false;
+        String replay = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--seconds":
+                        seconds = Long.parseLong(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--operands":
+                        operands = Integer.parseInt(args[++i]);
+                        break;
+                    case "--depth":
+                        depth = Integer.parseInt(args[++i]);
+                        break;
+                    case "--tokenizer":
+                        tokenizer = true;
+                        break;
+                    case "--replay":
+                        replay = args[++i];
+                        break;
+                    case "-h":
+                    case "--help":
+                        System.out.println(USAGE);
+                        return;
+                    default:
+                        throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (replay != null) {
+            replay(replay, threads, seconds);
+            return;
+        }
+        System.out.println("Seed " + seed + ", " + threads + " threads, " + seconds + " s");
+        String failure = tokenizer ? fuzzTokenizer(seed, threads, seconds)
+                : fuzzEvaluators(seed, threads, seconds, operands, depth);
+        if (failure != null) {
+            System.out.println("FAILED " + failure);
+            System.exit(1);
+        }
+        System.out.println("No failures");
+    }
+
+    /**
+     * Generates and checks one case
+     *
+     * @param differential The evaluators of the current thread
+     * @param seed The seed of the run
+     * @param index The index of the case
+     * @param operands The largest number of operands at each level
+     * @param depth The deepest nesting of calls
+     * @return Null if the case passes, otherwise the shrunk failure
+     */
+    static String runCase(Differential differential, long seed, long index, int operands, int depth) {
+        Random random = new Random(seed ^ index * 0x9E3779B97F4A7C15L);
+        Precision precision = PRECISIONS[random.nextInt(PRECISIONS.length)];
+        Radix radix = RADIXES[random.nextInt(RADIXES.length)];
+        OperatorMix mix = MIXES[random.nextInt(MIXES.length)];
+        Expression expression = new ExpressionGenerator(precision, mix, operands, depth).generate(random);
+        if (differential.check(expression, precision, radix) == null) {
+            return null;
+        }
+        Expression shrunk = differential.shrink(expression, precision, radix);
+        return "case " + index + " of seed " + seed + ": " + differential.check(shrunk, precision, radix)
+                + "\n  shrunk from \"" + expression.render(radix) + "\"";
+    }
+
+    private static void replay(String file, int threads, long seconds) throws InterruptedException {
+        List<KeyTrace> sessions = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+                if (!line.trim().isEmpty() && !line.startsWith("#")) {
+                    sessions.add(KeyTrace.parse(line));
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Cannot read " + file + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (sessions.isEmpty()) {
+            System.err.println("No sessions in " + file);
+            System.exit(2);
+            return;
+        }
+        System.out.println(sessions.size() + " sessions, " + threads + " threads, " + seconds + " s");
+        try {
+            System.out.println(ReplayHarness.run(sessions, threads, TimeUnit.SECONDS.toNanos(seconds)));
+        } catch (IllegalStateException e) {
+            System.out.println("FAILED " + e.getMessage() + "\n  " + e.getCause());
+            System.exit(1);
+        }
+    }
+
+    private static String fuzzEvaluators(long seed, int threads, long seconds, int operands, int depth)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + seconds * 1000;
+        AtomicLong next = new AtomicLong();
+        AtomicReference<String> failure = new AtomicReference<>();
+        LongAdder done = new LongAdder();
+        LongAdder unchecked = new LongAdder();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                Differential differential = new Differential();
+                while (failure.get() == null && System.currentTimeMillis() < deadline) {
+                    long first = next.getAndAdd(BLOCK);
+                    long uncheckedBefore = differential.unchecked();
+                    for (long index = first; index < first + BLOCK; index++) {
+                        String result = runCase(differential, seed, index, operands, depth);
+                        if (result != null) {
+                            failure.compareAndSet(null, result);
+                            return;
+                        }
+                    }
+                    done.add(BLOCK);
+                    unchecked.add(differential.unchecked() - uncheckedBefore);
+                }
+            }, "fuzz-" + t);
+            // A bug in the harness itself also ends the run
+            workers[t].setUncaughtExceptionHandler((thread, e) -> failure.compareAndSet(null, "harness failed: " + e));
+            workers[t].start();
+        }
+        report(workers, () -> {
+            long cases = done.sum();
+            return cases + " cases, " + (cases == 0 ? 0 : 100 * unchecked.sum() / cases) + "% only run for crashes";
+        }, done);
+        return failure.get();
+    }
+
+    private static String fuzzTokenizer(long seed, int threads, long seconds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + seconds * 1000;
+        AtomicReference<String> failure = new AtomicReference<>();
+        LongAdder done = new LongAdder();
+        LongAdder corpus = new LongAdder();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long threadSeed = seed + t;
+            workers[t] = new Thread(() -> {
+                TokenizerFuzzer fuzzer = new TokenizerFuzzer(threadSeed);
+                int size = fuzzer.corpusSize();
+                corpus.add(size);
+                while (failure.get() == null && System.currentTimeMillis() < deadline) {
+                    String result = fuzzer.run(BLOCK);
+                    if (result != null) {
+                        failure.compareAndSet(null, "seed " + threadSeed + ": " + result);
+                        return;
+                    }
+                    done.add(BLOCK);
+                    corpus.add(fuzzer.corpusSize() - size);
+                    size = fuzzer.corpusSize();
+                }
+            }, "fuzz-" + t);
+            // A bug in the harness itself also ends the run
+            workers[t].setUncaughtExceptionHandler((thread, e) -> failure.compareAndSet(null, "harness failed: " + e));
+            workers[t].start();
+        }
+        report(workers, () -> done.sum() + " inputs, corpus of " + corpus.sum(), done);
+        return failure.get();
+    }
+
+    // Prints progress until every worker has stopped
+    private static void report(Thread[] workers, Progress progress, LongAdder done) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        long reported = start;
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                worker.join(REPORT_INTERVAL_MILLIS);
+                long now = System.currentTimeMillis();
+                if (worker.isAlive() && now - reported >= REPORT_INTERVAL_MILLIS) {
+                    System.out.println(progress.describe() + ", " + done.sum() * 60000 / (now - start) + " per minute");
+                    reported = now;
+                }
+            }
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println(progress.describe() + ", " + done.sum() * 60000 / elapsed + " per minute");
+    }
+
+    // Describes the progress of a run
+    private interface Progress {
+        String describe();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.Operators;
+
+import java.util.Random;
+
+/**
+ * How often each operator and function appears in generated expressions.
+ * <p>
+ * Each mix stresses a different part of the engine: long sums run the overflow checks of
+ * the fast paths, products and quotients the promotion to big numbers, powers the size
+ * limits, and the bitwise mix the shifts and two's complement of programmer mode.
+ */
+enum OperatorMix {
+    ADDITIVE(0, 0, 50, 50, 0, 0, 0),
+    ARITHMETIC(5, 5, 30, 25, 25, 20, 0),
+    POWERS(10, 10, 20, 20, 20, 15, 25),
+    BITWISE(5, 5, 15, 15, 10, 5, 0, 15, 15, 15, 15, 15),
+    MIXED(10, 10, 15, 15, 15, 15, 10, 5, 5, 5, 5, 5);
+
+    // The binary opcodes in the order their weights are given
+    private static final int[] OPCODES = {
+            Operators.ADD, Operators.SUBTRACT, Operators.MULTIPLY, Operators.DIVIDE, Operators.POWER,
+            Operators.AND, Operators.OR, Operators.XOR, Operators.SHIFT_LEFT, Operators.SHIFT_RIGHT
+    };
+
+    // Percentage of operands that are calls, and of operands followed by !
+    final int callPercent;
+    final int factorialPercent;
+    // Weight of each binary opcode, in the order of OPCODES
+    private final int[] weights;
+    private final int totalWeight;
+
+    /**
+     * @param callPercent Percentage of operands that call sqrt or ncr
+     * @param factorialPercent Percentage of operands followed by !
+     * @param weights Weights of + - x ÷ ^ & | ⊻ « » in opcode order
+     */
+    OperatorMix(int callPercent, int factorialPercent, int... weights) {
+        this.callPercent = callPercent;
+        this.factorialPercent = factorialPercent;
+        this.weights = weights;
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        this.totalWeight = total;
+    }
+
+    /**
+     * @param random The source of randomness
+     * @return The opcode of a binary operator drawn with the weights of this mix
+     */
+    int nextOperator(Random random) {
+        int draw = random.nextInt(totalWeight);
+        for (int i = 0; i < weights.length; i++) {
+            draw -= weights[i];
+            if (draw < 0) {
+                return OPCODES[i];
+            }
+        }
+        throw new AssertionError("Weights do not add up to " + totalWeight);
+    }
+}
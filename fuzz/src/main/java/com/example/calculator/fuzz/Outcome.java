@@ -0,0 +1,110 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.BatchEvaluator;
+import com.example.calculator.engine.MalformedExpressionException;
+
+/**
+ * The result of evaluating an expression, or the kind of error it ended with.
+ * <p>
+ * Outcomes are compared by kind and value only: evaluators are free to word their error
+ * messages differently, but not to fail where another one succeeds.
+ */
+final class Outcome {
+
+    enum Kind {
+        VALUE,
+        // UnsupportedOperationException "Cannot divide by zero", also 0 to a negative power
+        DIVIDE_BY_ZERO,
+        // ArithmeticException: no result, no exact result or a result that is too large
+        UNDEFINED,
+        // MalformedExpressionException
+        MALFORMED,
+        // The reference cannot tell the exact result; evaluators are only checked for crashes
+        UNCHECKED,
+        // Any other exception, always a bug
+        CRASH
+    }
+
+    static final Outcome DIVIDE_BY_ZERO = new Outcome(Kind.DIVIDE_BY_ZERO, null, null);
+    static final Outcome UNDEFINED = new Outcome(Kind.UNDEFINED, null, null);
+    static final Outcome MALFORMED = new Outcome(Kind.MALFORMED, null, null);
+    static final Outcome UNCHECKED = new Outcome(Kind.UNCHECKED, null, null);
+
+    private static final String DIVIDE_BY_ZERO_MESSAGE = "Cannot divide by zero";
+
+    final Kind kind;
+    // The value, only for VALUE
+    final Fraction value;
+    // The exception, only for CRASH
+    final Throwable error;
+
+    private Outcome(Kind kind, Fraction value, Throwable error) {
+        this.kind = kind;
+        this.value = value;
+        this.error = error;
+    }
+
+    static Outcome of(Fraction value) {
+        return new Outcome(Kind.VALUE, value, null);
+    }
+
+    /**
+     * Classifies an exception thrown by an evaluator
+     *
+     * @param e The exception
+     * @return The outcome it stands for
+     */
+    static Outcome of(Throwable e) {
+        if (e instanceof MalformedExpressionException) {
+            return MALFORMED;
+        }
+        if (e instanceof ArithmeticException) {
+            return UNDEFINED;
+        }
+        if (e instanceof UnsupportedOperationException && DIVIDE_BY_ZERO_MESSAGE.equals(e.getMessage())) {
+            return DIVIDE_BY_ZERO;
+        }
+        return new Outcome(Kind.CRASH, null, e);
+    }
+
+    /**
+     * Reads the result of {@link BatchEvaluator#evaluateLine}, which turns errors into text
+     *
+     * @param line The result line
+     * @return The outcome it stands for
+     */
+    static Outcome ofLine(String line) {
+        if (!line.startsWith(BatchEvaluator.ERROR_PREFIX)) {
+            return of(Fraction.parse(line));
+        }
+        String message = line.substring(BatchEvaluator.ERROR_PREFIX.length());
+        // The line does not keep the exception type; only division by zero has a fixed message
+        return DIVIDE_BY_ZERO_MESSAGE.equals(message) ? DIVIDE_BY_ZERO : UNDEFINED;
+    }
+
+    /**
+     * @param other The outcome of an evaluator under test
+     * @return True if it agrees with this outcome of the reference
+     */
+    boolean matches(Outcome other) {
+        if (other.kind == Kind.CRASH) {
+            return false;
+        }
+        if (kind == Kind.UNCHECKED) {
+            return true;
+        }
+        return kind == other.kind && (kind != Kind.VALUE || value.equals(other.value));
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case VALUE:
+                return value.toString();
+            case CRASH:
+                return "crash: " + error;
+            default:
+                return kind.name();
+        }
+    }
+}
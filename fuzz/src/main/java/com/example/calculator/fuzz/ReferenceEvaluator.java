@@ -0,0 +1,430 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.math.MathFunction;
+
+import java.math.BigInteger;
+
+/**
+ * Evaluates generated expressions with exact fractions, as the oracle of the harness.
+ * <p>
+ * The evaluator walks the structure of an {@link Expression} by precedence climbing instead
+ * of compiling text to postfix code, and computes every intermediate exactly, so it shares
+ * neither the parser nor the arithmetic of the engine. Each precision is specified on top of
+ * the exact value: {@link Precision#INT32} wraps the exact result to 32 bits after every
+ * operation, {@link Precision#EXACT} truncates quotients, and {@link Precision#DECIMAL} is
+ * only checked while every intermediate is a double exactly, since then IEEE arithmetic has
+ * no rounding error to account for. Where the exact value says nothing about the engine's
+ * result, such as a rounded square root in floating point or a value too large to bother
+ * with, the outcome is {@link Outcome.Kind#UNCHECKED}.
+ */
+final class ReferenceEvaluator {
+
+    // Largest intermediate, in bits, that the reference computes
+    static final int MAX_BITS = 4096;
+    // The engine's own limit, ExactEvaluator.MAX_RESULT_BITS, restated from its documentation
+    private static final int ENGINE_MAX_BITS = 1 << 20;
+    // Largest factorial in doubles, Combinatorics.MAX_DOUBLE_FACTORIAL
+    private static final int MAX_DOUBLE_FACTORIAL = 170;
+    // Largest n of a binomial coefficient in doubles
+    private static final BigInteger MAX_DOUBLE_BINOMIAL = BigInteger.ONE.shiftLeft(53);
+    private static final BigInteger INT_MIN = BigInteger.valueOf(Integer.MIN_VALUE);
+    private static final BigInteger INT_MAX = BigInteger.valueOf(Integer.MAX_VALUE);
+
+    // Binding strength of every binary opcode: | ⊻ & shifts + - and x ÷ ^, loosest first
+    private static final int[] LEVELS = new int[Operators.SHIFT_RIGHT + 1];
+
+    static {
+        LEVELS[Operators.OR] = 1;
+        LEVELS[Operators.XOR] = 2;
+        LEVELS[Operators.AND] = 3;
+        LEVELS[Operators.SHIFT_LEFT] = 4;
+        LEVELS[Operators.SHIFT_RIGHT] = 4;
+        LEVELS[Operators.ADD] = 5;
+        LEVELS[Operators.SUBTRACT] = 5;
+        LEVELS[Operators.MULTIPLY] = 6;
+        LEVELS[Operators.DIVIDE] = 6;
+        LEVELS[Operators.POWER] = 6;
+    }
+
+    private final Precision precision;
+    private final Radix radix;
+
+    private ReferenceEvaluator(Precision precision, Radix radix) {
+        this.precision = precision;
+        this.radix = radix;
+    }
+
+    /**
+     * Evaluates an expression
+     *
+     * @param expression The expression
+     * @param precision The arithmetic of the engine to predict
+     * @param radix The base its literals are written in
+     * @return The exact result, or the error the engine must report
+     */
+    static Outcome evaluate(Expression expression, Precision precision, Radix radix) {
+        try {
+            return Outcome.of(new ReferenceEvaluator(precision, radix).value(expression));
+        } catch (Failure failure) {
+            return failure.outcome;
+        }
+    }
+
+    private Fraction value(Expression expression) {
+        return climb(expression, new int[1], 1);
+    }
+
+    // Evaluates from the operand at position[0] while the operators bind at least as tight as level
+    private Fraction climb(Expression expression, int[] position, int level) {
+        Fraction left = term(expression.operands().get(position[0]));
+        while (position[0] < expression.operatorCount() && LEVELS[expression.operatorAt(position[0])] >= level) {
+            int opcode = expression.operatorAt(position[0]++);
+            // Left-associative: the right operand only takes operators that bind tighter
+            Fraction right = climb(expression, position, LEVELS[opcode] + 1);
+            left = apply(opcode, left, right);
+        }
+        return left;
+    }
+
+    private Fraction term(Expression.Term term) {
+        if (term instanceof Expression.Literal) {
+            return literal((Expression.Literal) term);
+        }
+        if (term instanceof Expression.Factorial) {
+            return factorial(term(((Expression.Factorial) term).operand));
+        }
+        Expression.Call call = (Expression.Call) term;
+        Fraction x = value(call.arguments.get(0));
+        if (call.function == MathFunction.SQRT) {
+            return sqrt(x);
+        }
+        if (call.function == MathFunction.BINOMIAL) {
+            return binomial(x, value(call.arguments.get(1)));
+        }
+        throw new IllegalArgumentException("Cannot evaluate " + call.function.keyword());
+    }
+
+    private Fraction literal(Expression.Literal literal) {
+        Fraction digits = Fraction.of(literal.digits);
+        if (precision == Precision.INT32) {
+            // Only the low 32 bits of a literal count
+            return wrap(digits);
+        }
+        digits = check(digits);
+        if (literal.scale == 0) {
+            return digits;
+        }
+        Fraction scale = check(Fraction.of(BigInteger.valueOf(radix.radix()).pow(literal.scale)));
+        return check(digits.divide(scale));
+    }
+
+    private Fraction apply(int opcode, Fraction a, Fraction b) {
+        switch (opcode) {
+            case Operators.ADD:
+                return check(a.add(b));
+            case Operators.SUBTRACT:
+                return check(a.subtract(b));
+            case Operators.MULTIPLY:
+                return check(a.multiply(b));
+            case Operators.DIVIDE:
+                if (b.signum() == 0) {
+                    throw new Failure(Outcome.DIVIDE_BY_ZERO);
+                }
+                if (precision == Precision.INT32 || precision == Precision.EXACT) {
+                    return check(Fraction.of(a.numerator.divide(b.numerator)));
+                }
+                return check(a.divide(b));
+            case Operators.POWER:
+                return power(a, b);
+            default:
+                return bitwise(opcode, a, b);
+        }
+    }
+
+    private Fraction power(Fraction base, Fraction exponent) {
+        if (precision == Precision.INT32) {
+            return Fraction.of(intPower(base.numerator.intValue(), exponent.numerator.intValue()));
+        }
+        if (precision == Precision.DECIMAL) {
+            return decimalPower(base, exponent);
+        }
+        if (!exponent.isInteger()) {
+            throw new Failure(Outcome.UNDEFINED);
+        }
+        BigInteger e = exponent.numerator;
+        if (precision == Precision.EXACT) {
+            return Fraction.of(integerPower(base.numerator, e));
+        }
+        if (e.signum() < 0) {
+            if (base.signum() == 0) {
+                throw new Failure(Outcome.DIVIDE_BY_ZERO);
+            }
+            base = Fraction.ONE.divide(base);
+            e = e.negate();
+        }
+        BigInteger numerator = integerPower(base.numerator, e);
+        BigInteger denominator = integerPower(base.denominator, e);
+        return check(Fraction.of(numerator, denominator));
+    }
+
+    // (int) Math.pow(base, exponent): exact where a double holds the result, saturated beyond the int range
+    private static long intPower(int base, int exponent) {
+        if (exponent == 0 || base == 1) {
+            return 1;
+        }
+        if (base == -1) {
+            return (exponent & 1) == 0 ? 1 : -1;
+        }
+        if (exponent < 0) {
+            // 0 to a negative power is infinite; other results lie strictly between -1 and 1
+            return base == 0 ? Integer.MAX_VALUE : 0;
+        }
+        if (base == 0) {
+            return 0;
+        }
+        boolean negative = base < 0 && (exponent & 1) != 0;
+        if (exponent >= Long.SIZE) {
+            return negative ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+        BigInteger exact = BigInteger.valueOf(base).pow(exponent);
+        return exact.max(INT_MIN).min(INT_MAX).longValue();
+    }
+
+    // An integer power truncated toward zero, as the exact precisions compute it
+    private BigInteger integerPower(BigInteger base, BigInteger exponent) {
+        int bits = base.abs().bitLength();
+        if (bits <= 1) {
+            if (base.signum() == 0) {
+                if (exponent.signum() < 0) {
+                    throw new Failure(Outcome.DIVIDE_BY_ZERO);
+                }
+                return exponent.signum() == 0 ? BigInteger.ONE : BigInteger.ZERO;
+            }
+            return base.signum() < 0 && exponent.testBit(0) ? base : BigInteger.ONE;
+        }
+        if (exponent.signum() < 0) {
+            return BigInteger.ZERO;
+        }
+        if (exponent.bitLength() >= Integer.SIZE || exponent.intValue() > ENGINE_MAX_BITS / (bits - 1)) {
+            throw new Failure(Outcome.UNDEFINED);
+        }
+        if ((long) bits * exponent.intValue() > MAX_BITS) {
+            throw new Failure(Outcome.UNCHECKED);
+        }
+        return base.pow(exponent.intValue());
+    }
+
+    // StrictMath.pow, which is exact for whole arguments whose result is a double
+    private Fraction decimalPower(Fraction base, Fraction exponent) {
+        if (exponent.signum() == 0) {
+            return Fraction.ONE;
+        }
+        if (exponent.equals(Fraction.ONE)) {
+            return base;
+        }
+        if (!base.isInteger() || !exponent.isInteger()) {
+            throw new Failure(Outcome.UNCHECKED);
+        }
+        BigInteger e = exponent.numerator;
+        int bits = base.numerator.abs().bitLength();
+        if (bits == 0) {
+            if (e.signum() < 0) {
+                // Infinite, which a later operation may still turn into a number
+                throw new Failure(Outcome.UNCHECKED);
+            }
+            return Fraction.ZERO;
+        }
+        if (bits == 1) {
+            return base.signum() < 0 && e.testBit(0) ? base : Fraction.ONE;
+        }
+        if (e.abs().bitLength() >= Integer.SIZE || (long) bits * e.abs().intValue() > MAX_BITS) {
+            throw new Failure(Outcome.UNCHECKED);
+        }
+        return check(base.pow(e.intValue()));
+    }
+
+    private Fraction bitwise(int opcode, Fraction a, Fraction b) {
+        if (!a.isInteger() || !b.isInteger()) {
+            // Only the fractional precisions can get here
+            throw new Failure(Outcome.UNDEFINED);
+        }
+        BigInteger x = a.numerator;
+        BigInteger y = b.numerator;
+        switch (opcode) {
+            case Operators.AND:
+                return check(Fraction.of(x.and(y)));
+            case Operators.OR:
+                return check(Fraction.of(x.or(y)));
+            case Operators.XOR:
+                return check(Fraction.of(x.xor(y)));
+            case Operators.SHIFT_LEFT:
+                return shift(x, y);
+            default:
+                if (precision == Precision.INT32) {
+                    int count = y.intValue();
+                    return shift(x, BigInteger.valueOf(count == Integer.MIN_VALUE ? Integer.MAX_VALUE : -count));
+                }
+                return shift(x, y.negate());
+        }
+    }
+
+    // Shifts left by count places, or right with the sign if count is negative
+    private Fraction shift(BigInteger value, BigInteger count) {
+        if (precision == Precision.INT32) {
+            // The count is not masked: 32 places or more shift every bit out
+            int places = count.intValue();
+            if (places >= 0) {
+                return places < Integer.SIZE ? wrap(Fraction.of(value.shiftLeft(places))) : Fraction.ZERO;
+            }
+            return Fraction.of(value.shiftRight(places > -Integer.SIZE ? -places : Integer.SIZE - 1));
+        }
+        if (value.signum() == 0) {
+            return Fraction.ZERO;
+        }
+        if (count.signum() < 0) {
+            BigInteger places = count.negate();
+            if (places.compareTo(BigInteger.valueOf(value.bitLength())) >= 0) {
+                return Fraction.of(value.signum() < 0 ? -1 : 0);
+            }
+            return check(Fraction.of(value.shiftRight(places.intValue())));
+        }
+        if (count.bitLength() >= Integer.SIZE || value.bitLength() + count.longValue() > ENGINE_MAX_BITS) {
+            throw new Failure(Outcome.UNDEFINED);
+        }
+        if (value.bitLength() + count.longValue() > MAX_BITS) {
+            throw new Failure(Outcome.UNCHECKED);
+        }
+        return check(Fraction.of(value.shiftLeft(count.intValue())));
+    }
+
+    private Fraction sqrt(Fraction x) {
+        if (precision == Precision.INT32) {
+            // (int) of NaN is 0
+            return x.signum() < 0 ? Fraction.ZERO : Fraction.of(floorSqrt(x.numerator));
+        }
+        if (x.signum() < 0) {
+            throw new Failure(precision == Precision.DECIMAL ? Outcome.UNCHECKED : Outcome.UNDEFINED);
+        }
+        if (precision == Precision.EXACT) {
+            return Fraction.of(floorSqrt(x.numerator));
+        }
+        BigInteger numerator = floorSqrt(x.numerator);
+        BigInteger denominator = floorSqrt(x.denominator);
+        if (!numerator.multiply(numerator).equals(x.numerator)
+                || !denominator.multiply(denominator).equals(x.denominator)) {
+            // Irrational: no exact result, and a rounded one in floating point
+            throw new Failure(precision == Precision.DECIMAL ? Outcome.UNCHECKED : Outcome.UNDEFINED);
+        }
+        return check(Fraction.of(numerator, denominator));
+    }
+
+    private Fraction factorial(Fraction x) {
+        if (precision == Precision.DECIMAL) {
+            if (x.signum() < 0 || !x.isInteger() || x.numerator.intValue() > MAX_DOUBLE_FACTORIAL
+                    || x.numerator.bitLength() >= Integer.SIZE) {
+                // NaN or infinite
+                throw new Failure(Outcome.UNCHECKED);
+            }
+        } else if (!x.isInteger() || x.signum() < 0) {
+            throw new Failure(Outcome.UNDEFINED);
+        }
+        BigInteger n = x.numerator;
+        if (precision == Precision.INT32) {
+            // From 34! on, the low 32 bits are all zero
+            return n.intValue() >= 34 ? Fraction.ZERO : wrap(Fraction.of(product(n.intValue())));
+        }
+        if (n.bitLength() >= Integer.SIZE) {
+            throw new Failure(Outcome.UNDEFINED);
+        }
+        int small = n.intValue();
+        if (small > 1000) {
+            // Stirling's formula tells whether the engine rejects the result as too large
+            double log2 = (small * Math.log(small) - small + 0.5 * Math.log(2 * Math.PI * small)) / Math.log(2);
+            throw new Failure(log2 > ENGINE_MAX_BITS + 1024 ? Outcome.UNDEFINED : Outcome.UNCHECKED);
+        }
+        return check(Fraction.of(product(small)));
+    }
+
+    // n! one factor at a time, giving up beyond MAX_BITS
+    private static BigInteger product(int n) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2; i <= n; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+            if (result.bitLength() > MAX_BITS) {
+                throw new Failure(Outcome.UNCHECKED);
+            }
+        }
+        return result;
+    }
+
+    private Fraction binomial(Fraction x, Fraction y) {
+        if (!x.isInteger() || !y.isInteger()) {
+            throw new Failure(precision == Precision.DECIMAL ? Outcome.UNCHECKED : Outcome.UNDEFINED);
+        }
+        BigInteger n = x.numerator;
+        BigInteger k = y.numerator;
+        if (n.signum() < 0) {
+            throw new Failure(precision == Precision.DECIMAL ? Outcome.UNCHECKED : Outcome.UNDEFINED);
+        }
+        if (precision == Precision.DECIMAL && n.compareTo(MAX_DOUBLE_BINOMIAL) > 0) {
+            throw new Failure(Outcome.UNCHECKED);
+        }
+        if (k.signum() < 0 || k.compareTo(n) > 0) {
+            return Fraction.ZERO;
+        }
+        k = k.min(n.subtract(k));
+        // n (n-1) ... (n-i+1) / i! for i up to k; every partial result is a whole number
+        BigInteger result = BigInteger.ONE;
+        for (BigInteger i = BigInteger.ZERO; i.compareTo(k) < 0; i = i.add(BigInteger.ONE)) {
+            result = result.multiply(n.subtract(i)).divide(i.add(BigInteger.ONE));
+            if (result.bitLength() > MAX_BITS) {
+                throw new Failure(Outcome.UNCHECKED);
+            }
+        }
+        return precision == Precision.INT32 ? wrap(Fraction.of(result)) : check(Fraction.of(result));
+    }
+
+    // Largest integer whose square is at most x, by bisection
+    static BigInteger floorSqrt(BigInteger x) {
+        BigInteger low = BigInteger.ZERO;
+        BigInteger high = BigInteger.ONE.shiftLeft(x.bitLength() / 2 + 1);
+        while (low.compareTo(high) < 0) {
+            BigInteger middle = low.add(high).add(BigInteger.ONE).shiftRight(1);
+            if (middle.multiply(middle).compareTo(x) <= 0) {
+                low = middle;
+            } else {
+                high = middle.subtract(BigInteger.ONE);
+            }
+        }
+        return low;
+    }
+
+    // Narrows a whole number to 32-bit two's complement
+    private static Fraction wrap(Fraction x) {
+        return Fraction.of(x.numerator.intValue());
+    }
+
+    // Narrows an INT32 result, or makes sure the reference can still vouch for an exact one
+    private Fraction check(Fraction x) {
+        if (precision == Precision.INT32) {
+            return wrap(x);
+        }
+        if (x.bitLength() > MAX_BITS || (precision == Precision.DECIMAL && !x.isDouble())) {
+            throw new Failure(Outcome.UNCHECKED);
+        }
+        return x;
+    }
+
+    // Ends an evaluation early with an outcome other than a value
+    private static final class Failure extends RuntimeException {
+        final Outcome outcome;
+
+        Failure(Outcome outcome) {
+            super(null, null, false, false);
+            this.outcome = outcome;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.DecimalEvaluator;
+import com.example.calculator.engine.Evaluator;
+import com.example.calculator.engine.ExpressionCache;
+import com.example.calculator.engine.ExpressionCompiler;
+import com.example.calculator.engine.IncrementalEvaluator;
+import com.example.calculator.engine.MalformedExpressionException;
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Program;
+import com.example.calculator.engine.Radix;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Feeds mutated text to the compiler and keeps the inputs that make it behave in a new way.
+ * <p>
+ * Without instrumenting the engine's bytecode, the fuzzer reads coverage off what the
+ * compiler produces instead: the pairs of adjacent opcodes in the program, whether it needed
+ * big constants, the size of its stack, and the kind of error or result. An input that shows
+ * a feature not seen before joins the corpus and is mutated further, so the search walks
+ * toward unusual token sequences rather than sampling blindly. Every input is held to a few
+ * properties that do not need a reference:
+ * <ul>
+ * <li>compiling either succeeds or throws {@link MalformedExpressionException}, and evaluating
+ * only fails by dividing by zero or with an {@link ArithmeticException};</li>
+ * <li>{@link ExpressionCache#normalize} is idempotent and keeps the meaning of the text;</li>
+ * <li>the expression cache returns what evaluating the compiled program returns;</li>
+ * <li>the incremental evaluator previews the same value as the compiled program.</li>
+ * </ul>
+ * An instance is not thread-safe.
+ */
+final class TokenizerFuzzer {
+
+    // Longest input, and largest corpus, kept
+    private static final int MAX_LENGTH = 256;
+    private static final int MAX_CORPUS = 4096;
+
+    // Inputs the search starts from
+    private static final String[] SEEDS = {
+            "1+2", "12x3-4÷5", "2^10", "sqrt(16)+ncr(5, 2)", "5!", "1.5+0.25", "FF&0F", "1«4»2", "7⊻3|8",
+            "(1+2)x3", "٣+٤", "１２３x４", "99999999999999999999x2", "0.5 0.25", "10÷0", "2^-1", "ncr(sqrt(9), 2)!"
+    };
+
+    // Tokens and characters that mutations insert
+    private static final String[] DICTIONARY = {
+            "0", "1", "9", "00", "10", "2147483647", "2147483648", "4294967296", "9223372036854775807",
+            "99999999999999999999", "A", "F", "FF", ".", "0.", ".5", "+", "-", "x", "÷", "^", "&", "|", "⊻",
+            "«", "»", "!", "(", ")", ",", " ", "sqrt(", "ncr(", "sin(", "ln(", "exp(", "M", "X", "٣", "０", "߀",
+            "𝟘"
+    };
+
+    private final Random random;
+    private final List<String> corpus = new ArrayList<>();
+    private final Set<Long> features = new HashSet<>();
+    private final ExpressionCache cache = new ExpressionCache(1 << 16);
+    private final Evaluator evaluator = new Evaluator();
+    private final DecimalEvaluator decimalEvaluator = new DecimalEvaluator();
+    private final IncrementalEvaluator incremental = new IncrementalEvaluator();
+    private long executions;
+
+    /**
+     * @param seed The seed of the mutations
+     */
+    TokenizerFuzzer(long seed) {
+        random = new Random(seed);
+        for (String input : SEEDS) {
+            execute(input);
+            corpus.add(input);
+        }
+    }
+
+    /**
+     * Mutates and runs inputs
+     *
+     * @param iterations The number of inputs to run
+     * @return Null if every input held, otherwise the first one that did not and why
+     */
+    String run(int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            String input = mutate(corpus.get(random.nextInt(corpus.size())));
+            String failure = execute(input);
+            if (failure != null) {
+                return failure;
+            }
+        }
+        return null;
+    }
+
+    int corpusSize() {
+        return corpus.size();
+    }
+
+    int featureCount() {
+        return features.size();
+    }
+
+    long executions() {
+        return executions;
+    }
+
+    /**
+     * Runs one input, adding it to the corpus if it shows a new feature
+     *
+     * @param input The text
+     * @return Null if it held every property, otherwise the input and the property it broke
+     */
+    String execute(String input) {
+        executions++;
+        int before = features.size();
+        String failure;
+        try {
+            failure = properties(input);
+        } catch (RuntimeException | StackOverflowError e) {
+            failure = "threw " + e;
+        }
+        if (features.size() > before && corpus.size() < MAX_CORPUS) {
+            corpus.add(input);
+        }
+        return failure == null ? null : "\"" + escape(input) + "\": " + failure;
+    }
+
+    private String properties(String input) {
+        String integer = outcome(input, 0, false, Radix.DECIMAL);
+        String decimal = outcome(input, 1, true, Radix.DECIMAL);
+        String hexadecimal = outcome(input, 2, false, Radix.HEXADECIMAL);
+        for (String result : new String[]{integer, decimal, hexadecimal}) {
+            if (result.startsWith("crash")) {
+                return result;
+            }
+        }
+        String cached = cachedOutcome(input, Precision.INT32);
+        if (!cached.equals(integer)) {
+            return "cache gave " + cached + ", compiler " + integer;
+        }
+        cached = cachedOutcome(input, Precision.DECIMAL);
+        if (!cached.equals(decimal)) {
+            return "cache gave " + cached + " in decimal, compiler " + decimal;
+        }
+        if (!mayCall(input)) {
+            String failure = checkNormalize(input, false, Radix.DECIMAL, integer);
+            if (failure == null) {
+                failure = checkNormalize(input, true, Radix.DECIMAL, decimal);
+            }
+            if (failure == null) {
+                failure = checkNormalize(input, false, Radix.HEXADECIMAL, hexadecimal);
+            }
+            if (failure != null) {
+                return failure;
+            }
+        }
+        if (incrementalReads(input)) {
+            incremental.reset();
+            incremental.append(input);
+            String preview = incremental.computePreview() ? "value " + incremental.preview() : "none";
+            String expected = integer.startsWith("value") ? integer : "none";
+            if (!preview.equals(expected)) {
+                return "incremental gave " + preview + ", compiler " + integer;
+            }
+        }
+        return null;
+    }
+
+    // Compiles and evaluates the input in one of three ways, recording features of what happened
+    private String outcome(String input, int variant, boolean decimals, Radix radix) {
+        Program program;
+        try {
+            program = decimals ? ExpressionCompiler.compileDecimal(input, radix, null)
+                    : ExpressionCompiler.compile(input, radix, null);
+        } catch (MalformedExpressionException e) {
+            feature(variant, 1, firstWord(e.getMessage()).hashCode());
+            return "malformed";
+        } catch (RuntimeException e) {
+            return "crash in compiler: " + e;
+        }
+        record(variant, program);
+        String result;
+        try {
+            result = decimals ? "value " + DecimalEvaluator.format(decimalEvaluator.evaluate(program))
+                    : "value " + evaluator.evaluate(program);
+        } catch (RuntimeException e) {
+            Outcome outcome = Outcome.of(e);
+            if (outcome.kind == Outcome.Kind.CRASH || outcome.kind == Outcome.Kind.MALFORMED) {
+                return "crash in evaluator: " + e;
+            }
+            result = outcome.kind.name() + " " + firstWord(e.getMessage());
+        }
+        feature(variant, 2, result.startsWith("value") ? 0 : result.hashCode());
+        return result;
+    }
+
+    private String cachedOutcome(String input, Precision precision) {
+        try {
+            return "value " + cache.evaluate(input, Radix.DECIMAL, precision);
+        } catch (MalformedExpressionException e) {
+            return "malformed";
+        } catch (RuntimeException e) {
+            Outcome outcome = Outcome.of(e);
+            return outcome.kind == Outcome.Kind.CRASH ? "crash in cache: " + e
+                    : outcome.kind.name() + " " + firstWord(e.getMessage());
+        }
+    }
+
+    // normalize is idempotent, and the normalized text compiles to a program with the same outcome
+    private String checkNormalize(String input, boolean decimals, Radix radix, String expected) {
+        String normalized = ExpressionCache.normalize(input, decimals, radix);
+        String twice = ExpressionCache.normalize(normalized, decimals, radix);
+        if (!twice.equals(normalized)) {
+            return "normalizing \"" + escape(normalized) + "\" again gave \"" + escape(twice) + "\"";
+        }
+        feature(3, decimals ? 1 : 0, normalized.equals(input) ? 0 : 1);
+        String actual = outcome(normalized, 4, decimals, radix);
+        if (!actual.equals(expected)) {
+            return "normalized to \"" + escape(normalized) + "\" in " + radix + (decimals ? " with points" : "")
+                    + ", which gave " + actual + " instead of " + expected;
+        }
+        return null;
+    }
+
+    // Records the shape of a program: its opcode pairs, big constants and stack depth
+    private void record(int variant, Program program) {
+        int previous = -1;
+        boolean big = false;
+        for (int i = 0; i < program.length(); i++) {
+            int instruction = program.instructionAt(i);
+            int opcode = Program.opcode(instruction);
+            int token = opcode == Operators.CALL ? Operators.SHIFT_RIGHT + 1 + Program.argument(instruction) : opcode;
+            feature(variant, 3, previous * 64 + token);
+            previous = token;
+        }
+        for (int i = 0; i < program.constantCount() && !big; i++) {
+            big = program.bigConstant(i) != null;
+        }
+        feature(variant, 4, big ? 1 : 0);
+        feature(variant, 5, 32 - Integer.numberOfLeadingZeros(program.maxStack()));
+        feature(variant, 6, 32 - Integer.numberOfLeadingZeros(program.length()));
+    }
+
+    private void feature(int variant, int kind, int value) {
+        features.add(((long) variant << 56) | ((long) kind << 48) | (value & 0xFFFFFFFFL));
+    }
+
+    private String mutate(String input) {
+        StringBuilder text = new StringBuilder(input);
+        int mutations = 1 + random.nextInt(4);
+        for (int m = 0; m < mutations; m++) {
+            int length = text.length();
+            int at = random.nextInt(length + 1);
+            switch (random.nextInt(6)) {
+                case 0:
+                    text.insert(at, DICTIONARY[random.nextInt(DICTIONARY.length)]);
+                    break;
+                case 1:
+                    if (length > 0) {
+                        int from = random.nextInt(length);
+                        text.delete(from, Math.min(length, from + 1 + random.nextInt(4)));
+                    }
+                    break;
+                case 2:
+                    if (length > 0) {
+                        int from = random.nextInt(length);
+                        text.insert(at, text.substring(from, Math.min(length, from + 1 + random.nextInt(8))));
+                    }
+                    break;
+                case 3:
+                    if (length > 0) {
+                        text.setCharAt(random.nextInt(length), randomChar());
+                    }
+                    break;
+                case 4:
+                    // Splice: this input up to a point, another one from a point
+                    String other = corpus.get(random.nextInt(corpus.size()));
+                    text.setLength(at);
+                    text.append(other, random.nextInt(other.length() + 1), other.length());
+                    break;
+                default:
+                    if (length > 1) {
+                        int i = random.nextInt(length);
+                        int j = random.nextInt(length);
+                        char c = text.charAt(i);
+                        text.setCharAt(i, text.charAt(j));
+                        text.setCharAt(j, c);
+                    }
+                    break;
+            }
+        }
+        if (text.length() > MAX_LENGTH) {
+            text.setLength(MAX_LENGTH);
+        }
+        return text.toString();
+    }
+
+    private char randomChar() {
+        switch (random.nextInt(4)) {
+            case 0:
+                return (char) ('0' + random.nextInt(10));
+            case 1:
+                return "+-x÷^&|⊻«»!(),. ".charAt(random.nextInt(16));
+            case 2:
+                return (char) (' ' + random.nextInt(95));
+            default:
+                // Anything, including digits of other scripts and halves of surrogate pairs
+                return (char) random.nextInt(Character.MAX_VALUE + 1);
+        }
+    }
+
+    // True if the text may call a function, in which case normalize is not used on it
+    private static boolean mayCall(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if ((c >= 'a' && c <= 'z') || c == '!') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // True if the incremental evaluator reads the text like the compiler: no calls, no points
+    private static boolean incrementalReads(String input) {
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if ((c >= 'a' && c <= 'z' && c != 'x') || c == '!') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String firstWord(String message) {
+        if (message == null) {
+            return "";
+        }
+        int space = message.indexOf(' ');
+        return space < 0 ? message : message.substring(0, space);
+    }
+
+    // Writes characters outside printable ASCII as escapes, so a failing input can be pasted into a test
+    static String escape(String input) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= ' ' && c < 0x7F && c != '"' && c != '\\') {
+                out.append(c);
+            } else {
+                out.append(String.format("\\u%04X", (int) c));
+            }
+        }
+        return out.toString();
+    }
+}
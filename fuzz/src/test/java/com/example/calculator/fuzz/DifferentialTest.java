@@ -0,0 +1,36 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DifferentialTest {
+
+    private static final int CASES = 20000;
+
+    @Test
+    public void randomCases_agreeWithTheReference() {
+        Differential differential = new Differential();
+        for (long index = 0; index < CASES; index++) {
+            String failure = Main.runCase(differential, 42, index, 8, 2);
+            assertNull(failure, failure);
+        }
+        assertEquals(CASES, differential.cases());
+        // Most cases must be checked against a value, not only run for crashes
+        assertTrue(differential.unchecked() + " unchecked", differential.unchecked() < CASES / 2);
+    }
+
+    @Test
+    public void shrink_keepsTheCaseFailing() {
+        Differential differential = new Differential();
+        // Not a failure: shrinking a passing case leaves it as it is
+        Expression expression = Expression.of(Expression.Literal.of(6)).then(Operators.DIVIDE, Expression.Literal.of(3));
+        assertNull(differential.check(expression, Precision.INT32, Radix.DECIMAL));
+        assertSame(expression, differential.shrink(expression, Precision.INT32, Radix.DECIMAL));
+        assertEquals(1, differential.cases());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.calculator.fuzz;
+
+import com.example.calculator.engine.Operators;
+import com.example.calculator.engine.Precision;
+import com.example.calculator.engine.Radix;
+import com.example.calculator.engine.math.MathFunction;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class ReferenceEvaluatorTest {
+
+    private static Expression.Literal n(long value) {
+        return Expression.Literal.of(value);
+    }
+
+    private static String evaluate(Expression expression, Precision precision) {
+        return ReferenceEvaluator.evaluate(expression, precision, Radix.DECIMAL).toString();
+    }
+
+    @Test
+    public void precedence_climbsLikeTheKeypadGrammar() {
+        // 1 + 2 x 3 ^ 2: x and ^ share a level and associate to the left
+        Expression expression = Expression.of(n(1)).then(Operators.ADD, n(2))
+                .then(Operators.MULTIPLY, n(3)).then(Operators.POWER, n(2));
+        assertEquals("37", evaluate(expression, Precision.EXACT));
+        // 1 | 6 & 3 « 1: shifts bind tighter than &, which binds tighter than |
+        expression = Expression.of(n(1)).then(Operators.OR, n(6)).then(Operators.AND, n(3))
+                .then(Operators.SHIFT_LEFT, n(1));
+        assertEquals("7", evaluate(expression, Precision.EXACT));
+        assertEquals("1+6", Expression.of(n(1)).then(Operators.ADD, n(6)).render(Radix.DECIMAL));
+    }
+
+    @Test
+    public void precisions_differWhereTheEngineDoes() {
+        Expression quotient = Expression.of(n(7)).then(Operators.DIVIDE, n(2));
+        assertEquals("3", evaluate(quotient, Precision.EXACT));
+        assertEquals("7÷2", evaluate(quotient, Precision.RATIONAL));
+        Expression overflow = Expression.of(n(Integer.MAX_VALUE)).then(Operators.ADD, n(1));
+        assertEquals(String.valueOf(Integer.MIN_VALUE), evaluate(overflow, Precision.INT32));
+        assertEquals("2147483648", evaluate(overflow, Precision.EXACT));
+        Expression power = Expression.of(n(3)).then(Operators.POWER, n(40));
+        assertEquals(String.valueOf(Integer.MAX_VALUE), evaluate(power, Precision.INT32));
+        Expression shift = Expression.of(n(1)).then(Operators.SHIFT_LEFT, n(40));
+        assertEquals("0", evaluate(shift, Precision.INT32));
+        assertEquals("1099511627776", evaluate(shift, Precision.EXACT));
+    }
+
+    @Test
+    public void errors_matchTheEngineExceptions() {
+        Expression divide = Expression.of(n(1)).then(Operators.DIVIDE, n(0));
+        assertEquals("DIVIDE_BY_ZERO", evaluate(divide, Precision.INT32));
+        Expression negative = Expression.of(n(0)).then(Operators.SUBTRACT, new Expression.Factorial(n(3)));
+        assertEquals("-6", evaluate(negative, Precision.EXACT));
+        Expression root = Expression.of(new Expression.Call(MathFunction.SQRT,
+                Collections.singletonList(Expression.of(n(2)))));
+        assertEquals("1", evaluate(root, Precision.INT32));
+        assertEquals("UNDEFINED", evaluate(root, Precision.RATIONAL));
+        assertEquals("UNCHECKED", evaluate(root, Precision.DECIMAL));
+        Expression huge = Expression.of(n(2)).then(Operators.POWER, n(99999999));
+        assertEquals("UNDEFINED", evaluate(huge, Precision.EXACT));
+    }
+
+    @Test
+    public void decimal_isOnlyCheckedWhileDoublesAreExact() {
+        Expression half = Expression.of(new Expression.Literal(BigInteger.valueOf(5), 1, 0))
+                .then(Operators.ADD, n(1));
+        assertEquals("3÷2", evaluate(half, Precision.DECIMAL));
+        Expression tenth = Expression.of(new Expression.Literal(BigInteger.ONE, 1, 0));
+        assertEquals("UNCHECKED", evaluate(tenth, Precision.DECIMAL));
+        assertEquals("1÷10", evaluate(tenth, Precision.RATIONAL));
+        Expression choose = Expression.of(new Expression.Call(MathFunction.BINOMIAL,
+                Arrays.asList(Expression.of(n(49)), Expression.of(n(6)))));
+        assertEquals("13983816", evaluate(choose, Precision.DECIMAL));
+    }
+
+    @Test
+    public void literals_renderInTheirRadix() {
+        Expression expression = Expression.of(new Expression.Literal(BigInteger.valueOf(0xA8), 1, 2))
+                .then(Operators.XOR, n(255)).spaced(true);
+        assertEquals("00A.8 ⊻ FF", expression.render(Radix.HEXADECIMAL));
+        assertEquals("21÷2", ReferenceEvaluator.evaluate(
+                Expression.of(new Expression.Literal(BigInteger.valueOf(0xA8), 1, 0)),
+                Precision.RATIONAL, Radix.HEXADECIMAL).toString());
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.calculator.fuzz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TokenizerFuzzerTest {
+
+    @Test
+    public void mutatedInputs_holdEveryProperty() {
+        TokenizerFuzzer fuzzer = new TokenizerFuzzer(42);
+        int seeds = fuzzer.corpusSize();
+        String failure = fuzzer.run(20000);
+        assertNull(failure, failure);
+        // New features keep inputs, so the search moves beyond its seeds
+        assertTrue(fuzzer.corpusSize() > seeds);
+        assertTrue(fuzzer.featureCount() > 100);
+    }
+
+    @Test
+    public void execute_reportsInputsAsEscapedText() {
+        TokenizerFuzzer fuzzer = new TokenizerFuzzer(1);
+        assertNull(fuzzer.execute("４+٣"));
+        assertNull(fuzzer.execute("5.0.25+1"));
+        assertEquals("1\\u00F72", TokenizerFuzzer.escape("1÷2"));
+    }
+}
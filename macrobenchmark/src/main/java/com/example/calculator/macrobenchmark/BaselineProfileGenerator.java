@@ -0,0 +1,56 @@
+package com.example.calculator.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.uiautomator.UiDevice;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import kotlin.Unit;
+
+/**
+ * Records the classes and methods used by a typical session, to be copied to
+ * {@code app/src/main/baseline-prof.txt}.
+ * <p>
+ * Needs a rooted device or emulator image, e.g. an AOSP one without Play services.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public final BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void generate() {
+        baselineProfileRule.collectBaselineProfile(Keypad.PACKAGE_NAME, scope -> {
+            scope.pressHome();
+            scope.startActivityAndWait();
+            UiDevice device = scope.getDevice();
+            Keypad.firstKeypress(device);
+            Keypad.waitForConversions(device);
+
+            // Evaluate, then switch to exact arithmetic and evaluate again
+            for (String key : new String[]{"addButton", "num8Button", "multiplyButton", "num3Button", "equalsButton"}) {
+                Keypad.tap(device, key);
+            }
+            Keypad.longPress(device, "equalsButton");
+            Keypad.tap(device, "num2Button");
+            Keypad.tap(device, "divideButton");
+            Keypad.tap(device, "num5Button");
+            Keypad.tap(device, "equalsButton");
+
+            // Convert the result through every base
+            Keypad.tap(device, "binaryButton");
+            Keypad.tap(device, "hexadecimalButton");
+            Keypad.tap(device, "octalButton");
+            Keypad.tap(device, "clearButton");
+
+            // Open the history and go back
+            Keypad.tap(device, "historyButton");
+            device.pressBack();
+            return Unit.INSTANCE;
+        });
+    }
+}
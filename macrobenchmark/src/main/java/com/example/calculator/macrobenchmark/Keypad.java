@@ -0,0 +1,60 @@
+package com.example.calculator.macrobenchmark;
+
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.Until;
+
+/**
+ * Drives the calculator's keypad through UI Automator.
+ */
+final class Keypad {
+
+    static final String PACKAGE_NAME = "com.example.calculator";
+
+    // Longest wait for a view to appear or change
+    private static final long TIMEOUT_MS = 5_000;
+
+    private Keypad() {
+    }
+
+    /**
+     * Taps a button and waits until it has been handled
+     *
+     * @param device The device running the app
+     * @param id The resource name of the button
+     */
+    static void tap(UiDevice device, String id) {
+        device.wait(Until.findObject(By.res(PACKAGE_NAME, id)), TIMEOUT_MS).click();
+        device.waitForIdle();
+    }
+
+    /**
+     * Long-presses a button and waits until it has been handled
+     *
+     * @param device The device running the app
+     * @param id The resource name of the button
+     */
+    static void longPress(UiDevice device, String id) {
+        device.wait(Until.findObject(By.res(PACKAGE_NAME, id)), TIMEOUT_MS).longClick();
+        device.waitForIdle();
+    }
+
+    /**
+     * Taps the first digit key and waits until the result shows it
+     *
+     * @param device The device running the app
+     */
+    static void firstKeypress(UiDevice device) {
+        tap(device, "num7Button");
+        device.wait(Until.hasObject(By.res(PACKAGE_NAME, "resultTextView").text("7")), TIMEOUT_MS);
+    }
+
+    /**
+     * Waits for the history and conversion row, which is inflated after the first frame
+     *
+     * @param device The device running the app
+     */
+    static void waitForConversions(UiDevice device) {
+        device.wait(Until.hasObject(By.res(PACKAGE_NAME, "conversionsRow")), TIMEOUT_MS);
+    }
+}